@@ -0,0 +1,151 @@
+// Load test fan-out tin nhắn chat qua STOMP (k6: https://k6.io)
+//
+// SOCKETS kết nối giữ mở, cùng subscribe /topic/room.{ROOM_ID}. Một publisher gửi RATE tin/giây
+// qua /app/chat.sendMessage (broadcast, không ghi DB), nội dung mang timestamp lúc gửi.
+// Mỗi subscriber đo độ trễ nhận -> metric chat_fanout_latency (p50/p95/p99 trong summary).
+//
+// Chạy (TOKEN là JWT của một user là thành viên phòng ROOM_ID; mọi socket dùng chung user):
+//   ulimit -n 65535
+//   k6 run -e BASE_URL=ws://localhost:8080 -e TOKEN=... -e ROOM_ID=1 \
+//          -e SOCKETS=10000 -e RAMP_SECONDS=60 -e DURATION_SECONDS=120 -e RATE=5 loadtest/chat-fanout.js
+//
+// Với chat.broker.mode=relay có thể trỏ các socket vào nhiều instance sau load balancer.
+
+import ws from 'k6/ws';
+import { check, sleep } from 'k6';
+import { Counter, Trend } from 'k6/metrics';
+
+const BASE_URL = __ENV.BASE_URL || 'ws://localhost:8080';
+const TOKEN = __ENV.TOKEN;
+const ROOM_ID = Number(__ENV.ROOM_ID || 1);
+const SOCKETS = Number(__ENV.SOCKETS || 10000);
+const RAMP_SECONDS = Number(__ENV.RAMP_SECONDS || 60);
+const DURATION_SECONDS = Number(__ENV.DURATION_SECONDS || 120);
+const RATE = Number(__ENV.RATE || 5);
+
+const ENDPOINT = `${BASE_URL}/ws/chat/websocket`;
+const MARKER = 'lt:';
+
+const fanoutLatency = new Trend('chat_fanout_latency', true);
+const received = new Counter('chat_fanout_received');
+const published = new Counter('chat_fanout_published');
+const stompErrors = new Counter('chat_stomp_errors');
+
+export const options = {
+    scenarios: {
+        subscribers: {
+            executor: 'per-vu-iterations',
+            exec: 'subscriber',
+            vus: SOCKETS,
+            iterations: 1,
+            maxDuration: `${RAMP_SECONDS + DURATION_SECONDS + 60}s`,
+        },
+        publisher: {
+            executor: 'per-vu-iterations',
+            exec: 'publisher',
+            vus: 1,
+            iterations: 1,
+            // Bắt đầu gửi khi các subscriber đã kết nối xong
+            startTime: `${RAMP_SECONDS + 5}s`,
+            maxDuration: `${DURATION_SECONDS + 30}s`,
+        },
+    },
+    thresholds: {
+        chat_fanout_latency: ['p(95)<500', 'p(99)<1000'],
+        chat_stomp_errors: ['count==0'],
+    },
+};
+
+function frame(command, headers, body) {
+    let out = command + '\n';
+    for (const key of Object.keys(headers)) {
+        out += `${key}:${headers[key]}\n`;
+    }
+    return out + '\n' + (body || '') + '\0';
+}
+
+function connectFrame() {
+    return frame('CONNECT', {
+        'accept-version': '1.2',
+        host: 'localhost',
+        'heart-beat': '0,0',
+        Authorization: `Bearer ${TOKEN}`,
+    });
+}
+
+// Một WebSocket message có thể chứa nhiều STOMP frame
+function parseFrames(data) {
+    return data.split('\0')
+        .map((raw) => raw.replace(/^\n+/, ''))
+        .filter((raw) => raw.length > 0)
+        .map((raw) => {
+            const split = raw.indexOf('\n\n');
+            const head = split >= 0 ? raw.substring(0, split) : raw;
+            return {
+                command: head.split('\n')[0],
+                body: split >= 0 ? raw.substring(split + 2) : '',
+            };
+        });
+}
+
+export function subscriber() {
+    // Rải đều thời điểm kết nối trong RAMP_SECONDS
+    sleep(Math.random() * RAMP_SECONDS);
+    const holdMs = (RAMP_SECONDS + DURATION_SECONDS + 10) * 1000;
+
+    const res = ws.connect(ENDPOINT, {}, (socket) => {
+        socket.on('open', () => socket.send(connectFrame()));
+
+        socket.on('message', (data) => {
+            for (const f of parseFrames(data)) {
+                if (f.command === 'CONNECTED') {
+                    socket.send(frame('SUBSCRIBE', { id: 'sub-0', destination: `/topic/room.${ROOM_ID}` }));
+                } else if (f.command === 'MESSAGE') {
+                    let payload;
+                    try {
+                        payload = JSON.parse(f.body);
+                    } catch (e) {
+                        continue;
+                    }
+                    if (payload.content && payload.content.startsWith(MARKER)) {
+                        fanoutLatency.add(Date.now() - Number(payload.content.substring(MARKER.length)));
+                        received.add(1);
+                    }
+                } else if (f.command === 'ERROR') {
+                    stompErrors.add(1);
+                }
+            }
+        });
+
+        socket.setTimeout(() => socket.close(), holdMs);
+    });
+    check(res, { 'subscriber handshake 101': (r) => r && r.status === 101 });
+}
+
+export function publisher() {
+    const intervalMs = Math.max(1, Math.floor(1000 / RATE));
+
+    const res = ws.connect(ENDPOINT, {}, (socket) => {
+        socket.on('open', () => socket.send(connectFrame()));
+
+        socket.on('message', (data) => {
+            for (const f of parseFrames(data)) {
+                if (f.command === 'CONNECTED') {
+                    socket.setInterval(() => {
+                        const body = JSON.stringify({ roomId: ROOM_ID, content: MARKER + Date.now() });
+                        socket.send(frame('SEND', {
+                            destination: '/app/chat.sendMessage',
+                            'content-type': 'application/json',
+                        }, body));
+                        published.add(1);
+                    }, intervalMs);
+                } else if (f.command === 'ERROR') {
+                    stompErrors.add(1);
+                }
+            }
+        });
+
+        socket.setTimeout(() => socket.close(), DURATION_SECONDS * 1000);
+    });
+    check(res, { 'publisher handshake 101': (r) => r && r.status === 101 });
+}
@@ -69,4 +69,11 @@ public class GeminiConfig {
     public String buildApiUrl() {
         return String.format("/models/%s:generateContent?key=%s", model, apiKey);
     }
+    
+    /**
+     * Build URL cho Gemini API dạng streaming (Server-Sent Events)
+     */
+    public String buildStreamApiUrl() {
+        return String.format("/models/%s:streamGenerateContent?alt=sse&key=%s", model, apiKey);
+    }
 }
@@ -5,7 +5,9 @@ import java.util.Map;
 
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -25,6 +27,7 @@ import DoAn.BE.user.repository.UserRepository;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 
 /**
  * REST Controller cho AI ChatBot Assistant
@@ -72,6 +75,22 @@ public class AIController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Chat với AI Assistant dạng streaming (Server-Sent Events): trả từng đoạn text ngay khi model sinh ra.
+     * Request được xử lý async, Tomcat worker được trả lại trong lúc chờ model.
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> chatStream(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @Valid @RequestBody AIChatRequest request) {
+        
+        Long userId = getCurrentUserId(userDetails);
+        log.info("User {} streaming chat message, projectId: {}, action: {}", 
+                userId, request.getProjectId(), request.getActionType());
+        
+        return aiService.chatStream(userId, request);
+    }
+    
     /**
      * Quick action - Tóm tắt dự án
      */
@@ -55,6 +55,7 @@ public class AIChatResponse {
         private String model;           // Model được sử dụng
         private Integer tokensUsed;     // Số tokens đã dùng
         private Long responseTimeMs;    // Thời gian phản hồi
+        private Long firstTokenMs;      // Thời gian tới token đầu tiên (chỉ có ở chế độ streaming)
         private String contextUsed;     // Context đã sử dụng
     }
 }
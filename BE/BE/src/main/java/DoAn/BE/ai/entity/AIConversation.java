@@ -55,6 +55,18 @@ public class AIConversation {
     @Column(name = "last_message_at")
     private LocalDateTime lastMessageAt;
     
+    // Tóm tắt các lượt cũ đã rơi khỏi cửa sổ history (tin nhắn có id <= summarizedUntilMessageId).
+    // Các cột dưới đây chỉ cập nhật bằng UPDATE trong AIConversationRepository (AIConversationHistoryService)
+    @Column(name = "history_summary", columnDefinition = "NVARCHAR(MAX)", updatable = false)
+    private String historySummary;
+    
+    @Column(name = "summarized_until_message_id", updatable = false)
+    private Long summarizedUntilMessageId;
+    
+    // Tổng token đã dùng, so với ai.history.conversation-token-budget
+    @Column(name = "total_tokens_used", updatable = false)
+    private Long totalTokensUsed;
+    
     @Builder.Default
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     @JsonIgnore
@@ -69,6 +81,9 @@ public class AIConversation {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
         this.lastMessageAt = LocalDateTime.now();
+        if (this.totalTokensUsed == null) {
+            this.totalTokensUsed = 0L;
+        }
     }
     
     @PreUpdate
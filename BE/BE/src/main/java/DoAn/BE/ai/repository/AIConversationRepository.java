@@ -1,14 +1,17 @@
 package DoAn.BE.ai.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import DoAn.BE.ai.entity.AIConversation;
 
@@ -33,4 +36,21 @@ public interface AIConversationRepository extends JpaRepository<AIConversation,
     
     @Query("SELECT c FROM AIConversation c LEFT JOIN FETCH c.messages WHERE c.conversationUuid = :uuid")
     Optional<AIConversation> findByConversationUuidWithMessages(@Param("uuid") String uuid);
+    
+    // Ghi nhận một lượt chat mà không merge lại cả aggregate (messages)
+    @Modifying
+    @Query("UPDATE AIConversation c SET c.lastMessageAt = :now, c.updatedAt = :now, " +
+           "c.totalTokensUsed = COALESCE(c.totalTokensUsed, 0) + :tokens WHERE c.id = :id")
+    int recordTurn(@Param("id") Long id, @Param("tokens") long tokens, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE AIConversation c SET c.title = :title WHERE c.id = :id AND c.title IS NULL")
+    int setTitleIfMissing(@Param("id") Long id, @Param("title") String title);
+    
+    // Chỉ tiến lên: bản tóm tắt cũ hơn (chạy song song) không ghi đè bản mới
+    @Transactional
+    @Modifying
+    @Query("UPDATE AIConversation c SET c.historySummary = :summary, c.summarizedUntilMessageId = :untilId " +
+           "WHERE c.id = :id AND (c.summarizedUntilMessageId IS NULL OR c.summarizedUntilMessageId < :untilId)")
+    int updateHistorySummary(@Param("id") Long id, @Param("summary") String summary, @Param("untilId") Long untilId);
 }
@@ -21,6 +21,18 @@ public interface AIMessageRepository extends JpaRepository<AIMessage, Long> {
     @Query("SELECT m FROM AIMessage m WHERE m.conversation.conversationUuid = :uuid ORDER BY m.createdAt ASC")
     List<AIMessage> findByConversationUuid(@Param("uuid") String uuid);
     
+    // Cửa sổ history: các tin mới nhất chưa được tóm tắt (id > afterId), mới nhất trước
+    @Query("SELECT m FROM AIMessage m WHERE m.conversation.id = :conversationId AND m.id > :afterId " +
+           "ORDER BY m.id DESC")
+    List<AIMessage> findWindow(@Param("conversationId") Long conversationId, @Param("afterId") Long afterId,
+                               Pageable pageable);
+    
+    // Tin nhắn trong khoảng (afterId, beforeId), cũ nhất trước (gom vào bản tóm tắt, mỗi lần một trang)
+    @Query("SELECT m FROM AIMessage m WHERE m.conversation.id = :conversationId " +
+           "AND m.id > :afterId AND m.id < :beforeId ORDER BY m.id ASC")
+    List<AIMessage> findBetween(@Param("conversationId") Long conversationId, @Param("afterId") Long afterId,
+                                @Param("beforeId") Long beforeId, Pageable pageable);
+    
     @Query("SELECT COUNT(m) FROM AIMessage m WHERE m.conversation.id = :conversationId")
     long countByConversationId(@Param("conversationId") Long conversationId);
     
@@ -27,6 +27,7 @@ import DoAn.BE.project.repository.IssueStatusRepository;
 import DoAn.BE.project.repository.ProjectMemberRepository;
 import DoAn.BE.project.repository.ProjectRepository;
 import DoAn.BE.project.repository.SprintRepository;
+import DoAn.BE.project.service.IssueKeyGenerator;
 import DoAn.BE.storage.dto.CreateFolderRequest;
 import DoAn.BE.storage.entity.Folder;
 import DoAn.BE.storage.service.FolderService;
@@ -53,6 +54,8 @@ public class AIActionExecutor {
     private final UserRepository userRepository;
     private final ChatRoomService chatRoomService;
     private final FolderService folderService;
+    private final IssueKeyGenerator issueKeyGenerator;
+    private final ProjectContextService projectContextService;
 
     /**
      * Thực thi action từ AI
@@ -61,7 +64,7 @@ public class AIActionExecutor {
         log.info("Executing AI action: {} for user: {}", action.getActionType(), userId);
 
         try {
-            return switch (action.getActionType()) {
+            AIActionDTO result = switch (action.getActionType()) {
                 case CREATE_PROJECT -> createProject(action, userId);
                 case CREATE_ISSUE -> createIssue(action, userId);
                 case CREATE_MULTIPLE_ISSUES -> createMultipleIssues(action, userId);
@@ -79,6 +82,11 @@ public class AIActionExecutor {
                     yield action;
                 }
             };
+            // Các action theo project mang projectId trong data; action theo issue/sprint tự invalidate
+            if (result.getStatus() == ActionStatus.EXECUTED) {
+                projectContextService.invalidate(getLongValue(result.getData(), "projectId"));
+            }
+            return result;
         } catch (Exception e) {
             log.error("Error executing action: {}", e.getMessage());
             action.setStatus(ActionStatus.FAILED);
@@ -198,7 +206,7 @@ public class AIActionExecutor {
         issue.setProject(project);
         issue.setTitle(title);
         issue.setDescription(description);
-        issue.setIssueKey(generateIssueKey(project));
+        issue.setIssueKey(issueKeyGenerator.nextKey(project));
         issue.setPriority(Issue.Priority.valueOf(priority.toUpperCase()));
         issue.setReporter(reporter);
         issue.setIssueStatus(defaultStatus);
@@ -335,6 +343,7 @@ public class AIActionExecutor {
 
         issue.setAssignee(assignee);
         issueRepository.save(issue);
+        projectContextService.invalidate(issue.getProject().getProjectId());
 
         String assigneeName = assignee != null ? assignee.getUsername() : "không ai";
         action.setStatus(ActionStatus.EXECUTED);
@@ -368,6 +377,7 @@ public class AIActionExecutor {
 
         issue.setIssueStatus(newStatus);
         issueRepository.save(issue);
+        projectContextService.invalidate(issue.getProject().getProjectId());
 
         action.setStatus(ActionStatus.EXECUTED);
         action.setMessage(String.format("✅ Đã chuyển task \"%s\" sang trạng thái \"%s\"",
@@ -395,6 +405,7 @@ public class AIActionExecutor {
         sprint.setStatus(Sprint.SprintStatus.ACTIVE);
         sprint.setStartDate(LocalDate.now());
         sprintRepository.save(sprint);
+        projectContextService.invalidate(sprint.getProject().getProjectId());
 
         action.setStatus(ActionStatus.EXECUTED);
         action.setMessage(String.format("✅ Đã bắt đầu sprint \"%s\"", sprint.getName()));
@@ -421,6 +432,7 @@ public class AIActionExecutor {
         sprint.setStatus(Sprint.SprintStatus.COMPLETED);
         sprint.setEndDate(LocalDate.now());
         sprintRepository.save(sprint);
+        projectContextService.invalidate(sprint.getProject().getProjectId());
 
         action.setStatus(ActionStatus.EXECUTED);
         action.setMessage(String.format("✅ Đã hoàn thành sprint \"%s\"", sprint.getName()));
@@ -445,11 +457,6 @@ public class AIActionExecutor {
         return key.toString();
     }
 
-    private String generateIssueKey(Project project) {
-        long issueCount = issueRepository.findByProject_ProjectId(project.getProjectId()).size() + 1;
-        return project.getKeyProject() + "-" + issueCount;
-    }
-
     private String getStringValue(Map<String, Object> data, String key, String defaultValue) {
         if (data == null || !data.containsKey(key))
             return defaultValue;
@@ -0,0 +1,212 @@
+package DoAn.BE.ai.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import DoAn.BE.ai.config.GeminiConfig;
+import DoAn.BE.ai.entity.AIConversation;
+import DoAn.BE.ai.entity.AIMessage;
+import DoAn.BE.ai.repository.AIConversationRepository;
+import DoAn.BE.ai.repository.AIMessageRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cửa sổ history cho mỗi lượt chat AI.
+ * Chỉ nạp N tin nhắn mới nhất (gemini.api.max-conversation-history) bằng query phân trang, cắt tiếp
+ * theo ai.history.max-prompt-tokens; các lượt cũ hơn được gom vào historySummary của AIConversation
+ * (tóm tắt bất đồng bộ, xem summarizeOlderTurns). Lưu một lượt chỉ insert hai AIMessage mới và
+ * cập nhật conversation bằng UPDATE, không merge lại cả aggregate.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIConversationHistoryService {
+
+    private final AIConversationRepository conversationRepository;
+    private final AIMessageRepository messageRepository;
+    private final GeminiService geminiService;
+    private final GeminiConfig geminiConfig;
+    private final MeterRegistry meterRegistry;
+
+    // Ước lượng thô cho tiếng Việt có dấu (giống ProjectContextService)
+    private static final int CHARS_PER_TOKEN = 3;
+    // Mỗi tin nhắn đưa vào prompt tóm tắt bị cắt ở độ dài này
+    private static final int SUMMARY_INPUT_MESSAGE_CHARS = 1000;
+
+    private static final String SUMMARY_SYSTEM_PROMPT = """
+            Bạn tóm tắt lịch sử hội thoại giữa người dùng và AI Assistant quản lý dự án.
+            Giữ lại: mục tiêu của người dùng, quyết định đã chốt, tên dự án/task/sprint, con số quan trọng,
+            các việc còn dang dở. Bỏ lời chào và nội dung lặp lại.
+            Trả lời bằng tiếng Việt, dạng gạch đầu dòng ngắn gọn, không thêm lời dẫn.
+            """;
+
+    @Value("${ai.history.max-prompt-tokens:6000}")
+    private int maxPromptTokens;
+
+    // 0 = không giới hạn
+    @Value("${ai.history.conversation-token-budget:200000}")
+    private long conversationTokenBudget;
+
+    @Value("${ai.history.summary-batch:10}")
+    private int summaryBatch;
+
+    @Value("${ai.history.summary-max-chars:2000}")
+    private int summaryMaxChars;
+
+    /**
+     * Tóm tắt các lượt cũ + các tin nhắn gần nhất (cũ nhất trước) để đưa vào prompt
+     */
+    public record HistoryWindow(String summary, List<AIMessage> messages) {
+    }
+
+    /**
+     * Nạp cửa sổ history; reservedTokens là phần prompt đã dùng (system prompt + tin nhắn mới)
+     */
+    @Transactional(readOnly = true)
+    public HistoryWindow loadWindow(AIConversation conversation, int reservedTokens) {
+        if (conversation.getId() == null) {
+            return new HistoryWindow(null, List.of());
+        }
+
+        List<AIMessage> recent = new ArrayList<>(messageRepository.findWindow(conversation.getId(),
+                summarizedUntil(conversation), PageRequest.of(0, windowSize())));
+        Collections.reverse(recent);
+
+        String summary = conversation.getHistorySummary();
+        int budget = maxPromptTokens - reservedTokens - estimateTokens(summary);
+        int total = recent.stream().mapToInt(message -> estimateTokens(message.getContent())).sum();
+        // Vượt ngân sách thì bỏ dần tin nhắn cũ nhất
+        while (!recent.isEmpty() && total > budget) {
+            total -= estimateTokens(recent.remove(0).getContent());
+        }
+        return new HistoryWindow(summary, List.copyOf(recent));
+    }
+
+    /**
+     * Chặn lượt mới khi conversation đã dùng hết ai.history.conversation-token-budget
+     */
+    public void checkBudget(AIConversation conversation) {
+        Long used = conversation.getTotalTokensUsed();
+        if (conversationTokenBudget > 0 && used != null && used >= conversationTokenBudget) {
+            throw new RuntimeException("Cuộc hội thoại đã dùng hết " + conversationTokenBudget
+                    + " token, vui lòng bắt đầu cuộc hội thoại mới");
+        }
+    }
+
+    /**
+     * Lưu một lượt chat: insert tin nhắn user + assistant, cộng token và cập nhật thời gian bằng UPDATE
+     */
+    @Transactional
+    public void appendTurn(Long conversationId, AIMessage userMessage, AIMessage assistantMessage) {
+        AIConversation reference = conversationRepository.getReferenceById(conversationId);
+        userMessage.setConversation(reference);
+        assistantMessage.setConversation(reference);
+        messageRepository.save(userMessage);
+        messageRepository.save(assistantMessage);
+
+        int tokens = assistantMessage.getTokensUsed() != null ? assistantMessage.getTokensUsed() : 0;
+        conversationRepository.recordTurn(conversationId, tokens, LocalDateTime.now());
+        conversationRepository.setTitleIfMissing(conversationId, titleFrom(userMessage.getContent()));
+
+        DistributionSummary.builder("ai.chat.tokens")
+                .description("Số token dùng cho mỗi lượt chat AI")
+                .register(meterRegistry)
+                .record(tokens);
+    }
+
+    /**
+     * Gom các tin nhắn đã rơi khỏi cửa sổ vào historySummary khi đủ summary-batch tin,
+     * mỗi lần đúng một batch (summarizedUntilMessageId tiến tới tin cuối của batch đó).
+     * Chạy nền sau khi lượt chat đã commit; gọi model ngoài transaction, lỗi thì giữ bản tóm tắt cũ.
+     */
+    @Async
+    public void summarizeOlderTurns(Long conversationId) {
+        if (!geminiService.isAvailable()) {
+            return;
+        }
+        try {
+            AIConversation conversation = conversationRepository.findById(conversationId).orElse(null);
+            if (conversation == null) {
+                return;
+            }
+            long after = summarizedUntil(conversation);
+            List<AIMessage> window = messageRepository.findWindow(conversationId, after,
+                    PageRequest.of(0, windowSize()));
+            if (window.size() < windowSize()) {
+                return;
+            }
+            // window sắp xếp mới nhất trước: phần tử cuối là tin cũ nhất còn trong cửa sổ
+            Long oldestInWindow = window.get(window.size() - 1).getId();
+            // Mỗi lần chỉ gom một batch cũ nhất; phần còn lại được gom ở các lượt sau
+            List<AIMessage> older = messageRepository.findBetween(conversationId, after, oldestInWindow,
+                    PageRequest.of(0, Math.max(1, summaryBatch)));
+            if (older.size() < summaryBatch) {
+                return;
+            }
+
+            String summary = geminiService.simpleChat(SUMMARY_SYSTEM_PROMPT,
+                    buildSummaryInput(conversation.getHistorySummary(), older));
+            if (summary == null || summary.isBlank()) {
+                return;
+            }
+            if (summary.length() > summaryMaxChars) {
+                summary = summary.substring(0, summaryMaxChars);
+            }
+            conversationRepository.updateHistorySummary(conversationId, summary.trim(),
+                    older.get(older.size() - 1).getId());
+            log.debug("Tóm tắt {} tin nhắn cũ của conversation {}", older.size(), conversationId);
+        } catch (Exception e) {
+            log.warn("Không tóm tắt được history của conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    // ==================== Private Helper Methods ====================
+
+    private String buildSummaryInput(String previousSummary, List<AIMessage> messages) {
+        StringBuilder input = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            input.append("Tóm tắt trước đó:\n").append(previousSummary).append("\n\n");
+        }
+        input.append("Các tin nhắn tiếp theo:\n");
+        for (AIMessage message : messages) {
+            String content = message.getContent() != null ? message.getContent() : "";
+            if (content.length() > SUMMARY_INPUT_MESSAGE_CHARS) {
+                content = content.substring(0, SUMMARY_INPUT_MESSAGE_CHARS) + "...";
+            }
+            input.append("user".equals(message.getRole()) ? "Người dùng: " : "AI: ")
+                    .append(content).append("\n");
+        }
+        input.append("\nHãy viết lại bản tóm tắt gộp cả tóm tắt trước đó và các tin nhắn trên.");
+        return input.toString();
+    }
+
+    private int windowSize() {
+        return Math.max(1, geminiConfig.getMaxConversationHistory());
+    }
+
+    private static long summarizedUntil(AIConversation conversation) {
+        return conversation.getSummarizedUntilMessageId() != null ? conversation.getSummarizedUntilMessageId() : 0L;
+    }
+
+    private static String titleFrom(String content) {
+        if (content == null) {
+            return null;
+        }
+        return content.length() > 50 ? content.substring(0, 50) + "..." : content;
+    }
+}
@@ -3,13 +3,22 @@ package DoAn.BE.ai.service;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import DoAn.BE.ai.dto.AIActionDTO;
 import DoAn.BE.ai.dto.AIChatRequest;
@@ -18,17 +27,23 @@ import DoAn.BE.ai.dto.AIChatResponse;
 import DoAn.BE.ai.dto.AIChatResponse.*;
 import DoAn.BE.ai.dto.AIConversationDTO;
 import DoAn.BE.ai.dto.AIConversationDTO.AIMessageDTO;
-import DoAn.BE.ai.dto.ProjectContextDTO;
 import DoAn.BE.ai.entity.AIConversation;
 import DoAn.BE.ai.entity.AIMessage;
 import DoAn.BE.ai.repository.AIConversationRepository;
 import DoAn.BE.ai.repository.AIMessageRepository;
+import DoAn.BE.ai.service.AIConversationHistoryService.HistoryWindow;
 import DoAn.BE.ai.service.GeminiService.GeminiResponse;
 import DoAn.BE.project.repository.ProjectRepository;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.user.repository.UserRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Service chính xử lý AI Assistant cho Project Management
@@ -44,10 +59,13 @@ public class AIProjectAssistantService {
     private final ProjectContextService projectContextService;
     private final AIConversationRepository conversationRepository;
     private final AIMessageRepository messageRepository;
+    private final AIConversationHistoryService historyService;
     private final ProjectRepository projectRepository;
     private final UserRepository userRepository;
     private final AIActionParser actionParser;
     private final AIActionExecutor actionExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
 
     // System prompt cho AI Assistant
     private static final String BASE_SYSTEM_PROMPT = """
@@ -121,12 +139,15 @@ public class AIProjectAssistantService {
 
         // Lấy hoặc tạo conversation
         AIConversation conversation = getOrCreateConversation(request, user);
+        historyService.checkBudget(conversation);
 
         // Build system prompt với context
         String systemPrompt = buildSystemPrompt(request.getProjectId(), request.getActionType());
 
-        // Lấy conversation history
-        List<AIMessage> history = conversation.getMessages();
+        // Chỉ nạp cửa sổ history gần nhất, các lượt cũ hơn nằm trong bản tóm tắt
+        HistoryWindow window = loadHistoryWindow(conversation, systemPrompt, request.getMessage());
+        systemPrompt = withHistorySummary(systemPrompt, window);
+        List<AIMessage> history = window.messages();
 
         // Parse user message để detect action intents
         List<AIActionDTO> detectedActions = actionParser.parseUserMessage(
@@ -150,16 +171,13 @@ public class AIProjectAssistantService {
 
         // Lưu user message
         AIMessage userMessage = AIMessage.builder()
-                .conversation(conversation)
                 .role("user")
                 .content(request.getMessage())
                 .actionType(request.getActionType().name())
                 .build();
-        conversation.addMessage(userMessage);
 
         // Lưu assistant response
         AIMessage assistantMessage = AIMessage.builder()
-                .conversation(conversation)
                 .role("assistant")
                 .content(responseContent)
                 .actionType(request.getActionType().name())
@@ -167,15 +185,10 @@ public class AIProjectAssistantService {
                 .modelUsed(geminiService.isAvailable() ? "gemini-2.0-flash" : "mock")
                 .responseTimeMs(responseTime)
                 .build();
-        conversation.addMessage(assistantMessage);
 
-        // Auto-generate title nếu chưa có
-        if (conversation.getTitle() == null) {
-            conversation.generateTitleFromFirstMessage();
-        }
-
-        // Save conversation
-        conversationRepository.save(conversation);
+        // Chỉ insert hai tin nhắn mới (title tự sinh nếu chưa có)
+        historyService.appendTurn(conversation.getId(), userMessage, assistantMessage);
+        summarizeAfterCommit(conversation.getId());
 
         // Build response
         return AIChatResponse.builder()
@@ -195,6 +208,97 @@ public class AIProjectAssistantService {
                 .build();
     }
 
+    /**
+     * Chat dạng streaming (SSE): event "start" (conversationId), nhiều event "token" (đoạn text),
+     * rồi "done" (AIChatResponse đầy đủ) hoặc "error".
+     * Phần chuẩn bị (conversation, context, history) chạy trong transaction của request;
+     * trong lúc chờ model không giữ thread nào. Khi stream kết thúc, tin nhắn user + toàn bộ response
+     * được lưu trong transaction riêng trên boundedElastic (không chạy JDBC trên event loop).
+     * Nếu client ngắt kết nối giữa chừng, phần response đã nhận vẫn được lưu (đúng một lần) để lượt sau
+     * còn ngữ cảnh.
+     */
+    public Flux<ServerSentEvent<Object>> chatStream(Long userId, AIChatRequest request) {
+        long startTime = System.currentTimeMillis();
+
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        AIConversation conversation = getOrCreateConversation(request, user);
+        historyService.checkBudget(conversation);
+        String systemPrompt = buildSystemPrompt(request.getProjectId(), request.getActionType());
+        // Nạp history ngay: stream chạy sau khi transaction này đã đóng
+        HistoryWindow window = loadHistoryWindow(conversation, systemPrompt, request.getMessage());
+        systemPrompt = withHistorySummary(systemPrompt, window);
+        List<AIMessage> history = window.messages();
+        List<AIActionDTO> detectedActions = actionParser.parseUserMessage(
+                request.getMessage(), request.getProjectId());
+
+        Long conversationId = conversation.getId();
+        String conversationUuid = conversation.getConversationUuid();
+        // Token được append trên thread của WebClient, còn cancel có thể tới từ thread servlet
+        StringBuffer content = new StringBuffer();
+        AtomicBoolean saved = new AtomicBoolean();
+        AtomicLong firstTokenAt = new AtomicLong();
+        AtomicInteger tokensUsed = new AtomicInteger();
+        AtomicInteger outputTokens = new AtomicInteger();
+
+        Flux<ServerSentEvent<Object>> tokens = geminiService
+                .streamChat(systemPrompt, history, request.getMessage())
+                .<ServerSentEvent<Object>>handle((chunk, sink) -> {
+                    if (chunk.tokensUsed() > 0) {
+                        tokensUsed.set(chunk.tokensUsed());
+                        outputTokens.set(chunk.outputTokens());
+                    }
+                    if (chunk.text().isEmpty()) {
+                        return;
+                    }
+                    if (firstTokenAt.compareAndSet(0, System.currentTimeMillis())) {
+                        Timer.builder("ai.stream.first.token")
+                                .description("Thời gian từ lúc nhận request tới token đầu tiên của AI")
+                                .register(meterRegistry)
+                                .record(firstTokenAt.get() - startTime, TimeUnit.MILLISECONDS);
+                    }
+                    content.append(chunk.text());
+                    sink.next(event("token", Map.of("text", chunk.text())));
+                });
+
+        Mono<ServerSentEvent<Object>> done = Mono.fromCallable(() -> {
+                    long responseTime = System.currentTimeMillis() - startTime;
+                    recordThroughput(outputTokens.get() > 0 ? outputTokens.get() : tokensUsed.get(),
+                            firstTokenAt.get(), startTime);
+                    String responseContent = content.toString();
+                    if (saved.compareAndSet(false, true)) {
+                        persistStreamTurn(conversationId, request, responseContent, tokensUsed.get(), responseTime);
+                    }
+                    AIChatResponse response = completeStream(conversationUuid, request, responseContent,
+                            tokensUsed.get(), responseTime,
+                            firstTokenAt.get() > 0 ? firstTokenAt.get() - startTime : null, detectedActions);
+                    return event("done", response);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+
+        return Flux.concat(Mono.just(event("start", Map.of("conversationId", conversationUuid))), tokens, done)
+                .onErrorResume(e -> {
+                    log.error("AI stream error for conversation {}: {}", conversationUuid, e.getMessage());
+                    return Mono.just(event("error", Map.of(
+                            "conversationId", conversationUuid,
+                            "message", e.getMessage() != null ? e.getMessage() : "Lỗi khi gọi AI")));
+                })
+                .doOnCancel(() -> {
+                    // Client đóng tab/mất mạng: lưu phần đã nhận. Bỏ qua nếu chưa có token nào
+                    // (Gemini từ chối part rỗng trong history) hoặc "done" đã lưu rồi
+                    String partial = content.toString();
+                    if (partial.isEmpty() || !saved.compareAndSet(false, true)) {
+                        return;
+                    }
+                    long responseTime = System.currentTimeMillis() - startTime;
+                    Mono.fromRunnable(() -> persistStreamTurn(conversationId, request, partial,
+                                    tokensUsed.get(), responseTime))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .subscribe(null, e -> log.warn("Không lưu được lượt chat bị ngắt của conversation {}: {}",
+                                    conversationUuid, e.getMessage()));
+                });
+    }
+
     /**
      * Lấy lịch sử conversation của user
      */
@@ -264,6 +368,95 @@ public class AIProjectAssistantService {
 
     // ==================== Private Helper Methods ====================
 
+    // Lưu tin nhắn user + response (đầy đủ, hoặc phần đã nhận khi client ngắt) của một lượt streaming
+    private void persistStreamTurn(Long conversationId, AIChatRequest request, String responseContent,
+            int tokensUsed, long responseTime) {
+        transactionTemplate.executeWithoutResult(status -> historyService.appendTurn(conversationId,
+                AIMessage.builder()
+                        .role("user")
+                        .content(request.getMessage())
+                        .actionType(request.getActionType().name())
+                        .build(),
+                AIMessage.builder()
+                        .role("assistant")
+                        .content(responseContent)
+                        .actionType(request.getActionType().name())
+                        .tokensUsed(tokensUsed)
+                        .modelUsed("gemini-2.0-flash")
+                        .responseTimeMs(responseTime)
+                        .build()));
+        // Transaction đã commit: gom lượt cũ vào bản tóm tắt ở nền
+        historyService.summarizeOlderTurns(conversationId);
+    }
+
+    // Build payload cho event "done"
+    private AIChatResponse completeStream(String conversationUuid, AIChatRequest request, String responseContent,
+            int tokensUsed, long responseTime, Long firstTokenMs, List<AIActionDTO> detectedActions) {
+        List<AIActionDTO> allActions = new ArrayList<>(detectedActions);
+        allActions.addAll(actionParser.parseAIResponse(responseContent, request.getProjectId()));
+
+        return AIChatResponse.builder()
+                .conversationId(conversationUuid)
+                .message(responseContent)
+                .formattedMessage(responseContent)
+                .timestamp(LocalDateTime.now())
+                .responseType(ResponseType.MARKDOWN)
+                .suggestedActions(generateSuggestedActions(request.getActionType()))
+                .executableActions(allActions.isEmpty() ? null : allActions)
+                .metadata(AIMetadata.builder()
+                        .model("gemini-2.0-flash")
+                        .tokensUsed(tokensUsed)
+                        .responseTimeMs(responseTime)
+                        .firstTokenMs(firstTokenMs)
+                        .contextUsed(request.getProjectId() != null ? "project-context" : "general")
+                        .build())
+                .build();
+    }
+
+    private HistoryWindow loadHistoryWindow(AIConversation conversation, String systemPrompt, String userMessage) {
+        return historyService.loadWindow(conversation,
+                AIConversationHistoryService.estimateTokens(systemPrompt)
+                        + AIConversationHistoryService.estimateTokens(userMessage));
+    }
+
+    private String withHistorySummary(String systemPrompt, HistoryWindow window) {
+        if (window.summary() == null || window.summary().isBlank()) {
+            return systemPrompt;
+        }
+        return systemPrompt + "\n\n## TÓM TẮT CÁC LƯỢT TRAO ĐỔI TRƯỚC:\n" + window.summary();
+    }
+
+    // Tóm tắt chạy sau commit để đọc được hai tin nhắn vừa insert
+    private void summarizeAfterCommit(Long conversationId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    historyService.summarizeOlderTurns(conversationId);
+                }
+            });
+        } else {
+            historyService.summarizeOlderTurns(conversationId);
+        }
+    }
+
+    // Tốc độ sinh token, tính từ token đầu tiên tới khi stream kết thúc
+    private void recordThroughput(int outputTokens, long firstTokenAt, long startTime) {
+        if (outputTokens <= 0) {
+            return;
+        }
+        long from = firstTokenAt > 0 ? firstTokenAt : startTime;
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - from);
+        DistributionSummary.builder("ai.stream.tokens.per.second")
+                .description("Số token AI sinh ra mỗi giây ở chế độ streaming")
+                .register(meterRegistry)
+                .record(outputTokens * 1000.0 / elapsedMs);
+    }
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.<Object>builder(data).event(name).build();
+    }
+
     private AIConversation getOrCreateConversation(AIChatRequest request, User user) {
         if (request.getConversationId() != null && !request.getConversationId().isEmpty()) {
             return conversationRepository.findByConversationUuid(request.getConversationId())
@@ -292,8 +485,7 @@ public class AIProjectAssistantService {
         // Add project context if available
         if (projectId != null) {
             try {
-                ProjectContextDTO context = projectContextService.getProjectContext(projectId);
-                String contextSummary = projectContextService.buildContextSummary(context);
+                String contextSummary = projectContextService.getContextSummary(projectId);
                 prompt.append("\n\n=== CONTEXT DỰ ÁN HIỆN TẠI ===\n");
                 prompt.append(contextSummary);
             } catch (Exception e) {
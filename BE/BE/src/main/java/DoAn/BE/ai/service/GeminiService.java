@@ -7,6 +7,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
@@ -14,6 +17,7 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 import DoAn.BE.ai.config.GeminiConfig;
 import DoAn.BE.ai.entity.AIMessage;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 
 /**
  * Service để gọi Google Gemini API
@@ -22,6 +26,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class GeminiService {
     
+    private static final ParameterizedTypeReference<ServerSentEvent<Map<String, Object>>> STREAM_EVENT_TYPE =
+            new ParameterizedTypeReference<>() {};
+    
     private final WebClient webClient;
     private final GeminiConfig config;
     
@@ -60,14 +67,44 @@ public class GeminiService {
             
         } catch (WebClientResponseException e) {
             log.error("Gemini API error: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
-            handleApiError(e);
-            throw new RuntimeException("Lỗi khi gọi AI: " + e.getMessage(), e);
+            throw toApiException(e);
         } catch (Exception e) {
             log.error("Error calling Gemini API: {} - {}", e.getMessage(), e.getClass().getName());
             throw new RuntimeException("Lỗi khi gọi AI: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * Gửi chat request dạng streaming (streamGenerateContent, SSE).
+     * Không block thread gọi: trả về Flux các đoạn text theo thứ tự model sinh ra,
+     * đoạn cuối mang usage metadata (số token). gemini.api.timeout là thời gian chờ tối đa giữa hai đoạn.
+     */
+    public Flux<GeminiChunk> streamChat(String systemPrompt, List<AIMessage> conversationHistory, String userMessage) {
+        if (!isAvailable()) {
+            return Flux.error(new RuntimeException("AI service chưa được cấu hình. Vui lòng thiết lập GEMINI_API_KEY."));
+        }
+        
+        // Build body ngay (history đang được đọc trong transaction của caller)
+        Map<String, Object> requestBody = buildRequestBody(systemPrompt, conversationHistory, userMessage);
+        
+        return webClient.post()
+                .uri(config.buildStreamApiUrl())
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToFlux(STREAM_EVENT_TYPE)
+                .timeout(Duration.ofSeconds(config.getTimeout()))
+                .mapNotNull(event -> parseChunk(event.data()))
+                .onErrorMap(e -> {
+                    if (e instanceof WebClientResponseException apiError) {
+                        log.error("Gemini API error: {} - {}", apiError.getStatusCode(), apiError.getResponseBodyAsString());
+                        return toApiException(apiError);
+                    }
+                    log.error("Error streaming from Gemini API: {} - {}", e.getMessage(), e.getClass().getName());
+                    return new RuntimeException("Lỗi khi gọi AI: " + e.getMessage(), e);
+                });
+    }
+    
     /**
      * Chat đơn giản không có conversation history
      */
@@ -197,21 +234,67 @@ public class GeminiService {
     }
     
     /**
-     * Handle API errors
+     * Parse một event của stream: text của các parts (có thể rỗng) và số token nếu có usage metadata
+     */
+    @SuppressWarnings("unchecked")
+    private GeminiChunk parseChunk(Map<String, Object> event) {
+        if (event == null) {
+            return null;
+        }
+        
+        StringBuilder text = new StringBuilder();
+        try {
+            List<Map<String, Object>> candidates = (List<Map<String, Object>>) event.get("candidates");
+            if (candidates != null && !candidates.isEmpty()) {
+                Map<String, Object> content = (Map<String, Object>) candidates.get(0).get("content");
+                List<Map<String, Object>> parts = content != null
+                        ? (List<Map<String, Object>>) content.get("parts") : null;
+                if (parts != null) {
+                    for (Map<String, Object> part : parts) {
+                        Object partText = part.get("text");
+                        if (partText instanceof String value) {
+                            text.append(value);
+                        }
+                    }
+                }
+            }
+            
+            int tokensUsed = 0;
+            int outputTokens = 0;
+            Map<String, Object> usageMetadata = (Map<String, Object>) event.get("usageMetadata");
+            if (usageMetadata != null) {
+                if (usageMetadata.get("totalTokenCount") instanceof Number total) {
+                    tokensUsed = total.intValue();
+                }
+                if (usageMetadata.get("candidatesTokenCount") instanceof Number candidatesTokens) {
+                    outputTokens = candidatesTokens.intValue();
+                }
+            }
+            return new GeminiChunk(text.toString(), tokensUsed, outputTokens);
+            
+        } catch (Exception e) {
+            log.error("Error parsing Gemini stream chunk: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Chuyển lỗi HTTP của Gemini API thành thông báo cho user
      */
-    private void handleApiError(WebClientResponseException e) {
+    private RuntimeException toApiException(WebClientResponseException e) {
         String errorBody = e.getResponseBodyAsString();
         int statusCode = e.getStatusCode().value();
         
         if (statusCode == 400) {
             if (errorBody.contains("API_KEY_INVALID")) {
-                throw new RuntimeException("API key không hợp lệ. Vui lòng kiểm tra GEMINI_API_KEY.", e);
+                return new RuntimeException("API key không hợp lệ. Vui lòng kiểm tra GEMINI_API_KEY.", e);
             }
         } else if (statusCode == 429) {
-            throw new RuntimeException("Đã vượt quá giới hạn API. Vui lòng thử lại sau.", e);
+            return new RuntimeException("Đã vượt quá giới hạn API. Vui lòng thử lại sau.", e);
         } else if (statusCode == 403) {
-            throw new RuntimeException("Không có quyền truy cập API. Vui lòng kiểm tra API key.", e);
+            return new RuntimeException("Không có quyền truy cập API. Vui lòng kiểm tra API key.", e);
         }
+        return new RuntimeException("Lỗi khi gọi AI: " + e.getMessage(), e);
     }
     
     /**
@@ -234,4 +317,10 @@ public class GeminiService {
             return tokensUsed;
         }
     }
+    
+    /**
+     * Một đoạn của response streaming. tokensUsed/outputTokens > 0 ở đoạn có usage metadata (thường là đoạn cuối)
+     */
+    public record GeminiChunk(String text, int tokensUsed, int outputTokens) {
+    }
 }
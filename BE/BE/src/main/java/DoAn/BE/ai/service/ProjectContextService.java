@@ -2,14 +2,18 @@ package DoAn.BE.ai.service;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import DoAn.BE.ai.dto.ProjectContextDTO;
 import DoAn.BE.ai.dto.ProjectContextDTO.*;
+import DoAn.BE.common.cache.InvalidatingCache;
 import DoAn.BE.project.entity.Issue;
 import DoAn.BE.project.entity.Project;
 import DoAn.BE.project.entity.ProjectMember;
@@ -18,14 +22,16 @@ import DoAn.BE.project.repository.IssueRepository;
 import DoAn.BE.project.repository.ProjectMemberRepository;
 import DoAn.BE.project.repository.ProjectRepository;
 import DoAn.BE.project.repository.SprintRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Service để thu thập context của project cho AI
+ * Service để thu thập context của project cho AI.
+ * Summary cho prompt được tính sẵn và cache theo project; IssueService, SprintService, ProjectService
+ * (và AIActionExecutor) gọi invalidate(projectId) khi dữ liệu thay đổi. Entry còn hết hạn sau ttl-seconds
+ * vì một phần context phụ thuộc ngày hiện tại (quá hạn, số ngày còn lại của sprint).
+ * Độ dài summary bị giới hạn bởi ai.context.max-tokens: project lớn được tóm lược thay vì liệt kê hết.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 @Transactional(readOnly = true)
 public class ProjectContextService {
@@ -35,6 +41,39 @@ public class ProjectContextService {
     private final SprintRepository sprintRepository;
     private final ProjectMemberRepository projectMemberRepository;
     
+    // Ước lượng thô cho tiếng Việt có dấu
+    private static final int CHARS_PER_TOKEN = 3;
+    
+    private final InvalidatingCache<Long, String> summaries;
+    
+    @Value("${ai.context.max-tokens:1500}")
+    private int maxTokens;
+    
+    public ProjectContextService(ProjectRepository projectRepository, IssueRepository issueRepository,
+            SprintRepository sprintRepository, ProjectMemberRepository projectMemberRepository,
+            @Value("${ai.context.ttl-seconds:600}") long ttlSeconds,
+            @Value("${ai.context.max-projects:1000}") int maxProjects) {
+        this.projectRepository = projectRepository;
+        this.issueRepository = issueRepository;
+        this.sprintRepository = sprintRepository;
+        this.projectMemberRepository = projectMemberRepository;
+        this.summaries = new InvalidatingCache<>(ttlSeconds * 1000, maxProjects);
+    }
+    
+    /**
+     * Summary context của project cho AI prompt (lấy từ cache, tính lại khi thiếu/hết hạn)
+     */
+    public String getContextSummary(Long projectId) {
+        return summaries.get(projectId, id -> buildContextSummary(getProjectContext(id)));
+    }
+    
+    /**
+     * Bỏ summary của project khi issue/sprint/thành viên thay đổi (xem InvalidatingCache.invalidate)
+     */
+    public void invalidate(Long projectId) {
+        summaries.invalidate(projectId);
+    }
+    
     /**
      * Lấy full context của project để cung cấp cho AI
      */
@@ -96,13 +135,20 @@ public class ProjectContextService {
      * Tạo summary text của project context cho AI prompt
      */
     public String buildContextSummary(ProjectContextDTO context) {
+        int maxChars = maxTokens * CHARS_PER_TOKEN;
         StringBuilder sb = new StringBuilder();
         
         sb.append("=== THÔNG TIN DỰ ÁN ===\n");
         sb.append(String.format("Tên: %s (%s)\n", context.getProjectName(), context.getProjectKey()));
         sb.append(String.format("Trạng thái: %s\n", context.getStatus()));
         if (context.getDescription() != null) {
-            sb.append(String.format("Mô tả: %s\n", context.getDescription()));
+            // Mô tả dài không được chiếm quá 1/4 budget
+            String description = context.getDescription();
+            int maxDescription = maxChars / 4;
+            if (description.length() > maxDescription) {
+                description = description.substring(0, maxDescription) + "...";
+            }
+            sb.append(String.format("Mô tả: %s\n", description));
         }
         if (context.getStartDate() != null) {
             sb.append(String.format("Ngày bắt đầu: %s\n", context.getStartDate()));
@@ -141,30 +187,62 @@ public class ProjectContextService {
             }
         }
         
-        // Team members
+        // Phần còn lại của budget chia đôi cho danh sách thành viên và công việc quá hạn
+        int listBudget = Math.max(0, maxChars - sb.length()) / 2;
+        
+        // Team members (nhiều việc nhất trước)
         if (context.getMembers() != null && !context.getMembers().isEmpty()) {
-            sb.append("\n=== THÀNH VIÊN ===\n");
-            for (MemberInfo member : context.getMembers()) {
-                sb.append(String.format("- %s (%s): %d việc được giao, %d hoàn thành\n",
-                        member.getUsername(), member.getRole(),
-                        member.getAssignedIssues(), member.getCompletedIssues()));
-            }
+            List<String> lines = context.getMembers().stream()
+                    .sorted(Comparator.comparingInt(MemberInfo::getAssignedIssues).reversed())
+                    .map(member -> String.format("- %s (%s): %d việc được giao, %d hoàn thành\n",
+                            member.getUsername(), member.getRole(),
+                            member.getAssignedIssues(), member.getCompletedIssues()))
+                    .toList();
+            appendLimited(sb, "\n=== THÀNH VIÊN ===\n", lines, listBudget, "- ... và %d thành viên khác\n");
         }
         
-        // Overdue issues
+        // Overdue issues (quá hạn lâu nhất trước)
         if (context.getOverdueIssues() != null && !context.getOverdueIssues().isEmpty()) {
-            sb.append("\n=== CÔNG VIỆC QUÁ HẠN ===\n");
-            for (IssueInfo issue : context.getOverdueIssues()) {
-                sb.append(String.format("- [%s] %s (Hạn: %s, Người thực hiện: %s)\n",
-                        issue.getIssueKey(), issue.getTitle(),
-                        issue.getDueDate(), 
-                        issue.getAssigneeName() != null ? issue.getAssigneeName() : "Chưa giao"));
-            }
+            List<String> lines = context.getOverdueIssues().stream()
+                    .sorted(Comparator.comparing(IssueInfo::getDueDate,
+                            Comparator.nullsLast(Comparator.naturalOrder())))
+                    .map(issue -> String.format("- [%s] %s (Hạn: %s, Người thực hiện: %s)\n",
+                            issue.getIssueKey(), issue.getTitle(),
+                            issue.getDueDate(), 
+                            issue.getAssigneeName() != null ? issue.getAssigneeName() : "Chưa giao"))
+                    .toList();
+            appendLimited(sb, "\n=== CÔNG VIỆC QUÁ HẠN ===\n", lines,
+                    Math.max(0, maxChars - sb.length()), "- ... và %d công việc quá hạn khác\n");
         }
         
         return sb.toString();
     }
     
+    /**
+     * Thêm header + các dòng cho tới khi hết budget, phần bị cắt được gom thành một dòng đếm
+     */
+    private void appendLimited(StringBuilder sb, String header, List<String> lines, int budgetChars,
+            String moreFormat) {
+        // Chừa chỗ cho dòng "... và N khác"
+        int remaining = budgetChars - header.length() - moreFormat.length() - 8;
+        if (remaining < 0) {
+            return;
+        }
+        List<String> included = new ArrayList<>();
+        for (String line : lines) {
+            if (line.length() > remaining) {
+                break;
+            }
+            included.add(line);
+            remaining -= line.length();
+        }
+        sb.append(header);
+        included.forEach(sb::append);
+        if (included.size() < lines.size()) {
+            sb.append(String.format(moreFormat, lines.size() - included.size()));
+        }
+    }
+    
     private ProjectStats buildProjectStats(List<Issue> issues, List<ProjectMember> members, List<Sprint> sprints) {
         int total = issues.size();
         int completed = (int) issues.stream().filter(Issue::isDone).count();
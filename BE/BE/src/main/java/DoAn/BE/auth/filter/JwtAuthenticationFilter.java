@@ -11,10 +11,12 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import DoAn.BE.auth.service.AuthPrincipalCache;
 import DoAn.BE.auth.service.JwtService;
 import DoAn.BE.auth.service.SessionService;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.user.service.UserService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -27,11 +29,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final UserService userService;
     private final SessionService sessionService;
+    private final AuthPrincipalCache principalCache;
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserService userService, SessionService sessionService) {
+    public JwtAuthenticationFilter(JwtService jwtService, UserService userService, SessionService sessionService,
+            AuthPrincipalCache principalCache) {
         this.jwtService = jwtService;
         this.userService = userService;
         this.sessionService = sessionService;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -43,7 +48,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
-        final String username;
 
         // Kiểm tra Authorization header
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
@@ -55,17 +59,26 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         jwt = authHeader.substring(7);
 
         try {
-            // Extract username từ JWT
-            username = jwtService.extractUsername(jwt);
-
-            // Kiểm tra username và SecurityContext
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-
-                // Tìm user trong database
-                User user = userService.findByUsername(username)
-                        .orElse(null);
+            // Kiểm tra SecurityContext
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+
+                // Lấy principal từ cache, nếu miss thì parse token một lần và tìm user trong database
+                User user;
+                AuthPrincipalCache.CachedPrincipal cached = principalCache.get(jwt);
+                if (cached != null) {
+                    user = cached.getUser();
+                } else {
+                    // extractAllClaims ném ExpiredJwtException nếu token hết hạn
+                    Claims claims = jwtService.extractAllClaims(jwt);
+                    String username = claims.getSubject();
+                    long cacheGeneration = principalCache.currentGeneration();
+                    user = username != null ? userService.findByUsername(username).orElse(null) : null;
+                    if (user != null && user.getIsActive()) {
+                        principalCache.put(jwt, claims, user, cacheGeneration);
+                    }
+                }
 
-                if (user != null && jwtService.validateToken(jwt)) {
+                if (user != null) {
 
                     // Kiểm tra user có active không
                     if (!user.getIsActive()) {
@@ -110,10 +123,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     protected boolean shouldNotFilter(@NonNull HttpServletRequest request) throws ServletException {
         String path = request.getRequestURI();
 
-        // Không filter các endpoint public
+        // Không filter các endpoint public. Trong actuator chỉ health là public;
+        // metrics/info cần principal ADMIN nên vẫn phải qua filter
         return path.startsWith("/api/auth/") ||
                path.startsWith("/api/public/") ||
                path.equals("/error") ||
-               path.startsWith("/actuator/");
+               path.equals("/actuator/health") ||
+               path.startsWith("/actuator/health/");
     }
 }
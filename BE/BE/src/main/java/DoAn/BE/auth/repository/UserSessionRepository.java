@@ -22,6 +22,9 @@ public interface UserSessionRepository extends JpaRepository<UserSession, Long>
     @Query("SELECT us FROM UserSession us WHERE us.user = :user AND us.isActive = true AND us.lastActivity > :cutoffTime")
     List<UserSession> findActiveSessionsByUser(@Param("user") User user, @Param("cutoffTime") LocalDateTime cutoffTime);
     
+    @Query("SELECT us FROM UserSession us WHERE us.isActive = true AND (us.lastActivity IS NULL OR us.lastActivity < :cutoffTime)")
+    List<UserSession> findActiveSessionsInactiveSince(@Param("cutoffTime") LocalDateTime cutoffTime);
+    
     @Modifying
     @Query("UPDATE UserSession us SET us.isActive = false WHERE us.user = :user")
     void deactivateAllSessionsByUser(@Param("user") User user);
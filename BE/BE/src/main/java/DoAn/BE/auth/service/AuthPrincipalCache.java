@@ -0,0 +1,216 @@
+package DoAn.BE.auth.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import DoAn.BE.user.entity.User;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+// Cache principal đã xác thực (claims + User snapshot) theo hash của JWT, có TTL và giới hạn kích thước
+@Component
+@Slf4j
+public class AuthPrincipalCache {
+
+    private final Map<String, CachedPrincipal> entries = new ConcurrentHashMap<>();
+    // Tăng mỗi lần evict: user load trước đó (có thể là dữ liệu cũ) không được ghi vào cache
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    @Value("${auth.principal-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${auth.principal-cache.max-size:10000}")
+    private int maxSize;
+
+    public AuthPrincipalCache(MeterRegistry meterRegistry) {
+        this.hitCounter = Counter.builder("auth.principal.cache.requests")
+                .tag("result", "hit")
+                .description("Số request lấy principal từ cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("auth.principal.cache.requests")
+                .tag("result", "miss")
+                .description("Số request phải parse JWT và query user")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("auth.principal.cache.evictions")
+                .description("Số entry bị xóa khỏi cache")
+                .register(meterRegistry);
+        Gauge.builder("auth.principal.cache.size", entries, Map::size)
+                .description("Số principal đang được cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lấy principal đã cache theo token, trả về null nếu chưa có hoặc đã hết hạn.
+     * User trả về là bản sao mới để request không sửa được snapshot dùng chung.
+     */
+    public CachedPrincipal get(String token) {
+        String key = hash(token);
+        CachedPrincipal cached = entries.get(key);
+        if (cached == null) {
+            missCounter.increment();
+            return null;
+        }
+        if (cached.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, cached);
+            evictionCounter.increment();
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return cached;
+    }
+
+    /**
+     * Generation hiện tại, lấy trước khi load user để truyền vào put
+     */
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Lưu principal sau khi parse token và load user thành công.
+     * TTL không vượt quá thời điểm hết hạn của chính token.
+     * Bỏ qua nếu đã có evict kể từ loadGeneration (user vừa load có thể là bản trước khi commit).
+     */
+    public void put(String token, Claims claims, User user, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = now + ttlSeconds * 1000;
+        if (claims.getExpiration() != null) {
+            expiresAt = Math.min(expiresAt, claims.getExpiration().getTime());
+        }
+        if (expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            shrink(now);
+        }
+        entries.put(hash(token), new CachedPrincipal(claims, snapshot(user), expiresAt));
+    }
+
+    /**
+     * Xóa tất cả entry của user (gọi khi user bị khóa, cập nhật, hoặc đăng xuất tất cả thiết bị).
+     * Nếu đang trong transaction thì xóa lại sau khi transaction kết thúc: request đến trước commit
+     * có thể đã đọc lại row cũ (còn active, role cũ) và cache nó.
+     */
+    public void evictUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        evictionCounter.increment(entries.size());
+        entries.clear();
+    }
+
+    private void evict(Long userId) {
+        generation.incrementAndGet();
+        int before = entries.size();
+        entries.values().removeIf(p -> userId.equals(p.user.getUserId()));
+        int removed = before - entries.size();
+        if (removed > 0) {
+            evictionCounter.increment(removed);
+            log.debug("Evicted {} cached principal(s) for user {}", removed, userId);
+        }
+    }
+
+    // Dọn entry hết hạn; nếu vẫn đầy thì bỏ bớt ~10% entry bất kỳ
+    private void shrink(long now) {
+        int before = entries.size();
+        entries.values().removeIf(p -> p.isExpired(now));
+        if (entries.size() >= maxSize) {
+            int toRemove = Math.max(1, maxSize / 10);
+            Iterator<String> it = entries.keySet().iterator();
+            while (it.hasNext() && toRemove-- > 0) {
+                it.next();
+                it.remove();
+            }
+        }
+        evictionCounter.increment(Math.max(0, before - entries.size()));
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 không khả dụng", e);
+        }
+    }
+
+    // Tạo bản sao detached của User (đủ field để merge an toàn nếu principal bị save lại)
+    private static User snapshot(User source) {
+        User copy = new User();
+        copy.setUserId(source.getUserId());
+        copy.setUsername(source.getUsername());
+        copy.setPasswordHash(source.getPasswordHash());
+        copy.setEmail(source.getEmail());
+        copy.setPhoneNumber(source.getPhoneNumber());
+        copy.setAvatarUrl(source.getAvatarUrl());
+        copy.setRole(source.getRole());
+        copy.setIsActive(source.getIsActive());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        copy.setLastLogin(source.getLastLogin());
+        copy.setIsOnline(source.getIsOnline());
+        copy.setLastSeen(source.getLastSeen());
+        copy.setFcmToken(source.getFcmToken());
+        return copy;
+    }
+
+    // Entry trong cache: claims đã parse + snapshot user
+    public static final class CachedPrincipal {
+        private final Claims claims;
+        private final User user;
+        private final long expiresAt;
+
+        private CachedPrincipal(Claims claims, User user, long expiresAt) {
+            this.claims = claims;
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+
+        public Claims getClaims() {
+            return claims;
+        }
+
+        // Trả về bản sao để mỗi request có principal riêng
+        public User getUser() {
+            return snapshot(user);
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -30,13 +30,15 @@ public class AuthService {
     private final RefreshTokenRepository refreshTokenRepository;
     private final LoginAttemptRepository loginAttemptRepository;
     private final AuthNotificationService authNotificationService;
+    private final AuthPrincipalCache principalCache;
 
     private static final int MAX_LOGIN_ATTEMPTS = 5; // Khóa sau 5 lần thất bại
     private static final int LOCKOUT_DURATION_MINUTES = 15; // Khóa trong 15 phút
 
     public AuthService(UserService userService, JwtService jwtService, SessionService sessionService,
             PasswordEncoder passwordEncoder, RefreshTokenRepository refreshTokenRepository,
-            LoginAttemptRepository loginAttemptRepository, AuthNotificationService authNotificationService) {
+            LoginAttemptRepository loginAttemptRepository, AuthNotificationService authNotificationService,
+            AuthPrincipalCache principalCache) {
         this.userService = userService;
         this.jwtService = jwtService;
         this.sessionService = sessionService;
@@ -44,6 +46,7 @@ public class AuthService {
         this.refreshTokenRepository = refreshTokenRepository;
         this.loginAttemptRepository = loginAttemptRepository;
         this.authNotificationService = authNotificationService;
+        this.principalCache = principalCache;
     }
 
     // Chức năng đăng ký đã bị vô hiệu hóa - Chỉ HR Manager có quyền tạo tài khoản
@@ -187,6 +190,9 @@ public class AuthService {
         user.setIsOnline(false);
         userService.save(user);
 
+        // Xóa principal đã cache để các access token cũ phải xác thực lại
+        principalCache.evictUser(userId);
+
         // 🔔 Gửi thông báo đăng xuất tất cả thiết bị
         try {
             authNotificationService.createSecurityAlertNotification(
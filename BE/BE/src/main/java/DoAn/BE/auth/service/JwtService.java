@@ -49,7 +49,8 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
-    private Claims extractAllClaims(String token) {
+    // Parse và verify token một lần, trả về toàn bộ claims (ném exception nếu hết hạn/sai chữ ký)
+    public Claims extractAllClaims(String token) {
         return Jwts.parser()
                 .verifyWith(getSigningKey())
                 .build()
@@ -0,0 +1,105 @@
+package DoAn.BE.auth.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Buffer ghi sau (write-behind) cho last_activity của session.
+ * Heartbeat của mỗi request chỉ ghi vào memory, gộp theo sessionId,
+ * và được flush thành một batch UPDATE định kỳ.
+ */
+@Component
+@Slf4j
+public class SessionActivityBuffer {
+
+    private static final String UPDATE_SQL = "UPDATE user_sessions SET last_activity = ? "
+            + "WHERE session_id = ? AND is_active = ? AND (last_activity IS NULL OR last_activity < ?)";
+
+    private final Map<String, LocalDateTime> pending = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${session.activity-buffer.max-size:50000}")
+    private int maxPending;
+
+    public SessionActivityBuffer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Ghi nhận hoạt động của session (không chạm DB)
+     */
+    public void record(String sessionId) {
+        pending.merge(sessionId, LocalDateTime.now(), (oldTime, newTime) -> newTime.isAfter(oldTime) ? newTime : oldTime);
+        if (pending.size() > maxPending) {
+            flush();
+        }
+    }
+
+    /**
+     * Thời điểm hoạt động gần nhất chưa được flush (null nếu không có)
+     */
+    public LocalDateTime getPendingActivity(String sessionId) {
+        return pending.get(sessionId);
+    }
+
+    /**
+     * Bỏ hoạt động đang chờ của session (khi session bị vô hiệu hóa)
+     */
+    public void discard(String sessionId) {
+        pending.remove(sessionId);
+    }
+
+    /**
+     * Flush tất cả hoạt động đang chờ thành một batch UPDATE
+     */
+    @Scheduled(fixedDelayString = "${session.activity-buffer.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<String, LocalDateTime>> drained = new ArrayList<>(pending.size());
+        for (Map.Entry<String, LocalDateTime> entry : pending.entrySet()) {
+            // Chỉ xóa nếu chưa có heartbeat mới hơn trong lúc flush
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                drained.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, drained, drained.size(), (ps, entry) -> {
+                Timestamp lastActivity = Timestamp.valueOf(entry.getValue());
+                ps.setTimestamp(1, lastActivity);
+                ps.setString(2, entry.getKey());
+                ps.setBoolean(3, true);
+                ps.setTimestamp(4, lastActivity);
+            });
+            log.debug("Flushed last_activity cho {} session", drained.size());
+        } catch (RuntimeException e) {
+            // Đưa lại vào buffer để lần flush sau thử lại
+            drained.forEach(entry -> pending.merge(entry.getKey(), entry.getValue(),
+                    (current, failed) -> current.isAfter(failed) ? current : failed));
+            log.error("Không thể flush session activity: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
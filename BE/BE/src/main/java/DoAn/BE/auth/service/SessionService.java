@@ -5,6 +5,7 @@ import DoAn.BE.auth.repository.UserSessionRepository;
 import DoAn.BE.user.entity.User;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
@@ -18,6 +19,7 @@ import java.util.UUID;
 public class SessionService {
 
     private final UserSessionRepository userSessionRepository;
+    private final SessionActivityBuffer activityBuffer;
 
     @Value("${session.timeout:30}") // 30 phút
     private int sessionTimeoutMinutes;
@@ -25,8 +27,9 @@ public class SessionService {
     @Value("${session.max-concurrent:5}") // Tối đa 5 phiên cùng lúc
     private int maxConcurrentSessions;
 
-    public SessionService(UserSessionRepository userSessionRepository) {
+    public SessionService(UserSessionRepository userSessionRepository, SessionActivityBuffer activityBuffer) {
         this.userSessionRepository = userSessionRepository;
+        this.activityBuffer = activityBuffer;
     }
 
     /**
@@ -38,8 +41,8 @@ public class SessionService {
         
         if (activeSessions.size() >= maxConcurrentSessions) {
             UserSession oldestSession = activeSessions.stream()
-                    .filter(s -> s.getLastActivity() != null)
-                    .min((s1, s2) -> s1.getLastActivity().compareTo(s2.getLastActivity()))
+                    .filter(s -> getEffectiveLastActivity(s) != null)
+                    .min((s1, s2) -> getEffectiveLastActivity(s1).compareTo(getEffectiveLastActivity(s2)))
                     .orElse(null);
             if (oldestSession != null && oldestSession.getSessionId() != null) {
                 deactivateSession(oldestSession.getSessionId());
@@ -58,21 +61,18 @@ public class SessionService {
     }
 
     /**
-     * Cập nhật hoạt động của session
+     * Cập nhật hoạt động của session - chỉ ghi vào buffer, flush xuống DB theo batch
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void updateSessionActivity(String sessionId) {
-        Optional<UserSession> sessionOpt = userSessionRepository.findBySessionId(sessionId);
-        if (sessionOpt.isPresent()) {
-            UserSession session = sessionOpt.get();
-            session.updateActivity();
-            userSessionRepository.save(session);
-        }
+        activityBuffer.record(sessionId);
     }
 
     /**
      * Vô hiệu hóa session
      */
     public void deactivateSession(String sessionId) {
+        activityBuffer.discard(sessionId);
         Optional<UserSession> sessionOpt = userSessionRepository.findBySessionId(sessionId);
         if (sessionOpt.isPresent()) {
             UserSession session = sessionOpt.get();
@@ -87,6 +87,7 @@ public class SessionService {
     public void deactivateAllUserSessions(User user) {
         List<UserSession> sessions = userSessionRepository.findByUserAndIsActiveTrue(user);
         sessions.forEach(session -> {
+            activityBuffer.discard(session.getSessionId());
             session.setIsActive(false);
             userSessionRepository.save(session);
         });
@@ -102,7 +103,9 @@ public class SessionService {
         }
 
         UserSession session = sessionOpt.get();
-        return session.getIsActive() && !session.isExpired(sessionTimeoutMinutes);
+        LocalDateTime lastActivity = getEffectiveLastActivity(session);
+        return session.getIsActive() && lastActivity != null
+                && !LocalDateTime.now().isAfter(lastActivity.plusMinutes(sessionTimeoutMinutes));
     }
 
     /**
@@ -120,16 +123,20 @@ public class SessionService {
     }
 
     /**
-     * Dọn dẹp session hết hạn
+     * Dọn dẹp session hết hạn (bỏ qua session có heartbeat mới trong buffer chưa flush)
      */
     @Transactional
     public void cleanupExpiredSessions() {
-        List<UserSession> allSessions = userSessionRepository.findAll();
         LocalDateTime cutoffTime = LocalDateTime.now().minusMinutes(sessionTimeoutMinutes);
-        
-        allSessions.stream()
-                .filter(session -> session.getLastActivity() != null && session.getLastActivity().isBefore(cutoffTime))
+        List<UserSession> staleSessions = userSessionRepository.findActiveSessionsInactiveSince(cutoffTime);
+
+        staleSessions.stream()
+                .filter(session -> {
+                    LocalDateTime pending = activityBuffer.getPendingActivity(session.getSessionId());
+                    return pending == null || pending.isBefore(cutoffTime);
+                })
                 .forEach(session -> {
+                    activityBuffer.discard(session.getSessionId());
                     session.setIsActive(false);
                     userSessionRepository.save(session);
                 });
@@ -154,4 +161,14 @@ public class SessionService {
         UserSession session = sessionOpt.get();
         return !currentIp.equals(session.getIpAddress());
     }
+
+    // Last activity thực tế = max(giá trị trong DB, heartbeat đang chờ flush)
+    private LocalDateTime getEffectiveLastActivity(UserSession session) {
+        LocalDateTime pending = activityBuffer.getPendingActivity(session.getSessionId());
+        LocalDateTime persisted = session.getLastActivity();
+        if (pending == null) {
+            return persisted;
+        }
+        return persisted == null || pending.isAfter(persisted) ? pending : persisted;
+    }
 }
@@ -2,14 +2,17 @@ package DoAn.BE.chat.controller;
 
 import DoAn.BE.chat.dto.ChatRoomDTO;
 import DoAn.BE.chat.dto.CreateChatRoomRequest;
+import DoAn.BE.chat.dto.InboxRoomDTO;
 import DoAn.BE.chat.entity.ChatRoomMember;
 import DoAn.BE.chat.service.ChatRoomService;
+import DoAn.BE.chat.service.InboxService;
 import DoAn.BE.common.exception.EntityNotFoundException;
 import DoAn.BE.common.exception.UnauthorizedException;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.user.repository.UserRepository;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -29,6 +32,9 @@ public class ChatRoomController {
     @Autowired
     private ChatRoomService chatRoomService;
 
+    @Autowired
+    private InboxService inboxService;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -67,6 +73,15 @@ public class ChatRoomController {
         return ResponseEntity.ok(chatRooms);
     }
 
+    // Inbox: danh sách phòng có phân trang kèm tin nhắn cuối và số chưa đọc, sắp theo hoạt động gần nhất
+    @GetMapping("/inbox")
+    public ResponseEntity<Page<InboxRoomDTO>> getInbox(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "30") int size) {
+        User currentUser = getCurrentUser();
+        return ResponseEntity.ok(inboxService.getInbox(currentUser.getUserId(), page, size));
+    }
+
     // Lấy thông tin phòng chat theo ID
     @GetMapping("/{roomId}")
     public ResponseEntity<ChatRoomDTO> getChatRoom(@PathVariable Long roomId) {
@@ -1,5 +1,7 @@
 package DoAn.BE.chat.controller;
 
+import DoAn.BE.chat.service.UserPresenceService;
+import DoAn.BE.common.exception.BadRequestException;
 import DoAn.BE.common.exception.EntityNotFoundException;
 import DoAn.BE.common.exception.UnauthorizedException;
 import DoAn.BE.user.entity.User;
@@ -12,6 +14,8 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -22,6 +26,9 @@ public class ChatUtilityController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPresenceService userPresenceService;
+
     /**
      * Lấy thông tin user hiện tại từ Security Context
      */
@@ -48,11 +55,31 @@ public class ChatUtilityController {
         userInfo.put("username", currentUser.getUsername());
         userInfo.put("email", currentUser.getEmail());
         userInfo.put("avatarUrl", currentUser.getAvatarUrl());
-        userInfo.put("isOnline", currentUser.getIsOnline());
+        userInfo.put("isOnline", userPresenceService.isUserOnline(currentUser.getUserId()));
 
         return ResponseEntity.ok(userInfo);
     }
 
+    /**
+     * Trạng thái online của danh sách user (lấy trạng thái ban đầu trước khi subscribe /topic/presence.{userId})
+     */
+    @GetMapping("/presence")
+    public ResponseEntity<Map<Long, Map<String, Object>>> getPresence(@RequestParam List<Long> userIds) {
+        getCurrentUser();
+        if (userIds.size() > 500) {
+            throw new BadRequestException("Tối đa 500 user mỗi lần");
+        }
+
+        Map<Long, Map<String, Object>> result = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            Map<String, Object> status = new HashMap<>();
+            status.put("isOnline", userPresenceService.isUserOnline(userId));
+            status.put("lastSeen", userPresenceService.getLastSeen(userId));
+            result.put(userId, status);
+        }
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Health check endpoint
      */
@@ -1,19 +1,19 @@
 package DoAn.BE.chat.controller;
 
 import DoAn.BE.chat.dto.MessDTO;
+import DoAn.BE.chat.dto.MessageCursorPageDTO;
 import DoAn.BE.chat.dto.SendMessageRequest;
 import DoAn.BE.chat.entity.Message;
 import DoAn.BE.chat.service.MessageService;
 import DoAn.BE.common.exception.EntityNotFoundException;
+import DoAn.BE.common.exception.ForbiddenException;
 import DoAn.BE.common.exception.UnauthorizedException;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.user.repository.UserRepository;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -86,13 +86,30 @@ public class MessageController {
         if (currentUser.getUserId() == null) {
             throw new IllegalStateException("User ID không hợp lệ");
         }
-        Pageable pageable = PageRequest.of(page, size);
-        List<MessDTO> messages = messageService.getMessagesByRoomId(roomId, currentUser.getUserId(), page, size);
-        // Convert to Page manually for now
-        Page<MessDTO> pageMessages = new PageImpl<>(messages, pageable, messages.size());
+        Page<MessDTO> pageMessages = messageService.getMessagesByRoomId(roomId, currentUser.getUserId(), page, size);
         return ResponseEntity.ok(pageMessages);
     }
 
+    // Lấy tin nhắn theo cursor (keyset pagination) - không truyền cursor sẽ trả về trang mới nhất
+    @GetMapping("/rooms/{roomId}/messages/cursor")
+    public ResponseEntity<MessageCursorPageDTO> getMessagesByCursor(
+            @PathVariable Long roomId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime sentAt,
+            @RequestParam(required = false) Long messageId,
+            @RequestParam(defaultValue = "BEFORE") MessageCursorPageDTO.Direction direction,
+            @RequestParam(defaultValue = "50") int size) {
+        if (roomId == null) {
+            throw new IllegalArgumentException("Room ID không được null");
+        }
+        User currentUser = getCurrentUser();
+        if (currentUser.getUserId() == null) {
+            throw new IllegalStateException("User ID không hợp lệ");
+        }
+        MessageCursorPageDTO slice = messageService.getMessagesByCursor(roomId, currentUser.getUserId(),
+                sentAt, messageId, direction, size);
+        return ResponseEntity.ok(slice);
+    }
+
     // Đánh dấu tin nhắn đã xem
     @PutMapping("/messages/{messageId}/seen")
     public ResponseEntity<Map<String, String>> markMessageAsSeen(@PathVariable Long messageId) {
@@ -144,42 +161,68 @@ public class MessageController {
         return ResponseEntity.ok(response);
     }
 
-    // Tìm kiếm tin nhắn trong phòng chat
+    // Tìm kiếm tin nhắn trong phòng chat (full-text, có highlight)
+    // Lọc thêm theo người gửi và khoảng thời gian (ISO date-time), các tham số đều tùy chọn trừ roomId
     @GetMapping("/rooms/{roomId}/search")
-    public ResponseEntity<List<MessDTO>> searchMessages(
+    public ResponseEntity<Page<MessDTO>> searchMessages(
             @PathVariable Long roomId,
-            @RequestParam String keyword,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long senderId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
         User currentUser = getCurrentUser();
-        Pageable pageable = PageRequest.of(page, size);
-        List<MessDTO> messages = messageService.searchMessages(roomId, keyword, currentUser.getUserId(), pageable);
+        Page<MessDTO> messages = messageService.searchMessages(roomId, currentUser.getUserId(),
+                keyword, senderId, null, startDate, endDate, page, size);
         return ResponseEntity.ok(messages);
     }
 
-    // Tìm kiếm tin nhắn theo người gửi
+    // Tìm kiếm tin nhắn theo người gửi (username chứa senderKeyword)
     @GetMapping("/rooms/{roomId}/search/sender")
-    public ResponseEntity<List<MessDTO>> searchMessagesBySender(
+    public ResponseEntity<Page<MessDTO>> searchMessagesBySender(
             @PathVariable Long roomId,
-            @RequestParam String senderKeyword) {
+            @RequestParam String senderKeyword,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
         User currentUser = getCurrentUser();
-        List<MessDTO> messages = messageService.searchMessagesBySender(roomId, senderKeyword, currentUser.getUserId());
+        Page<MessDTO> messages = messageService.searchMessages(roomId, currentUser.getUserId(),
+                null, null, senderKeyword, null, null, page, size);
         return ResponseEntity.ok(messages);
     }
 
     // Tìm kiếm tin nhắn theo khoảng thời gian
     @GetMapping("/rooms/{roomId}/search/date")
-    public ResponseEntity<List<MessDTO>> searchMessagesByDateRange(
+    public ResponseEntity<Page<MessDTO>> searchMessagesByDateRange(
             @PathVariable Long roomId,
             @RequestParam String startDate,
-            @RequestParam String endDate) {
+            @RequestParam String endDate,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
         User currentUser = getCurrentUser();
         LocalDateTime start = LocalDateTime.parse(startDate);
         LocalDateTime end = LocalDateTime.parse(endDate);
-        List<MessDTO> messages = messageService.searchMessagesByDateRange(roomId, start, end, currentUser.getUserId());
+        Page<MessDTO> messages = messageService.searchMessages(roomId, currentUser.getUserId(),
+                null, null, null, start, end, page, size);
         return ResponseEntity.ok(messages);
     }
 
+    // Dựng lại search index từ toàn bộ tin nhắn (chạy nền) - chỉ Admin
+    @PostMapping("/search/rebuild")
+    public ResponseEntity<Map<String, String>> rebuildSearchIndex() {
+        User currentUser = getCurrentUser();
+        if (!currentUser.isAdmin()) {
+            throw new ForbiddenException("Chỉ Admin mới có quyền dựng lại index tìm kiếm");
+        }
+        Map<String, String> response = new HashMap<>();
+        if (messageService.rebuildSearchIndex()) {
+            response.put("message", "Đã bắt đầu dựng lại index tìm kiếm tin nhắn");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        }
+        response.put("message", "Index tìm kiếm đang được dựng lại");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+
     // Tìm kiếm tin nhắn theo loại
     @GetMapping("/rooms/{roomId}/search/type")
     public ResponseEntity<List<MessDTO>> searchMessagesByType(
@@ -1,6 +1,8 @@
 package DoAn.BE.chat.controller;
 
 import DoAn.BE.chat.service.MessageStatusService;
+import DoAn.BE.chat.service.RoomMembershipIndex;
+import DoAn.BE.common.exception.BadRequestException;
 import DoAn.BE.common.exception.EntityNotFoundException;
 import DoAn.BE.common.exception.UnauthorizedException;
 import DoAn.BE.user.entity.User;
@@ -22,6 +24,9 @@ public class MessageStatusController {
 
     @Autowired
     private MessageStatusService messageStatusService;
+
+    @Autowired
+    private RoomMembershipIndex roomMembershipIndex;
     
     @Autowired
     private UserRepository userRepository;
@@ -58,5 +63,23 @@ public class MessageStatusController {
         response.put("unreadCount", unreadCount);
         return ResponseEntity.ok(response);
     }
-}
 
+    /**
+     * Đánh dấu đã đọc toàn bộ tin nhắn trong phòng (reset unread counter)
+     */
+    @PostMapping("/rooms/{roomId}/seen")
+    public ResponseEntity<Map<String, Long>> markRoomAsSeen(@PathVariable Long roomId) {
+        if (roomId == null) {
+            throw new IllegalArgumentException("Room ID không được null");
+        }
+        User currentUser = getCurrentUser();
+        if (!roomMembershipIndex.isMember(roomId, currentUser.getUserId())) {
+            throw new BadRequestException("Bạn không có quyền truy cập phòng này");
+        }
+        messageStatusService.markAllMessagesAsSeen(roomId, currentUser.getUserId());
+
+        Map<String, Long> response = new HashMap<>();
+        response.put("unreadCount", 0L);
+        return ResponseEntity.ok(response);
+    }
+}
@@ -1,6 +1,6 @@
 package DoAn.BE.chat.controller;
 
-import DoAn.BE.chat.repository.ChatRoomMemberRepository;
+import DoAn.BE.chat.service.RoomMembershipIndex;
 import DoAn.BE.chat.service.TypingIndicatorService;
 import DoAn.BE.common.exception.UnauthorizedException;
 import DoAn.BE.user.entity.User;
@@ -28,7 +28,7 @@ public class TypingController {
     private UserRepository userRepository;
     
     @Autowired
-    private ChatRoomMemberRepository chatRoomMemberRepository;
+    private RoomMembershipIndex roomMembershipIndex;
 
     /**
      * Lấy thông tin user hiện tại từ Security Context
@@ -56,7 +56,10 @@ public class TypingController {
         if (currentUser.getUserId() == null) {
             throw new IllegalStateException("User ID không hợp lệ");
         }
-        typingIndicatorService.startTyping(roomId, currentUser.getUserId());
+        if (!roomMembershipIndex.isMember(roomId, currentUser.getUserId())) {
+            throw new UnauthorizedException("Bạn không có quyền truy cập phòng chat này");
+        }
+        typingIndicatorService.startTyping(roomId, currentUser.getUserId(), currentUser.getUsername());
         
         Map<String, String> response = new HashMap<>();
         response.put("message", "Started typing");
@@ -96,7 +99,7 @@ public class TypingController {
         }
         
         // Validate user có trong phòng không
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, currentUser.getUserId());
+        boolean isMember = roomMembershipIndex.isMember(roomId, currentUser.getUserId());
         if (!isMember) {
             throw new UnauthorizedException("Bạn không có quyền xem thông tin phòng chat này");
         }
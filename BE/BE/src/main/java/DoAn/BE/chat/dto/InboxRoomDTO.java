@@ -0,0 +1,42 @@
+package DoAn.BE.chat.dto;
+
+import java.time.LocalDateTime;
+
+import DoAn.BE.chat.entity.ChatRoom;
+import DoAn.BE.chat.entity.Message;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một dòng inbox (sidebar chat): thông tin phòng + tin nhắn cuối + số chưa đọc, lấy bằng một query
+// Thứ tự field khớp constructor expression trong ChatRoomRepository.findInbox
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InboxRoomDTO {
+    private Long roomId;
+    private String name;
+    private ChatRoom.RoomType roomType;
+    private String avatarUrl;
+
+    private Long projectId;
+    private String projectName;
+    private Long memberCount;
+
+    // Người còn lại trong chat 1-1 (null với GROUP/PROJECT)
+    private Long peerUserId;
+    private String peerUsername;
+    private String peerAvatarUrl;
+
+    private Long lastMessageId;
+    private String lastMessagePreview;
+    private Message.MessageType lastMessageType;
+    private LocalDateTime lastMessageAt;
+    private Long lastSenderId;
+    private String lastSenderUsername;
+
+    private Integer unreadCount;
+
+    // lastMessageAt, hoặc thời điểm tạo phòng nếu chưa có tin nhắn (khóa sắp xếp)
+    private LocalDateTime lastActivityAt;
+}
@@ -29,6 +29,9 @@ public class MessDTO {
     private Boolean isEdited = false;
     private Long replyToMessageId;
 
+    // Đoạn nội dung có đánh dấu <mark> từ khóa (chỉ có trong kết quả tìm kiếm)
+    private String highlight;
+
     // List of users who have seen this message
     private java.util.List<UserDTO> seenBy;
 }
@@ -0,0 +1,35 @@
+package DoAn.BE.chat.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một lát lịch sử tin nhắn theo cursor (sentAt, messageId), luôn sắp xếp tăng dần theo thời gian
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageCursorPageDTO {
+    private List<MessDTO> messages;
+
+    // Còn tin nhắn cũ hơn lát này không (direction=AFTER: cũ hơn cursor, không tính chính tin cursor)
+    private Boolean hasOlder;
+
+    // Còn tin nhắn mới hơn lát này không (direction=BEFORE: mới hơn cursor, không tính chính tin cursor)
+    private Boolean hasNewer;
+
+    // Cursor để lấy trang cũ hơn (direction=BEFORE)
+    private LocalDateTime olderCursorSentAt;
+    private Long olderCursorMessageId;
+
+    // Cursor để lấy trang mới hơn (direction=AFTER)
+    private LocalDateTime newerCursorSentAt;
+    private Long newerCursorMessageId;
+
+    public enum Direction {
+        BEFORE, // Tin nhắn cũ hơn cursor
+        AFTER // Tin nhắn mới hơn cursor
+    }
+}
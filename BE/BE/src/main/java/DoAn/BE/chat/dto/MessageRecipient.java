@@ -0,0 +1,8 @@
+package DoAn.BE.chat.dto;
+
+/**
+ * Người nhận tin nhắn (userId + FCM token), lấy bằng projection thay vì load entity User.
+ * Là snapshot nên truyền an toàn sang thread fan-out.
+ */
+public record MessageRecipient(Long userId, String fcmToken) {
+}
@@ -0,0 +1,34 @@
+package DoAn.BE.chat.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Khóa chuẩn của chat 1-1: cặp (userId nhỏ, userId lớn) -> phòng DIRECT.
+ * Unique constraint trên cặp user giúp tra cứu chỉ một lần probe index
+ * và hai request tạo cùng lúc không sinh ra hai phòng.
+ */
+@Entity
+@Table(name = "chat_direct_pairs", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_chat_direct_pairs_users", columnNames = {"user_low_id", "user_high_id"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatDirectPair {
+
+    @Id
+    @Column(name = "room_id")
+    private Long roomId;
+
+    @Column(name = "user_low_id", nullable = false)
+    private Long userLowId;
+
+    @Column(name = "user_high_id", nullable = false)
+    private Long userHighId;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
@@ -45,6 +45,29 @@ public class ChatRoom {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    // Tóm tắt tin nhắn cuối cho inbox. Chỉ cập nhật bằng UPDATE nguyên tử trong ChatRoomRepository
+    // (InboxService), không ghi qua entity để tránh ghi đè giá trị mới hơn
+    @Column(name = "last_message_id", updatable = false)
+    @JsonIgnore
+    private Long lastMessageId;
+
+    @Column(name = "last_message_at", updatable = false)
+    @JsonIgnore
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "last_message_preview", length = 200, columnDefinition = "NVARCHAR(200)", updatable = false)
+    @JsonIgnore
+    private String lastMessagePreview;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "last_message_type", length = 20, updatable = false)
+    @JsonIgnore
+    private Message.MessageType lastMessageType;
+
+    @Column(name = "last_sender_id", updatable = false)
+    @JsonIgnore
+    private Long lastSenderId;
+
     // Relationships
     @OneToMany(mappedBy = "chatRoom", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonIgnore
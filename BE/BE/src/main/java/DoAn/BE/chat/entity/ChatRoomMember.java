@@ -7,7 +7,10 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_room_members")
+@Table(name = "chat_room_members", indexes = {
+        // Inbox / danh sách phòng của user
+        @Index(name = "idx_chat_room_members_user", columnList = "user_id, room_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -33,9 +36,17 @@ public class ChatRoomMember {
     @Column(name = "joined_at")
     private LocalDateTime joinedAt;
 
+    // Số tin nhắn chưa đọc (null = chưa backfill, đếm lại từ message_status). Chỉ thay đổi bằng UPDATE
+    // nguyên tử trong ChatRoomMemberRepository, không ghi qua entity để tránh ghi đè giá trị cũ
+    @Column(name = "unread_count", updatable = false)
+    private Integer unreadCount = 0;
+
     @PrePersist
     protected void onCreate() {
         this.joinedAt = LocalDateTime.now();
+        if (this.unreadCount == null) {
+            this.unreadCount = 0;
+        }
     }
 
     public enum MemberRole {
@@ -10,7 +10,10 @@ import DoAn.BE.storage.entity.File;
 
 // Entity tin nhắn chat (TEXT, FILE, IMAGE) với soft delete và reply support
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    // Keyset pagination lịch sử phòng chat
+    @Index(name = "idx_messages_room_sent", columnList = "room_id, sent_at, message_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,31 @@
+package DoAn.BE.chat.repository;
+
+import DoAn.BE.chat.entity.ChatDirectPair;
+import DoAn.BE.chat.entity.ChatRoom;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ChatDirectPairRepository extends JpaRepository<ChatDirectPair, Long> {
+
+    // userLowId < userHighId (hoặc bằng nhau nếu tự chat với chính mình)
+    @Query("SELECT p.roomId FROM ChatDirectPair p WHERE p.userLowId = :userLowId AND p.userHighId = :userHighId")
+    Optional<Long> findRoomIdByUsers(@Param("userLowId") Long userLowId, @Param("userHighId") Long userHighId);
+
+    @Modifying
+    @Query("DELETE FROM ChatDirectPair p WHERE p.roomId = :roomId")
+    int deleteByRoomId(@Param("roomId") Long roomId);
+
+    // Phòng DIRECT đủ 2 thành viên nhưng chưa có khóa: [roomId, userId nhỏ, userId lớn], phòng cũ trước
+    @Query("SELECT m.id.roomId, MIN(m.id.userId), MAX(m.id.userId) FROM ChatRoomMember m " +
+           "WHERE m.chatRoom.type = :direct " +
+           "AND NOT EXISTS (SELECT 1 FROM ChatDirectPair p WHERE p.roomId = m.id.roomId) " +
+           "GROUP BY m.id.roomId HAVING COUNT(m) = 2 " +
+           "ORDER BY m.id.roomId")
+    List<Object[]> findUnpairedDirectRooms(@Param("direct") ChatRoom.RoomType direct);
+}
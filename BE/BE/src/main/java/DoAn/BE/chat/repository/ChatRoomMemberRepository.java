@@ -1,11 +1,17 @@
 package DoAn.BE.chat.repository;
 
+import DoAn.BE.chat.dto.MessageRecipient;
 import DoAn.BE.chat.entity.ChatRoomMember;
 import DoAn.BE.chat.entity.ChatRoomMemberId;
+import DoAn.BE.chat.entity.MessageStatus;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface ChatRoomMemberRepository extends JpaRepository<ChatRoomMember, ChatRoomMemberId> {
@@ -13,6 +19,16 @@ public interface ChatRoomMemberRepository extends JpaRepository<ChatRoomMember,
     List<ChatRoomMember> findByUser_UserId(Long userId);
     Long countByChatRoom_RoomId(Long roomId);
     boolean existsByChatRoom_RoomIdAndUser_UserId(Long roomId, Long userId);
+
+    // Chỉ lấy userId (nạp membership index), không load entity User
+    @Query("SELECT m.id.userId FROM ChatRoomMember m WHERE m.id.roomId = :roomId")
+    List<Long> findUserIdsByRoomId(@Param("roomId") Long roomId);
+
+    // Người nhận tin nhắn mới (trừ người gửi): một query, không load entity User theo từng thành viên
+    @Query("SELECT new DoAn.BE.chat.dto.MessageRecipient(u.userId, u.fcmToken) " +
+            "FROM ChatRoomMember m JOIN m.user u WHERE m.id.roomId = :roomId AND u.userId <> :excludeUserId")
+    List<MessageRecipient> findRecipients(@Param("roomId") Long roomId, @Param("excludeUserId") Long excludeUserId);
+
     Optional<ChatRoomMember> findByChatRoom_RoomIdAndUser_UserId(Long roomId, Long userId);
     
     // Find members by role
@@ -23,6 +39,41 @@ public interface ChatRoomMemberRepository extends JpaRepository<ChatRoomMember,
     
     // Check if user is admin
     boolean existsByChatRoom_RoomIdAndUser_UserIdAndRole(Long roomId, Long userId, ChatRoomMember.MemberRole role);
+
+    // Unread counter theo (phòng, user)
+    @Query("SELECT m.unreadCount FROM ChatRoomMember m WHERE m.id.roomId = :roomId AND m.id.userId = :userId")
+    Optional<Integer> findUnreadCount(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    // Tin nhắn mới: +1 cho mọi thành viên trừ người gửi (dòng chưa backfill giữ null)
+    @Modifying
+    @Query("UPDATE ChatRoomMember m SET m.unreadCount = m.unreadCount + 1 " +
+            "WHERE m.id.roomId = :roomId AND m.id.userId <> :senderId")
+    int incrementUnread(@Param("roomId") Long roomId, @Param("senderId") Long senderId);
+
+    @Modifying
+    @Query("UPDATE ChatRoomMember m SET m.unreadCount = m.unreadCount - 1 " +
+            "WHERE m.id.roomId = :roomId AND m.id.userId = :userId AND m.unreadCount > 0")
+    int decrementUnread(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query("UPDATE ChatRoomMember m SET m.unreadCount = 0 WHERE m.id.roomId = :roomId AND m.id.userId = :userId")
+    int resetUnread(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    // Điền unread_count cho thành viên có từ trước khi có cột này (cùng điều kiện với countUnreadMessagesInRoom)
+    @Modifying
+    @Query("UPDATE ChatRoomMember c SET c.unreadCount = (" +
+            "SELECT COUNT(m) FROM Message m WHERE m.chatRoom.roomId = c.id.roomId " +
+            "AND m.sender.userId <> c.id.userId " +
+            "AND NOT EXISTS (SELECT ms FROM MessageStatus ms WHERE ms.id.messageId = m.messageId " +
+            "AND ms.id.userId = c.id.userId AND ms.status = :seen)) " +
+            "WHERE c.unreadCount IS NULL")
+    int backfillUnreadCounts(@Param("seen") MessageStatus.MessageStatusType seen);
+
+    // Đánh dấu cần tính lại (dữ liệu seed ghi message_status trực tiếp)
+    @Transactional
+    @Modifying
+    @Query("UPDATE ChatRoomMember m SET m.unreadCount = NULL")
+    int clearUnreadCounts();
 }
 
 
@@ -1,10 +1,16 @@
 package DoAn.BE.chat.repository;
 
+import DoAn.BE.chat.dto.InboxRoomDTO;
 import DoAn.BE.chat.entity.ChatRoom;
+import DoAn.BE.chat.entity.Message;
 import DoAn.BE.project.entity.Project;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -31,6 +37,67 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
     List<ChatRoom> findChatRoomsByUserId(@Param("userId") Long userId);
 
     List<ChatRoom> findByType(ChatRoom.RoomType type);
+
+    // Inbox của user: một dòng mỗi phòng, mới hoạt động nhất lên đầu
+    // (unreadCount = 0 cho thành viên chưa được backfill, không trả null cho client)
+    @Query(value = "SELECT new DoAn.BE.chat.dto.InboxRoomDTO(" +
+           "r.roomId, r.name, r.type, r.avatarUrl, " +
+           "pr.projectId, pr.name, " +
+           "(SELECT COUNT(x) FROM ChatRoomMember x WHERE x.id.roomId = r.roomId), " +
+           "pu.userId, pu.username, pu.avatarUrl, " +
+           "r.lastMessageId, r.lastMessagePreview, r.lastMessageType, r.lastMessageAt, " +
+           "s.userId, s.username, " +
+           "COALESCE(m.unreadCount, 0), COALESCE(r.lastMessageAt, r.createdAt)) " +
+           "FROM ChatRoomMember m JOIN m.chatRoom r " +
+           "LEFT JOIN r.project pr " +
+           "LEFT JOIN ChatRoomMember p ON p.id.roomId = r.roomId AND r.type = :direct AND p.id.userId <> :userId " +
+           "LEFT JOIN p.user pu " +
+           "LEFT JOIN User s ON s.userId = r.lastSenderId " +
+           "WHERE m.id.userId = :userId " +
+           "ORDER BY COALESCE(r.lastMessageAt, r.createdAt) DESC, r.roomId DESC",
+           countQuery = "SELECT COUNT(m) FROM ChatRoomMember m WHERE m.id.userId = :userId")
+    Page<InboxRoomDTO> findInbox(@Param("userId") Long userId,
+                                 @Param("direct") ChatRoom.RoomType direct,
+                                 Pageable pageable);
+
+    // Ghi tin nhắn cuối; chỉ tiến lên (messageId tăng dần) nên các lần gửi song song không ghi đè nhau
+    @Modifying
+    @Query("UPDATE ChatRoom r SET r.lastMessageId = :messageId, r.lastMessageAt = :sentAt, " +
+           "r.lastMessagePreview = :preview, r.lastMessageType = :type, r.lastSenderId = :senderId " +
+           "WHERE r.roomId = :roomId AND (r.lastMessageId IS NULL OR r.lastMessageId < :messageId)")
+    int updateLastMessage(@Param("roomId") Long roomId,
+                          @Param("messageId") Long messageId,
+                          @Param("sentAt") LocalDateTime sentAt,
+                          @Param("preview") String preview,
+                          @Param("type") Message.MessageType type,
+                          @Param("senderId") Long senderId);
+
+    // Sửa/xóa tin nhắn: chỉ đổi preview nếu đó vẫn là tin cuối của phòng
+    @Modifying
+    @Query("UPDATE ChatRoom r SET r.lastMessagePreview = :preview " +
+           "WHERE r.roomId = :roomId AND r.lastMessageId = :messageId")
+    int updateLastMessagePreview(@Param("roomId") Long roomId,
+                                 @Param("messageId") Long messageId,
+                                 @Param("preview") String preview);
+
+    // Điền tóm tắt cho phòng có tin nhắn từ trước khi có các cột này (2 bước: id tin cuối, rồi chi tiết).
+    // Phòng chưa có tin nhắn bị bỏ qua, nếu không mỗi lần khởi động đều ghi lại NULL cho chúng
+    @Modifying
+    @Query("UPDATE ChatRoom r SET r.lastMessageId = " +
+           "(SELECT MAX(m.messageId) FROM Message m WHERE m.chatRoom.roomId = r.roomId) " +
+           "WHERE r.lastMessageId IS NULL " +
+           "AND EXISTS (SELECT 1 FROM Message m WHERE m.chatRoom.roomId = r.roomId)")
+    int backfillLastMessageIds();
+
+    @Modifying
+    @Query("UPDATE ChatRoom r SET " +
+           "r.lastMessageAt = (SELECT m.sentAt FROM Message m WHERE m.messageId = r.lastMessageId), " +
+           "r.lastMessageType = (SELECT m.messageType FROM Message m WHERE m.messageId = r.lastMessageId), " +
+           "r.lastSenderId = (SELECT m.sender.userId FROM Message m WHERE m.messageId = r.lastMessageId), " +
+           "r.lastMessagePreview = (SELECT CASE WHEN m.isDeleted = true THEN :deletedPreview " +
+           "ELSE SUBSTRING(m.content, 1, 200) END FROM Message m WHERE m.messageId = r.lastMessageId) " +
+           "WHERE r.lastMessageId IS NOT NULL AND r.lastMessageAt IS NULL")
+    int backfillLastMessageDetails(@Param("deletedPreview") String deletedPreview);
 }
 
 
@@ -1,8 +1,11 @@
 package DoAn.BE.chat.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -14,6 +17,56 @@ import DoAn.BE.chat.entity.Message;
 public interface MessageRepository extends JpaRepository<Message, Long> {
        List<Message> findByChatRoom_RoomIdOrderBySentAtAsc(Long roomId);
 
+       // Keyset pagination theo index (room_id, sent_at, message_id)
+       // Trang mới nhất của phòng (mới -> cũ)
+       @Query("SELECT m FROM Message m LEFT JOIN FETCH m.sender LEFT JOIN FETCH m.file " +
+                     "WHERE m.chatRoom.roomId = :roomId " +
+                     "ORDER BY m.sentAt DESC, m.messageId DESC")
+       List<Message> findLatestInRoom(@Param("roomId") Long roomId, Pageable pageable);
+
+       // Tin nhắn cũ hơn cursor (mới -> cũ)
+       @Query("SELECT m FROM Message m LEFT JOIN FETCH m.sender LEFT JOIN FETCH m.file " +
+                     "WHERE m.chatRoom.roomId = :roomId " +
+                     "AND (m.sentAt < :sentAt OR (m.sentAt = :sentAt AND m.messageId < :messageId)) " +
+                     "ORDER BY m.sentAt DESC, m.messageId DESC")
+       List<Message> findBeforeCursor(@Param("roomId") Long roomId,
+                     @Param("sentAt") LocalDateTime sentAt,
+                     @Param("messageId") Long messageId,
+                     Pageable pageable);
+
+       // Tin nhắn mới hơn cursor (cũ -> mới)
+       @Query("SELECT m FROM Message m LEFT JOIN FETCH m.sender LEFT JOIN FETCH m.file " +
+                     "WHERE m.chatRoom.roomId = :roomId " +
+                     "AND (m.sentAt > :sentAt OR (m.sentAt = :sentAt AND m.messageId > :messageId)) " +
+                     "ORDER BY m.sentAt ASC, m.messageId ASC")
+       List<Message> findAfterCursor(@Param("roomId") Long roomId,
+                     @Param("sentAt") LocalDateTime sentAt,
+                     @Param("messageId") Long messageId,
+                     Pageable pageable);
+
+       // Probe tồn tại (TOP 1 trên index) để tính hasOlder/hasNewer ngoài lát đã lấy
+       @Query("SELECT m.messageId FROM Message m WHERE m.chatRoom.roomId = :roomId " +
+                     "AND (m.sentAt < :sentAt OR (m.sentAt = :sentAt AND m.messageId < :messageId))")
+       List<Long> findIdsBeforeCursor(@Param("roomId") Long roomId,
+                     @Param("sentAt") LocalDateTime sentAt,
+                     @Param("messageId") Long messageId,
+                     Pageable pageable);
+
+       @Query("SELECT m.messageId FROM Message m WHERE m.chatRoom.roomId = :roomId " +
+                     "AND (m.sentAt > :sentAt OR (m.sentAt = :sentAt AND m.messageId > :messageId))")
+       List<Long> findIdsAfterCursor(@Param("roomId") Long roomId,
+                     @Param("sentAt") LocalDateTime sentAt,
+                     @Param("messageId") Long messageId,
+                     Pageable pageable);
+
+       long countByChatRoom_RoomId(Long roomId);
+
+       // Phân trang offset cho endpoint page/size cũ (mới -> cũ)
+       @Query(value = "SELECT m FROM Message m WHERE m.chatRoom.roomId = :roomId " +
+                     "ORDER BY m.sentAt DESC, m.messageId DESC",
+                     countQuery = "SELECT COUNT(m) FROM Message m WHERE m.chatRoom.roomId = :roomId")
+       Page<Message> findPageInRoom(@Param("roomId") Long roomId, Pageable pageable);
+
        // Get the last message in a room
        Message findTopByChatRoom_RoomIdOrderBySentAtDesc(Long roomId);
 
@@ -27,29 +80,21 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
                      @Param("userId") Long userId,
                      @Param("lastReadAt") LocalDateTime lastReadAt);
 
-       // Search messages by content
-       @Query("SELECT m FROM Message m WHERE m.chatRoom.roomId = :roomId AND " +
-                     "LOWER(m.content) LIKE LOWER(CONCAT('%', :keyword, '%')) AND " +
-                     "m.isDeleted = false ORDER BY m.sentAt DESC")
-       List<Message> searchMessagesByContent(@Param("roomId") Long roomId, @Param("keyword") String keyword);
-
-       // Search messages by sender
-       @Query("SELECT m FROM Message m WHERE m.chatRoom.roomId = :roomId AND " +
-                     "LOWER(m.sender.username) LIKE LOWER(CONCAT('%', :keyword, '%')) AND " +
-                     "m.isDeleted = false ORDER BY m.sentAt DESC")
-       List<Message> searchMessagesBySender(@Param("roomId") Long roomId, @Param("keyword") String keyword);
-
-       // Search messages by date range
-       @Query("SELECT m FROM Message m WHERE m.chatRoom.roomId = :roomId AND " +
-                     "m.sentAt BETWEEN :startDate AND :endDate AND " +
-                     "m.isDeleted = false ORDER BY m.sentAt DESC")
-       List<Message> searchMessagesByDateRange(@Param("roomId") Long roomId,
-                     @Param("startDate") LocalDateTime startDate,
-                     @Param("endDate") LocalDateTime endDate);
-
        // Search messages by type
        @Query("SELECT m FROM Message m WHERE m.chatRoom.roomId = :roomId AND " +
                      "m.messageType = :messageType AND m.isDeleted = false ORDER BY m.sentAt DESC")
        List<Message> searchMessagesByType(@Param("roomId") Long roomId,
                      @Param("messageType") Message.MessageType messageType);
+
+       // Load kết quả tìm kiếm (id lấy từ search index)
+       @Query("SELECT m FROM Message m JOIN FETCH m.chatRoom LEFT JOIN FETCH m.sender LEFT JOIN FETCH m.file " +
+                     "WHERE m.messageId IN :messageIds")
+       List<Message> findAllForSearchResult(@Param("messageIds") Collection<Long> messageIds);
+
+       // Dựng lại search index theo lô (keyset theo messageId), chỉ lấy cột cần index
+       // Mỗi dòng: [messageId, roomId, senderId, senderUsername, content, messageType, sentAt]
+       @Query("SELECT m.messageId, m.chatRoom.roomId, s.userId, s.username, m.content, m.messageType, m.sentAt " +
+                     "FROM Message m LEFT JOIN m.sender s " +
+                     "WHERE m.messageId > :afterId AND m.isDeleted = false ORDER BY m.messageId ASC")
+       List<Object[]> findIndexBatch(@Param("afterId") Long afterId, Pageable pageable);
 }
@@ -2,8 +2,11 @@ package DoAn.BE.chat.repository;
 
 import DoAn.BE.chat.entity.MessageStatus;
 import DoAn.BE.chat.entity.MessageStatusId;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -14,6 +17,12 @@ public interface MessageStatusRepository extends JpaRepository<MessageStatus, Me
 
     List<MessageStatus> findByMessage_MessageIdAndStatus(Long messageId, MessageStatus.MessageStatusType status);
 
+    // Lấy trạng thái của nhiều tin nhắn trong một query (tránh N+1 khi build seenBy)
+    @Query("SELECT ms FROM MessageStatus ms JOIN FETCH ms.user " +
+            "WHERE ms.message.messageId IN :messageIds AND ms.status = :status")
+    List<MessageStatus> findByMessageIdsAndStatus(@Param("messageIds") Collection<Long> messageIds,
+            @Param("status") MessageStatus.MessageStatusType status);
+
     List<MessageStatus> findByUser_UserId(Long userId);
 
     /**
@@ -25,4 +34,12 @@ public interface MessageStatusRepository extends JpaRepository<MessageStatus, Me
             "AND m.sender.userId != :userId " +
             "AND (ms.status IS NULL OR ms.status != 'SEEN')")
     Long countUnreadMessagesInRoom(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    // Đánh dấu đã đọc mọi tin trong phòng của user bằng một câu UPDATE
+    @Modifying
+    @Query("UPDATE MessageStatus ms SET ms.status = :seen, ms.timestamp = :now " +
+            "WHERE ms.id.userId = :userId AND ms.status <> :seen " +
+            "AND ms.id.messageId IN (SELECT m.messageId FROM Message m WHERE m.chatRoom.roomId = :roomId)")
+    int markRoomSeen(@Param("roomId") Long roomId, @Param("userId") Long userId,
+            @Param("seen") MessageStatus.MessageStatusType seen, @Param("now") LocalDateTime now);
 }
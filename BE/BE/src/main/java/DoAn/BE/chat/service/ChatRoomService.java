@@ -2,10 +2,13 @@ package DoAn.BE.chat.service;
 
 import DoAn.BE.chat.dto.ChatRoomDTO;
 import DoAn.BE.chat.dto.CreateChatRoomRequest;
+import DoAn.BE.chat.dto.InboxRoomDTO;
+import DoAn.BE.chat.entity.ChatDirectPair;
 import DoAn.BE.chat.entity.ChatRoom;
 import DoAn.BE.chat.entity.ChatRoomMember;
 import DoAn.BE.chat.entity.ChatRoomMemberId;
 import DoAn.BE.chat.entity.Message;
+import DoAn.BE.chat.repository.ChatDirectPairRepository;
 import DoAn.BE.chat.repository.ChatRoomMemberRepository;
 import DoAn.BE.chat.repository.ChatRoomRepository;
 import DoAn.BE.chat.repository.MessageRepository;
@@ -20,12 +23,22 @@ import DoAn.BE.common.util.PermissionUtil;
 import DoAn.BE.chat.websocket.service.WebSocketNotificationService;
 import DoAn.BE.notification.service.ChatNotificationService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 // Service quản lý chat rooms (tạo, sửa, xóa, thêm/xóa members, permissions)
@@ -41,6 +54,9 @@ public class ChatRoomService {
     private final ChatNotificationService chatNotificationService;
     private final ProjectRepository projectRepository;
     private final MessageRepository messageRepository;
+    private final RoomMembershipIndex roomMembershipIndex;
+    private final ChatDirectPairRepository chatDirectPairRepository;
+    private final TransactionTemplate directChatTransaction;
 
     public ChatRoomService(ChatRoomRepository chatRoomRepository,
             ChatRoomMemberRepository chatRoomMemberRepository,
@@ -48,7 +64,10 @@ public class ChatRoomService {
             WebSocketNotificationService webSocketNotificationService,
             ChatNotificationService chatNotificationService,
             ProjectRepository projectRepository,
-            MessageRepository messageRepository) {
+            MessageRepository messageRepository,
+            RoomMembershipIndex roomMembershipIndex,
+            ChatDirectPairRepository chatDirectPairRepository,
+            PlatformTransactionManager transactionManager) {
         this.chatRoomRepository = chatRoomRepository;
         this.chatRoomMemberRepository = chatRoomMemberRepository;
         this.userRepository = userRepository;
@@ -56,6 +75,11 @@ public class ChatRoomService {
         this.chatNotificationService = chatNotificationService;
         this.projectRepository = projectRepository;
         this.messageRepository = messageRepository;
+        this.roomMembershipIndex = roomMembershipIndex;
+        this.chatDirectPairRepository = chatDirectPairRepository;
+        // Phòng 1-1 được tạo trong transaction riêng: nếu đụng unique constraint thì chỉ transaction đó rollback
+        this.directChatTransaction = new TransactionTemplate(transactionManager);
+        this.directChatTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
     // Tạo phòng chat mới
@@ -119,6 +143,7 @@ public class ChatRoomService {
                     }
                 }
             }
+            roomMembershipIndex.invalidate(chatRoom.getRoomId());
 
             return convertToChatRoomDTO(chatRoom);
 
@@ -133,15 +158,17 @@ public class ChatRoomService {
         }
     }
 
-    // Lấy danh sách phòng chat của user
+    // Lấy danh sách phòng chat của user (sidebar), phòng hoạt động gần nhất lên đầu.
+    // Đọc từ read model inbox bằng một query thay vì load member + tin nhắn cuối cho từng phòng
+    @Transactional(readOnly = true)
     public List<ChatRoomDTO> getChatRoomsByUserId(User currentUser) {
         if (!PermissionUtil.canUseChat(currentUser)) {
             throw new ForbiddenException("Admin không có quyền sử dụng chat");
         }
 
-        List<ChatRoomMember> memberships = chatRoomMemberRepository.findByUser_UserId(currentUser.getUserId());
-        return memberships.stream()
-                .map(membership -> convertToChatRoomDTO(membership.getChatRoom()))
+        return chatRoomRepository.findInbox(currentUser.getUserId(), ChatRoom.RoomType.DIRECT, Pageable.unpaged())
+                .stream()
+                .map(row -> convertToChatRoomDTO(row, currentUser))
                 .collect(Collectors.toList());
     }
 
@@ -155,8 +182,7 @@ public class ChatRoomService {
                 .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại"));
 
         // Kiểm tra user có trong phòng không
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, userId);
-        if (!isMember) {
+        if (!roomMembershipIndex.isMember(roomId, userId)) {
             throw new BadRequestException("Không có quyền truy cập phòng chat này");
         }
 
@@ -173,24 +199,37 @@ public class ChatRoomService {
         User user2 = userRepository.findById(userId2)
                 .orElseThrow(() -> new EntityNotFoundException("User 2 không tồn tại"));
 
-        List<ChatRoomMember> user1Rooms = chatRoomMemberRepository.findByUser_UserId(userId1);
-        for (ChatRoomMember member1 : user1Rooms) {
-            ChatRoom room = member1.getChatRoom();
-            if (room.getType() == ChatRoom.RoomType.DIRECT) {
-                boolean user2InRoom = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(room.getRoomId(),
-                        userId2);
-                if (user2InRoom) {
-                    return convertToChatRoomDTO(room);
-                }
-            }
+        Long userLowId = Math.min(userId1, userId2);
+        Long userHighId = Math.max(userId1, userId2);
+        Long existingRoomId = chatDirectPairRepository.findRoomIdByUsers(userLowId, userHighId).orElse(null);
+        if (existingRoomId != null) {
+            return convertToChatRoomDTO(chatRoomRepository.findById(existingRoomId)
+                    .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại")));
+        }
+
+        Long roomId;
+        try {
+            roomId = directChatTransaction.execute(status -> createDirectRoom(user1, user2, userLowId, userHighId));
+        } catch (DataIntegrityViolationException e) {
+            // Request khác vừa tạo phòng cho cùng cặp user
+            roomId = chatDirectPairRepository.findRoomIdByUsers(userLowId, userHighId).orElseThrow(() -> e);
         }
 
+        return convertToChatRoomDTO(chatRoomRepository.findById(roomId)
+                .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại")));
+    }
+
+    // Tạo phòng DIRECT + khóa cặp user + 2 thành viên; khóa được flush ngay để phát hiện trùng sớm
+    private Long createDirectRoom(User user1, User user2, Long userLowId, Long userHighId) {
         ChatRoom directRoom = new ChatRoom();
         directRoom.setName(user1.getUsername() + " & " + user2.getUsername());
         directRoom.setType(ChatRoom.RoomType.DIRECT);
         directRoom.setCreatedAt(LocalDateTime.now());
         directRoom = chatRoomRepository.save(directRoom);
 
+        chatDirectPairRepository.saveAndFlush(new ChatDirectPair(directRoom.getRoomId(), userLowId, userHighId,
+                directRoom.getCreatedAt()));
+
         ChatRoomMember member1 = new ChatRoomMember();
         member1.setId(new ChatRoomMemberId(directRoom.getRoomId(), user1.getUserId()));
         member1.setChatRoom(directRoom);
@@ -206,8 +245,32 @@ public class ChatRoomService {
         member2.setRole(ChatRoomMember.MemberRole.MEMBER);
         member2.setJoinedAt(LocalDateTime.now());
         chatRoomMemberRepository.save(member2);
+        roomMembershipIndex.invalidate(directRoom.getRoomId());
+
+        return directRoom.getRoomId();
+    }
 
-        return convertToChatRoomDTO(directRoom);
+    // Tạo khóa cặp user cho các phòng DIRECT có từ trước; nếu một cặp có nhiều phòng thì giữ phòng cũ nhất
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillDirectPairs() {
+        List<Object[]> unpaired = chatDirectPairRepository.findUnpairedDirectRooms(ChatRoom.RoomType.DIRECT);
+        if (unpaired.isEmpty()) {
+            return;
+        }
+        Set<String> seen = new HashSet<>();
+        int created = 0;
+        for (Object[] row : unpaired) {
+            Long roomId = (Long) row[0];
+            Long userLowId = (Long) row[1];
+            Long userHighId = (Long) row[2];
+            if (!seen.add(userLowId + ":" + userHighId)
+                    || chatDirectPairRepository.findRoomIdByUsers(userLowId, userHighId).isPresent()) {
+                continue;
+            }
+            chatDirectPairRepository.save(new ChatDirectPair(roomId, userLowId, userHighId, LocalDateTime.now()));
+            created++;
+        }
+        log.info("Backfilled khóa chat 1-1 cho {}/{} phòng DIRECT", created, unpaired.size());
     }
 
     // Thêm thành viên vào phòng chat
@@ -243,6 +306,7 @@ public class ChatRoomService {
         member.setRole(ChatRoomMember.MemberRole.MEMBER);
         member.setJoinedAt(LocalDateTime.now());
         chatRoomMemberRepository.save(member);
+        roomMembershipIndex.invalidate(roomId);
 
         webSocketNotificationService.notifyUserJoined(roomId, user);
 
@@ -279,6 +343,8 @@ public class ChatRoomService {
 
         User removedUser = member.getUser();
         chatRoomMemberRepository.delete(member);
+        roomMembershipIndex.invalidate(roomId);
+        releaseDirectPair(chatRoom);
 
         webSocketNotificationService.notifyUserLeft(roomId, removedUser);
 
@@ -299,7 +365,7 @@ public class ChatRoomService {
         if (roomId == null || userId == null) {
             throw new BadRequestException("Room ID và User ID không được để trống");
         }
-        chatRoomRepository.findById(roomId)
+        ChatRoom chatRoom = chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new EntityNotFoundException("Phòng chat với ID " + roomId + " không tồn tại"));
 
         ChatRoomMember member = chatRoomMemberRepository.findByChatRoom_RoomIdAndUser_UserId(roomId, userId)
@@ -307,6 +373,8 @@ public class ChatRoomService {
 
         User leavingUser = member.getUser();
         chatRoomMemberRepository.delete(member);
+        roomMembershipIndex.invalidate(roomId);
+        releaseDirectPair(chatRoom);
 
         webSocketNotificationService.notifyUserLeft(roomId, leavingUser);
 
@@ -321,6 +389,13 @@ public class ChatRoomService {
         }
     }
 
+    // Phòng 1-1 không còn đủ 2 người: bỏ khóa để lần nhắn tin sau tạo phòng mới (giống tra cứu theo membership trước đây)
+    private void releaseDirectPair(ChatRoom chatRoom) {
+        if (chatRoom.getType() == ChatRoom.RoomType.DIRECT) {
+            chatDirectPairRepository.deleteByRoomId(chatRoom.getRoomId());
+        }
+    }
+
     public ChatRoomDTO changeMemberRole(Long roomId, Long userId, ChatRoomMember.MemberRole newRole, Long adminId) {
         if (roomId == null || userId == null || adminId == null || newRole == null) {
             throw new BadRequestException("Room ID, User ID, Admin ID và Role không được để trống");
@@ -389,8 +464,7 @@ public class ChatRoomService {
         chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new EntityNotFoundException("Phòng chat với ID " + roomId + " không tồn tại"));
 
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, userId);
-        if (!isMember) {
+        if (!roomMembershipIndex.isMember(roomId, userId)) {
             throw new BadRequestException("Bạn không có quyền xem danh sách thành viên phòng chat này");
         }
 
@@ -416,9 +490,7 @@ public class ChatRoomService {
         ChatRoom chatRoom = projectChats.get(0);
 
         // Verify user is member
-        boolean isMember = chatRoomMemberRepository
-                .existsByChatRoom_RoomIdAndUser_UserId(chatRoom.getRoomId(), userId);
-        if (!isMember) {
+        if (!roomMembershipIndex.isMember(chatRoom.getRoomId(), userId)) {
             throw new BadRequestException("Bạn không có quyền truy cập chat room này");
         }
 
@@ -460,4 +532,47 @@ public class ChatRoomService {
 
         return dto;
     }
+
+    // Chuyển một dòng inbox sang ChatRoomDTO mà client đang dùng. members chỉ có hai người của chat 1-1
+    // (client dùng để hiển thị tên người kia); lastMessage là bản tóm tắt lưu sẵn trên chat_rooms
+    private ChatRoomDTO convertToChatRoomDTO(InboxRoomDTO row, User currentUser) {
+        ChatRoomDTO dto = new ChatRoomDTO();
+        dto.setRoomId(row.getRoomId());
+        dto.setName(row.getName());
+        dto.setRoomType(row.getRoomType());
+        dto.setAvatarUrl(row.getAvatarUrl());
+        dto.setProjectID(row.getProjectId());
+        dto.setProjectName(row.getProjectName());
+        dto.setMemberCount(row.getMemberCount() != null ? row.getMemberCount().intValue() : 0);
+        dto.setUnreadCount(row.getUnreadCount() != null ? row.getUnreadCount() : 0);
+
+        List<User> members = new ArrayList<>();
+        if (row.getPeerUserId() != null) {
+            members.add(memberSummary(currentUser.getUserId(), currentUser.getUsername(), currentUser.getAvatarUrl()));
+            members.add(memberSummary(row.getPeerUserId(), row.getPeerUsername(), row.getPeerAvatarUrl()));
+        }
+        dto.setMembers(members);
+
+        if (row.getLastMessageId() != null) {
+            Message lastMessage = new Message();
+            lastMessage.setMessageId(row.getLastMessageId());
+            lastMessage.setContent(row.getLastMessagePreview());
+            lastMessage.setMessageType(row.getLastMessageType());
+            lastMessage.setSentAt(row.getLastMessageAt());
+            if (row.getLastSenderId() != null) {
+                lastMessage.setSender(memberSummary(row.getLastSenderId(), row.getLastSenderUsername(), null));
+            }
+            dto.setLastMessage(lastMessage);
+            dto.setLastMessageAt(row.getLastMessageAt());
+        }
+        return dto;
+    }
+
+    private static User memberSummary(Long userId, String username, String avatarUrl) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setUsername(username);
+        user.setAvatarUrl(avatarUrl);
+        return user;
+    }
 }
\ No newline at end of file
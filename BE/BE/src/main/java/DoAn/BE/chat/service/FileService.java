@@ -11,6 +11,7 @@ import DoAn.BE.chat.repository.ChatRoomMemberRepository;
 import DoAn.BE.chat.repository.MessageRepository;
 import DoAn.BE.chat.repository.MessageStatusRepository;
 import DoAn.BE.storage.repository.FileRepository;
+import DoAn.BE.storage.service.FileStorageService;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.user.dto.UserDTO;
 import DoAn.BE.user.repository.UserRepository;
@@ -35,6 +36,10 @@ public class FileService {
     private final MessageStatusRepository messageStatusRepository;
     private final UserRepository userRepository;
     private final DoAn.BE.chat.websocket.service.WebSocketNotificationService webSocketNotificationService;
+    private final FileStorageService fileStorageService;
+    private final MessageSearchIndex messageSearchIndex;
+    private final RoomMembershipIndex roomMembershipIndex;
+    private final InboxService inboxService;
 
     public FileService(FileRepository fileRepository,
             ChatRoomRepository chatRoomRepository,
@@ -42,7 +47,11 @@ public class FileService {
             MessageRepository messageRepository,
             MessageStatusRepository messageStatusRepository,
             UserRepository userRepository,
-            DoAn.BE.chat.websocket.service.WebSocketNotificationService webSocketNotificationService) {
+            DoAn.BE.chat.websocket.service.WebSocketNotificationService webSocketNotificationService,
+            FileStorageService fileStorageService,
+            MessageSearchIndex messageSearchIndex,
+            RoomMembershipIndex roomMembershipIndex,
+            InboxService inboxService) {
         this.fileRepository = fileRepository;
         this.chatRoomRepository = chatRoomRepository;
         this.chatRoomMemberRepository = chatRoomMemberRepository;
@@ -50,6 +59,10 @@ public class FileService {
         this.messageStatusRepository = messageStatusRepository;
         this.userRepository = userRepository;
         this.webSocketNotificationService = webSocketNotificationService;
+        this.fileStorageService = fileStorageService;
+        this.messageSearchIndex = messageSearchIndex;
+        this.roomMembershipIndex = roomMembershipIndex;
+        this.inboxService = inboxService;
     }
 
     // Gửi tin nhắn có file đính kèm
@@ -60,7 +73,7 @@ public class FileService {
         ChatRoom chatRoom = chatRoomRepository.findById(request.getRoomId())
                 .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại"));
 
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(request.getRoomId(),
+        boolean isMember = roomMembershipIndex.isMember(request.getRoomId(),
                 senderId);
         if (!isMember) {
             throw new BadRequestException("Bạn không có quyền gửi tin nhắn trong phòng này");
@@ -83,6 +96,8 @@ public class FileService {
         message.setIsDeleted(false);
 
         message = messageRepository.save(message);
+        messageSearchIndex.indexAfterCommit(message);
+        inboxService.recordMessage(message);
 
         List<ChatRoomMember> members = chatRoomMemberRepository.findByChatRoom_RoomId(request.getRoomId());
         for (ChatRoomMember member : members) {
@@ -95,6 +110,7 @@ public class FileService {
                 messageStatusRepository.save(status);
             }
         }
+        chatRoomMemberRepository.incrementUnread(request.getRoomId(), senderId);
 
         MessDTO messageDTO = convertToMessageDTO(message);
 
@@ -123,14 +139,10 @@ public class FileService {
             throw new BadRequestException("Loại file không được hỗ trợ");
         }
 
-        DoAn.BE.storage.entity.File fileEntity = new DoAn.BE.storage.entity.File();
-        fileEntity.setOriginalFilename(file.getOriginalFilename());
-        fileEntity.setFilename(file.getOriginalFilename());
-        fileEntity.setFileSize(file.getSize());
-        fileEntity.setMimeType(contentType);
-        // NOTE: Path tạm thời - cần tích hợp với FileStorageService để lưu file thực tế
-        fileEntity.setFilePath("/uploads/" + file.getOriginalFilename());
-        fileEntity = fileRepository.save(fileEntity);
+        User sender = userRepository.findById(senderId)
+                .orElseThrow(() -> new EntityNotFoundException("Người gửi không tồn tại"));
+        // Lưu qua storage (blob store): cùng nội dung gửi vào nhiều phòng chỉ lưu một lần
+        DoAn.BE.storage.entity.File fileEntity = fileStorageService.storeAttachment(file, sender);
 
         SendMessageRequest request = new SendMessageRequest();
         request.setRoomId(roomId);
@@ -164,14 +176,9 @@ public class FileService {
             throw new BadRequestException("Định dạng ảnh không được hỗ trợ. Chỉ hỗ trợ: JPG, JPEG, PNG, GIF, WEBP");
         }
 
-        DoAn.BE.storage.entity.File imageEntity = new DoAn.BE.storage.entity.File();
-        imageEntity.setOriginalFilename(fileName);
-        imageEntity.setFilename(fileName);
-        imageEntity.setFileSize(imageFile.getSize());
-        imageEntity.setMimeType(contentType);
-        // NOTE: Path tạm thời - cần tích hợp với FileStorageService để lưu ảnh thực tế
-        imageEntity.setFilePath("/uploads/images/" + fileName);
-        imageEntity = fileRepository.save(imageEntity);
+        User sender = userRepository.findById(senderId)
+                .orElseThrow(() -> new EntityNotFoundException("Người gửi không tồn tại"));
+        DoAn.BE.storage.entity.File imageEntity = fileStorageService.storeAttachment(imageFile, sender);
 
         SendMessageRequest request = new SendMessageRequest();
         request.setRoomId(roomId);
@@ -191,7 +198,7 @@ public class FileService {
         chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại"));
 
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, userId);
+        boolean isMember = roomMembershipIndex.isMember(roomId, userId);
         if (!isMember) {
             throw new BadRequestException("Bạn không có quyền xem file trong phòng này");
         }
@@ -209,7 +216,7 @@ public class FileService {
         chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại"));
 
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, userId);
+        boolean isMember = roomMembershipIndex.isMember(roomId, userId);
         if (!isMember) {
             throw new BadRequestException("Bạn không có quyền xem hình ảnh trong phòng này");
         }
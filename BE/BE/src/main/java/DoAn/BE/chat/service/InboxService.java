@@ -0,0 +1,88 @@
+package DoAn.BE.chat.service;
+
+import DoAn.BE.chat.dto.InboxRoomDTO;
+import DoAn.BE.chat.entity.ChatRoom;
+import DoAn.BE.chat.entity.Message;
+import DoAn.BE.chat.repository.ChatRoomRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Read model cho danh sách phòng chat (inbox).
+ * Tin nhắn cuối được tóm tắt sẵn trên chat_rooms mỗi khi gửi/sửa/xóa tin nhắn,
+ * nên một trang inbox chỉ tốn một query (thêm một query đếm cho phân trang)
+ * thay vì load toàn bộ member + tin nhắn cuối cho từng phòng.
+ */
+@Service
+@Transactional
+@Slf4j
+public class InboxService {
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int PREVIEW_LENGTH = 200;
+    private static final String DELETED_PREVIEW = "Tin nhắn đã bị xóa";
+
+    private final ChatRoomRepository chatRoomRepository;
+
+    public InboxService(ChatRoomRepository chatRoomRepository) {
+        this.chatRoomRepository = chatRoomRepository;
+    }
+
+    // Điền tóm tắt tin nhắn cuối cho các phòng có từ trước khi có các cột này
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillLastMessages() {
+        chatRoomRepository.backfillLastMessageIds();
+        int updated = chatRoomRepository.backfillLastMessageDetails(DELETED_PREVIEW);
+        if (updated > 0) {
+            log.info("Backfilled tin nhắn cuối cho {} phòng chat", updated);
+        }
+    }
+
+    // Lấy một trang inbox của user, phòng hoạt động gần nhất lên đầu
+    @Transactional(readOnly = true)
+    public Page<InboxRoomDTO> getInbox(@NonNull Long userId, int page, int size) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        return chatRoomRepository.findInbox(userId, ChatRoom.RoomType.DIRECT,
+                PageRequest.of(Math.max(page, 0), pageSize));
+    }
+
+    // Ghi nhận tin nhắn mới là tin cuối của phòng (gọi sau khi đã save message)
+    public void recordMessage(@NonNull Message message) {
+        chatRoomRepository.updateLastMessage(
+                message.getChatRoom().getRoomId(),
+                message.getMessageId(),
+                message.getSentAt(),
+                buildPreview(message),
+                message.getMessageType(),
+                message.getSender() != null ? message.getSender().getUserId() : null);
+    }
+
+    // Cập nhật preview khi tin nhắn bị sửa/xóa (chỉ có tác dụng nếu đó là tin cuối)
+    public void refreshPreview(@NonNull Message message) {
+        chatRoomRepository.updateLastMessagePreview(
+                message.getChatRoom().getRoomId(),
+                message.getMessageId(),
+                buildPreview(message));
+    }
+
+    private String buildPreview(Message message) {
+        if (Boolean.TRUE.equals(message.getIsDeleted())) {
+            return DELETED_PREVIEW;
+        }
+        String content = message.getContent();
+        if (content == null || content.isBlank()) {
+            return switch (message.getMessageType()) {
+                case IMAGE -> "[Hình ảnh]";
+                case FILE -> "[File]";
+                default -> "";
+            };
+        }
+        return content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) : content;
+    }
+}
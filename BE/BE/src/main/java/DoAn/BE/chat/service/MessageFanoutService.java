@@ -0,0 +1,205 @@
+package DoAn.BE.chat.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import DoAn.BE.chat.dto.MessageRecipient;
+import DoAn.BE.chat.entity.MessageStatus;
+import DoAn.BE.notification.service.ChatNotificationService;
+import DoAn.BE.notification.service.FCMService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pipeline fan-out khi gửi tin nhắn:
+ * 1. Batch insert MessageStatus (DELIVERED) trong transaction của người gửi
+ * 2. Sau khi commit, đẩy notification + FCM push sang executor giới hạn (có backpressure)
+ */
+@Service
+@Slf4j
+public class MessageFanoutService {
+
+    private static final String INSERT_STATUS_SQL = "INSERT INTO message_status (message_id, user_id, status, timestamp) "
+            + "VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatNotificationService chatNotificationService;
+    private final FCMService fcmService;
+    private final MeterRegistry meterRegistry;
+    private final Counter callerRunsCounter;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private ThreadPoolExecutor executor;
+
+    @Value("${chat.fanout.pool-size:4}")
+    private int poolSize;
+
+    @Value("${chat.fanout.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${chat.fanout.status-batch-size:500}")
+    private int statusBatchSize;
+
+    public MessageFanoutService(JdbcTemplate jdbcTemplate, ChatNotificationService chatNotificationService,
+            FCMService fcmService, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chatNotificationService = chatNotificationService;
+        this.fcmService = fcmService;
+        this.meterRegistry = meterRegistry;
+        this.callerRunsCounter = Counter.builder("chat.message.fanout.caller_runs")
+                .description("Số lần queue đầy, fan-out chạy trên thread của người gửi")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chat-fanout-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    // Backpressure: queue đầy thì chạy luôn trên thread gọi
+                    callerRunsCounter.increment();
+                    if (!pool.isShutdown()) {
+                        runnable.run();
+                    }
+                });
+        Gauge.builder("chat.message.fanout.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Số task fan-out đang chờ trong queue")
+                .register(meterRegistry);
+        Gauge.builder("chat.message.fanout.in_flight", inFlight, AtomicInteger::get)
+                .description("Số task fan-out đang chạy")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Chat fan-out executor không kết thúc kịp, còn {} task", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Batch insert trạng thái DELIVERED cho tất cả người nhận (JDBC batch thay vì save từng dòng)
+     */
+    public void insertDeliveredStatuses(Long messageId, List<Long> recipientIds) {
+        if (recipientIds.isEmpty()) {
+            return;
+        }
+        stageTimer("status_insert").record(() -> {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.batchUpdate(INSERT_STATUS_SQL, recipientIds, statusBatchSize, (ps, userId) -> {
+                ps.setLong(1, messageId);
+                ps.setLong(2, userId);
+                ps.setString(3, MessageStatus.MessageStatusType.DELIVERED.name());
+                ps.setTimestamp(4, now);
+            });
+        });
+    }
+
+    /**
+     * Lên lịch fan-out notification + FCM sau khi transaction hiện tại commit
+     */
+    public void dispatchAfterCommit(FanoutTask task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(task);
+                }
+            });
+        } else {
+            submit(task);
+        }
+    }
+
+    private void submit(FanoutTask task) {
+        long enqueuedAt = System.nanoTime();
+        executor.execute(() -> {
+            inFlight.incrementAndGet();
+            try {
+                stageTimer("queue_wait").record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                runFanout(task);
+            } catch (RuntimeException e) {
+                log.error("Fan-out tin nhắn phòng {} thất bại: {}", task.roomId(), e.getMessage(), e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    private void runFanout(FanoutTask task) {
+        // Nếu là reply, gửi notification đặc biệt cho người được reply
+        if (task.replyTargetUserId() != null) {
+            stageTimer("notification").record(() -> chatNotificationService.createMessageRepliedNotification(
+                    task.replyTargetUserId(), task.senderName(), task.content(), task.roomId()));
+        }
+
+        // Notification tin nhắn mới cho các thành viên khác (trừ người được reply) - một transaction
+        List<Long> notifyUserIds = task.recipients().stream()
+                .map(MessageRecipient::userId)
+                .filter(userId -> !userId.equals(task.replyTargetUserId()))
+                .toList();
+        if (!notifyUserIds.isEmpty()) {
+            stageTimer("notification").record(() -> chatNotificationService.createNewMessageNotifications(
+                    notifyUserIds, task.senderName(), task.content(), task.roomId()));
+        }
+
+        // 📱 Push FCM notification (multicast)
+        List<String> tokens = task.recipients().stream()
+                .filter(recipient -> !recipient.userId().equals(task.replyTargetUserId()))
+                .map(MessageRecipient::fcmToken)
+                .filter(token -> token != null)
+                .toList();
+        if (!tokens.isEmpty()) {
+            String truncatedContent = task.content();
+            if (truncatedContent != null && truncatedContent.length() > 100) {
+                truncatedContent = truncatedContent.substring(0, 97) + "...";
+            }
+
+            Map<String, String> data = new HashMap<>();
+            data.put("type", "CHAT_NEW_MESSAGE");
+            data.put("roomId", task.roomId().toString());
+            data.put("link", "/chat/rooms/" + task.roomId());
+            String body = truncatedContent != null ? truncatedContent : "[Ảnh/Tệp]";
+            stageTimer("push").record(() -> fcmService.sendToDevices(tokens, "💬 " + task.senderName(), body, data));
+        }
+    }
+
+    // Timer theo stage: persist, status_insert, queue_wait, notification, push
+    public Timer stageTimer(String stage) {
+        return Timer.builder("chat.message.pipeline.stage")
+                .tag("stage", stage)
+                .description("Thời gian từng stage của pipeline gửi tin nhắn")
+                .register(meterRegistry);
+    }
+
+    // Dữ liệu cần thiết để fan-out một tin nhắn
+    public record FanoutTask(Long roomId, String senderName, String content, Long replyTargetUserId,
+            List<MessageRecipient> recipients) {
+    }
+}
@@ -0,0 +1,554 @@
+package DoAn.BE.chat.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import DoAn.BE.chat.entity.Message;
+import DoAn.BE.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Index tìm kiếm tin nhắn (Lucene embedded, lưu tại chat.search.index-dir):
+ * - Gửi/sửa/xóa tin nhắn cập nhật index sau khi commit, trên một thread riêng (giữ đúng thứ tự thao tác)
+ * - Tìm theo phòng, từ khóa (không dấu, không phân biệt hoa thường), người gửi, khoảng thời gian; có highlight
+ * - Index được refresh/commit định kỳ; mất index (hoặc index trống) thì dựng lại từ bảng messages
+ * - Queue cập nhật đầy thì thread gọi chờ (giữ thứ tự); chờ quá chat.search.enqueue-timeout-ms thì bỏ thao tác
+ *   và đánh dấu index cần dựng lại ở lần commit định kỳ tiếp theo
+ * Giới hạn: index nằm trên đĩa của từng instance và chỉ nhận cập nhật của tin nhắn gửi/sửa/xóa qua chính instance đó.
+ * Khi chạy nhiều instance (chat.broker.mode=relay) kết quả tìm kiếm thiếu tin nhắn từ instance khác cho tới lần
+ * rebuild; cấu hình chat.search.rebuild-cron để dựng lại định kỳ.
+ */
+@Service
+@Slf4j
+public class MessageSearchIndex {
+
+    private static final String F_ID = "id";
+    private static final String F_ID_SORT = "id_sort";
+    private static final String F_ROOM = "room";
+    private static final String F_SENDER = "sender";
+    private static final String F_SENDER_NAME = "sender_name";
+    private static final String F_TYPE = "type";
+    private static final String F_SENT_AT = "sent_at";
+    private static final String F_CONTENT = "content";
+
+    // Giới hạn độ sâu phân trang (offset + size)
+    private static final int MAX_WINDOW = 5000;
+    private static final int FRAGMENT_SIZE = 160;
+
+    private static final Sort NEWEST_FIRST = new Sort(
+            new SortField(F_SENT_AT, SortField.Type.LONG, true),
+            new SortField(F_ID_SORT, SortField.Type.LONG, true));
+
+    private final MessageRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+    private final Analyzer analyzer = new MessageAnalyzer();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // Có thao tác bị bỏ do queue đầy: index lệch với DB cho tới khi dựng lại
+    private final AtomicBoolean stale = new AtomicBoolean();
+
+    private FSDirectory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private ThreadPoolExecutor executor;
+    private volatile Thread indexThread;
+    private Counter droppedCounter;
+    private Timer queryTimer;
+
+    @Value("${chat.search.index-dir:./data/chat-search-index}")
+    private String indexDir;
+
+    @Value("${chat.search.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.search.enqueue-timeout-ms:5000}")
+    private long enqueueTimeoutMs;
+
+    @Value("${chat.search.rebuild-batch-size:1000}")
+    private int rebuildBatchSize;
+
+    public MessageSearchIndex(MessageRepository messageRepository, MeterRegistry meterRegistry) {
+        this.messageRepository = messageRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        Path path = Paths.get(indexDir).toAbsolutePath().normalize();
+        Files.createDirectories(path);
+        directory = FSDirectory.open(path);
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(writer, null);
+
+        droppedCounter = Counter.builder("chat.search.index.dropped")
+                .description("Số thao tác cập nhật index bị bỏ do queue đầy")
+                .register(meterRegistry);
+        queryTimer = Timer.builder("chat.search.query")
+                .description("Thời gian truy vấn index tìm kiếm tin nhắn")
+                .register(meterRegistry);
+
+        // Một thread duy nhất: các thao tác trên cùng tin nhắn được áp dụng đúng thứ tự commit
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chat-search-index");
+                    thread.setDaemon(true);
+                    indexThread = thread;
+                    return thread;
+                },
+                this::onQueueFull);
+        Gauge.builder("chat.search.index.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Số thao tác index đang chờ")
+                .register(meterRegistry);
+        log.info("Chat search index opened at {} ({} documents)", path, writer.getDocStats().numDocs);
+    }
+
+    private void onQueueFull(Runnable runnable, ThreadPoolExecutor pool) {
+        if (pool.isShutdown()) {
+            return;
+        }
+        if (Thread.currentThread() == indexThread) {
+            // Rebuild nối lô trên chính thread index: không được chờ queue của mình
+            runnable.run();
+            return;
+        }
+        try {
+            if (pool.getQueue().offer(runnable, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        droppedCounter.increment();
+        stale.set(true);
+        log.warn("Chat search index queue đầy quá {} ms, bỏ một thao tác cập nhật và sẽ dựng lại index", enqueueTimeoutMs);
+    }
+
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Chat search index executor không kết thúc kịp, còn {} thao tác", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    /**
+     * Index trống nhưng đã có tin nhắn (lần đầu chạy hoặc mất thư mục index): tự dựng lại
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (writer.getDocStats().numDocs == 0 && messageRepository.count() > 0) {
+            log.info("Chat search index trống, bắt đầu dựng lại từ bảng messages");
+            rebuild();
+        }
+    }
+
+    // ==================== CẬP NHẬT INDEX ====================
+
+    /**
+     * Thêm/cập nhật tin nhắn vào index sau khi transaction hiện tại commit
+     */
+    public void indexAfterCommit(Message message) {
+        IndexEntry entry = IndexEntry.of(message);
+        afterCommit(() -> upsert(entry));
+    }
+
+    /**
+     * Xóa tin nhắn khỏi index sau khi transaction hiện tại commit
+     */
+    public void removeAfterCommit(Long messageId) {
+        afterCommit(() -> delete(messageId));
+    }
+
+    /**
+     * Dựng lại toàn bộ index từ bảng messages. Mỗi lô được đọc và ghi ngay trên thread index,
+     * nên cập nhật realtime xen giữa các lô vẫn được áp dụng đúng thứ tự.
+     * @return false nếu đang có một lần rebuild khác chạy
+     */
+    public boolean rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.getQueue().clear();
+        executor.execute(() -> {
+            try {
+                writer.deleteAll();
+            } catch (IOException ex) {
+                log.error("Không thể xóa index cũ: {}", ex.getMessage(), ex);
+                rebuilding.set(false);
+                return;
+            }
+            executor.execute(() -> rebuildBatch(0L, 0L));
+        });
+        return true;
+    }
+
+    private void rebuildBatch(long afterId, long indexedSoFar) {
+        long lastId = afterId;
+        long indexed = indexedSoFar;
+        try {
+            while (true) {
+                List<Object[]> rows = messageRepository.findIndexBatch(lastId, PageRequest.of(0, rebuildBatchSize));
+                for (Object[] row : rows) {
+                    IndexEntry entry = IndexEntry.of(row);
+                    writer.updateDocument(new Term(F_ID, String.valueOf(entry.messageId())), toDocument(entry));
+                    lastId = entry.messageId();
+                }
+                indexed += rows.size();
+                if (rows.size() < rebuildBatchSize) {
+                    writer.commit();
+                    searcherManager.maybeRefresh();
+                    rebuilding.set(false);
+                    log.info("Chat search index rebuilt: {} messages", indexed);
+                    return;
+                }
+                // Nhường thread cho cập nhật realtime đang chờ; queue đầy thì làm tiếp lô sau ngay
+                if (executor.getQueue().remainingCapacity() > 0) {
+                    final long nextAfterId = lastId;
+                    final long nextIndexed = indexed;
+                    executor.execute(() -> rebuildBatch(nextAfterId, nextIndexed));
+                    return;
+                }
+            }
+        } catch (Exception ex) {
+            rebuilding.set(false);
+            log.error("Dựng lại chat search index thất bại sau {} tin nhắn: {}", indexed, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Dựng lại định kỳ (tắt mặc định); dùng khi chạy nhiều instance để nhận tin nhắn từ instance khác
+     */
+    @Scheduled(cron = "${chat.search.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        if (!rebuild()) {
+            log.debug("Chat search index đang được dựng lại, bỏ qua lần rebuild định kỳ");
+        }
+    }
+
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    private void afterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    executor.execute(task);
+                }
+            });
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    private void upsert(IndexEntry entry) {
+        try {
+            writer.updateDocument(new Term(F_ID, String.valueOf(entry.messageId())), toDocument(entry));
+        } catch (IOException ex) {
+            log.error("Không thể index tin nhắn {}: {}", entry.messageId(), ex.getMessage());
+        }
+    }
+
+    private void delete(Long messageId) {
+        try {
+            writer.deleteDocuments(new Term(F_ID, String.valueOf(messageId)));
+        } catch (IOException ex) {
+            log.error("Không thể xóa tin nhắn {} khỏi index: {}", messageId, ex.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.search.refresh-interval-ms:1000}")
+    public void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException ex) {
+            log.warn("Không thể refresh chat search index: {}", ex.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.search.commit-interval-ms:10000}")
+    public void commit() {
+        if (stale.compareAndSet(true, false) && !rebuild()) {
+            // Rebuild khác đang chạy có thể đã qua vị trí thao tác bị bỏ: thử lại lần sau
+            stale.set(true);
+        }
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException ex) {
+            log.warn("Không thể commit chat search index: {}", ex.getMessage());
+        }
+    }
+
+    private Document toDocument(IndexEntry entry) {
+        Document doc = new Document();
+        doc.add(new StringField(F_ID, String.valueOf(entry.messageId()), Field.Store.YES));
+        doc.add(new NumericDocValuesField(F_ID_SORT, entry.messageId()));
+        doc.add(new LongPoint(F_ROOM, entry.roomId()));
+        if (entry.senderId() != null) {
+            doc.add(new LongPoint(F_SENDER, entry.senderId()));
+        }
+        if (entry.senderUsername() != null) {
+            doc.add(new StringField(F_SENDER_NAME, entry.senderUsername().toLowerCase(Locale.ROOT), Field.Store.NO));
+        }
+        if (entry.messageType() != null) {
+            doc.add(new StringField(F_TYPE, entry.messageType().name(), Field.Store.NO));
+        }
+        doc.add(new LongPoint(F_SENT_AT, entry.sentAt()));
+        doc.add(new NumericDocValuesField(F_SENT_AT, entry.sentAt()));
+        if (entry.content() != null && !entry.content().isBlank()) {
+            doc.add(new TextField(F_CONTENT, entry.content(), Field.Store.YES));
+        }
+        return doc;
+    }
+
+    // ==================== TÌM KIẾM ====================
+
+    /**
+     * Tìm tin nhắn trong phòng, mới nhất trước. Chỉ trả về id và highlight, caller tự load entity.
+     */
+    public SearchResult search(SearchQuery query) {
+        Query keywordQuery = null;
+        if (hasText(query.keyword())) {
+            // Tất cả từ khóa phải xuất hiện (sau khi bỏ dấu, chữ thường)
+            keywordQuery = new QueryBuilder(analyzer)
+                    .createBooleanQuery(F_CONTENT, query.keyword().trim(), BooleanClause.Occur.MUST);
+            if (keywordQuery == null) {
+                // Chỉ gồm ký tự bị tokenizer bỏ qua (dấu câu...)
+                return new SearchResult(0, Collections.emptyList());
+            }
+        }
+        Query luceneQuery = buildQuery(query, keywordQuery);
+        Highlighter highlighter = keywordQuery != null ? newHighlighter(keywordQuery) : null;
+        int window = Math.min(query.offset() + query.size(), MAX_WINDOW);
+
+        return queryTimer.record(() -> {
+            IndexSearcher searcher = null;
+            try {
+                searcher = searcherManager.acquire();
+                int total = searcher.count(luceneQuery);
+                if (total == 0 || query.offset() >= window) {
+                    return new SearchResult(total, Collections.emptyList());
+                }
+                ScoreDoc[] scoreDocs = searcher.search(luceneQuery, window, NEWEST_FIRST).scoreDocs;
+
+                StoredFields storedFields = searcher.storedFields();
+                List<Hit> hits = new ArrayList<>(Math.max(0, scoreDocs.length - query.offset()));
+                for (int i = query.offset(); i < scoreDocs.length; i++) {
+                    Document doc = storedFields.document(scoreDocs[i].doc);
+                    Long messageId = Long.valueOf(doc.get(F_ID));
+                    hits.add(new Hit(messageId, highlighter != null ? highlight(highlighter, doc.get(F_CONTENT)) : null));
+                }
+                return new SearchResult(total, hits);
+            } catch (IOException ex) {
+                log.error("Truy vấn chat search index thất bại: {}", ex.getMessage(), ex);
+                return new SearchResult(0, Collections.emptyList());
+            } finally {
+                if (searcher != null) {
+                    try {
+                        searcherManager.release(searcher);
+                    } catch (IOException ex) {
+                        log.warn("Không thể trả searcher: {}", ex.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    private Query buildQuery(SearchQuery query, Query keywordQuery) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(LongPoint.newExactQuery(F_ROOM, query.roomId()), BooleanClause.Occur.FILTER);
+
+        if (keywordQuery != null) {
+            builder.add(keywordQuery, BooleanClause.Occur.MUST);
+        }
+        if (query.senderId() != null) {
+            builder.add(LongPoint.newExactQuery(F_SENDER, query.senderId()), BooleanClause.Occur.FILTER);
+        }
+        if (hasText(query.senderKeyword())) {
+            String pattern = "*" + escapeWildcard(query.senderKeyword().trim().toLowerCase(Locale.ROOT)) + "*";
+            builder.add(new WildcardQuery(new Term(F_SENDER_NAME, pattern)), BooleanClause.Occur.FILTER);
+        }
+        if (query.from() != null || query.to() != null) {
+            long from = query.from() != null ? toEpochMillis(query.from()) : Long.MIN_VALUE;
+            long to = query.to() != null ? toEpochMillis(query.to()) : Long.MAX_VALUE;
+            builder.add(LongPoint.newRangeQuery(F_SENT_AT, from, to), BooleanClause.Occur.FILTER);
+        }
+        if (query.messageType() != null) {
+            builder.add(new TermQuery(new Term(F_TYPE, query.messageType().name())), BooleanClause.Occur.FILTER);
+        }
+        return builder.build();
+    }
+
+    private Highlighter newHighlighter(Query query) {
+        QueryScorer scorer = new QueryScorer(query, F_CONTENT);
+        Highlighter highlighter = new Highlighter(
+                new SimpleHTMLFormatter("<mark>", "</mark>"),
+                new SimpleHTMLEncoder(),
+                scorer);
+        highlighter.setTextFragmenter(new SimpleSpanFragmenter(scorer, FRAGMENT_SIZE));
+        return highlighter;
+    }
+
+    private String highlight(Highlighter highlighter, String content) {
+        if (content == null) {
+            return null;
+        }
+        try {
+            return highlighter.getBestFragment(analyzer, F_CONTENT, content);
+        } catch (IOException | InvalidTokenOffsetsException ex) {
+            log.debug("Không thể highlight nội dung: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private static String escapeWildcard(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '*' || c == '?' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // ==================== KIỂU DỮ LIỆU ====================
+
+    /**
+     * Điều kiện tìm kiếm; các điều kiện null được bỏ qua, roomId bắt buộc
+     */
+    public record SearchQuery(Long roomId, String keyword, Long senderId, String senderKeyword,
+            LocalDateTime from, LocalDateTime to, Message.MessageType messageType, int offset, int size) {
+    }
+
+    public record Hit(Long messageId, String highlight) {
+    }
+
+    public record SearchResult(long total, List<Hit> hits) {
+    }
+
+    // Ảnh chụp các trường cần index, lấy trên thread của request (entity không dùng được sau commit)
+    private record IndexEntry(Long messageId, Long roomId, Long senderId, String senderUsername,
+            String content, Message.MessageType messageType, long sentAt) {
+
+        static IndexEntry of(Message message) {
+            LocalDateTime sentAt = message.getSentAt() != null ? message.getSentAt() : LocalDateTime.now();
+            return new IndexEntry(
+                    message.getMessageId(),
+                    message.getChatRoom().getRoomId(),
+                    message.getSender() != null ? message.getSender().getUserId() : null,
+                    message.getSender() != null ? message.getSender().getUsername() : null,
+                    message.getContent(),
+                    message.getMessageType(),
+                    toEpochMillis(sentAt));
+        }
+
+        // [messageId, roomId, senderId, senderUsername, content, messageType, sentAt]
+        static IndexEntry of(Object[] row) {
+            LocalDateTime sentAt = row[6] != null ? (LocalDateTime) row[6] : LocalDateTime.now();
+            return new IndexEntry(
+                    ((Number) row[0]).longValue(),
+                    ((Number) row[1]).longValue(),
+                    row[2] != null ? ((Number) row[2]).longValue() : null,
+                    (String) row[3],
+                    (String) row[4],
+                    (Message.MessageType) row[5],
+                    toEpochMillis(sentAt));
+        }
+    }
+
+    /**
+     * Tách từ theo Unicode, chữ thường và bỏ dấu (tiếng Việt: "Nguyễn" khớp "nguyen")
+     */
+    private static final class MessageAnalyzer extends Analyzer {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer tokenizer = new StandardTokenizer();
+            TokenStream stream = new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer));
+            return new TokenStreamComponents(tokenizer, stream);
+        }
+
+        @Override
+        protected TokenStream normalize(String fieldName, TokenStream in) {
+            return new ASCIIFoldingFilter(new LowerCaseFilter(in));
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package DoAn.BE.chat.service;
 
 import DoAn.BE.chat.dto.MessDTO;
+import DoAn.BE.chat.dto.MessageCursorPageDTO;
+import DoAn.BE.chat.dto.MessageRecipient;
 import DoAn.BE.chat.dto.SendMessageRequest;
 import DoAn.BE.chat.entity.ChatRoom;
-import DoAn.BE.chat.entity.ChatRoomMember;
 import DoAn.BE.chat.entity.Message;
 import DoAn.BE.chat.entity.MessageStatus;
 import DoAn.BE.chat.entity.MessageStatusId;
@@ -25,17 +26,26 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
 
 @Service
 @Transactional
 public class MessageService {
 
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final MessageRepository messageRepository;
     private final ChatRoomRepository chatRoomRepository;
     private final ChatRoomMemberRepository chatRoomMemberRepository;
@@ -44,7 +54,10 @@ public class MessageService {
     private final WebSocketNotificationService webSocketNotificationService;
     private final ChatNotificationService chatNotificationService;
     private final TypingIndicatorService typingIndicatorService;
-    private final DoAn.BE.notification.service.FCMService fcmService;
+    private final MessageFanoutService messageFanoutService;
+    private final MessageSearchIndex messageSearchIndex;
+    private final RoomMembershipIndex roomMembershipIndex;
+    private final InboxService inboxService;
 
     public MessageService(MessageRepository messageRepository,
             ChatRoomRepository chatRoomRepository,
@@ -54,7 +67,10 @@ public class MessageService {
             WebSocketNotificationService webSocketNotificationService,
             ChatNotificationService chatNotificationService,
             TypingIndicatorService typingIndicatorService,
-            DoAn.BE.notification.service.FCMService fcmService) {
+            MessageFanoutService messageFanoutService,
+            MessageSearchIndex messageSearchIndex,
+            RoomMembershipIndex roomMembershipIndex,
+            InboxService inboxService) {
         this.messageRepository = messageRepository;
         this.chatRoomRepository = chatRoomRepository;
         this.chatRoomMemberRepository = chatRoomMemberRepository;
@@ -63,7 +79,10 @@ public class MessageService {
         this.webSocketNotificationService = webSocketNotificationService;
         this.chatNotificationService = chatNotificationService;
         this.typingIndicatorService = typingIndicatorService;
-        this.fcmService = fcmService;
+        this.messageFanoutService = messageFanoutService;
+        this.messageSearchIndex = messageSearchIndex;
+        this.roomMembershipIndex = roomMembershipIndex;
+        this.inboxService = inboxService;
     }
 
     // Gửi tin nhắn
@@ -77,7 +96,7 @@ public class MessageService {
         ChatRoom chatRoom = chatRoomRepository.findById(request.getRoomId())
                 .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại"));
 
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(request.getRoomId(),
+        boolean isMember = roomMembershipIndex.isMember(request.getRoomId(),
                 senderId);
         if (!isMember) {
             throw new BadRequestException("Bạn không có quyền gửi tin nhắn trong phòng này");
@@ -103,79 +122,30 @@ public class MessageService {
             message.setReplyToMessage(replyToMessage);
         }
 
+        long persistStart = System.nanoTime();
         message = messageRepository.save(message);
+        messageFanoutService.stageTimer("persist").record(System.nanoTime() - persistStart, TimeUnit.NANOSECONDS);
+        messageSearchIndex.indexAfterCommit(message);
+        inboxService.recordMessage(message);
 
-        List<ChatRoomMember> members = chatRoomMemberRepository.findByChatRoom_RoomId(request.getRoomId());
-        for (ChatRoomMember member : members) {
-            if (member.getUser() != null && member.getUser().getUserId() != null
-                    && !member.getUser().getUserId().equals(senderId)) {
-                MessageStatus status = new MessageStatus();
-                status.setId(new MessageStatusId(message.getMessageId(), member.getUser().getUserId()));
-                status.setMessage(message);
-                status.setUser(member.getUser());
-                status.setStatus(MessageStatus.MessageStatusType.DELIVERED);
-                status.setTimestamp(LocalDateTime.now());
-                messageStatusRepository.save(status);
-            }
-        }
+        // Load members một lần, dùng cho cả MessageStatus và fan-out
+        List<MessageRecipient> recipients = chatRoomMemberRepository.findRecipients(request.getRoomId(), senderId);
+
+        messageFanoutService.insertDeliveredStatuses(message.getMessageId(),
+                recipients.stream().map(MessageRecipient::userId).toList());
+        chatRoomMemberRepository.incrementUnread(request.getRoomId(), senderId);
 
         MessDTO messageDTO = convertToMessageDTO(message);
 
         webSocketNotificationService.notifyNewMessage(request.getRoomId(), messageDTO);
 
-        List<ChatRoomMember> otherMembers = chatRoomMemberRepository.findByChatRoom_RoomId(request.getRoomId())
-                .stream()
-                .filter(member -> member.getUser() != null && member.getUser().getUserId() != null
-                        && !member.getUser().getUserId().equals(senderId))
-                .toList();
-
-        // Nếu là reply, gửi notification đặc biệt cho người được reply
-        if (replyToMessage != null && replyToMessage.getSender() != null
-                && !replyToMessage.getSender().getUserId().equals(senderId)) {
-            chatNotificationService.createMessageRepliedNotification(
-                    replyToMessage.getSender().getUserId(),
-                    sender.getUsername(),
-                    request.getContent(),
-                    request.getRoomId());
-        }
-
-        // Gửi notification tin nhắn mới cho các members khác (trừ người gửi và người
-        // được reply)
-        for (ChatRoomMember member : otherMembers) {
-            // Bỏ qua nếu đã gửi reply notification cho user này
-            if (replyToMessage != null && replyToMessage.getSender() != null
-                    && member.getUser().getUserId().equals(replyToMessage.getSender().getUserId())) {
-                continue;
-            }
-
-            chatNotificationService.createNewMessageNotification(
-                    member.getUser().getUserId(),
-                    sender.getUsername(),
-                    request.getContent(),
-                    request.getRoomId());
-
-            // 📱 Push FCM notification
-            try {
-                if (member.getUser().getFcmToken() != null) {
-                    String truncatedContent = request.getContent();
-                    if (truncatedContent != null && truncatedContent.length() > 100) {
-                        truncatedContent = truncatedContent.substring(0, 97) + "...";
-                    }
-
-                    Map<String, String> data = new HashMap<>();
-                    data.put("type", "CHAT_NEW_MESSAGE");
-                    data.put("roomId", request.getRoomId().toString());
-                    data.put("link", "/chat/rooms/" + request.getRoomId());
-                    fcmService.sendToDevice(
-                            member.getUser().getFcmToken(),
-                            "💬 " + sender.getUsername(),
-                            truncatedContent != null ? truncatedContent : "[Ảnh/Tệp]",
-                            data);
-                }
-            } catch (Exception e) {
-                // Log but don't fail
-            }
-        }
+        // Notification + FCM push chạy bất đồng bộ sau khi commit
+        Long replyTargetUserId = replyToMessage != null && replyToMessage.getSender() != null
+                && !replyToMessage.getSender().getUserId().equals(senderId)
+                        ? replyToMessage.getSender().getUserId()
+                        : null;
+        messageFanoutService.dispatchAfterCommit(new MessageFanoutService.FanoutTask(
+                request.getRoomId(), sender.getUsername(), request.getContent(), replyTargetUserId, recipients));
 
         typingIndicatorService.forceStopTyping(request.getRoomId(), senderId);
 
@@ -212,7 +182,7 @@ public class MessageService {
                 User mentionedUser = mentionedUserOpt.get();
 
                 // Check if mentioned user is in the chat room
-                boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(
+                boolean isMember = roomMembershipIndex.isMember(
                         chatRoom.getRoomId(), mentionedUser.getUserId());
 
                 if (isMember && !mentionedUser.getUserId().equals(sender.getUserId())) {
@@ -251,31 +221,100 @@ public class MessageService {
         }
     }
 
-    // Lấy tin nhắn trong phòng chat
-    public List<MessDTO> getMessagesByRoomId(@NonNull Long roomId, @NonNull Long userId, int page, int size) {
-        // Validate phòng chat tồn tại
-        chatRoomRepository.findById(roomId)
-                .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại"));
+    // Lấy tin nhắn trong phòng chat theo page/size (endpoint cũ)
+    // Page 0 dùng keyset (trang mới nhất), các page sau dùng offset trên cùng index
+    public Page<MessDTO> getMessagesByRoomId(@NonNull Long roomId, @NonNull Long userId, int page, int size) {
+        validateRoomAccess(roomId, userId);
 
-        // Kiểm tra user có trong phòng không
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, userId);
-        if (!isMember) {
-            throw new BadRequestException("Bạn không có quyền xem tin nhắn trong phòng này");
+        Pageable pageable = PageRequest.of(page, clampPageSize(size));
+        Page<Message> messagePage;
+        if (page == 0) {
+            // Chỉ đếm khi trang đầu đầy (phòng có nhiều hơn một trang)
+            messagePage = PageableExecutionUtils.getPage(messageRepository.findLatestInRoom(roomId, pageable),
+                    pageable, () -> messageRepository.countByChatRoom_RoomId(roomId));
+        } else {
+            messagePage = messageRepository.findPageInRoom(roomId, pageable);
         }
 
-        // Lấy tin nhắn với phân trang
-        List<Message> messages = messageRepository.findByChatRoom_RoomIdOrderBySentAtAsc(roomId);
+        // Query trả về mới -> cũ, client hiển thị cũ -> mới
+        List<Message> ascending = new ArrayList<>(messagePage.getContent());
+        Collections.reverse(ascending);
+        return new PageImpl<>(convertToMessageDTOs(ascending), messagePage.getPageable(),
+                messagePage.getTotalElements());
+    }
 
-        // Convert sang DTO
-        return messages.stream()
-                .map(this::convertToMessageDTO)
-                .collect(Collectors.toList());
+    // Lấy tin nhắn trong phòng chat theo cursor (sentAt, messageId)
+    public MessageCursorPageDTO getMessagesByCursor(@NonNull Long roomId, @NonNull Long userId,
+            LocalDateTime cursorSentAt, Long cursorMessageId, MessageCursorPageDTO.Direction direction, int size) {
+        validateRoomAccess(roomId, userId);
+
+        int pageSize = clampPageSize(size);
+        // Lấy dư 1 dòng để biết còn dữ liệu hay không
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        boolean hasCursor = cursorSentAt != null && cursorMessageId != null;
+
+        List<Message> slice;
+        boolean hasOlder;
+        boolean hasNewer;
+        if (!hasCursor) {
+            slice = new ArrayList<>(messageRepository.findLatestInRoom(roomId, limit));
+            hasOlder = slice.size() > pageSize;
+            hasNewer = false;
+            trimAndReverse(slice, pageSize);
+        } else if (direction == MessageCursorPageDTO.Direction.AFTER) {
+            slice = new ArrayList<>(messageRepository.findAfterCursor(roomId, cursorSentAt, cursorMessageId, limit));
+            hasNewer = slice.size() > pageSize;
+            if (slice.size() > pageSize) {
+                slice.subList(pageSize, slice.size()).clear();
+            }
+            // Phía bên kia cursor không nằm trong lát: probe một dòng
+            hasOlder = !messageRepository.findIdsBeforeCursor(roomId, cursorSentAt, cursorMessageId,
+                    PageRequest.of(0, 1)).isEmpty();
+        } else {
+            slice = new ArrayList<>(messageRepository.findBeforeCursor(roomId, cursorSentAt, cursorMessageId, limit));
+            hasOlder = slice.size() > pageSize;
+            trimAndReverse(slice, pageSize);
+            hasNewer = !messageRepository.findIdsAfterCursor(roomId, cursorSentAt, cursorMessageId,
+                    PageRequest.of(0, 1)).isEmpty();
+        }
+
+        MessageCursorPageDTO result = new MessageCursorPageDTO();
+        result.setMessages(convertToMessageDTOs(slice));
+        result.setHasOlder(hasOlder);
+        result.setHasNewer(hasNewer);
+        if (!slice.isEmpty()) {
+            Message oldest = slice.get(0);
+            Message newest = slice.get(slice.size() - 1);
+            result.setOlderCursorSentAt(oldest.getSentAt());
+            result.setOlderCursorMessageId(oldest.getMessageId());
+            result.setNewerCursorSentAt(newest.getSentAt());
+            result.setNewerCursorMessageId(newest.getMessageId());
+        } else if (hasCursor) {
+            // Không có dữ liệu mới/cũ hơn, giữ nguyên cursor để client poll tiếp
+            result.setOlderCursorSentAt(cursorSentAt);
+            result.setOlderCursorMessageId(cursorMessageId);
+            result.setNewerCursorSentAt(cursorSentAt);
+            result.setNewerCursorMessageId(cursorMessageId);
+        }
+        return result;
+    }
+
+    // Bỏ dòng dư và đảo list mới -> cũ thành cũ -> mới
+    private void trimAndReverse(List<Message> newestFirst, int pageSize) {
+        if (newestFirst.size() > pageSize) {
+            newestFirst.subList(pageSize, newestFirst.size()).clear();
+        }
+        Collections.reverse(newestFirst);
+    }
+
+    private int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
     }
 
     // Đánh dấu tin nhắn đã đọc
     public void markMessageAsSeen(@NonNull Long messageId, @NonNull Long userId) {
         // Validate message tồn tại
-        messageRepository.findById(messageId)
+        Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new EntityNotFoundException("Tin nhắn không tồn tại"));
 
         // Tìm MessageStatus
@@ -288,6 +327,9 @@ public class MessageService {
                 status.setStatus(MessageStatus.MessageStatusType.SEEN);
                 status.setTimestamp(LocalDateTime.now());
                 messageStatusRepository.save(status);
+                if (message.getSender() != null && !userId.equals(message.getSender().getUserId())) {
+                    chatRoomMemberRepository.decrementUnread(message.getChatRoom().getRoomId(), userId);
+                }
 
                 // Gửi notification qua WebSocket
                 webSocketNotificationService.notifyMessageSeen(
@@ -317,6 +359,20 @@ public class MessageService {
 
     // Chuyển đổi Message entity sang DTO
     private MessDTO convertToMessageDTO(Message message) {
+        MessDTO dto = toMessageDTOWithoutSeenBy(message);
+
+        // Populate seenBy list
+        List<UserDTO> seenBy = messageStatusRepository
+                .findByMessage_MessageIdAndStatus(message.getMessageId(), MessageStatus.MessageStatusType.SEEN)
+                .stream()
+                .map(status -> toSeenByUser(status.getUser()))
+                .collect(Collectors.toList());
+        dto.setSeenBy(seenBy);
+
+        return dto;
+    }
+
+    private MessDTO toMessageDTOWithoutSeenBy(Message message) {
         MessDTO dto = new MessDTO();
         dto.setMessageId(message.getMessageId());
         dto.setRoomId(message.getChatRoom().getRoomId());
@@ -339,73 +395,89 @@ public class MessageService {
         dto.setIsEdited(message.getEditedAt() != null);
         dto.setReplyToMessageId(
                 message.getReplyToMessage() != null ? message.getReplyToMessage().getMessageId() : null);
-
-        // Populate seenBy list
-        List<UserDTO> seenBy = messageStatusRepository
-                .findByMessage_MessageIdAndStatus(message.getMessageId(), MessageStatus.MessageStatusType.SEEN)
-                .stream()
-                .map(status -> {
-                    User u = status.getUser();
-                    UserDTO uDTO = new UserDTO();
-                    uDTO.setUserId(u.getUserId());
-                    uDTO.setUsername(u.getUsername());
-                    uDTO.setAvatarUrl(u.getAvatarUrl());
-                    return uDTO;
-                })
-                .collect(Collectors.toList());
-        dto.setSeenBy(seenBy);
-
         return dto;
     }
 
-    // Tìm kiếm tin nhắn theo nội dung
-    public List<MessDTO> searchMessages(@NonNull Long roomId, String keyword, @NonNull Long userId, Pageable pageable) {
-        // Validate phòng chat tồn tại
-        chatRoomRepository.findById(roomId)
-                .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại"));
+    private UserDTO toSeenByUser(User u) {
+        UserDTO uDTO = new UserDTO();
+        uDTO.setUserId(u.getUserId());
+        uDTO.setUsername(u.getUsername());
+        uDTO.setAvatarUrl(u.getAvatarUrl());
+        return uDTO;
+    }
 
-        // Kiểm tra user có trong phòng không
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, userId);
-        if (!isMember) {
-            throw new BadRequestException("Bạn không có quyền tìm kiếm trong phòng này");
+    // Chuyển đổi nhiều Message sang DTO, load seenBy bằng một query
+    private List<MessDTO> convertToMessageDTOs(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return new ArrayList<>();
         }
+        List<Long> messageIds = messages.stream().map(Message::getMessageId).toList();
+        Map<Long, List<UserDTO>> seenByMessage = messageStatusRepository
+                .findByMessageIdsAndStatus(messageIds, MessageStatus.MessageStatusType.SEEN)
+                .stream()
+                .collect(Collectors.groupingBy(status -> status.getId().getMessageId(),
+                        Collectors.mapping(status -> toSeenByUser(status.getUser()), Collectors.toList())));
 
-        // Tìm kiếm tin nhắn
-        List<Message> messages = messageRepository.searchMessagesByContent(roomId, keyword);
-
-        // Apply pagination manually
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), messages.size());
-        List<Message> pagedMessages = messages.subList(start, end);
-
-        return pagedMessages.stream()
-                .map(this::convertToMessageDTO)
+        return messages.stream()
+                .map(message -> {
+                    MessDTO dto = toMessageDTOWithoutSeenBy(message);
+                    dto.setSeenBy(seenByMessage.getOrDefault(message.getMessageId(), new ArrayList<>()));
+                    return dto;
+                })
                 .collect(Collectors.toList());
     }
 
-    // Tìm kiếm tin nhắn theo người gửi
-    public List<MessDTO> searchMessagesBySender(@NonNull Long roomId, String senderKeyword, @NonNull Long userId) {
-        // Validate permissions
+    /**
+     * Tìm kiếm tin nhắn trong phòng qua search index (mới nhất trước, có highlight theo từ khóa).
+     * Các điều kiện null được bỏ qua; index chỉ trả id, nội dung hiển thị load từ DB theo một query.
+     */
+    public Page<MessDTO> searchMessages(@NonNull Long roomId, @NonNull Long userId,
+            String keyword, Long senderId, String senderKeyword,
+            LocalDateTime startDate, LocalDateTime endDate, int page, int size) {
         validateRoomAccess(roomId, userId);
+        if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+            throw new BadRequestException("Thời gian bắt đầu phải trước thời gian kết thúc");
+        }
 
-        List<Message> messages = messageRepository.searchMessagesBySender(roomId, senderKeyword);
-
-        return messages.stream()
-                .map(this::convertToMessageDTO)
-                .collect(Collectors.toList());
-    }
+        Pageable pageable = PageRequest.of(Math.max(page, 0), clampPageSize(size));
+        MessageSearchIndex.SearchResult result = messageSearchIndex.search(new MessageSearchIndex.SearchQuery(
+                roomId, keyword, senderId, senderKeyword, startDate, endDate, null,
+                (int) pageable.getOffset(), pageable.getPageSize()));
+        if (result.hits().isEmpty()) {
+            return new PageImpl<>(new ArrayList<>(), pageable, result.total());
+        }
 
-    // Tìm kiếm tin nhắn theo khoảng thời gian
-    public List<MessDTO> searchMessagesByDateRange(@NonNull Long roomId, LocalDateTime startDate, LocalDateTime endDate,
-            @NonNull Long userId) {
-        // Validate permissions
-        validateRoomAccess(roomId, userId);
+        Map<Long, Message> byId = messageRepository.findAllForSearchResult(
+                result.hits().stream().map(MessageSearchIndex.Hit::messageId).toList())
+                .stream()
+                .collect(Collectors.toMap(Message::getMessageId, m -> m));
+
+        // Giữ thứ tự của index; bỏ tin nhắn đã xóa/khác phòng nếu index chưa kịp cập nhật
+        List<Message> messages = new ArrayList<>();
+        Map<Long, String> highlights = new HashMap<>();
+        for (MessageSearchIndex.Hit hit : result.hits()) {
+            Message message = byId.get(hit.messageId());
+            if (message == null || Boolean.TRUE.equals(message.getIsDeleted())
+                    || !roomId.equals(message.getChatRoom().getRoomId())) {
+                continue;
+            }
+            messages.add(message);
+            if (hit.highlight() != null) {
+                highlights.put(hit.messageId(), hit.highlight());
+            }
+        }
 
-        List<Message> messages = messageRepository.searchMessagesByDateRange(roomId, startDate, endDate);
+        List<MessDTO> dtos = convertToMessageDTOs(messages);
+        dtos.forEach(dto -> dto.setHighlight(highlights.get(dto.getMessageId())));
+        return new PageImpl<>(dtos, pageable, result.total());
+    }
 
-        return messages.stream()
-                .map(this::convertToMessageDTO)
-                .collect(Collectors.toList());
+    /**
+     * Dựng lại search index từ bảng messages (chạy nền)
+     * @return false nếu đang có một lần dựng lại khác
+     */
+    public boolean rebuildSearchIndex() {
+        return messageSearchIndex.rebuild();
     }
 
     // Tìm kiếm tin nhắn theo loại
@@ -442,6 +514,8 @@ public class MessageService {
         message.markAsEdited();
 
         message = messageRepository.save(message);
+        messageSearchIndex.indexAfterCommit(message);
+        inboxService.refreshPreview(message);
 
         MessDTO messageDTO = convertToMessageDTO(message);
 
@@ -450,15 +524,13 @@ public class MessageService {
 
         // Gửi notification cho các thành viên khác
         final Message finalMessage = message;
-        List<ChatRoomMember> otherMembers = chatRoomMemberRepository
-                .findByChatRoom_RoomId(finalMessage.getChatRoom().getRoomId())
-                .stream()
-                .filter(member -> !member.getUser().getUserId().equals(finalMessage.getSender().getUserId()))
-                .toList();
-
-        for (ChatRoomMember member : otherMembers) {
+        Long editorId = finalMessage.getSender().getUserId();
+        for (Long memberId : chatRoomMemberRepository.findUserIdsByRoomId(finalMessage.getChatRoom().getRoomId())) {
+            if (memberId.equals(editorId)) {
+                continue;
+            }
             chatNotificationService.createChatNotification(
-                    member.getUser().getUserId(),
+                    memberId,
                     "MESSAGE_EDITED",
                     "Tin nhắn đã được sửa",
                     finalMessage.getSender().getUsername() + " đã sửa tin nhắn",
@@ -482,6 +554,8 @@ public class MessageService {
         // Soft delete
         message.setIsDeleted(true);
         messageRepository.save(message);
+        messageSearchIndex.removeAfterCommit(messageId);
+        inboxService.refreshPreview(message);
 
         // Gửi WebSocket notification
         webSocketNotificationService.notifyMessageDeleted(message.getChatRoom().getRoomId(), messageId, userId);
@@ -490,15 +564,12 @@ public class MessageService {
         User deleter = userRepository.findById(userId).orElse(null);
         if (deleter != null) {
             final Message finalMessage = message;
-            List<ChatRoomMember> otherMembers = chatRoomMemberRepository
-                    .findByChatRoom_RoomId(finalMessage.getChatRoom().getRoomId())
-                    .stream()
-                    .filter(member -> !member.getUser().getUserId().equals(deleter.getUserId()))
-                    .toList();
-
-            for (ChatRoomMember member : otherMembers) {
+            for (Long memberId : chatRoomMemberRepository.findUserIdsByRoomId(finalMessage.getChatRoom().getRoomId())) {
+                if (memberId.equals(deleter.getUserId())) {
+                    continue;
+                }
                 chatNotificationService.createChatNotification(
-                        member.getUser().getUserId(),
+                        memberId,
                         "MESSAGE_DELETED",
                         "Tin nhắn đã bị xóa",
                         deleter.getUsername() + " đã xóa tin nhắn",
@@ -512,7 +583,7 @@ public class MessageService {
         chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new EntityNotFoundException("Phòng chat không tồn tại"));
 
-        boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, userId);
+        boolean isMember = roomMembershipIndex.isMember(roomId, userId);
         if (!isMember) {
             throw new BadRequestException("Bạn không có quyền truy cập phòng này");
         }
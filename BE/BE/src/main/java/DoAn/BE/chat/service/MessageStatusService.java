@@ -3,9 +3,13 @@ package DoAn.BE.chat.service;
 import DoAn.BE.chat.entity.Message;
 import DoAn.BE.chat.entity.MessageStatus;
 import DoAn.BE.chat.entity.MessageStatusId;
+import DoAn.BE.chat.repository.ChatRoomMemberRepository;
 import DoAn.BE.chat.repository.MessageRepository;
 import DoAn.BE.chat.repository.MessageStatusRepository;
 import DoAn.BE.common.exception.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,14 +20,27 @@ import java.util.Optional;
 
 @Service
 @Transactional
+@Slf4j
 public class MessageStatusService {
 
     private final MessageStatusRepository messageStatusRepository;
     private final MessageRepository messageRepository;
+    private final ChatRoomMemberRepository chatRoomMemberRepository;
 
-    public MessageStatusService(MessageStatusRepository messageStatusRepository, MessageRepository messageRepository) {
+    public MessageStatusService(MessageStatusRepository messageStatusRepository, MessageRepository messageRepository,
+            ChatRoomMemberRepository chatRoomMemberRepository) {
         this.messageStatusRepository = messageStatusRepository;
         this.messageRepository = messageRepository;
+        this.chatRoomMemberRepository = chatRoomMemberRepository;
+    }
+
+    // Điền unread_count cho các thành viên có từ trước khi có counter
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillUnreadCounts() {
+        int updated = chatRoomMemberRepository.backfillUnreadCounts(MessageStatus.MessageStatusType.SEEN);
+        if (updated > 0) {
+            log.info("Backfilled unread_count cho {} thành viên phòng chat", updated);
+        }
     }
 
     // Đánh dấu tin nhắn đã gửi
@@ -44,7 +61,7 @@ public class MessageStatusService {
     
     // Đánh dấu tin nhắn đã đọc
     public void markMessageAsSeen(@NonNull Long messageId, @NonNull Long userId) {
-        messageRepository.findById(messageId)
+        Message message = messageRepository.findById(messageId)
             .orElseThrow(() -> new EntityNotFoundException("Tin nhắn không tồn tại"));
         
         Optional<MessageStatus> statusOpt = messageStatusRepository.findById(
@@ -52,18 +69,27 @@ public class MessageStatusService {
         
         if (statusOpt.isPresent()) {
             MessageStatus status = statusOpt.get();
-            status.setStatus(MessageStatus.MessageStatusType.SEEN);
-            status.setTimestamp(LocalDateTime.now());
-            messageStatusRepository.save(status);
+            if (status.getStatus() != MessageStatus.MessageStatusType.SEEN) {
+                status.setStatus(MessageStatus.MessageStatusType.SEEN);
+                status.setTimestamp(LocalDateTime.now());
+                messageStatusRepository.save(status);
+                decrementUnread(message, userId);
+            }
         }
     }
     
-    // Đánh dấu tất cả tin nhắn trong phòng đã đọc
+    // Đánh dấu tất cả tin nhắn trong phòng đã đọc (một câu UPDATE + reset counter)
     public void markAllMessagesAsSeen(@NonNull Long roomId, @NonNull Long userId) {
-        List<Message> messages = messageRepository.findByChatRoom_RoomIdOrderBySentAtAsc(roomId);
-        
-        for (Message message : messages) {
-            markMessageAsSeen(message.getMessageId(), userId);
+        messageStatusRepository.markRoomSeen(roomId, userId, MessageStatus.MessageStatusType.SEEN, LocalDateTime.now());
+        chatRoomMemberRepository.resetUnread(roomId, userId);
+    }
+
+    /**
+     * Giảm counter khi một tin nhắn của người khác chuyển sang SEEN
+     */
+    public void decrementUnread(Message message, @NonNull Long userId) {
+        if (message.getSender() != null && !userId.equals(message.getSender().getUserId())) {
+            chatRoomMemberRepository.decrementUnread(message.getChatRoom().getRoomId(), userId);
         }
     }
     
@@ -79,8 +105,13 @@ public class MessageStatusService {
         return messageStatusRepository.findByMessage_MessageId(messageId);
     }
     
-    // Đếm số tin nhắn chưa đọc trong phòng
+    // Đếm số tin nhắn chưa đọc trong phòng (đọc counter; chỉ đếm lại khi dòng chưa được backfill)
+    @Transactional(readOnly = true)
     public Long getUnreadCount(@NonNull Long roomId, @NonNull Long userId) {
+        Integer counter = chatRoomMemberRepository.findUnreadCount(roomId, userId).orElse(null);
+        if (counter != null) {
+            return counter.longValue();
+        }
         return messageStatusRepository.countUnreadMessagesInRoom(roomId, userId);
     }
 }
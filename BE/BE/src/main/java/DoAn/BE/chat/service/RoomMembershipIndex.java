@@ -0,0 +1,66 @@
+package DoAn.BE.chat.service;
+
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import DoAn.BE.chat.repository.ChatRoomMemberRepository;
+import DoAn.BE.common.cache.InvalidatingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Index thành viên phòng chat trong memory (roomId -> tập userId), nạp lười từ DB ở lần hỏi đầu tiên.
+ * Kiểm tra quyền cho STOMP frame (gửi tin, typing) và REST chỉ là một lần tra hash.
+ * Mọi thay đổi thành viên phải gọi invalidate(roomId); entry còn hết hạn sau ttl-seconds
+ * để các instance khác (broker relay) không giữ dữ liệu cũ quá lâu.
+ */
+@Service
+public class RoomMembershipIndex {
+
+    private final ChatRoomMemberRepository chatRoomMemberRepository;
+    private final InvalidatingCache<Long, Set<Long>> rooms;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public RoomMembershipIndex(ChatRoomMemberRepository chatRoomMemberRepository, MeterRegistry meterRegistry,
+            @Value("${chat.membership.ttl-seconds:300}") long ttlSeconds,
+            @Value("${chat.membership.max-rooms:20000}") int maxRooms) {
+        this.chatRoomMemberRepository = chatRoomMemberRepository;
+        this.rooms = new InvalidatingCache<>(ttlSeconds * 1000, maxRooms);
+        this.hitCounter = Counter.builder("chat.membership.lookup").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("chat.membership.lookup").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("chat.membership.rooms", rooms, InvalidatingCache::size)
+                .description("Số phòng đang có trong membership index")
+                .register(meterRegistry);
+    }
+
+    public boolean isMember(Long roomId, Long userId) {
+        if (roomId == null || userId == null) {
+            return false;
+        }
+        return members(roomId).contains(userId);
+    }
+
+    /**
+     * Tập userId của phòng (bất biến, có thể rỗng)
+     */
+    public Set<Long> members(Long roomId) {
+        Set<Long> members = rooms.getIfPresent(roomId);
+        if (members != null) {
+            hitCounter.increment();
+            return members;
+        }
+        missCounter.increment();
+        return rooms.get(roomId, id -> Set.copyOf(chatRoomMemberRepository.findUserIdsByRoomId(id)));
+    }
+
+    /**
+     * Bỏ cache của phòng khi thành viên thay đổi; chỉ chặn lần nạp đang chạy của chính phòng này
+     */
+    public void invalidate(Long roomId) {
+        rooms.invalidate(roomId);
+    }
+}
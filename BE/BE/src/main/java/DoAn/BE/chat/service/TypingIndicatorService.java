@@ -1,154 +1,174 @@
 package DoAn.BE.chat.service;
 
 import DoAn.BE.chat.websocket.service.WebSocketNotificationService;
-import DoAn.BE.user.entity.User;
-import DoAn.BE.user.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import jakarta.annotation.PostConstruct;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * Trạng thái typing của tất cả phòng (dùng chung cho STOMP handler và REST).
+ * Không broadcast theo từng sự kiện: start/stop chỉ cập nhật memory và đánh dấu phòng thay đổi,
+ * định kỳ (flush-interval-ms) mỗi phòng thay đổi nhận đúng một frame TYPING_SNAPSHOT chứa danh sách đang gõ.
+ * Start lặp lại của user đang gõ chỉ gia hạn, không tạo frame; entry quá expire-ms tự hết hạn.
+ * Trạng thái chỉ nằm trong JVM này: snapshot là danh sách đang gõ qua instance này (source = instanceId).
+ * Khi chạy nhiều instance (chat.broker.mode=relay) client gộp snapshot mới nhất của từng instance; phòng còn người
+ * gõ được gửi lại mỗi expire-ms / 2 để client bỏ snapshot của instance đã dừng sau expire-ms.
+ */
 @Service
+@Slf4j
 public class TypingIndicatorService {
 
     private final WebSocketNotificationService webSocketNotificationService;
-    private final UserRepository userRepository;
+    private final String instanceId = UUID.randomUUID().toString();
 
-    public TypingIndicatorService(WebSocketNotificationService webSocketNotificationService,
-                                 UserRepository userRepository) {
-        this.webSocketNotificationService = webSocketNotificationService;
-        this.userRepository = userRepository;
-    }
-
-    private final Map<Long, Set<Long>> typingUsers = new ConcurrentHashMap<>(); // Lưu user đang typing: roomId -> Set userIds
-    private final Map<Long, Map<Long, Long>> lastTypingTime = new ConcurrentHashMap<>(); // Thời gian typing: roomId -> userId -> timestamp
+    // roomId -> trạng thái typing của phòng
+    private final Map<Long, RoomTyping> rooms = new ConcurrentHashMap<>();
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    @Value("${chat.typing.expire-ms:5000}")
+    private long expireMs;
 
-    @PostConstruct
-    public void init() {
-        scheduler.scheduleAtFixedRate(this::cleanupExpiredTyping, 5, 5, TimeUnit.SECONDS); // Dọn dẹp typing cũ mỗi 5 giây
+    public TypingIndicatorService(WebSocketNotificationService webSocketNotificationService) {
+        this.webSocketNotificationService = webSocketNotificationService;
     }
 
-    // Bắt đầu typing indicator
-    public void startTyping(@NonNull Long roomId, @NonNull Long userId) {
-        User user = userRepository.findById(userId).orElse(null);
-        if (user == null) return;
-
-        typingUsers.computeIfAbsent(roomId, (@NonNull Long k) -> ConcurrentHashMap.newKeySet()).add(userId);
-        lastTypingTime.computeIfAbsent(roomId, (@NonNull Long k) -> new ConcurrentHashMap<>())
-                     .put(userId, System.currentTimeMillis());
-        webSocketNotificationService.notifyTyping(roomId, userId, user.getUsername(), true);
+    // Bắt đầu (hoặc gia hạn) typing
+    public void startTyping(@NonNull Long roomId, @NonNull Long userId, String username) {
+        long now = System.currentTimeMillis();
+        // compute giữ lock theo phòng: không đụng với flush đang xóa phòng rỗng
+        rooms.compute(roomId, (id, room) -> {
+            RoomTyping target = room != null ? room : new RoomTyping();
+            Typer previous = target.typers.put(userId, new Typer(userId, username, now));
+            if (previous == null) {
+                target.dirty = true;
+            }
+            return target;
+        });
     }
 
     /**
-     * Dừng typing indicator
+     * Dừng typing
      */
     public void stopTyping(@NonNull Long roomId, @NonNull Long userId) {
-        User user = userRepository.findById(userId).orElse(null);
-        if (user == null) return;
-
-        Set<Long> roomTypingUsers = typingUsers.get(roomId);
-        if (roomTypingUsers != null) {
-            roomTypingUsers.remove(userId);
-            if (roomTypingUsers.isEmpty()) {
-                typingUsers.remove(roomId);
+        rooms.computeIfPresent(roomId, (id, room) -> {
+            if (room.typers.remove(userId) != null) {
+                room.dirty = true;
             }
-        }
+            return room;
+        });
+    }
 
-        Map<Long, Long> roomLastTyping = lastTypingTime.get(roomId);
-        if (roomLastTyping != null) {
-            roomLastTyping.remove(userId);
-            if (roomLastTyping.isEmpty()) {
-                lastTypingTime.remove(roomId);
-            }
-        }
+    // Bắt buộc dừng typing khi user gửi tin nhắn
+    public void forceStopTyping(@NonNull Long roomId, @NonNull Long userId) {
+        stopTyping(roomId, userId);
+    }
 
-        webSocketNotificationService.notifyTyping(roomId, userId, user.getUsername(), false);
+    // Xóa tất cả typing indicator trong phòng
+    public void clearAllTyping(@NonNull Long roomId) {
+        rooms.computeIfPresent(roomId, (id, room) -> {
+            if (!room.typers.isEmpty()) {
+                room.typers.clear();
+                room.dirty = true;
+            }
+            return room;
+        });
     }
 
     /**
      * Lấy danh sách user đang typing trong phòng
      */
     public List<String> getTypingUsers(@NonNull Long roomId) {
-        Set<Long> roomTypingUsers = typingUsers.get(roomId);
-        if (roomTypingUsers == null || roomTypingUsers.isEmpty()) {
+        RoomTyping room = rooms.get(roomId);
+        if (room == null) {
             return List.of();
         }
-
-        return roomTypingUsers.stream()
-            .map(userId -> userRepository.findById(userId)
-                .map(User::getUsername)
-                .orElse("Unknown"))
-            .toList();
+        long now = System.currentTimeMillis();
+        return room.typers.values().stream()
+                .filter(typer -> now - typer.lastSeen() <= expireMs)
+                .map(Typer::username)
+                .toList();
     }
 
     /**
      * Lấy số lượng user đang typing
      */
     public int getTypingUserCount(@NonNull Long roomId) {
-        Set<Long> roomTypingUsers = typingUsers.get(roomId);
-        return roomTypingUsers != null ? roomTypingUsers.size() : 0;
+        return getTypingUsers(roomId).size();
     }
 
     /**
      * Kiểm tra user có đang typing không
      */
     public boolean isUserTyping(@NonNull Long roomId, @NonNull Long userId) {
-        Set<Long> roomTypingUsers = typingUsers.get(roomId);
-        return roomTypingUsers != null && roomTypingUsers.contains(userId);
+        RoomTyping room = rooms.get(roomId);
+        Typer typer = room != null ? room.typers.get(userId) : null;
+        return typer != null && System.currentTimeMillis() - typer.lastSeen() <= expireMs;
     }
 
-    // Dọn dẹp typing indicator đã hết hạn (quá 5 giây)
-    private void cleanupExpiredTyping() {
-        long currentTime = System.currentTimeMillis();
-        long expireTime = 5000; // 5 seconds
-
-        for (Map.Entry<Long, Map<Long, Long>> roomEntry : lastTypingTime.entrySet()) {
-            Long roomId = roomEntry.getKey();
-            Map<Long, Long> roomLastTyping = roomEntry.getValue();
-
-            List<Long> expiredUsers = roomLastTyping.entrySet().stream()
-                .filter(entry -> currentTime - entry.getValue() > expireTime)
-                .map(Map.Entry::getKey)
-                .toList();
-
-            for (Long userId : expiredUsers) {
-                stopTyping(roomId, userId);
+    // Lấy trạng thái typing của tất cả phòng
+    public Map<Long, List<String>> getAllTypingStatus() {
+        Map<Long, List<String>> result = new HashMap<>();
+        for (Long roomId : rooms.keySet()) {
+            List<String> typing = getTypingUsers(roomId);
+            if (!typing.isEmpty()) {
+                result.put(roomId, typing);
             }
         }
+        return result;
     }
 
-    // Bắt buộc dừng typing khi user gửi tin nhắn
-    public void forceStopTyping(@NonNull Long roomId, @NonNull Long userId) {
-        stopTyping(roomId, userId);
-    }
-
-    // Xóa tất cả typing indicator trong phòng
-    public void clearAllTyping(@NonNull Long roomId) {
-        Set<Long> roomTypingUsers = typingUsers.get(roomId);
-        if (roomTypingUsers != null) {
-            List<Long> usersToStop = List.copyOf(roomTypingUsers);
-            for (Long userId : usersToStop) {
-                stopTyping(roomId, userId);
+    /**
+     * Hết hạn entry cũ và gửi một snapshot cho mỗi phòng có thay đổi kể từ lần trước
+     */
+    @Scheduled(fixedDelayString = "${chat.typing.flush-interval-ms:500}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (Long roomId : rooms.keySet()) {
+            List<Typer> snapshot = new ArrayList<>();
+            boolean[] changed = new boolean[1];
+            rooms.computeIfPresent(roomId, (id, room) -> {
+                if (room.typers.values().removeIf(typer -> now - typer.lastSeen() > expireMs)) {
+                    room.dirty = true;
+                }
+                // Còn người gõ: gửi lại định kỳ dù không đổi, client dựa vào đó để hết hạn snapshot
+                changed[0] = room.dirty || (!room.typers.isEmpty() && now - room.lastSentAt >= expireMs / 2);
+                room.dirty = false;
+                if (changed[0]) {
+                    room.lastSentAt = now;
+                }
+                snapshot.addAll(room.typers.values());
+                // Phòng rỗng đã gửi snapshot cuối thì bỏ khỏi map
+                return room.typers.isEmpty() ? null : room;
+            });
+            if (changed[0]) {
+                try {
+                    webSocketNotificationService.notifyTypingSnapshot(roomId, instanceId, snapshot.stream()
+                            .map(typer -> Map.<String, Object>of(
+                                    "userId", typer.userId(),
+                                    "username", typer.username() != null ? typer.username() : ""))
+                            .toList());
+                } catch (Exception e) {
+                    log.warn("Không gửi được typing snapshot cho phòng {}: {}", roomId, e.getMessage());
+                }
             }
         }
     }
 
-    // Lấy trạng thái typing của tất cả phòng
-    public Map<Long, List<String>> getAllTypingStatus() {
-        return typingUsers.entrySet().stream()
-            .collect(java.util.stream.Collectors.toMap(
-                Map.Entry::getKey,
-                entry -> getTypingUsers(entry.getKey())
-            ));
+    private record Typer(Long userId, String username, long lastSeen) {
     }
-}
 
+    // Chỉ ghi bên trong rooms.compute* (đã khóa theo phòng); đọc từ REST không cần khóa
+    private static final class RoomTyping {
+        private final Map<Long, Typer> typers = new ConcurrentHashMap<>();
+        private volatile boolean dirty;
+        private long lastSentAt;
+    }
+}
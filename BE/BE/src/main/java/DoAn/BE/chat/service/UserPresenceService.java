@@ -1,81 +1,76 @@
 package DoAn.BE.chat.service;
 
-import DoAn.BE.user.entity.User;
 import DoAn.BE.user.repository.UserRepository;
 import DoAn.BE.chat.websocket.service.WebSocketNotificationService;
-import DoAn.BE.chat.entity.ChatRoomMember;
-import DoAn.BE.chat.repository.ChatRoomMemberRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Trạng thái online/offline giữ trong memory, là nguồn dữ liệu chính khi đang chạy.
+ * is_online/last_seen của bảng users được ghi sau (write-behind) theo batch định kỳ.
+ * Thay đổi trạng thái được publish một lần lên /topic/presence.{userId}, client subscribe các liên hệ cần theo dõi.
+ */
 @Service
-@Transactional
+@Slf4j
 public class UserPresenceService {
 
+    private static final String UPDATE_SQL = "UPDATE users SET is_online = ?, last_seen = ? WHERE user_id = ?";
+
     private final UserRepository userRepository;
     private final WebSocketNotificationService webSocketNotificationService;
-    private final ChatRoomMemberRepository chatRoomMemberRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Set<Long> onlineUsers = ConcurrentHashMap.newKeySet(); // Lưu danh sách user đang online
+    private final Map<Long, LocalDateTime> lastSeen = new ConcurrentHashMap<>();
+    // Trạng thái chưa ghi xuống DB: userId -> (online, lastSeen)
+    private final Map<Long, PendingPresence> pending = new ConcurrentHashMap<>();
 
     public UserPresenceService(UserRepository userRepository,
             WebSocketNotificationService webSocketNotificationService,
-            ChatRoomMemberRepository chatRoomMemberRepository) {
+            JdbcTemplate jdbcTemplate) {
         this.userRepository = userRepository;
         this.webSocketNotificationService = webSocketNotificationService;
-        this.chatRoomMemberRepository = chatRoomMemberRepository;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
+    // Chưa có kết nối nào khi khởi động: reset toàn bộ bằng một câu UPDATE
     @jakarta.annotation.PostConstruct
     public void init() {
-        resetAllUsersStatus();
-    }
-
-    private void resetAllUsersStatus() {
-        List<User> onlineUsers = userRepository.findByIsOnlineTrue();
-        for (User user : onlineUsers) {
-            user.setIsOnline(false);
-            userRepository.save(user);
+        int reset = userRepository.resetAllOnlineStatus();
+        if (reset > 0) {
+            log.info("Reset trạng thái online của {} user", reset);
         }
     }
 
-    private final Set<Long> onlineUsers = ConcurrentHashMap.newKeySet(); // Lưu danh sách user đang online
-
     // Đánh dấu user online
-    public void markUserOnline(@NonNull Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User không tồn tại"));
-
-        boolean wasOffline = !onlineUsers.contains(userId);
-        onlineUsers.add(userId);
-
-        user.setIsOnline(true);
-        user.setLastSeen(LocalDateTime.now());
-        userRepository.save(user);
+    public void markUserOnline(@NonNull Long userId, String username) {
+        boolean wasOffline = onlineUsers.add(userId);
+        touch(userId);
 
         if (wasOffline) {
-            notifyUserStatusChange(userId, true);
+            webSocketNotificationService.notifyPresence(userId, username, true);
         }
     }
 
     // Đánh dấu user offline
-    public void markUserOffline(@NonNull Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User không tồn tại"));
-
-        boolean wasOnline = onlineUsers.contains(userId);
-        onlineUsers.remove(userId);
-
-        user.setIsOnline(false);
-        user.setLastSeen(LocalDateTime.now());
-        userRepository.save(user);
+    public void markUserOffline(@NonNull Long userId, String username) {
+        boolean wasOnline = onlineUsers.remove(userId);
+        touch(userId);
 
         if (wasOnline) {
-            notifyUserStatusChange(userId, false);
+            webSocketNotificationService.notifyPresence(userId, username, false);
         }
     }
 
@@ -94,50 +89,76 @@ public class UserPresenceService {
         return onlineUsers.size();
     }
 
+    /**
+     * Thời điểm hoạt động gần nhất đã ghi nhận trong phiên chạy này (null nếu chưa có)
+     */
+    public LocalDateTime getLastSeen(@NonNull Long userId) {
+        return lastSeen.get(userId);
+    }
+
     // Cập nhật last seen của user
     public void updateLastSeen(@NonNull Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User không tồn tại"));
-
-        user.setLastSeen(LocalDateTime.now());
-        userRepository.save(user);
+        touch(userId);
     }
 
-    // Thông báo thay đổi trạng thái online/offline
-    private void notifyUserStatusChange(@NonNull Long userId, boolean isOnline) {
-        User user = userRepository.findById(userId).orElse(null);
-        if (user == null)
-            return;
-
-        String statusMessage = isOnline ? "đã online" : "đã offline";
+    // Dọn dẹp các user không hoạt động
+    public void cleanupInactiveUsers() {
+        LocalDateTime cutoffTime = LocalDateTime.now().minusMinutes(5);
 
-        List<ChatRoomMember> userRooms = chatRoomMemberRepository.findByUser_UserId(userId);
+        for (Long userId : List.copyOf(onlineUsers)) {
+            LocalDateTime seen = lastSeen.get(userId);
+            if (seen == null || seen.isBefore(cutoffTime)) {
+                markUserOffline(userId, null);
+            }
+        }
+    }
 
-        for (ChatRoomMember roomMember : userRooms) {
-            Long roomId = roomMember.getChatRoom().getRoomId();
+    /**
+     * Ghi tất cả trạng thái đang chờ thành một batch UPDATE
+     */
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
 
-            java.util.Map<String, Object> data = new java.util.HashMap<>();
-            data.put("userId", userId);
-            data.put("username", user.getUsername());
-            data.put("isOnline", isOnline);
-            data.put("roomId", roomId);
+        List<Map.Entry<Long, PendingPresence>> drained = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, PendingPresence> entry : pending.entrySet()) {
+            // Chỉ lấy ra nếu chưa có thay đổi mới hơn trong lúc flush
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                drained.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
 
-            webSocketNotificationService.sendNotificationToRoom(
-                    roomId,
-                    "USER_STATUS_CHANGE",
-                    user.getUsername() + " " + statusMessage,
-                    data);
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, drained, drained.size(), (ps, entry) -> {
+                ps.setBoolean(1, entry.getValue().online());
+                ps.setTimestamp(2, Timestamp.valueOf(entry.getValue().lastSeen()));
+                ps.setLong(3, entry.getKey());
+            });
+            log.debug("Flushed presence cho {} user", drained.size());
+        } catch (RuntimeException e) {
+            // Đưa lại vào buffer nếu chưa có trạng thái mới hơn để lần flush sau thử lại
+            drained.forEach(entry -> pending.putIfAbsent(entry.getKey(), entry.getValue()));
+            log.error("Không thể flush presence: {}", e.getMessage());
         }
     }
 
-    // Dọn dẹp các user không hoạt động
-    public void cleanupInactiveUsers() {
-        LocalDateTime cutoffTime = LocalDateTime.now().minusMinutes(5);
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
 
-        List<User> inactiveUsers = userRepository.findByIsOnlineTrueAndLastSeenBefore(cutoffTime);
+    // compute theo userId: trạng thái chờ ghi luôn phản ánh onlineUsers sau thay đổi cuối cùng
+    private void touch(Long userId) {
+        LocalDateTime now = LocalDateTime.now();
+        lastSeen.put(userId, now);
+        pending.compute(userId, (id, previous) -> new PendingPresence(onlineUsers.contains(id), now));
+    }
 
-        for (User user : inactiveUsers) {
-            markUserOffline(user.getUserId());
-        }
+    private record PendingPresence(boolean online, LocalDateTime lastSeen) {
     }
 }
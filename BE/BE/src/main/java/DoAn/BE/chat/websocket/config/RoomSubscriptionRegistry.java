@@ -0,0 +1,96 @@
+package DoAn.BE.chat.websocket.config;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+/**
+ * Subscription registry cho simple broker, đánh index theo destination (/topic/room.{id}, /queue/...-user{session}).
+ * Broadcast vào một phòng chỉ duyệt các session đã subscribe phòng đó, không quét toàn bộ subscription.
+ * Destination dạng pattern (hiếm) được giữ riêng và so khớp bằng AntPathMatcher.
+ * Không hỗ trợ selector header (client không dùng).
+ */
+public class RoomSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    // destination -> (sessionId -> subscriptionIds)
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<String>>> byDestination = new ConcurrentHashMap<>();
+
+    // destination pattern -> (sessionId -> subscriptionIds)
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<String>>> byPattern = new ConcurrentHashMap<>();
+
+    // sessionId -> (subscriptionId -> destination), dùng khi unsubscribe/disconnect
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> bySession = new ConcurrentHashMap<>();
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination,
+            Message<?> message) {
+        bySession.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        indexFor(destination).compute(destination, (dest, sessions) -> {
+            ConcurrentMap<String, Set<String>> target = sessions != null ? sessions : new ConcurrentHashMap<>();
+            target.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(subscriptionId);
+            return target;
+        });
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, String> subscriptions = bySession.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            unindex(destination, sessionId, subscriptionId);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> subscriptions = bySession.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) -> unindex(destination, sessionId, subscriptionId));
+        }
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        MultiValueMap<String, String> result = new LinkedMultiValueMap<>();
+        Map<String, Set<String>> exact = byDestination.get(destination);
+        if (exact != null) {
+            exact.forEach((sessionId, ids) -> ids.forEach(id -> result.add(sessionId, id)));
+        }
+        if (!byPattern.isEmpty()) {
+            byPattern.forEach((pattern, sessions) -> {
+                if (pathMatcher.match(pattern, destination)) {
+                    sessions.forEach((sessionId, ids) -> ids.forEach(id -> result.add(sessionId, id)));
+                }
+            });
+        }
+        return result;
+    }
+
+    private ConcurrentMap<String, ConcurrentMap<String, Set<String>>> indexFor(String destination) {
+        return pathMatcher.isPattern(destination) ? byPattern : byDestination;
+    }
+
+    // Bỏ subscription khỏi index, xóa luôn entry rỗng để map không phình theo số phòng đã từng mở
+    private void unindex(String destination, String sessionId, String subscriptionId) {
+        indexFor(destination).computeIfPresent(destination, (dest, sessions) -> {
+            sessions.computeIfPresent(sessionId, (id, ids) -> {
+                ids.remove(subscriptionId);
+                return ids.isEmpty() ? null : ids;
+            });
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+}
@@ -1,27 +1,123 @@
 package DoAn.BE.chat.websocket.config;
 
 import DoAn.BE.chat.websocket.interceptor.AuthChannelInterceptor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.util.StringUtils;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+/**
+ * Cấu hình STOMP. Hai chế độ broker (chat.broker.mode):
+ * - simple: broker trong tiến trình, subscription đánh index theo phòng, broker channel chạy song song theo số core.
+ *   Chỉ dùng được khi chạy một instance backend.
+ * - relay: chuyển tiếp /topic, /queue tới STOMP broker ngoài (RabbitMQ/ActiveMQ), nhiều instance dùng chung;
+ *   tin nhắn tới user (convertAndSendToUser) được broadcast giữa các instance qua broker.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Autowired
     private AuthChannelInterceptor authChannelInterceptor;
 
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${chat.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${chat.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    // 0 = 2 x số core
+    @Value("${chat.websocket.inbound.pool-size:0}")
+    private int inboundPoolSize;
+
+    @Value("${chat.websocket.outbound.pool-size:0}")
+    private int outboundPoolSize;
+
+    @Value("${chat.websocket.broker.pool-size:0}")
+    private int brokerPoolSize;
+
+    @Value("${chat.websocket.channel.queue-capacity:10000}")
+    private int channelQueueCapacity;
+
+    @Value("${chat.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${chat.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.websocket.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    /**
+     * Thay subscription registry mặc định của simple broker bằng registry đánh index theo destination.
+     * Không có tác dụng ở chế độ relay (không có SimpleBrokerMessageHandler).
+     */
+    @Bean
+    static BeanPostProcessor roomSubscriptionRegistryInstaller() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(@NonNull Object bean, @NonNull String beanName) {
+                if (bean instanceof SimpleBrokerMessageHandler handler) {
+                    handler.setSubscriptionRegistry(new RoomSubscriptionRegistry());
+                }
+                return bean;
+            }
+        };
+    }
+
     @Override
     public void configureMessageBroker(@NonNull MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue"); // Broker cho các topic và queue
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            StompBrokerRelayRegistration relay = config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    // User destination của session ở instance khác được chuyển qua broker
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+            if (StringUtils.hasText(relayVirtualHost)) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+            log.info("STOMP broker relay: {}:{}", relayHost, relayPort);
+        } else {
+            config.enableSimpleBroker("/topic", "/queue"); // Broker cho các topic và queue
+        }
         config.setApplicationDestinationPrefixes("/app"); // Prefix cho destination
         config.setUserDestinationPrefix("/user"); // Prefix cho tin nhắn cá nhân
+        // Outbound chạy nhiều thread: giữ thứ tự tin nhắn trong từng session
+        config.setPreservePublishOrder(true);
+        config.configureBrokerChannel().taskExecutor()
+                .corePoolSize(poolSize(brokerPoolSize))
+                .maxPoolSize(poolSize(brokerPoolSize))
+                .queueCapacity(channelQueueCapacity);
     }
 
     @Override
@@ -36,8 +132,31 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*");
     }
 
+    @Override
+    public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registration) {
+        registration.setMessageSizeLimit(messageSizeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMs);
+    }
+
     @Override
     public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
         registration.interceptors(authChannelInterceptor); // Thêm interceptor xác thực
+        registration.taskExecutor()
+                .corePoolSize(poolSize(inboundPoolSize))
+                .maxPoolSize(poolSize(inboundPoolSize))
+                .queueCapacity(channelQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(@NonNull ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(poolSize(outboundPoolSize))
+                .maxPoolSize(poolSize(outboundPoolSize))
+                .queueCapacity(channelQueueCapacity);
+    }
+
+    private int poolSize(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors() * 2;
     }
 }
@@ -13,8 +13,10 @@ public class WebSocketMessage {
         CHAT_MESSAGE,
         TYPING_START,
         TYPING_STOP,
+        TYPING_SNAPSHOT, // Danh sách đang gõ của phòng (data), gửi định kỳ khi có thay đổi
         USER_JOINED,
         USER_LEFT,
+        USER_STATUS_CHANGE, // Online/offline, gửi trên /topic/presence.{userId}
         MESSAGE_EDITED,
         MESSAGE_DELETED,
         ROOM_UPDATED,
@@ -35,6 +37,7 @@ public class WebSocketMessage {
     private Long messageId;
     private String timestamp;
     private Object data; // For additional data like file info, etc.
+    private String source; // Instance backend gửi frame (TYPING_SNAPSHOT: client gộp snapshot theo instance)
 
     // Constructor for chat messages
     public WebSocketMessage(MessageType type, Long roomId, Long userId, String username, String content) {
@@ -1,10 +1,10 @@
 package DoAn.BE.chat.websocket.handler;
 
 import DoAn.BE.chat.dto.MessDTO;
-import DoAn.BE.chat.repository.ChatRoomMemberRepository;
 import DoAn.BE.chat.websocket.dto.WebSocketMessage;
 import DoAn.BE.user.entity.User;
-import DoAn.BE.user.repository.UserRepository;
+import DoAn.BE.chat.service.RoomMembershipIndex;
+import DoAn.BE.chat.service.TypingIndicatorService;
 import DoAn.BE.chat.service.UserPresenceService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -14,8 +14,6 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 // WebSocket handler xử lý real-time chat messages, typing indicators, user presence
 @Controller
@@ -23,23 +21,20 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ChatWebSocketHandler {
 
     private final SimpMessagingTemplate messagingTemplate;
-    private final ChatRoomMemberRepository chatRoomMemberRepository;
-    private final UserRepository userRepository;
+    private final RoomMembershipIndex roomMembershipIndex;
     private final UserPresenceService userPresenceService;
+    private final TypingIndicatorService typingIndicatorService;
 
     public ChatWebSocketHandler(SimpMessagingTemplate messagingTemplate,
-            ChatRoomMemberRepository chatRoomMemberRepository,
-            UserRepository userRepository,
-            UserPresenceService userPresenceService) {
+            RoomMembershipIndex roomMembershipIndex,
+            UserPresenceService userPresenceService,
+            TypingIndicatorService typingIndicatorService) {
         this.messagingTemplate = messagingTemplate;
-        this.chatRoomMemberRepository = chatRoomMemberRepository;
-        this.userRepository = userRepository;
+        this.roomMembershipIndex = roomMembershipIndex;
         this.userPresenceService = userPresenceService;
+        this.typingIndicatorService = typingIndicatorService;
     }
 
-    // Store typing users for each room
-    private final Map<Long, Map<Long, Long>> typingUsers = new ConcurrentHashMap<>();
-
     // Handle incoming chat messages
     @MessageMapping("/chat.sendMessage")
     public void sendMessage(@Payload WebSocketMessage message, SimpMessageHeaderAccessor headerAccessor) {
@@ -56,7 +51,7 @@ public class ChatWebSocketHandler {
             }
 
             // Check if user is member of the room
-            boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, user.getUserId());
+            boolean isMember = roomMembershipIndex.isMember(roomId, user.getUserId());
             if (!isMember) {
                 return; // User not authorized
             }
@@ -83,6 +78,7 @@ public class ChatWebSocketHandler {
             wsMessage.setMessageId(System.currentTimeMillis()); // Temporary ID
 
             messagingTemplate.convertAndSend("/topic/room." + roomId, wsMessage);
+            typingIndicatorService.forceStopTyping(roomId, user.getUserId());
 
         } catch (Exception e) {
             log.error("Lỗi khi gửi tin nhắn qua WebSocket: {}", e.getMessage(), e);
@@ -106,22 +102,12 @@ public class ChatWebSocketHandler {
             }
 
             // Check if user is member of the room
-            boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, user.getUserId());
+            boolean isMember = roomMembershipIndex.isMember(roomId, user.getUserId());
             if (!isMember)
                 return;
 
-            // Add user to typing list
-            typingUsers.computeIfAbsent(roomId, k -> new ConcurrentHashMap<>())
-                    .put(user.getUserId(), System.currentTimeMillis());
-
-            // Notify other users
-            WebSocketMessage wsMessage = new WebSocketMessage(
-                    WebSocketMessage.MessageType.TYPING_START,
-                    roomId,
-                    user.getUserId(),
-                    user.getUsername());
-
-            messagingTemplate.convertAndSend("/topic/room." + roomId, wsMessage);
+            // Chỉ cập nhật trạng thái, snapshot của phòng được gửi định kỳ
+            typingIndicatorService.startTyping(roomId, user.getUserId(), user.getUsername());
 
         } catch (Exception e) {
             log.error("Lỗi khi xử lý typing indicator: {}", e.getMessage(), e);
@@ -144,23 +130,7 @@ public class ChatWebSocketHandler {
                 return; // Invalid data
             }
 
-            // Remove user from typing list
-            Map<Long, Long> roomTypingUsers = typingUsers.get(roomId);
-            if (roomTypingUsers != null) {
-                roomTypingUsers.remove(user.getUserId());
-                if (roomTypingUsers.isEmpty()) {
-                    typingUsers.remove(roomId);
-                }
-            }
-
-            // Notify other users
-            WebSocketMessage wsMessage = new WebSocketMessage(
-                    WebSocketMessage.MessageType.TYPING_STOP,
-                    roomId,
-                    user.getUserId(),
-                    user.getUsername());
-
-            messagingTemplate.convertAndSend("/topic/room." + roomId, wsMessage);
+            typingIndicatorService.stopTyping(roomId, user.getUserId());
 
         } catch (Exception e) {
             log.error("Lỗi khi xử lý typing indicator: {}", e.getMessage(), e);
@@ -184,12 +154,12 @@ public class ChatWebSocketHandler {
             }
 
             // Check if user is member of the room
-            boolean isMember = chatRoomMemberRepository.existsByChatRoom_RoomIdAndUser_UserId(roomId, user.getUserId());
+            boolean isMember = roomMembershipIndex.isMember(roomId, user.getUserId());
             if (!isMember)
                 return;
 
             // Mark user as online
-            userPresenceService.markUserOnline(user.getUserId());
+            userPresenceService.markUserOnline(user.getUserId(), user.getUsername());
 
             // Notify other users
             WebSocketMessage wsMessage = new WebSocketMessage(
@@ -221,17 +191,10 @@ public class ChatWebSocketHandler {
                 return; // Invalid data
             }
 
-            // Remove user from typing list
-            Map<Long, Long> roomTypingUsers = typingUsers.get(roomId);
-            if (roomTypingUsers != null) {
-                roomTypingUsers.remove(user.getUserId());
-                if (roomTypingUsers.isEmpty()) {
-                    typingUsers.remove(roomId);
-                }
-            }
+            typingIndicatorService.stopTyping(roomId, user.getUserId());
 
             // Mark user as offline
-            userPresenceService.markUserOffline(user.getUserId());
+            userPresenceService.markUserOffline(user.getUserId(), user.getUsername());
 
             // Notify other users
             WebSocketMessage wsMessage = new WebSocketMessage(
@@ -284,19 +247,6 @@ public class ChatWebSocketHandler {
         if (roomId == null) {
             return List.of();
         }
-        Map<Long, Long> roomTypingUsers = typingUsers.get(roomId);
-        if (roomTypingUsers == null || roomTypingUsers.isEmpty()) {
-            return List.of();
-        }
-
-        // Clean up old typing indicators (older than 5 seconds)
-        long currentTime = System.currentTimeMillis();
-        roomTypingUsers.entrySet().removeIf(entry -> currentTime - entry.getValue() > 5000);
-
-        return roomTypingUsers.keySet().stream()
-                .map(userId -> userRepository.findById(userId)
-                        .map(User::getUsername)
-                        .orElse("Unknown"))
-                .toList();
+        return typingIndicatorService.getTypingUsers(roomId);
     }
 }
@@ -32,7 +32,7 @@ public class WebSocketEventListener {
 
             if (principal instanceof User) {
                 User user = (User) principal;
-                userPresenceService.markUserOnline(user.getUserId());
+                userPresenceService.markUserOnline(user.getUserId(), user.getUsername());
                 log.info("User {} connected via WebSocket", user.getUsername());
             }
         } catch (Exception e) {
@@ -51,7 +51,7 @@ public class WebSocketEventListener {
 
             if (principal instanceof User) {
                 User user = (User) principal;
-                userPresenceService.markUserOffline(user.getUserId());
+                userPresenceService.markUserOffline(user.getUserId(), user.getUsername());
                 log.info("User {} disconnected from WebSocket", user.getUsername());
             }
         } catch (Exception e) {
@@ -108,12 +108,15 @@ public class WebSocketNotificationService {
         messagingTemplate.convertAndSend("/topic/room." + roomId, wsMessage);
     }
 
-    // Gửi typing indicator
-    public void notifyTyping(Long roomId, Long userId, String username, boolean isTyping) {
-        WebSocketMessage.MessageType type = isTyping ? WebSocketMessage.MessageType.TYPING_START
-                : WebSocketMessage.MessageType.TYPING_STOP;
-
-        WebSocketMessage wsMessage = new WebSocketMessage(type, roomId, userId, username);
+    // Gửi danh sách user đang gõ của phòng (snapshot gộp)
+    public void notifyTypingSnapshot(Long roomId, String instanceId, List<java.util.Map<String, Object>> typingUsers) {
+        WebSocketMessage wsMessage = new WebSocketMessage(
+                WebSocketMessage.MessageType.TYPING_SNAPSHOT,
+                roomId,
+                null,
+                null);
+        wsMessage.setData(typingUsers);
+        wsMessage.setSource(instanceId);
 
         messagingTemplate.convertAndSend("/topic/room." + roomId, wsMessage);
     }
@@ -148,6 +151,21 @@ public class WebSocketNotificationService {
         messagingTemplate.convertAndSendToUser(username, "/queue/notifications", wsMessage);
     }
 
+    // Thông báo user online/offline: một message duy nhất, các liên hệ subscribe /topic/presence.{userId}
+    public void notifyPresence(Long userId, String username, boolean isOnline) {
+        WebSocketMessage wsMessage = new WebSocketMessage(
+                WebSocketMessage.MessageType.USER_STATUS_CHANGE,
+                null,
+                userId,
+                username);
+        java.util.Map<String, Object> data = new java.util.HashMap<>();
+        data.put("userId", userId);
+        data.put("isOnline", isOnline);
+        wsMessage.setData(data);
+
+        messagingTemplate.convertAndSend("/topic/presence." + userId, wsMessage);
+    }
+
     // Gửi notification đến tất cả thành viên trong phòng
     public void sendNotificationToRoom(Long roomId, String type, String message, Object data) {
         WebSocketMessage wsMessage = new WebSocketMessage(
@@ -0,0 +1,142 @@
+package DoAn.BE.common.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Cache trong memory có TTL cho dữ liệu nạp từ DB, bị bỏ khi dữ liệu nguồn thay đổi.
+ * - invalidate(key) bỏ entry ngay và một lần nữa sau khi transaction kết thúc: trong lúc chờ commit,
+ *   request khác có thể đã nạp lại dữ liệu cũ
+ * - Mỗi key có generation riêng, tăng mỗi lần evict/put. Lần nạp chỉ được ghi vào cache nếu generation
+ *   của chính key đó không đổi trong lúc nạp, nên thay đổi của một key không chặn cache của key khác
+ * - Đầy maxSize thì dọn entry hết hạn, vẫn đầy thì xóa hết (key đang dùng sẽ được nạp lại)
+ */
+public class InvalidatingCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Map<K, Long> generations = new ConcurrentHashMap<>();
+    // Tăng khi xóa cả bảng generations (clear, hoặc bảng quá lớn): chặn mọi lần nạp đang chạy
+    private final AtomicLong epoch = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final long ttlMillis;
+    private final int maxSize;
+
+    public InvalidatingCache(long ttlMillis, int maxSize) {
+        this.ttlMillis = ttlMillis;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Giá trị còn hạn của key, null nếu chưa có hoặc đã hết hạn
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null && entry.expiresAt() > System.currentTimeMillis() ? entry.value() : null;
+    }
+
+    /**
+     * Lấy từ cache, thiếu hoặc hết hạn thì gọi loader. Kết quả không được lưu nếu key bị evict trong lúc nạp
+     * (vẫn được trả về cho caller)
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long startEpoch = epoch.get();
+        Long startGeneration = generations.get(key);
+        V value = loader.apply(key);
+        if (value == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxSize) {
+            shrink(now);
+        }
+        // Kiểm tra và ghi trong cùng compute: evict chạy song song phải chờ rồi mới xóa được entry này
+        entries.compute(key, (k, current) -> epoch.get() == startEpoch
+                && Objects.equals(generations.get(k), startGeneration)
+                ? new Entry<>(value, now + ttlMillis)
+                : current);
+        return value;
+    }
+
+    /**
+     * Ghi đè giá trị (dữ liệu mới đã biết chắc, ví dụ sau commit); lần nạp đang chạy của key không ghi đè lại
+     */
+    public void put(K key, V value) {
+        long now = System.currentTimeMillis();
+        bumpGeneration(key);
+        if (entries.size() >= maxSize) {
+            shrink(now);
+        }
+        entries.put(key, new Entry<>(value, now + ttlMillis));
+    }
+
+    /**
+     * Bỏ entry của key ngay và một lần nữa sau khi transaction hiện tại kết thúc
+     */
+    public void invalidate(K key) {
+        if (key == null) {
+            return;
+        }
+        evict(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Bỏ entry của key ngay (không chờ transaction)
+     */
+    public void evict(K key) {
+        bumpGeneration(key);
+        entries.remove(key);
+    }
+
+    public void clear() {
+        epoch.incrementAndGet();
+        generations.clear();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void bumpGeneration(K key) {
+        if (generations.size() >= maxSize && !generations.containsKey(key)) {
+            // Chỉ giữ generation cho tối đa maxSize key; xóa bảng thì phải chặn mọi lần nạp đang chạy
+            epoch.incrementAndGet();
+            generations.clear();
+        }
+        generations.put(key, sequence.incrementAndGet());
+    }
+
+    private void shrink(long now) {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt() <= now) {
+                it.remove();
+            }
+        }
+        if (entries.size() >= maxSize) {
+            entries.clear();
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+}
@@ -1,12 +1,40 @@
 package DoAn.BE.common.config;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 
 // Cấu hình async processing và scheduled tasks cho toàn hệ thống
 @Configuration
 @EnableAsync // Cho phép @Async methods
 @EnableScheduling // Cho phép @Scheduled methods
-public class AsyncSchedulingConfig {
+public class AsyncSchedulingConfig implements SchedulingConfigurer, DisposableBean {
+
+    // Scheduler riêng cho @Scheduled: các flusher dưới 1 giây (typing, presence, search index...) không phải xếp hàng
+    // sau job đêm chạy lâu. Tự tạo vì WebSocket đã đăng ký TaskScheduler (messageBrokerTaskScheduler) nên
+    // auto-config của Spring Boot không tạo scheduler theo spring.task.scheduling.pool.size
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+
+    @Value("${spring.task.scheduling.pool.size:8}")
+    private int poolSize;
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(10);
+        scheduler.initialize();
+        registrar.setTaskScheduler(scheduler);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+    }
 }
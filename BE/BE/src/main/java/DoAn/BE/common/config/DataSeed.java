@@ -996,6 +996,8 @@ public class DataSeed {
             }
         }
         log.info("   ✅ Created {} message status records", statusCount);
+        // Unread counter được tính lại từ message_status khi ứng dụng sẵn sàng
+        chatRoomMemberRepository.clearUnreadCounts();
 
         log.info("💬 ========== CHAT MODULE COMPLETED ==========\n");
     }
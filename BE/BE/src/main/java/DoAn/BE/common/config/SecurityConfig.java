@@ -15,6 +15,7 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import jakarta.servlet.DispatcherType;
 import java.util.Arrays;
 
 @Configuration
@@ -33,10 +34,16 @@ public class SecurityConfig {
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(authz -> authz
+                        // Lượt dispatch ASYNC và ERROR đã được xác thực ở request gốc: file export Excel/CSV
+                        // (StreamingResponseBody) và SSE của AI stream hoàn tất bằng một lượt ASYNC dispatch.
+                        // SecurityContext không còn trên thread đó nên chặn ở đây sẽ làm response bị cắt bằng 403
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                         // ===== PUBLIC ENDPOINTS =====
                         .requestMatchers("/api/auth/**").permitAll()
                         .requestMatchers("/api/public/**").permitAll()
-                        .requestMatchers("/actuator/**").permitAll()
+                        // Chỉ health là public; metrics/info chứa số liệu nội bộ nên chỉ ADMIN xem
+                        .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
 
                         // ===== WEBSOCKET ENDPOINTS =====
                         .requestMatchers("/ws/**").permitAll()
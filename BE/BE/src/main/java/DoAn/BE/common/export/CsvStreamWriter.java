@@ -0,0 +1,103 @@
+package DoAn.BE.common.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * CSV (RFC 4180, UTF-8 có BOM để Excel mở đúng tiếng Việt), ghi thẳng ra output stream
+ */
+public class CsvStreamWriter implements TabularExportWriter {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    private final Writer writer;
+    private final int flushEveryRows;
+    private long rowCount;
+
+    public CsvStreamWriter(OutputStream out, int flushEveryRows) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.flushEveryRows = Math.max(1, flushEveryRows);
+        this.writer.write('\uFEFF');
+    }
+
+    @Override
+    public void writeHeader(String... headers) throws IOException {
+        writeLine((Object[]) headers);
+    }
+
+    @Override
+    public void writeRow(Object... values) throws IOException {
+        writeLine(values);
+        rowCount++;
+        // Đẩy dữ liệu ra client định kỳ, buffer chỉ giữ vài dòng
+        if (rowCount % flushEveryRows == 0) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+    }
+
+    private void writeLine(Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escape(format(values[i])));
+        }
+        writer.write("\r\n");
+    }
+
+    private String format(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof LocalDate date) {
+            return date.format(DATE_FORMAT);
+        }
+        if (value instanceof LocalTime time) {
+            return time.format(TIME_FORMAT);
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            return dateTime.format(DATE_TIME_FORMAT);
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        if (value instanceof Enum<?> enumValue) {
+            return enumValue.name();
+        }
+        if (value instanceof String text && !text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) {
+            // Chặn CSV injection: Excel không coi nội dung người dùng nhập là công thức
+            return "'" + text;
+        }
+        return value.toString();
+    }
+
+    private String escape(String value) {
+        boolean needsQuote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!needsQuote) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
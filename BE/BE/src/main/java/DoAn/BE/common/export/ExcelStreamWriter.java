@@ -0,0 +1,140 @@
+package DoAn.BE.common.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Excel (.xlsx) dùng SXSSF: chỉ giữ một cửa sổ nhỏ các dòng trong heap,
+ * các dòng cũ được xả ra file tạm (nén) và ghép thành file xlsx khi close().
+ * Tự sang sheet mới khi vượt giới hạn số dòng của Excel.
+ */
+public class ExcelStreamWriter implements TabularExportWriter {
+
+    private static final int MAX_ROWS_PER_SHEET = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    private final OutputStream out;
+    private final SXSSFWorkbook workbook;
+    private final String sheetName;
+    private final CellStyle headerStyle;
+    private final CellStyle dateStyle;
+    private final CellStyle timeStyle;
+    private final CellStyle dateTimeStyle;
+    private final CellStyle decimalStyle;
+
+    private Sheet sheet;
+    private String[] headers = new String[0];
+    private int sheetIndex;
+    private int nextRow;
+    private long rowCount;
+
+    public ExcelStreamWriter(OutputStream out, String sheetName, int rowWindow) {
+        this.out = out;
+        this.sheetName = sheetName;
+        this.workbook = new SXSSFWorkbook(rowWindow);
+        this.workbook.setCompressTempFiles(true);
+
+        CreationHelper helper = workbook.getCreationHelper();
+        Font boldFont = workbook.createFont();
+        boldFont.setBold(true);
+        this.headerStyle = workbook.createCellStyle();
+        this.headerStyle.setFont(boldFont);
+        this.dateStyle = workbook.createCellStyle();
+        this.dateStyle.setDataFormat(helper.createDataFormat().getFormat("dd/mm/yyyy"));
+        this.timeStyle = workbook.createCellStyle();
+        this.timeStyle.setDataFormat(helper.createDataFormat().getFormat("hh:mm:ss"));
+        this.dateTimeStyle = workbook.createCellStyle();
+        this.dateTimeStyle.setDataFormat(helper.createDataFormat().getFormat("dd/mm/yyyy hh:mm:ss"));
+        this.decimalStyle = workbook.createCellStyle();
+        this.decimalStyle.setDataFormat(helper.createDataFormat().getFormat("#,##0.00"));
+    }
+
+    @Override
+    public void writeHeader(String... headers) {
+        this.headers = headers;
+        newSheet();
+    }
+
+    @Override
+    public void writeRow(Object... values) {
+        if (sheet == null || nextRow >= MAX_ROWS_PER_SHEET) {
+            newSheet();
+        }
+        Row row = sheet.createRow(nextRow++);
+        for (int i = 0; i < values.length; i++) {
+            setCell(row.createCell(i), values[i]);
+        }
+        rowCount++;
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            workbook.write(out);
+            out.flush();
+        } finally {
+            // Xóa file tạm của SXSSF
+            workbook.close();
+        }
+    }
+
+    private void newSheet() {
+        sheetIndex++;
+        sheet = workbook.createSheet(sheetIndex == 1 ? sheetName : sheetName + " (" + sheetIndex + ")");
+        nextRow = 0;
+        if (headers.length > 0) {
+            Row headerRow = sheet.createRow(nextRow++);
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(headers[i]);
+                cell.setCellStyle(headerStyle);
+            }
+            sheet.createFreezePane(0, 1);
+        }
+    }
+
+    private void setCell(Cell cell, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof BigDecimal decimal) {
+            cell.setCellValue(decimal.doubleValue());
+            cell.setCellStyle(decimalStyle);
+        } else if (value instanceof Number number) {
+            cell.setCellValue(number.doubleValue());
+        } else if (value instanceof LocalDate date) {
+            cell.setCellValue(date);
+            cell.setCellStyle(dateStyle);
+        } else if (value instanceof LocalDateTime dateTime) {
+            cell.setCellValue(dateTime);
+            cell.setCellStyle(dateTimeStyle);
+        } else if (value instanceof LocalTime time) {
+            // Excel lưu giờ là phần thập phân của ngày
+            cell.setCellValue(time.toSecondOfDay() / 86400.0);
+            cell.setCellStyle(timeStyle);
+        } else if (value instanceof Boolean bool) {
+            cell.setCellValue(bool);
+        } else if (value instanceof Enum<?> enumValue) {
+            cell.setCellValue(enumValue.name());
+        } else {
+            cell.setCellValue(value.toString());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package DoAn.BE.common.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import DoAn.BE.common.exception.BadRequestException;
+
+/**
+ * Định dạng file export: Excel (SXSSF) hoặc CSV
+ */
+public enum ExportFormat {
+    EXCEL("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+    CSV("csv", "text/csv; charset=UTF-8");
+
+    private final String extension;
+    private final String contentType;
+
+    ExportFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public TabularExportWriter open(OutputStream out, String sheetName, int excelRowWindow, int csvFlushRows)
+            throws IOException {
+        return switch (this) {
+            case EXCEL -> new ExcelStreamWriter(out, sheetName, excelRowWindow);
+            case CSV -> new CsvStreamWriter(out, csvFlushRows);
+        };
+    }
+
+    // Parse từ path variable: excel | csv
+    public static ExportFormat fromPath(String value) {
+        if (value != null) {
+            for (ExportFormat format : values()) {
+                if (format.name().equalsIgnoreCase(value) || format.extension.equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+        }
+        throw new BadRequestException("Định dạng export không hỗ trợ: " + value + " (chỉ hỗ trợ excel, csv)");
+    }
+}
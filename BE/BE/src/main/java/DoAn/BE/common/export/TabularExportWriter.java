@@ -0,0 +1,20 @@
+package DoAn.BE.common.export;
+
+import java.io.IOException;
+
+/**
+ * Writer dạng bảng ghi tuần tự từng dòng (không giữ toàn bộ dữ liệu trong bộ nhớ).
+ * close() hoàn tất file và ghi phần còn lại ra output stream (không đóng stream của response).
+ */
+public interface TabularExportWriter extends AutoCloseable {
+
+    void writeHeader(String... headers) throws IOException;
+
+    void writeRow(Object... values) throws IOException;
+
+    // Số dòng dữ liệu đã ghi (không tính header)
+    long getRowCount();
+
+    @Override
+    void close() throws IOException;
+}
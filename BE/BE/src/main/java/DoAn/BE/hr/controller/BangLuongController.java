@@ -2,10 +2,12 @@ package DoAn.BE.hr.controller;
 
 import DoAn.BE.hr.dto.BangLuongDTO;
 import DoAn.BE.hr.dto.CreateBangLuongRequest;
+import DoAn.BE.hr.dto.PayrollJobStatusDTO;
 import DoAn.BE.hr.dto.UpdateBangLuongRequest;
 import DoAn.BE.hr.entity.BangLuong;
 import DoAn.BE.hr.mapper.BangLuongMapper;
 import DoAn.BE.hr.service.BangLuongService;
+import DoAn.BE.hr.service.PayrollBatchService;
 import DoAn.BE.user.entity.User;
 import jakarta.validation.Valid;
 import org.springframework.security.core.Authentication;
@@ -29,10 +31,13 @@ public class BangLuongController {
 
     private final BangLuongService bangLuongService;
     private final BangLuongMapper bangLuongMapper;
+    private final PayrollBatchService payrollBatchService;
 
-    public BangLuongController(BangLuongService bangLuongService, BangLuongMapper bangLuongMapper) {
+    public BangLuongController(BangLuongService bangLuongService, BangLuongMapper bangLuongMapper,
+            PayrollBatchService payrollBatchService) {
         this.bangLuongService = bangLuongService;
         this.bangLuongMapper = bangLuongMapper;
+        this.payrollBatchService = payrollBatchService;
     }
 
     private User getCurrentUser() {
@@ -206,6 +211,23 @@ public class BangLuongController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    // Tính lương tự động cho tất cả (job chạy nền, trả về jobId để theo dõi)
+    @PostMapping("/tinh-tu-dong-tat-ca/async")
+    public ResponseEntity<PayrollJobStatusDTO> tinhLuongTuDongChoTatCaAsync(
+            @RequestParam Integer thang,
+            @RequestParam Integer nam) {
+        User currentUser = getCurrentUser();
+        PayrollJobStatusDTO status = payrollBatchService.submit(thang, nam, currentUser);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(status);
+    }
+
+    // Tiến độ / trạng thái job tính lương
+    @GetMapping("/tinh-tu-dong-tat-ca/jobs/{jobId}")
+    public ResponseEntity<PayrollJobStatusDTO> getPayrollJobStatus(@PathVariable String jobId) {
+        User currentUser = getCurrentUser();
+        return ResponseEntity.ok(payrollBatchService.getStatus(jobId, currentUser));
+    }
+
     // Lấy danh sách bảng lương có phân trang
     @GetMapping("/page")
     public ResponseEntity<Page<BangLuongDTO>> getBangLuongPage(
@@ -1,5 +1,8 @@
 package DoAn.BE.hr.controller;
 
+import DoAn.BE.common.exception.BadRequestException;
+import DoAn.BE.common.exception.ForbiddenException;
+import DoAn.BE.common.export.ExportFormat;
 import DoAn.BE.common.util.PermissionUtil;
 import DoAn.BE.hr.service.ExportService;
 import DoAn.BE.user.entity.User;
@@ -11,110 +14,133 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 
+/**
+ * Export dữ liệu HR. Định dạng qua path: excel (xlsx) hoặc csv.
+ * File được ghi trực tiếp ra response (StreamingResponseBody), không dựng sẵn trong bộ nhớ.
+ */
 @RestController
 @RequestMapping("/api/export")
 @RequiredArgsConstructor
 public class ExportController {
-    
+
     private final ExportService exportService;
-    
+
     private User getCurrentUser() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         return (User) auth.getPrincipal();
     }
-    
+
+    // Tham số kỳ lấy thẳng từ query string: sai thì trả 400 thay vì DateTimeException (500)
+    private void validatePeriod(Integer thang, int nam) {
+        if (thang != null && (thang < 1 || thang > 12)) {
+            throw new BadRequestException("Tháng phải từ 1 đến 12");
+        }
+        if (nam < 1900 || nam > 9999) {
+            throw new BadRequestException("Năm không hợp lệ");
+        }
+    }
+
     /**
-     * Export danh sách nhân viên ra Excel
-     * GET /api/export/nhan-vien/excel
+     * Export danh sách nhân viên
+     * GET /api/export/nhan-vien/excel | /api/export/nhan-vien/csv
      */
-    @GetMapping("/nhan-vien/excel")
-    public ResponseEntity<byte[]> exportNhanVienToExcel() throws IOException {
+    @GetMapping("/nhan-vien/{format}")
+    public ResponseEntity<StreamingResponseBody> exportNhanVien(@PathVariable String format) {
         User currentUser = getCurrentUser();
         PermissionUtil.checkHRPermission(currentUser);
-        
-        byte[] excelData = exportService.exportNhanVienToExcel();
-        
-        String filename = "DanhSachNhanVien_" + LocalDate.now().format(DateTimeFormatter.ofPattern("ddMMyyyy")) + ".xlsx";
-        
-        return ResponseEntity.ok()
-            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-            .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-            .body(excelData);
+
+        ExportFormat exportFormat = ExportFormat.fromPath(format);
+        String filename = "DanhSachNhanVien_" + LocalDate.now().format(DateTimeFormatter.ofPattern("ddMMyyyy"));
+
+        return stream(exportFormat, filename, exportService.exportNhanVien(exportFormat));
     }
-    
+
     /**
-     * Export chấm công theo tháng ra Excel
+     * Export chấm công theo tháng, bỏ trống thang để export cả năm
      * GET /api/export/cham-cong/excel?thang=10&nam=2024
+     * GET /api/export/cham-cong/csv?nam=2024
      */
-    @GetMapping("/cham-cong/excel")
-    public ResponseEntity<byte[]> exportChamCongToExcel(
-            @RequestParam int thang,
-            @RequestParam int nam) throws IOException {
+    @GetMapping("/cham-cong/{format}")
+    public ResponseEntity<StreamingResponseBody> exportChamCong(
+            @PathVariable String format,
+            @RequestParam(required = false) Integer thang,
+            @RequestParam int nam) {
         User currentUser = getCurrentUser();
         if (!currentUser.isManagerHR() && !currentUser.isManagerAccounting() && !currentUser.isAdmin()) {
-            throw new RuntimeException("Chỉ HR Manager, Accounting Manager và Admin mới có quyền export chấm công");
+            throw new ForbiddenException("Chỉ HR Manager, Accounting Manager và Admin mới có quyền export chấm công");
         }
-        
-        byte[] excelData = exportService.exportChamCongToExcel(thang, nam);
-        
-        String filename = "ChamCong_" + String.format("%02d%d", thang, nam) + ".xlsx";
-        
-        return ResponseEntity.ok()
-            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-            .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-            .body(excelData);
+
+        validatePeriod(thang, nam);
+        ExportFormat exportFormat = ExportFormat.fromPath(format);
+        LocalDate startDate;
+        LocalDate endDate;
+        String filename;
+        if (thang != null) {
+            YearMonth period = YearMonth.of(nam, thang);
+            startDate = period.atDay(1);
+            endDate = period.atEndOfMonth();
+            filename = "ChamCong_" + String.format("%02d%d", thang, nam);
+        } else {
+            startDate = LocalDate.of(nam, 1, 1);
+            endDate = LocalDate.of(nam, 12, 31);
+            filename = "ChamCong_" + nam;
+        }
+
+        return stream(exportFormat, filename, exportService.exportChamCong(exportFormat, startDate, endDate));
     }
-    
+
     /**
-     * Export bảng lương theo tháng ra Excel
+     * Export bảng lương theo tháng (chỉ Accounting, cùng quyền xem bảng lương)
      * GET /api/export/bang-luong/excel?thang=10&nam=2024
      */
-    @GetMapping("/bang-luong/excel")
-    public ResponseEntity<byte[]> exportBangLuongToExcel(
+    @GetMapping("/bang-luong/{format}")
+    public ResponseEntity<StreamingResponseBody> exportBangLuong(
+            @PathVariable String format,
             @RequestParam int thang,
-            @RequestParam int nam) throws IOException {
+            @RequestParam int nam) {
         User currentUser = getCurrentUser();
-        if (!currentUser.isManagerHR() && !currentUser.isManagerAccounting() && !currentUser.isAdmin()) {
-            throw new RuntimeException("Chỉ HR Manager, Accounting Manager và Admin mới có quyền export bảng lương");
-        }
-        
-        byte[] excelData = exportService.exportBangLuongToExcel(thang, nam);
-        
-        String filename = "BangLuong_" + String.format("%02d%d", thang, nam) + ".xlsx";
-        
-        return ResponseEntity.ok()
-            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-            .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-            .body(excelData);
+        PermissionUtil.checkAccountingViewPermission(currentUser);
+
+        validatePeriod(thang, nam);
+        ExportFormat exportFormat = ExportFormat.fromPath(format);
+        String filename = "BangLuong_" + String.format("%02d%d", thang, nam);
+
+        return stream(exportFormat, filename, exportService.exportBangLuong(exportFormat, thang, nam));
     }
-    
+
     /**
-     * Export danh sách nghỉ phép ra Excel
+     * Export danh sách nghỉ phép
      * GET /api/export/nghi-phep/excel?startDate=2024-01-01&endDate=2024-12-31
      */
-    @GetMapping("/nghi-phep/excel")
-    public ResponseEntity<byte[]> exportNghiPhepToExcel(
+    @GetMapping("/nghi-phep/{format}")
+    public ResponseEntity<StreamingResponseBody> exportNghiPhep(
+            @PathVariable String format,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) throws IOException {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
         User currentUser = getCurrentUser();
-        if (!currentUser.isManagerHR() && !currentUser.isManagerAccounting() && 
+        if (!currentUser.isManagerHR() && !currentUser.isManagerAccounting() &&
             !currentUser.isManagerProject() && !currentUser.isAdmin()) {
-            throw new RuntimeException("Chỉ Manager và Admin mới có quyền export nghỉ phép");
+            throw new ForbiddenException("Chỉ Manager và Admin mới có quyền export nghỉ phép");
         }
-        
-        byte[] excelData = exportService.exportNghiPhepToExcel(startDate, endDate);
-        
-        String filename = "NghiPhep_" + startDate.format(DateTimeFormatter.ofPattern("ddMMyyyy")) + 
-                         "_" + endDate.format(DateTimeFormatter.ofPattern("ddMMyyyy")) + ".xlsx";
-        
+
+        ExportFormat exportFormat = ExportFormat.fromPath(format);
+        String filename = "NghiPhep_" + startDate.format(DateTimeFormatter.ofPattern("ddMMyyyy")) +
+                         "_" + endDate.format(DateTimeFormatter.ofPattern("ddMMyyyy"));
+
+        return stream(exportFormat, filename, exportService.exportNghiPhep(exportFormat, startDate, endDate));
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(ExportFormat format, String baseName, StreamingResponseBody body) {
+        String filename = baseName + "." + format.getExtension();
         return ResponseEntity.ok()
             .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-            .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-            .body(excelData);
+            .contentType(MediaType.parseMediaType(format.getContentType()))
+            .body(body);
     }
 }
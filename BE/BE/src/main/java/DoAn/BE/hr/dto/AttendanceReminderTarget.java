@@ -0,0 +1,27 @@
+package DoAn.BE.hr.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Projection cho job nhắc chấm công: chỉ các cột cần để gửi notification/FCM
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttendanceReminderTarget {
+
+    private Long userId;
+
+    private String hoTen;
+
+    private String fcmToken;
+
+    // null nếu nhân viên chưa có bản ghi chấm công trong ngày
+    private Long chamcongId;
+
+    public boolean isMissingRecord() {
+        return chamcongId == null;
+    }
+}
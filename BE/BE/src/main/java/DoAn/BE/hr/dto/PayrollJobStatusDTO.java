@@ -0,0 +1,51 @@
+package DoAn.BE.hr.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Trạng thái job tính lương hàng loạt (dùng cho endpoint theo dõi tiến độ)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PayrollJobStatusDTO {
+
+    private String jobId;
+
+    private Integer thang;
+
+    private Integer nam;
+
+    // DANG_CHO, DANG_CHAY, HOAN_THANH, THAT_BAI
+    private String trangThai;
+
+    private String nguoiThucHien;
+
+    // Tổng số nhân viên đang làm việc trong kỳ
+    private int tongNhanVien;
+
+    private int daXuLy;
+
+    private int thanhCong;
+
+    // Đã có bảng lương trong kỳ hoặc chưa có hợp đồng hiệu lực
+    private int boQua;
+
+    private int thatBai;
+
+    // Phần trăm hoàn thành (0-100)
+    private int tienDo;
+
+    private LocalDateTime batDau;
+
+    private LocalDateTime ketThuc;
+
+    private List<String> loi;
+}
@@ -98,7 +98,8 @@ public class BangLuong {
         calculateTotalSalary();
     }
 
-    private void calculateTotalSalary() {
+    // Public để batch tính lương (JDBC insert) dùng cùng công thức với @PrePersist
+    public void calculateTotalSalary() {
         // 1. Tính lương theo ngày công
         BigDecimal base = luongCoBan != null ? luongCoBan : BigDecimal.ZERO;
         if (ngayCong != null && ngayCong > 0 && ngayCongChuan != null && ngayCongChuan > 0) {
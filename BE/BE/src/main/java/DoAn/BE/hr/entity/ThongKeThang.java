@@ -0,0 +1,126 @@
+package DoAn.BE.hr.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Snapshot thống kê HR theo tháng (materialized cho dashboard).
+ * - Phần bảng lương, chấm công: theo đúng kỳ của dòng
+ * - Phần nhân viên, hợp đồng: trạng thái tại thời điểm cập nhật gần nhất của kỳ
+ * DynamicUpdate để mỗi lần refresh chỉ ghi các cột của phần đã thay đổi.
+ */
+@Entity
+@Table(name = "thong_ke_thang", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_thong_ke_thang_ky", columnNames = "ky")
+})
+@DynamicUpdate
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThongKeThang {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "thongke_id")
+    private Long thongkeId;
+
+    // Kỳ dạng yyyyMM (vd: 202510), dùng để truy vấn theo khoảng
+    @Column(name = "ky", nullable = false)
+    private Integer ky;
+
+    @Column(name = "thang", nullable = false)
+    private Integer thang;
+
+    @Column(name = "nam", nullable = false)
+    private Integer nam;
+
+    // Nhân viên
+    @Column(name = "tong_nhan_vien")
+    private long tongNhanVien;
+
+    @Column(name = "nhan_vien_dang_lam")
+    private long nhanVienDangLam;
+
+    @Column(name = "nhan_vien_nghi_viec")
+    private long nhanVienNghiViec;
+
+    @Column(name = "nhan_vien_nam")
+    private long nhanVienNam;
+
+    @Column(name = "nhan_vien_nu")
+    private long nhanVienNu;
+
+    @Column(name = "nhan_vien_gioi_tinh_khac")
+    private long nhanVienGioiTinhKhac;
+
+    // Nhân viên đang làm việc theo nhóm tuổi
+    @Column(name = "tuoi_20_25")
+    private long tuoi20Den25;
+
+    @Column(name = "tuoi_26_30")
+    private long tuoi26Den30;
+
+    @Column(name = "tuoi_31_35")
+    private long tuoi31Den35;
+
+    @Column(name = "tuoi_36_40")
+    private long tuoi36Den40;
+
+    @Column(name = "tuoi_41_50")
+    private long tuoi41Den50;
+
+    @Column(name = "tuoi_tren_50")
+    private long tuoiTren50;
+
+    // Hợp đồng
+    @Column(name = "tong_hop_dong")
+    private long tongHopDong;
+
+    @Column(name = "hop_dong_hieu_luc")
+    private long hopDongHieuLuc;
+
+    @Column(name = "hop_dong_het_han")
+    private long hopDongHetHan;
+
+    @Column(name = "hop_dong_sap_het_han")
+    private long hopDongSapHetHan; // Trong 30 ngày
+
+    @Column(name = "hop_dong_thu_viec")
+    private long hopDongThuViec;
+
+    @Column(name = "hop_dong_xac_dinh")
+    private long hopDongXacDinh;
+
+    @Column(name = "hop_dong_vo_thoi_han")
+    private long hopDongVoThoiHan;
+
+    // Bảng lương của kỳ
+    @Column(name = "so_bang_luong")
+    private long soBangLuong;
+
+    @Column(name = "bang_luong_chua_thanh_toan")
+    private long bangLuongChuaThanhToan;
+
+    @Column(name = "bang_luong_da_thanh_toan")
+    private long bangLuongDaThanhToan;
+
+    @Column(name = "bang_luong_cho_duyet")
+    private long bangLuongChoDuyet;
+
+    @Column(name = "tong_luong_thuc_nhan", precision = 18, scale = 2)
+    private BigDecimal tongLuongThucNhan = BigDecimal.ZERO;
+
+    // Chấm công của kỳ - chỉ cập nhật bằng query cộng dồn/đối soát, không ghi qua entity
+    @Column(name = "tong_cham_cong", updatable = false)
+    private long tongChamCong;
+
+    @Column(name = "cap_nhat_luc")
+    private LocalDateTime capNhatLuc;
+
+    @Column(name = "doi_soat_luc")
+    private LocalDateTime doiSoatLuc;
+}
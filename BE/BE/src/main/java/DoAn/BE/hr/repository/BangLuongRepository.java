@@ -8,6 +8,10 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface BangLuongRepository extends JpaRepository<BangLuong, Long> {
@@ -37,6 +41,15 @@ public interface BangLuongRepository extends JpaRepository<BangLuong, Long> {
     // Tìm bảng lương theo nhân viên và trạng thái
     List<BangLuong> findByNhanVien_NhanvienIdAndTrangThai(Long nhanvienId, String trangThai);
 
+    // Thống kê bảng lương của kỳ theo trạng thái: [trangThai, soLuong, tongLuongThucNhan]
+    @Query("SELECT bl.trangThai, COUNT(bl), COALESCE(SUM(bl.luongThucNhan), 0) FROM BangLuong bl " +
+           "WHERE bl.thang = :thang AND bl.nam = :nam GROUP BY bl.trangThai")
+    List<Object[]> aggregateByTrangThai(@Param("thang") Integer thang, @Param("nam") Integer nam);
+
+    // ID nhân viên đã có bảng lương trong kỳ (cho batch tính lương)
+    @Query("SELECT bl.nhanVien.nhanvienId FROM BangLuong bl WHERE bl.thang = :thang AND bl.nam = :nam")
+    List<Long> findNhanVienIdsByThangAndNam(@Param("thang") Integer thang, @Param("nam") Integer nam);
+
     // Kiểm tra bảng lương đã tồn tại chưa
     boolean existsByNhanVien_NhanvienIdAndThangAndNam(Long nhanvienId, Integer thang, Integer nam);
 
@@ -59,6 +72,14 @@ public interface BangLuongRepository extends JpaRepository<BangLuong, Long> {
     // Xóa bảng lương theo nhân viên và tháng năm
     void deleteByNhanVien_NhanvienIdAndThangAndNam(Long nhanvienId, Integer thang, Integer nam);
 
+    // Export: bảng lương theo tháng, đọc tuần tự (cursor)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT nv.nhanvienId, nv.hoTen, pb.tenPhongBan, bl.luongCoBan, bl.ngayCong, bl.ngayCongChuan, " +
+           "bl.luongTheoNgayCong, bl.phuCap, bl.thuong, bl.gioLamThem, bl.tienLamThem, " +
+           "bl.bhxh, bl.bhyt, bl.bhtn, bl.thueTNCN, bl.khauTruKhac, " +
+           "bl.tongLuong, bl.tongKhauTru, bl.luongThucNhan, bl.trangThai " +
+           "FROM BangLuong bl JOIN bl.nhanVien nv LEFT JOIN nv.phongBan pb " +
+           "WHERE bl.thang = :thang AND bl.nam = :nam " +
+           "ORDER BY nv.nhanvienId")
+    Stream<Object[]> streamForExport(@Param("thang") Integer thang, @Param("nam") Integer nam);
 }
-
-
@@ -1,5 +1,6 @@
 package DoAn.BE.hr.repository;
 
+import DoAn.BE.hr.dto.AttendanceReminderTarget;
 import DoAn.BE.hr.entity.ChamCong;
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -8,6 +9,10 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface ChamCongRepository extends JpaRepository<ChamCong, Long> {
@@ -24,6 +29,22 @@ public interface ChamCongRepository extends JpaRepository<ChamCong, Long> {
        // Tìm theo nhân viên và ngày cụ thể (cho GPS attendance)
        List<ChamCong> findByNhanVien_NhanvienIdAndNgayCham(Long nhanvienId, LocalDate ngayCham);
 
+       // Nhân viên đã check-in nhưng chưa check-out trong ngày (cho job nhắc checkout)
+       @Query("SELECT new DoAn.BE.hr.dto.AttendanceReminderTarget(u.userId, nv.hoTen, u.fcmToken, cc.chamcongId) " +
+                     "FROM ChamCong cc JOIN cc.nhanVien nv JOIN nv.user u " +
+                     "WHERE cc.ngayCham = :ngayCham AND cc.gioVao IS NOT NULL AND cc.gioRa IS NULL")
+       List<AttendanceReminderTarget> findCheckoutReminderTargets(@Param("ngayCham") LocalDate ngayCham);
+
+       // Nhân viên chưa có bản ghi chấm công hoặc chưa check-out trong ngày (cho job missing attendance)
+       @Query("SELECT new DoAn.BE.hr.dto.AttendanceReminderTarget(u.userId, nv.hoTen, u.fcmToken, cc.chamcongId) " +
+                     "FROM NhanVien nv JOIN nv.user u " +
+                     "LEFT JOIN ChamCong cc ON cc.nhanVien = nv AND cc.ngayCham = :ngayCham " +
+                     "WHERE cc.chamcongId IS NULL OR (cc.gioVao IS NOT NULL AND cc.gioRa IS NULL)")
+       List<AttendanceReminderTarget> findMissingAttendanceTargets(@Param("ngayCham") LocalDate ngayCham);
+
+       // Đếm bản ghi chấm công trong khoảng ngày (không load entity)
+       long countByNgayChamBetween(LocalDate startDate, LocalDate endDate);
+
        // Đếm số ngày công (trạng thái hợp lệ)
        @Query(value = "SELECT COUNT(*) FROM cham_cong cc " +
                      "WHERE cc.nhanvien_id = :nhanvienId " +
@@ -33,6 +54,31 @@ public interface ChamCongRepository extends JpaRepository<ChamCong, Long> {
                      @Param("startDate") LocalDate startDate,
                      @Param("endDate") LocalDate endDate);
 
+       // Thống kê chấm công theo nhân viên trong kỳ: [nhanvien_id, so_ngay_cong, tong_gio_lam]
+       @Query(value = "SELECT cc.nhanvien_id, " +
+                     "SUM(CASE WHEN cc.trang_thai IN ('DU_GIO', 'DI_TRE', 'VE_SOM') THEN 1 ELSE 0 END), " +
+                     "COALESCE(SUM(cc.so_gio_lam), 0) " +
+                     "FROM cham_cong cc " +
+                     "WHERE cc.ngay_cham BETWEEN :startDate AND :endDate " +
+                     "GROUP BY cc.nhanvien_id", nativeQuery = true)
+       List<Object[]> aggregateWorkingStatsByPeriod(@Param("startDate") LocalDate startDate,
+                     @Param("endDate") LocalDate endDate);
+
+       // Thống kê chấm công theo phòng ban trong kỳ (một query cho dashboard):
+       // [tenPhongBan, tongNhanVien, diTre, veSom, duGio, tongBanGhi]
+       @Query("SELECT pb.tenPhongBan, COUNT(DISTINCT nv.nhanvienId), " +
+                     "SUM(CASE WHEN cc.trangThai = DoAn.BE.hr.entity.ChamCong.TrangThaiChamCong.DI_TRE THEN 1 ELSE 0 END), " +
+                     "SUM(CASE WHEN cc.trangThai = DoAn.BE.hr.entity.ChamCong.TrangThaiChamCong.VE_SOM THEN 1 ELSE 0 END), " +
+                     "SUM(CASE WHEN cc.trangThai = DoAn.BE.hr.entity.ChamCong.TrangThaiChamCong.DU_GIO THEN 1 ELSE 0 END), " +
+                     "COUNT(cc.chamcongId) " +
+                     "FROM PhongBan pb " +
+                     "LEFT JOIN NhanVien nv ON nv.phongBan = pb " +
+                     "LEFT JOIN ChamCong cc ON cc.nhanVien = nv AND cc.ngayCham BETWEEN :startDate AND :endDate " +
+                     "GROUP BY pb.phongbanId, pb.tenPhongBan " +
+                     "ORDER BY pb.phongbanId")
+       List<Object[]> aggregateStatsByPhongBan(@Param("startDate") LocalDate startDate,
+                     @Param("endDate") LocalDate endDate);
+
        // Tính tổng giờ làm việc
        @Query(value = "SELECT COALESCE(SUM(cc.so_gio_lam), 0) FROM cham_cong cc " +
                      "WHERE cc.nhanvien_id = :nhanvienId " +
@@ -65,4 +111,13 @@ public interface ChamCongRepository extends JpaRepository<ChamCong, Long> {
 
        // Tìm chấm công theo danh sách user ID (cho Project Manager)
        List<ChamCong> findByNhanVien_User_UserIdIn(List<Long> userIds);
+
+    // Export: chấm công trong khoảng ngày, đọc tuần tự (cursor)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT nv.nhanvienId, nv.hoTen, pb.tenPhongBan, cc.ngayCham, cc.gioVao, cc.gioRa, cc.soGioLam, " +
+           "cc.trangThai, cc.loaiCa, cc.phuongThuc, cc.ghiChu " +
+           "FROM ChamCong cc JOIN cc.nhanVien nv LEFT JOIN nv.phongBan pb " +
+           "WHERE cc.ngayCham BETWEEN :startDate AND :endDate " +
+           "ORDER BY cc.ngayCham, nv.nhanvienId")
+    Stream<Object[]> streamForExport(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 }
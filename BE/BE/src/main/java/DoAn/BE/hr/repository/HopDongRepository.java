@@ -30,6 +30,11 @@ public interface HopDongRepository extends JpaRepository<HopDong, Long> {
     Optional<HopDong> findFirstByNhanVien_NhanvienIdAndTrangThaiOrderByNgayBatDauDesc(
         Long nhanvienId, TrangThaiHopDong trangThai);
     
+    // Lương cơ bản từ hợp đồng hiệu lực của tất cả nhân viên: [nhanvienId, luongCoBan, ngayBatDau]
+    @Query("SELECT hd.nhanVien.nhanvienId, hd.luongCoBan, hd.ngayBatDau FROM HopDong hd " +
+           "WHERE hd.trangThai = :trangThai")
+    List<Object[]> findLuongCoBanByTrangThai(@Param("trangThai") TrangThaiHopDong trangThai);
+    
     // Tìm hợp đồng sắp hết hạn
     @Query("SELECT hd FROM HopDong hd WHERE hd.trangThai = 'HIEU_LUC' " +
            "AND hd.ngayKetThuc IS NOT NULL " +
@@ -45,6 +50,17 @@ public interface HopDongRepository extends JpaRepository<HopDong, Long> {
     // Đếm theo trạng thái
     long countByTrangThai(TrangThaiHopDong trangThai);
     
+    // Đếm hợp đồng hiệu lực sắp hết hạn (cho snapshot thống kê)
+    @Query("SELECT COUNT(hd) FROM HopDong hd WHERE hd.trangThai = 'HIEU_LUC' " +
+           "AND hd.ngayKetThuc IS NOT NULL " +
+           "AND hd.ngayKetThuc BETWEEN :startDate AND :endDate")
+    long countExpiringContracts(@Param("startDate") LocalDate startDate,
+                                @Param("endDate") LocalDate endDate);
+    
+    // Thống kê theo trạng thái: [trangThai, soLuong]
+    @Query("SELECT hd.trangThai, COUNT(hd) FROM HopDong hd GROUP BY hd.trangThai")
+    List<Object[]> getStatsByTrangThai();
+    
     // Thống kê theo loại hợp đồng (cần cho dashboard)
     @Query("SELECT hd.loaiHopDong, COUNT(hd) FROM HopDong hd GROUP BY hd.loaiHopDong")
     List<Object[]> getStatsByLoaiHopDong();
@@ -8,6 +8,10 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface NghiPhepRepository extends JpaRepository<NghiPhep, Long> {
@@ -53,4 +57,13 @@ public interface NghiPhepRepository extends JpaRepository<NghiPhep, Long> {
 
         // Tìm theo khoảng ngày bắt đầu (cần cho export)
         List<NghiPhep> findByNgayBatDauBetween(LocalDate startDate, LocalDate endDate);
+
+        // Export: đơn nghỉ phép giao với khoảng ngày, đọc tuần tự (cursor)
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+        @Query("SELECT np.nghiphepId, nv.hoTen, pb.tenPhongBan, np.loaiPhep, np.ngayBatDau, np.ngayKetThuc, " +
+               "np.soNgay, np.lyDo, np.trangThai " +
+               "FROM NghiPhep np JOIN np.nhanVien nv LEFT JOIN nv.phongBan pb " +
+               "WHERE np.ngayBatDau <= :endDate AND np.ngayKetThuc >= :startDate " +
+               "ORDER BY np.ngayBatDau, np.nghiphepId")
+        Stream<Object[]> streamForExport(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 }
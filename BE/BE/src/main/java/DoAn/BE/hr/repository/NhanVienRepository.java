@@ -8,6 +8,10 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface NhanVienRepository extends JpaRepository<NhanVien, Long> {
@@ -16,6 +20,18 @@ public interface NhanVienRepository extends JpaRepository<NhanVien, Long> {
     boolean existsByCccd(String cccd);
     
     List<NhanVien> findByTrangThai(TrangThaiNhanVien trangThai);
+    
+    // Thống kê theo trạng thái: [trangThai, soLuong]
+    @Query("SELECT nv.trangThai, COUNT(nv) FROM NhanVien nv GROUP BY nv.trangThai")
+    List<Object[]> getStatsByTrangThai();
+    
+    // Ngày sinh + giới tính (không load entity) để thống kê độ tuổi/giới tính
+    @Query("SELECT nv.ngaySinh, nv.gioiTinh FROM NhanVien nv WHERE nv.trangThai = :trangThai")
+    List<Object[]> findNgaySinhAndGioiTinhByTrangThai(@Param("trangThai") TrangThaiNhanVien trangThai);
+    
+    // Nhân viên theo trạng thái kèm user (tránh N+1 khi batch tính lương)
+    @Query("SELECT nv FROM NhanVien nv LEFT JOIN FETCH nv.user WHERE nv.trangThai = :trangThai")
+    List<NhanVien> findByTrangThaiFetchUser(@Param("trangThai") TrangThaiNhanVien trangThai);
     List<NhanVien> findByPhongBan_PhongbanId(Long phongbanId);
     List<NhanVien> findByChucVu_ChucvuId(Long chucvuId);
     
@@ -33,6 +49,12 @@ public interface NhanVienRepository extends JpaRepository<NhanVien, Long> {
     // Tìm nhân viên sinh nhật (cần cho WorkflowNotificationService)
     @Query("SELECT nv FROM NhanVien nv WHERE MONTH(nv.ngaySinh) = :month AND DAY(nv.ngaySinh) = :day AND nv.trangThai = 'DANG_LAM_VIEC'")
     List<NhanVien> findByBirthday(@Param("month") int month, @Param("day") int day);
-}
-
 
+    // Export: đọc tuần tự (cursor) từng dòng, không nạp entity
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT nv.nhanvienId, nv.hoTen, nv.cccd, nv.ngaySinh, nv.gioiTinh, u.email, nv.sdt, nv.diaChi, " +
+           "pb.tenPhongBan, cv.tenChucVu, nv.ngayVaoLam, nv.trangThai " +
+           "FROM NhanVien nv LEFT JOIN nv.user u LEFT JOIN nv.phongBan pb LEFT JOIN nv.chucVu cv " +
+           "ORDER BY nv.nhanvienId")
+    Stream<Object[]> streamForExport();
+}
@@ -0,0 +1,29 @@
+package DoAn.BE.hr.repository;
+
+import DoAn.BE.hr.entity.ThongKeThang;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ThongKeThangRepository extends JpaRepository<ThongKeThang, Long> {
+
+    Optional<ThongKeThang> findByKy(Integer ky);
+
+    // Các kỳ liên tiếp (biểu đồ nhiều tháng)
+    List<ThongKeThang> findByKyBetweenOrderByKyAsc(Integer fromKy, Integer toKy);
+
+    // Cộng dồn số bản ghi chấm công (atomic, không đọc-sửa-ghi)
+    @Modifying
+    @Query("UPDATE ThongKeThang t SET t.tongChamCong = t.tongChamCong + :delta WHERE t.ky = :ky")
+    int incrementTongChamCong(@Param("ky") Integer ky, @Param("delta") long delta);
+
+    // Ghi đè số bản ghi chấm công khi đối soát
+    @Modifying
+    @Query("UPDATE ThongKeThang t SET t.tongChamCong = :tongChamCong WHERE t.ky = :ky")
+    int updateTongChamCong(@Param("ky") Integer ky, @Param("tongChamCong") long tongChamCong);
+}
@@ -1,21 +1,32 @@
 package DoAn.BE.hr.service;
 
+import DoAn.BE.hr.dto.AttendanceReminderTarget;
 import DoAn.BE.hr.entity.ChamCong;
 import DoAn.BE.hr.entity.NhanVien;
 import DoAn.BE.hr.repository.ChamCongRepository;
 import DoAn.BE.hr.repository.NhanVienRepository;
 import DoAn.BE.notification.service.AttendanceNotificationService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Service xử lý scheduled jobs cho Attendance
@@ -31,126 +42,147 @@ public class AttendanceScheduledService {
     private final NhanVienRepository nhanVienRepository;
     private final AttendanceNotificationService attendanceNotificationService;
     private final DoAn.BE.notification.service.FCMService fcmService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${attendance.reminder.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${attendance.reminder.parallelism:4}")
+    private int parallelism;
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
     /**
      * Nhắc checkout cuối ngày (5:30 PM)
+     * Một query lấy đúng những nhân viên cần nhắc, gửi theo lô song song
      */
     @Scheduled(cron = "0 30 17 * * MON-FRI")
-    @Transactional
     public void remindCheckout() {
         log.info("🔔 Bắt đầu nhắc checkout...");
+        Timer.Sample sample = Timer.start(meterRegistry);
 
         LocalDate today = LocalDate.now();
-
-        // Get all employees
-        List<NhanVien> allEmployees = nhanVienRepository.findAll();
-
-        int reminderCount = 0;
-        for (NhanVien nhanVien : allEmployees) {
-            try {
-                // Check if employee has checked in but not checked out
-                List<ChamCong> todayAttendance = chamCongRepository
-                        .findByNhanVien_NhanvienIdAndNgayCham(nhanVien.getNhanvienId(), today);
-
-                if (!todayAttendance.isEmpty()) {
-                    ChamCong chamCong = todayAttendance.get(0);
-
-                    // Has check-in but no check-out
-                    if (chamCong.getGioVao() != null && chamCong.getGioRa() == null) {
-                        if (nhanVien.getUser() != null) {
-                            attendanceNotificationService.createCheckoutReminderNotification(
-                                    nhanVien.getUser().getUserId());
-
-                            // 📱 Push FCM notification
-                            if (nhanVien.getUser().getFcmToken() != null) {
-                                Map<String, String> data = new HashMap<>();
-                                data.put("type", "ATTENDANCE_CHECKOUT_REMINDER");
-                                data.put("link", "/attendance");
-                                fcmService.sendToDevice(
-                                        nhanVien.getUser().getFcmToken(),
-                                        "⏰ Nhắc check-out",
-                                        "Bạn chưa check-out hôm nay. Hãy check-out trước khi về!",
-                                        data);
-                            }
-
-                            reminderCount++;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                log.error("Error sending checkout reminder for employee {}: {}",
-                        nhanVien.getHoTen(), e.getMessage());
-            }
-        }
-
+        List<AttendanceReminderTarget> targets = chamCongRepository.findCheckoutReminderTargets(today);
+
+        Map<String, String> data = new HashMap<>();
+        data.put("type", "ATTENDANCE_CHECKOUT_REMINDER");
+        data.put("link", "/attendance");
+
+        int reminderCount = processInChunks("remind_checkout", distinctByUser(targets), chunk -> {
+            attendanceNotificationService.createCheckoutReminderNotifications(userIdsOf(chunk));
+            // 📱 Push FCM notification
+            fcmService.sendToDevices(fcmTokensOf(chunk),
+                    "⏰ Nhắc check-out",
+                    "Bạn chưa check-out hôm nay. Hãy check-out trước khi về!",
+                    data);
+        });
+
+        recordJob("remind_checkout", sample, reminderCount);
         log.info("✅ Hoàn tất nhắc checkout. Đã gửi {} reminders", reminderCount);
     }
 
     /**
      * Check missing attendance (chạy vào 8:00 PM mỗi ngày)
+     * Một query trả về cả nhân viên chưa chấm công và chưa check-out
      */
     @Scheduled(cron = "0 0 20 * * MON-FRI")
-    @Transactional
     public void checkMissingAttendance() {
         log.info("🔍 Bắt đầu kiểm tra missing attendance...");
+        Timer.Sample sample = Timer.start(meterRegistry);
 
         LocalDate today = LocalDate.now();
         String dateStr = today.format(DATE_FORMATTER);
 
-        // Get all employees
-        List<NhanVien> allEmployees = nhanVienRepository.findAll();
+        List<AttendanceReminderTarget> targets = distinctByUser(chamCongRepository.findMissingAttendanceTargets(today));
+        List<AttendanceReminderTarget> noRecord = targets.stream()
+                .filter(AttendanceReminderTarget::isMissingRecord)
+                .toList();
+        List<AttendanceReminderTarget> missingCheckout = targets.stream()
+                .filter(target -> !target.isMissingRecord())
+                .toList();
+
+        // Không có bản ghi chấm công - chỉ gửi notification
+        int missingCount = processInChunks("missing_attendance", noRecord,
+                chunk -> attendanceNotificationService.createMissingAttendanceNotifications(userIdsOf(chunk), dateStr));
+
+        // Có check-in nhưng chưa check-out - notification + FCM
+        Map<String, String> data = new HashMap<>();
+        data.put("type", "ATTENDANCE_MISSING_CHECKOUT");
+        data.put("link", "/attendance");
+        missingCount += processInChunks("missing_checkout", missingCheckout, chunk -> {
+            attendanceNotificationService.createMissingAttendanceNotifications(userIdsOf(chunk),
+                    dateStr + " (Chưa checkout)");
+            // 📱 Push FCM notification
+            fcmService.sendToDevices(fcmTokensOf(chunk),
+                    "⚠️ Chưa check-out",
+                    "Bạn chưa check-out ngày " + dateStr,
+                    data);
+        });
+
+        recordJob("missing_attendance", sample, missingCount);
+        log.info("✅ Hoàn tất kiểm tra missing attendance. Đã gửi {} notifications", missingCount);
+    }
 
-        int missingCount = 0;
-        for (NhanVien nhanVien : allEmployees) {
-            try {
-                // Check if employee has attendance record today
-                List<ChamCong> todayAttendance = chamCongRepository
-                        .findByNhanVien_NhanvienIdAndNgayCham(nhanVien.getNhanvienId(), today);
-
-                if (todayAttendance.isEmpty()) {
-                    // No attendance record - send notification
-                    if (nhanVien.getUser() != null) {
-                        attendanceNotificationService.createMissingAttendanceNotification(
-                                nhanVien.getUser().getUserId(),
-                                dateStr);
-                        missingCount++;
-                        log.debug("⚠️ Sent missing attendance notification for: {}", nhanVien.getHoTen());
-                    }
-                } else {
-                    ChamCong chamCong = todayAttendance.get(0);
-
-                    // Has check-in but no check-out
-                    if (chamCong.getGioVao() != null && chamCong.getGioRa() == null) {
-                        if (nhanVien.getUser() != null) {
-                            attendanceNotificationService.createMissingAttendanceNotification(
-                                    nhanVien.getUser().getUserId(),
-                                    dateStr + " (Chưa checkout)");
-
-                            // 📱 Push FCM notification
-                            if (nhanVien.getUser().getFcmToken() != null) {
-                                Map<String, String> data = new HashMap<>();
-                                data.put("type", "ATTENDANCE_MISSING_CHECKOUT");
-                                data.put("link", "/attendance");
-                                fcmService.sendToDevice(
-                                        nhanVien.getUser().getFcmToken(),
-                                        "⚠️ Chưa check-out",
-                                        "Bạn chưa check-out ngày " + dateStr,
-                                        data);
-                            }
-
-                            missingCount++;
-                        }
+    /**
+     * Chia danh sách thành các lô và xử lý song song với số thread giới hạn.
+     * Mỗi lô là một transaction notification + một multicast FCM; lô lỗi không làm hỏng lô khác.
+     * Trả về số nhân viên thuộc các lô xử lý thành công.
+     */
+    private int processInChunks(String job, List<AttendanceReminderTarget> targets,
+            Consumer<List<AttendanceReminderTarget>> handler) {
+        if (targets.isEmpty()) {
+            return 0;
+        }
+
+        List<List<AttendanceReminderTarget>> chunks = new ArrayList<>();
+        for (int from = 0; from < targets.size(); from += chunkSize) {
+            chunks.add(targets.subList(from, Math.min(from + chunkSize, targets.size())));
+        }
+
+        AtomicInteger processed = new AtomicInteger();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()))) {
+            for (List<AttendanceReminderTarget> chunk : chunks) {
+                executor.submit(() -> {
+                    try {
+                        handler.accept(chunk);
+                        processed.addAndGet(chunk.size());
+                    } catch (Exception e) {
+                        log.error("Error processing {} chunk of {} employees: {}", job, chunk.size(), e.getMessage());
                     }
-                }
-            } catch (Exception e) {
-                log.error("Error checking attendance for employee {}: {}",
-                        nhanVien.getHoTen(), e.getMessage());
+                });
             }
         }
+        return processed.get();
+    }
 
-        log.info("✅ Hoàn tất kiểm tra missing attendance. Đã gửi {} notifications", missingCount);
+    // Một nhân viên có thể có nhiều bản ghi trong ngày, chỉ nhắc một lần
+    private List<AttendanceReminderTarget> distinctByUser(List<AttendanceReminderTarget> targets) {
+        Map<Long, AttendanceReminderTarget> byUser = new LinkedHashMap<>();
+        targets.forEach(target -> byUser.putIfAbsent(target.getUserId(), target));
+        return new ArrayList<>(byUser.values());
+    }
+
+    private List<Long> userIdsOf(List<AttendanceReminderTarget> chunk) {
+        return chunk.stream().map(AttendanceReminderTarget::getUserId).toList();
+    }
+
+    private List<String> fcmTokensOf(List<AttendanceReminderTarget> chunk) {
+        return chunk.stream()
+                .map(AttendanceReminderTarget::getFcmToken)
+                .filter(token -> token != null)
+                .toList();
+    }
+
+    private void recordJob(String job, Timer.Sample sample, int items) {
+        sample.stop(Timer.builder("hr.attendance.job.duration")
+                .tag("job", job)
+                .description("Thời gian chạy job nhắc chấm công")
+                .register(meterRegistry));
+        Counter.builder("hr.attendance.job.items")
+                .tag("job", job)
+                .description("Số nhân viên được nhắc")
+                .register(meterRegistry)
+                .increment(items);
     }
 
     /**
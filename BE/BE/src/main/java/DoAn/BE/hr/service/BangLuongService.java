@@ -27,6 +27,7 @@ import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -43,19 +44,25 @@ public class BangLuongService {
     private final ChamCongRepository chamCongRepository;
     private final HRNotificationService hrNotificationService;
     private final FCMService fcmService;
+    private final PayrollBatchService payrollBatchService;
+    private final HRStatsSnapshotService hrStatsSnapshotService;
 
     public BangLuongService(BangLuongRepository bangLuongRepository,
             NhanVienRepository nhanVienRepository,
             HopDongRepository hopDongRepository,
             ChamCongRepository chamCongRepository,
             HRNotificationService hrNotificationService,
-            FCMService fcmService) {
+            FCMService fcmService,
+            PayrollBatchService payrollBatchService,
+            HRStatsSnapshotService hrStatsSnapshotService) {
         this.bangLuongRepository = bangLuongRepository;
         this.nhanVienRepository = nhanVienRepository;
         this.hopDongRepository = hopDongRepository;
         this.chamCongRepository = chamCongRepository;
         this.hrNotificationService = hrNotificationService;
         this.fcmService = fcmService;
+        this.payrollBatchService = payrollBatchService;
+        this.hrStatsSnapshotService = hrStatsSnapshotService;
     }
 
     // Tạo bảng lương mới - CHỈ Accounting Manager
@@ -87,7 +94,9 @@ public class BangLuongService {
         bangLuong.setKhauTruKhac(request.getKhauTruKhac() != null ? request.getKhauTruKhac() : BigDecimal.ZERO);
         bangLuong.setGhiChu(request.getGhiChu());
 
-        return bangLuongRepository.save(bangLuong);
+        BangLuong saved = bangLuongRepository.save(bangLuong);
+        hrStatsSnapshotService.markBangLuongChanged(saved.getThang(), saved.getNam());
+        return saved;
     }
 
     /**
@@ -169,6 +178,8 @@ public class BangLuongService {
         log.info("Accounting {} cập nhật bảng lương ID: {}", currentUser.getUsername(), id);
 
         BangLuong bangLuong = getBangLuongById(id);
+        // Kỳ cũ cũng cần cập nhật thống kê nếu bảng lương bị chuyển kỳ
+        hrStatsSnapshotService.markBangLuongChanged(bangLuong.getThang(), bangLuong.getNam());
 
         // Cập nhật các trường nếu có
         if (request.getThang() != null) {
@@ -205,7 +216,9 @@ public class BangLuongService {
             bangLuong.setGhiChu(request.getGhiChu());
         }
 
-        return bangLuongRepository.save(bangLuong);
+        BangLuong saved = bangLuongRepository.save(bangLuong);
+        hrStatsSnapshotService.markBangLuongChanged(saved.getThang(), saved.getNam());
+        return saved;
     }
 
     /**
@@ -217,6 +230,7 @@ public class BangLuongService {
 
         BangLuong bangLuong = getBangLuongById(id);
         bangLuongRepository.delete(bangLuong);
+        hrStatsSnapshotService.markBangLuongChanged(bangLuong.getThang(), bangLuong.getNam());
     }
 
     /**
@@ -320,6 +334,7 @@ public class BangLuongService {
         BangLuong bangLuong = getBangLuongById(id);
         bangLuong.setTrangThai("DA_THANH_TOAN");
         BangLuong saved = bangLuongRepository.save(bangLuong);
+        hrStatsSnapshotService.markBangLuongChanged(saved.getThang(), saved.getNam());
 
         // 🔔 Gửi notification + Push FCM cho nhân viên
         try {
@@ -361,7 +376,9 @@ public class BangLuongService {
         BangLuong bangLuong = getBangLuongById(id); // Version không check, OK vì đã check ở trên
         bangLuong.setTrangThai("DA_HUY");
         log.warn("⚠️ Accounting {} hủy bảng lương ID: {}", currentUser.getUsername(), id);
-        return bangLuongRepository.save(bangLuong);
+        BangLuong saved = bangLuongRepository.save(bangLuong);
+        hrStatsSnapshotService.markBangLuongChanged(saved.getThang(), saved.getNam());
+        return saved;
     }
 
     /**
@@ -469,6 +486,7 @@ public class BangLuongService {
 
         // Entity sẽ tự động tính các khoản còn lại trong @PrePersist
         BangLuong saved = bangLuongRepository.save(bangLuong);
+        hrStatsSnapshotService.markBangLuongChanged(thang, nam);
 
         log.info("✅ Tính lương thành công cho nhân viên: {} - Thực nhận: {}",
                 nhanVien.getHoTen(), saved.getLuongThucNhan());
@@ -505,25 +523,20 @@ public class BangLuongService {
 
     /**
      * Tính lương tự động cho tất cả nhân viên trong tháng - CHỈ Accounting
+     * Chạy đồng bộ qua PayrollBatchService (prefetch + batch insert theo lô).
+     * Với headcount lớn nên dùng job nền: POST /api/bang-luong/tinh-tu-dong-tat-ca/async
      */
     public List<BangLuong> tinhLuongTuDongChoTatCa(Integer thang, Integer nam, User currentUser) {
         PermissionUtil.checkAccountingViewPermission(currentUser);
         log.info("Accounting {} tính lương tự động cho tất cả nhân viên - Tháng {}/{}",
                 currentUser.getUsername(), thang, nam);
 
-        List<NhanVien> nhanViens = nhanVienRepository.findByTrangThai(NhanVien.TrangThaiNhanVien.DANG_LAM_VIEC);
-        List<BangLuong> results = new java.util.ArrayList<>();
-
-        for (NhanVien nv : nhanViens) {
-            try {
-                BangLuong bangLuong = tinhLuongTuDong(nv.getNhanvienId(), thang, nam, currentUser);
-                results.add(bangLuong);
-            } catch (Exception e) {
-                log.error("Lỗi khi tính lương cho nhân viên {}: {}", nv.getHoTen(), e.getMessage());
-            }
-        }
+        Set<Long> createdIds = payrollBatchService.runSync(thang, nam, currentUser);
+        List<BangLuong> results = bangLuongRepository.findByThangAndNam(thang, nam).stream()
+                .filter(bl -> createdIds.contains(bl.getNhanVien().getNhanvienId()))
+                .toList();
 
-        log.info("✅ Hoàn thành tính lương cho {}/{} nhân viên", results.size(), nhanViens.size());
+        log.info("✅ Hoàn thành tính lương cho {} nhân viên", results.size());
         return results;
     }
 }
@@ -51,15 +51,18 @@ public class ChamCongService {
     private final NhanVienRepository nhanVienRepository;
     private final ProjectMemberRepository projectMemberRepository;
     private final DoAn.BE.notification.service.AttendanceNotificationService attendanceNotificationService;
+    private final HRStatsSnapshotService hrStatsSnapshotService;
 
     public ChamCongService(ChamCongRepository chamCongRepository,
             NhanVienRepository nhanVienRepository,
             ProjectMemberRepository projectMemberRepository,
-            DoAn.BE.notification.service.AttendanceNotificationService attendanceNotificationService) {
+            DoAn.BE.notification.service.AttendanceNotificationService attendanceNotificationService,
+            HRStatsSnapshotService hrStatsSnapshotService) {
         this.chamCongRepository = chamCongRepository;
         this.nhanVienRepository = nhanVienRepository;
         this.projectMemberRepository = projectMemberRepository;
         this.attendanceNotificationService = attendanceNotificationService;
+        this.hrStatsSnapshotService = hrStatsSnapshotService;
     }
 
     /**
@@ -90,7 +93,9 @@ public class ChamCongService {
         chamCong.setTrangThai(request.getTrangThai());
         chamCong.setGhiChu(request.getGhiChu());
 
-        return chamCongRepository.save(chamCong);
+        ChamCong saved = chamCongRepository.save(chamCong);
+        hrStatsSnapshotService.recordChamCongCreated(saved.getNgayCham());
+        return saved;
     }
 
     /**
@@ -176,7 +181,9 @@ public class ChamCongService {
         }
 
         // Cập nhật các trường
-        if (request.getNgayCham() != null) {
+        if (request.getNgayCham() != null && !request.getNgayCham().equals(chamCong.getNgayCham())) {
+            hrStatsSnapshotService.recordChamCongDeleted(chamCong.getNgayCham());
+            hrStatsSnapshotService.recordChamCongCreated(request.getNgayCham());
             chamCong.setNgayCham(request.getNgayCham());
         }
         if (request.getGioVao() != null) {
@@ -206,6 +213,7 @@ public class ChamCongService {
 
         ChamCong chamCong = getChamCongById(id);
         chamCongRepository.delete(chamCong);
+        hrStatsSnapshotService.recordChamCongDeleted(chamCong.getNgayCham());
     }
 
     /**
@@ -316,6 +324,7 @@ public class ChamCongService {
         chamCong.setNhanVien(nhanVien);
         chamCong.setNgayCham(ngayCham);
         chamCong.setGioVao(java.time.LocalTime.now());
+        hrStatsSnapshotService.recordChamCongCreated(ngayCham);
 
         // Tự động xác định trạng thái
         if (chamCong.isLate()) {
@@ -427,6 +436,9 @@ public class ChamCongService {
 
         // 6. Lưu vào database
         chamCong = chamCongRepository.save(chamCong);
+        if (isCheckIn) {
+            hrStatsSnapshotService.recordChamCongCreated(today);
+        }
 
         // 7. Send notifications
         if (nhanVien.getUser() != null) {
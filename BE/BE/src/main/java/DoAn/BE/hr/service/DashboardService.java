@@ -4,20 +4,12 @@ import DoAn.BE.common.exception.ForbiddenException;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.hr.dto.DashboardDTO;
 import DoAn.BE.hr.dto.DashboardStatsDTO;
-import DoAn.BE.hr.entity.BangLuong;
-import DoAn.BE.hr.entity.ChamCong;
 import DoAn.BE.hr.entity.HopDong;
-import DoAn.BE.hr.entity.HopDong.TrangThaiHopDong;
 import DoAn.BE.hr.entity.NghiPhep;
-import DoAn.BE.hr.entity.NhanVien;
-import DoAn.BE.hr.entity.NhanVien.TrangThaiNhanVien;
-import DoAn.BE.hr.entity.PhongBan;
-import DoAn.BE.hr.repository.BangLuongRepository;
+import DoAn.BE.hr.entity.ThongKeThang;
 import DoAn.BE.hr.repository.ChamCongRepository;
 import DoAn.BE.hr.repository.HopDongRepository;
 import DoAn.BE.hr.repository.NghiPhepRepository;
-import DoAn.BE.hr.repository.NhanVienRepository;
-import DoAn.BE.hr.repository.PhongBanRepository;
 import DoAn.BE.notification.repository.ThongBaoRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -26,7 +18,6 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.Period;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
@@ -40,31 +31,25 @@ import java.util.stream.Collectors;
 public class DashboardService {
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
-    private final NhanVienRepository nhanVienRepository;
     private final NghiPhepRepository nghiPhepRepository;
-    private final BangLuongRepository bangLuongRepository;
     private final HopDongRepository hopDongRepository;
     private final ChamCongRepository chamCongRepository;
-    private final PhongBanRepository phongBanRepository;
     private final ThongBaoRepository thongBaoRepository;
     private final DoAn.BE.project.repository.ProjectRepository projectRepository;
+    private final HRStatsSnapshotService hrStatsSnapshotService;
 
-    public DashboardService(NhanVienRepository nhanVienRepository,
-            NghiPhepRepository nghiPhepRepository,
-            BangLuongRepository bangLuongRepository,
+    public DashboardService(NghiPhepRepository nghiPhepRepository,
             HopDongRepository hopDongRepository,
             ChamCongRepository chamCongRepository,
-            PhongBanRepository phongBanRepository,
             ThongBaoRepository thongBaoRepository,
-            DoAn.BE.project.repository.ProjectRepository projectRepository) {
-        this.nhanVienRepository = nhanVienRepository;
+            DoAn.BE.project.repository.ProjectRepository projectRepository,
+            HRStatsSnapshotService hrStatsSnapshotService) {
         this.nghiPhepRepository = nghiPhepRepository;
-        this.bangLuongRepository = bangLuongRepository;
         this.hopDongRepository = hopDongRepository;
         this.chamCongRepository = chamCongRepository;
-        this.phongBanRepository = phongBanRepository;
         this.thongBaoRepository = thongBaoRepository;
         this.projectRepository = projectRepository;
+        this.hrStatsSnapshotService = hrStatsSnapshotService;
     }
 
     /**
@@ -79,11 +64,13 @@ public class DashboardService {
         log.info("Lấy thông tin dashboard tổng quan");
 
         DashboardDTO dashboard = new DashboardDTO();
+        YearMonth currentMonth = YearMonth.now();
+        ThongKeThang snapshot = hrStatsSnapshotService.getSnapshot(currentMonth);
 
         // 1. Thống kê nhân viên
-        dashboard.setTongNhanVien(nhanVienRepository.count());
-        dashboard.setNhanVienDangLam(nhanVienRepository.countByTrangThai(TrangThaiNhanVien.DANG_LAM_VIEC));
-        dashboard.setNhanVienNghiViec(nhanVienRepository.countByTrangThai(TrangThaiNhanVien.NGHI_VIEC));
+        dashboard.setTongNhanVien(snapshot.getTongNhanVien());
+        dashboard.setNhanVienDangLam(snapshot.getNhanVienDangLam());
+        dashboard.setNhanVienNghiViec(snapshot.getNhanVienNghiViec());
 
         // 2. Thống kê nghỉ phép
         dashboard.setDonNghiPhepChoDuyet(nghiPhepRepository.countByTrangThai(NghiPhep.TrangThaiNghiPhep.CHO_DUYET));
@@ -91,31 +78,16 @@ public class DashboardService {
         dashboard.setDonNghiPhepTuChoi(nghiPhepRepository.countByTrangThai(NghiPhep.TrangThaiNghiPhep.TU_CHOI));
 
         // 3. Thống kê bảng lương tháng hiện tại
-        YearMonth currentMonth = YearMonth.now();
-        List<BangLuong> bangLuongThangNay = bangLuongRepository.findByThangAndNam(
-                currentMonth.getMonthValue(), currentMonth.getYear());
-
-        long chuaThanhToan = bangLuongThangNay.stream()
-                .filter(bl -> "CHUA_THANH_TOAN".equals(bl.getTrangThai()))
-                .count();
-        long daThanhToan = bangLuongThangNay.stream()
-                .filter(bl -> "DA_THANH_TOAN".equals(bl.getTrangThai()))
-                .count();
+        dashboard.setBangLuongChuaThanhToan(snapshot.getBangLuongChuaThanhToan());
+        dashboard.setBangLuongDaThanhToan(snapshot.getBangLuongDaThanhToan());
         // CHỈ Accounting mới thấy số tiền lương
-        BigDecimal tongLuong = BigDecimal.ZERO;
-        if (currentUser.isManagerAccounting()) {
-            tongLuong = bangLuongThangNay.stream()
-                    .map(BangLuong::getLuongThucNhan)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-        }
-
-        dashboard.setBangLuongChuaThanhToan(chuaThanhToan);
-        dashboard.setBangLuongDaThanhToan(daThanhToan);
-        dashboard.setTongLuongThangNay(tongLuong); // HR sẽ thấy 0
+        dashboard.setTongLuongThangNay(currentUser.isManagerAccounting()
+                ? snapshot.getTongLuongThucNhan()
+                : BigDecimal.ZERO); // HR sẽ thấy 0
 
         // 4. Thống kê hợp đồng
-        dashboard.setHopDongHieuLuc(hopDongRepository.countByTrangThai(TrangThaiHopDong.HIEU_LUC));
-        dashboard.setHopDongHetHan(hopDongRepository.countByTrangThai(TrangThaiHopDong.HET_HAN));
+        dashboard.setHopDongHieuLuc(snapshot.getHopDongHieuLuc());
+        dashboard.setHopDongHetHan(snapshot.getHopDongHetHan());
 
         // Hợp đồng sắp hết hạn (30 ngày)
         LocalDate today = LocalDate.now();
@@ -124,10 +96,7 @@ public class DashboardService {
         dashboard.setHopDongSapHetHan(hopDongSapHetHan.size());
 
         // 5. Thống kê chấm công tháng hiện tại
-        LocalDate startOfMonth = currentMonth.atDay(1);
-        LocalDate endOfMonth = currentMonth.atEndOfMonth();
-        dashboard.setTongChamCongThangNay(
-                chamCongRepository.findByNgayChamBetween(startOfMonth, endOfMonth).size());
+        dashboard.setTongChamCongThangNay(snapshot.getTongChamCong());
 
         // 6. Danh sách hợp đồng sắp hết hạn
         List<DashboardDTO.HopDongExpiringDTO> hopDongList = hopDongSapHetHan.stream()
@@ -173,36 +142,18 @@ public class DashboardService {
         log.info("Lấy thống kê tháng {}/{}", thang, nam);
 
         DashboardDTO dashboard = new DashboardDTO();
+        ThongKeThang snapshot = hrStatsSnapshotService.getSnapshot(YearMonth.of(nam, thang));
 
         // Thống kê bảng lương theo tháng
-        List<BangLuong> bangLuongs = bangLuongRepository.findByThangAndNam(thang, nam);
-
-        long chuaThanhToan = bangLuongs.stream()
-                .filter(bl -> "CHUA_THANH_TOAN".equals(bl.getTrangThai()))
-                .count();
-        long daThanhToan = bangLuongs.stream()
-                .filter(bl -> "DA_THANH_TOAN".equals(bl.getTrangThai()))
-                .count();
-
+        dashboard.setBangLuongChuaThanhToan(snapshot.getBangLuongChuaThanhToan());
+        dashboard.setBangLuongDaThanhToan(snapshot.getBangLuongDaThanhToan());
         // CHỈ Accounting mới thấy số tiền lương
-        BigDecimal tongLuong = BigDecimal.ZERO;
-        if (currentUser.isManagerAccounting()) {
-            tongLuong = bangLuongs.stream()
-                    .map(BangLuong::getLuongThucNhan)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-        }
-
-        dashboard.setBangLuongChuaThanhToan(chuaThanhToan);
-        dashboard.setBangLuongDaThanhToan(daThanhToan);
-        dashboard.setTongLuongThangNay(tongLuong); // HR sẽ thấy 0
+        dashboard.setTongLuongThangNay(currentUser.isManagerAccounting()
+                ? snapshot.getTongLuongThucNhan()
+                : BigDecimal.ZERO); // HR sẽ thấy 0
 
         // Thống kê chấm công theo tháng
-        YearMonth yearMonth = YearMonth.of(nam, thang);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-
-        dashboard.setTongChamCongThangNay(
-                chamCongRepository.findByNgayChamBetween(startDate, endDate).size());
+        dashboard.setTongChamCongThangNay(snapshot.getTongChamCong());
 
         return dashboard;
     }
@@ -219,9 +170,10 @@ public class DashboardService {
         log.info("Lấy thống kê dashboard nâng cao");
 
         DashboardStatsDTO stats = new DashboardStatsDTO();
+        ThongKeThang snapshot = hrStatsSnapshotService.getSnapshot(YearMonth.now());
 
         // 1. Thống kê tổng quan
-        stats.setTongQuan(getTongQuanStats(currentUser));
+        stats.setTongQuan(getTongQuanStats(snapshot, currentUser));
 
         // 2. Biểu đồ chấm công theo phòng ban
         stats.setChamCongPhongBan(getChamCongPhongBanStats());
@@ -233,40 +185,33 @@ public class DashboardService {
         stats.setNghiPhep(getNghiPhepStats());
 
         // 5. Thống kê hợp đồng
-        stats.setHopDong(getHopDongStats());
+        stats.setHopDong(getHopDongStats(snapshot));
 
         // 6. Thống kê nhân viên theo độ tuổi
-        stats.setNhanVienTheoTuoi(getNhanVienTheoTuoiStats());
+        stats.setNhanVienTheoTuoi(getNhanVienTheoTuoiStats(snapshot));
 
         // 7. Thống kê nhân viên theo giới tính
-        stats.setNhanVienTheoGioiTinh(getNhanVienTheoGioiTinhStats());
+        stats.setNhanVienTheoGioiTinh(getNhanVienTheoGioiTinhStats(snapshot));
 
         return stats;
     }
 
-    private DashboardStatsDTO.TongQuanStats getTongQuanStats(User currentUser) {
+    private DashboardStatsDTO.TongQuanStats getTongQuanStats(ThongKeThang snapshot, User currentUser) {
         DashboardStatsDTO.TongQuanStats tongQuan = new DashboardStatsDTO.TongQuanStats();
 
         // Thống kê nhân viên
-        tongQuan.setTongNhanVien(nhanVienRepository.count());
-        tongQuan.setNhanVienDangLam(nhanVienRepository.countByTrangThai(TrangThaiNhanVien.DANG_LAM_VIEC));
-        tongQuan.setNhanVienNghiViec(nhanVienRepository.countByTrangThai(TrangThaiNhanVien.NGHI_VIEC));
+        tongQuan.setTongNhanVien(snapshot.getTongNhanVien());
+        tongQuan.setNhanVienDangLam(snapshot.getNhanVienDangLam());
+        tongQuan.setNhanVienNghiViec(snapshot.getNhanVienNghiViec());
 
         // Thống kê nghỉ phép
         tongQuan.setDonNghiPhepChoDuyet(nghiPhepRepository.countByTrangThai(NghiPhep.TrangThaiNghiPhep.CHO_DUYET));
 
         // Thống kê bảng lương
-        YearMonth currentMonth = YearMonth.now();
-        List<BangLuong> bangLuongThangNay = bangLuongRepository.findByThangAndNam(
-                currentMonth.getMonthValue(), currentMonth.getYear());
-        tongQuan.setBangLuongChoDuyet(bangLuongThangNay.stream()
-                .filter(bl -> "CHO_DUYET".equals(bl.getTrangThai()))
-                .count());
+        tongQuan.setBangLuongChoDuyet(snapshot.getBangLuongChoDuyet());
 
         // Thống kê hợp đồng hết hạn 30 ngày
-        LocalDate today = LocalDate.now();
-        LocalDate after30Days = today.plusDays(30);
-        tongQuan.setHopDongHetHan30Ngay(hopDongRepository.findExpiringContracts(today, after30Days).size());
+        tongQuan.setHopDongHetHan30Ngay(snapshot.getHopDongSapHetHan());
 
         // Thống kê thông báo chưa đọc (tổng của tất cả user)
         tongQuan.setThongBaoChuaDoc(thongBaoRepository.count()); // Tạm thời lấy tổng
@@ -274,9 +219,7 @@ public class DashboardService {
         // Tổng chi phí lương tháng hiện tại - CHỈ Accounting
         BigDecimal tongChiPhi = BigDecimal.ZERO;
         if (currentUser.isManagerAccounting()) {
-            tongChiPhi = bangLuongThangNay.stream()
-                    .map(BangLuong::getLuongThucNhan)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            tongChiPhi = snapshot.getTongLuongThucNhan();
         }
         tongQuan.setTongChiPhiLuongThang(tongChiPhi); // HR sẽ thấy 0
 
@@ -302,44 +245,30 @@ public class DashboardService {
      * Biểu đồ hiệu suất chấm công theo phòng ban
      */
     private List<DashboardStatsDTO.ChamCongPhongBanStats> getChamCongPhongBanStats() {
-        List<PhongBan> phongBans = phongBanRepository.findAll();
         LocalDate startOfMonth = YearMonth.now().atDay(1);
         LocalDate endOfMonth = YearMonth.now().atEndOfMonth();
 
-        return phongBans.stream().map(pb -> {
-            List<NhanVien> nhanViens = nhanVienRepository.findByPhongBan(pb);
-            long tongNhanVien = nhanViens.size();
-
-            if (tongNhanVien == 0) {
-                return new DashboardStatsDTO.ChamCongPhongBanStats(
-                        pb.getTenPhongBan(), 0, 0, 0, 0, 0.0);
-            }
-
-            // Lấy chấm công của tất cả nhân viên trong phòng ban tháng này
-            List<ChamCong> chamCongs = new ArrayList<>();
-            for (NhanVien nv : nhanViens) {
-                chamCongs.addAll(chamCongRepository.findByNhanVienAndNgayChamBetween(
-                        nv, startOfMonth, endOfMonth));
-            }
-
-            long diMuon = chamCongs.stream()
-                    .filter(cc -> ChamCong.TrangThaiChamCong.DI_TRE.equals(cc.getTrangThai()))
-                    .count();
-            long veSom = chamCongs.stream()
-                    .filter(cc -> ChamCong.TrangThaiChamCong.VE_SOM.equals(cc.getTrangThai()))
-                    .count();
-            long dungGio = chamCongs.stream()
-                    .filter(cc -> ChamCong.TrangThaiChamCong.DU_GIO.equals(cc.getTrangThai()))
-                    .count();
+        // Một query gom nhóm theo phòng ban thay vì load nhân viên + chấm công từng phòng
+        return chamCongRepository.aggregateStatsByPhongBan(startOfMonth, endOfMonth).stream().map(row -> {
+            long tongNhanVien = toLong(row[1]);
+            long diMuon = toLong(row[2]);
+            long veSom = toLong(row[3]);
+            long dungGio = toLong(row[4]);
+            long tongBanGhi = toLong(row[5]);
 
-            double tiLeDungGio = chamCongs.size() > 0 ? (double) dungGio / chamCongs.size() * 100 : 0.0;
+            double tiLeDungGio = tongBanGhi > 0 ? (double) dungGio / tongBanGhi * 100 : 0.0;
 
             return new DashboardStatsDTO.ChamCongPhongBanStats(
-                    pb.getTenPhongBan(), tongNhanVien, diMuon, veSom, dungGio,
+                    (String) row[0], tongNhanVien, diMuon, veSom, dungGio,
                     Math.round(tiLeDungGio * 100.0) / 100.0);
         }).collect(Collectors.toList());
     }
 
+    // SUM/COUNT trả về Long hoặc null (phòng ban không có dữ liệu)
+    private long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
     /**
      * Biểu đồ cột lương theo từng tháng (6 tháng gần nhất) - CHỈ Accounting mới
      * thấy số tiền
@@ -347,29 +276,26 @@ public class DashboardService {
     private List<DashboardStatsDTO.LuongTheoThangStats> getLuongTheoThangStats(User currentUser) {
         List<DashboardStatsDTO.LuongTheoThangStats> stats = new ArrayList<>();
 
-        for (int i = 5; i >= 0; i--) {
-            YearMonth month = YearMonth.now().minusMonths(i);
-            List<BangLuong> bangLuongs = bangLuongRepository.findByThangAndNam(
-                    month.getMonthValue(), month.getYear());
+        YearMonth currentMonth = YearMonth.now();
+        for (ThongKeThang snapshot : hrStatsSnapshotService.getSnapshots(currentMonth.minusMonths(5), currentMonth)) {
+            YearMonth month = YearMonth.of(snapshot.getNam(), snapshot.getThang());
 
             // CHỈ Accounting mới thấy số tiền lương
             BigDecimal tongLuong = BigDecimal.ZERO;
             BigDecimal luongTrungBinh = BigDecimal.ZERO;
 
             if (currentUser.isManagerAccounting()) {
-                tongLuong = bangLuongs.stream()
-                        .map(BangLuong::getLuongThucNhan)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
+                tongLuong = snapshot.getTongLuongThucNhan();
 
-                luongTrungBinh = bangLuongs.size() > 0
-                        ? tongLuong.divide(BigDecimal.valueOf(bangLuongs.size()), 2, RoundingMode.HALF_UP)
+                luongTrungBinh = snapshot.getSoBangLuong() > 0
+                        ? tongLuong.divide(BigDecimal.valueOf(snapshot.getSoBangLuong()), 2, RoundingMode.HALF_UP)
                         : BigDecimal.ZERO;
             }
 
             stats.add(new DashboardStatsDTO.LuongTheoThangStats(
                     month.format(DateTimeFormatter.ofPattern("MM/yyyy")),
                     tongLuong, // HR sẽ thấy 0
-                    bangLuongs.size(),
+                    snapshot.getSoBangLuong(),
                     luongTrungBinh // HR sẽ thấy 0
             ));
         }
@@ -402,63 +328,42 @@ public class DashboardService {
         return stats;
     }
 
-    private DashboardStatsDTO.HopDongStats getHopDongStats() {
+    private DashboardStatsDTO.HopDongStats getHopDongStats(ThongKeThang snapshot) {
         DashboardStatsDTO.HopDongStats stats = new DashboardStatsDTO.HopDongStats();
 
-        stats.setTongHopDong(hopDongRepository.count());
-        stats.setHopDongConHieuLuc(hopDongRepository.countByTrangThai(TrangThaiHopDong.HIEU_LUC));
-        stats.setHopDongHetHan(hopDongRepository.countByTrangThai(TrangThaiHopDong.HET_HAN));
+        stats.setTongHopDong(snapshot.getTongHopDong());
+        stats.setHopDongConHieuLuc(snapshot.getHopDongHieuLuc());
+        stats.setHopDongHetHan(snapshot.getHopDongHetHan());
 
         // Hợp đồng sắp hết hạn 30 ngày
-        LocalDate today = LocalDate.now();
-        LocalDate after30Days = today.plusDays(30);
-        stats.setHopDongSapHetHan(hopDongRepository.findExpiringContracts(today, after30Days).size());
-
-        // Thống kê theo loại hợp đồng
-        List<Object[]> hopDongTheoLoai = hopDongRepository.getStatsByLoaiHopDong();
-        Map<String, Long> loaiStats = hopDongTheoLoai.stream()
-                .collect(Collectors.toMap(
-                        row -> row[0].toString(),
-                        row -> (Long) row[1]));
+        stats.setHopDongSapHetHan(snapshot.getHopDongSapHetHan());
+
+        // Thống kê theo loại hợp đồng (chỉ các loại có hợp đồng, như GROUP BY trước đây)
+        Map<String, Long> loaiStats = new HashMap<>();
+        putIfPositive(loaiStats, HopDong.LoaiHopDong.THU_VIEC.name(), snapshot.getHopDongThuViec());
+        putIfPositive(loaiStats, HopDong.LoaiHopDong.XAC_DINH.name(), snapshot.getHopDongXacDinh());
+        putIfPositive(loaiStats, HopDong.LoaiHopDong.VO_THOI_HAN.name(), snapshot.getHopDongVoThoiHan());
         stats.setHopDongTheoLoai(loaiStats);
 
         return stats;
     }
 
-    private List<DashboardStatsDTO.NhanVienTheoTuoiStats> getNhanVienTheoTuoiStats() {
-        List<NhanVien> nhanViens = nhanVienRepository.findByTrangThai(TrangThaiNhanVien.DANG_LAM_VIEC);
-        LocalDate today = LocalDate.now();
-
-        Map<String, Long> tuoiGroups = new HashMap<>();
-        tuoiGroups.put("20-25", 0L);
-        tuoiGroups.put("26-30", 0L);
-        tuoiGroups.put("31-35", 0L);
-        tuoiGroups.put("36-40", 0L);
-        tuoiGroups.put("41-50", 0L);
-        tuoiGroups.put("50+", 0L);
-
-        for (NhanVien nv : nhanViens) {
-            if (nv.getNgaySinh() != null) {
-                int tuoi = Period.between(nv.getNgaySinh(), today).getYears();
-                String group;
-                if (tuoi <= 25)
-                    group = "20-25";
-                else if (tuoi <= 30)
-                    group = "26-30";
-                else if (tuoi <= 35)
-                    group = "31-35";
-                else if (tuoi <= 40)
-                    group = "36-40";
-                else if (tuoi <= 50)
-                    group = "41-50";
-                else
-                    group = "50+";
-
-                tuoiGroups.put(group, tuoiGroups.get(group) + 1);
-            }
+    private void putIfPositive(Map<String, Long> map, String key, long value) {
+        if (value > 0) {
+            map.put(key, value);
         }
+    }
 
-        long tongNhanVien = nhanViens.size();
+    private List<DashboardStatsDTO.NhanVienTheoTuoiStats> getNhanVienTheoTuoiStats(ThongKeThang snapshot) {
+        Map<String, Long> tuoiGroups = new HashMap<>();
+        tuoiGroups.put("20-25", snapshot.getTuoi20Den25());
+        tuoiGroups.put("26-30", snapshot.getTuoi26Den30());
+        tuoiGroups.put("31-35", snapshot.getTuoi31Den35());
+        tuoiGroups.put("36-40", snapshot.getTuoi36Den40());
+        tuoiGroups.put("41-50", snapshot.getTuoi41Den50());
+        tuoiGroups.put("50+", snapshot.getTuoiTren50());
+
+        long tongNhanVien = snapshot.getNhanVienDangLam();
         return tuoiGroups.entrySet().stream()
                 .map(entry -> {
                     double tiLe = tongNhanVien > 0 ? (double) entry.getValue() / tongNhanVien * 100 : 0.0;
@@ -469,25 +374,11 @@ public class DashboardService {
                 .collect(Collectors.toList());
     }
 
-    private Map<String, Long> getNhanVienTheoGioiTinhStats() {
-        List<NhanVien> nhanViens = nhanVienRepository.findByTrangThai(TrangThaiNhanVien.DANG_LAM_VIEC);
-
+    private Map<String, Long> getNhanVienTheoGioiTinhStats(ThongKeThang snapshot) {
         Map<String, Long> gioiTinhStats = new HashMap<>();
-        gioiTinhStats.put("Nam", 0L);
-        gioiTinhStats.put("Nữ", 0L);
-        gioiTinhStats.put("Khác", 0L);
-
-        for (NhanVien nv : nhanViens) {
-            NhanVien.GioiTinh gioiTinh = nv.getGioiTinh();
-            if (gioiTinh != null) {
-                switch (gioiTinh) {
-                    case Nam -> gioiTinhStats.put("Nam", gioiTinhStats.get("Nam") + 1);
-                    case Nữ -> gioiTinhStats.put("Nữ", gioiTinhStats.get("Nữ") + 1);
-                    case Khác -> gioiTinhStats.put("Khác", gioiTinhStats.get("Khác") + 1);
-                }
-            }
-        }
-
+        gioiTinhStats.put("Nam", snapshot.getNhanVienNam());
+        gioiTinhStats.put("Nữ", snapshot.getNhanVienNu());
+        gioiTinhStats.put("Khác", snapshot.getNhanVienGioiTinhKhac());
         return gioiTinhStats;
     }
 }
@@ -1,56 +1,171 @@
 package DoAn.BE.hr.service;
 
-import DoAn.BE.hr.repository.*;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
-
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import DoAn.BE.common.exception.BadRequestException;
+import DoAn.BE.common.export.ExportFormat;
+import DoAn.BE.common.export.TabularExportWriter;
+import DoAn.BE.hr.repository.BangLuongRepository;
+import DoAn.BE.hr.repository.ChamCongRepository;
+import DoAn.BE.hr.repository.NghiPhepRepository;
+import DoAn.BE.hr.repository.NhanVienRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Export dữ liệu HR ra Excel/CSV theo kiểu streaming:
+ * query trả về Stream (cursor, đọc tuần tự) và từng dòng được ghi thẳng ra response,
+ * nên bộ nhớ dùng không phụ thuộc số dòng export.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
-@SuppressWarnings("unused") // Placeholder service - repositories will be used when Apache POI is added
 public class ExportService {
-    
+
+    private static final String[] NHAN_VIEN_HEADERS = {
+            "Mã NV", "Họ tên", "CCCD", "Ngày sinh", "Giới tính", "Email", "Số điện thoại", "Địa chỉ",
+            "Phòng ban", "Chức vụ", "Ngày vào làm", "Trạng thái" };
+
+    private static final String[] CHAM_CONG_HEADERS = {
+            "Mã NV", "Họ tên", "Phòng ban", "Ngày chấm", "Giờ vào", "Giờ ra", "Số giờ làm",
+            "Trạng thái", "Loại ca", "Phương thức", "Ghi chú" };
+
+    private static final String[] BANG_LUONG_HEADERS = {
+            "Mã NV", "Họ tên", "Phòng ban", "Lương cơ bản", "Ngày công", "Ngày công chuẩn",
+            "Lương theo ngày công", "Phụ cấp", "Thưởng", "Giờ làm thêm", "Tiền làm thêm",
+            "BHXH", "BHYT", "BHTN", "Thuế TNCN", "Khấu trừ khác",
+            "Tổng lương", "Tổng khấu trừ", "Lương thực nhận", "Trạng thái" };
+
+    private static final String[] NGHI_PHEP_HEADERS = {
+            "Mã đơn", "Họ tên", "Phòng ban", "Loại phép", "Ngày bắt đầu", "Ngày kết thúc",
+            "Số ngày", "Lý do", "Trạng thái" };
+
     private final NhanVienRepository nhanVienRepository;
     private final ChamCongRepository chamCongRepository;
     private final BangLuongRepository bangLuongRepository;
     private final NghiPhepRepository nghiPhepRepository;
-    private final HopDongRepository hopDongRepository;
-    
+    private final TransactionTemplate readOnlyTransaction;
+    private final MeterRegistry meterRegistry;
+    private final int excelRowWindow;
+    private final int csvFlushRows;
+
+    public ExportService(NhanVienRepository nhanVienRepository,
+            ChamCongRepository chamCongRepository,
+            BangLuongRepository bangLuongRepository,
+            NghiPhepRepository nghiPhepRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${export.excel.row-window:200}") int excelRowWindow,
+            @Value("${export.csv.flush-rows:500}") int csvFlushRows) {
+        this.nhanVienRepository = nhanVienRepository;
+        this.chamCongRepository = chamCongRepository;
+        this.bangLuongRepository = bangLuongRepository;
+        this.nghiPhepRepository = nghiPhepRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+        this.excelRowWindow = excelRowWindow;
+        this.csvFlushRows = csvFlushRows;
+    }
+
+    /**
+     * Export danh sách nhân viên
+     */
+    public StreamingResponseBody exportNhanVien(ExportFormat format) {
+        log.info("Export nhân viên ({})", format);
+        return out -> write("nhan-vien", format, "Nhân viên", NHAN_VIEN_HEADERS, out,
+                () -> nhanVienRepository.streamForExport());
+    }
+
     /**
-     * Export danh sách nhân viên ra Excel (placeholder)
-     * TODO: Cần thêm Apache POI dependency để implement
+     * Export chấm công trong khoảng ngày (một tháng hoặc cả năm)
      */
-    public byte[] exportNhanVienToExcel() throws IOException {
-        log.info("Export nhân viên - Cần implement Apache POI");
-        // Placeholder - sẽ implement sau khi thêm dependency
-        return "Export nhân viên - Cần implement Apache POI".getBytes();
+    public StreamingResponseBody exportChamCong(ExportFormat format, LocalDate startDate, LocalDate endDate) {
+        validateRange(startDate, endDate);
+        log.info("Export chấm công từ {} đến {} ({})", startDate, endDate, format);
+        return out -> write("cham-cong", format, "Chấm công", CHAM_CONG_HEADERS, out,
+                () -> chamCongRepository.streamForExport(startDate, endDate));
     }
-    
+
     /**
-     * Export bảng chấm công theo tháng ra Excel (placeholder)
+     * Export bảng lương theo tháng
      */
-    public byte[] exportChamCongToExcel(int thang, int nam) throws IOException {
-        log.info("Export chấm công tháng {}/{} - Cần implement Apache POI", thang, nam);
-        return "Export chấm công - Cần implement Apache POI".getBytes();
+    public StreamingResponseBody exportBangLuong(ExportFormat format, int thang, int nam) {
+        if (thang < 1 || thang > 12) {
+            throw new BadRequestException("Tháng phải từ 1 đến 12");
+        }
+        log.info("Export bảng lương tháng {}/{} ({})", thang, nam, format);
+        return out -> write("bang-luong", format, "Bảng lương", BANG_LUONG_HEADERS, out,
+                () -> bangLuongRepository.streamForExport(thang, nam));
     }
-    
+
     /**
-     * Export bảng lương theo tháng ra Excel (placeholder)
+     * Export đơn nghỉ phép giao với khoảng ngày
      */
-    public byte[] exportBangLuongToExcel(int thang, int nam) throws IOException {
-        log.info("Export bảng lương tháng {}/{} - Cần implement Apache POI", thang, nam);
-        return "Export bảng lương - Cần implement Apache POI".getBytes();
+    public StreamingResponseBody exportNghiPhep(ExportFormat format, LocalDate startDate, LocalDate endDate) {
+        validateRange(startDate, endDate);
+        log.info("Export nghỉ phép từ {} đến {} ({})", startDate, endDate, format);
+        return out -> write("nghi-phep", format, "Nghỉ phép", NGHI_PHEP_HEADERS, out,
+                () -> nghiPhepRepository.streamForExport(startDate, endDate));
     }
-    
+
+    private void validateRange(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+            throw new BadRequestException("Khoảng ngày export không hợp lệ");
+        }
+    }
+
     /**
-     * Export danh sách nghỉ phép ra Excel (placeholder)
+     * Mở cursor trong transaction read-only (chạy trên thread async của response),
+     * ghi từng dòng qua writer rồi đóng cả cursor lẫn writer.
      */
-    public byte[] exportNghiPhepToExcel(LocalDate startDate, LocalDate endDate) throws IOException {
-        log.info("Export nghỉ phép từ {} đến {} - Cần implement Apache POI", startDate, endDate);
-        return "Export nghỉ phép - Cần implement Apache POI".getBytes();
+    private void write(String type, ExportFormat format, String sheetName, String[] headers,
+            OutputStream out, Supplier<Stream<Object[]>> query) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        long rows = 0;
+        try {
+            rows = readOnlyTransaction.execute(status -> {
+                try (Stream<Object[]> stream = query.get();
+                        TabularExportWriter writer = format.open(out, sheetName, excelRowWindow, csvFlushRows)) {
+                    writer.writeHeader(headers);
+                    for (Object[] row : (Iterable<Object[]>) stream::iterator) {
+                        writer.writeRow(row);
+                    }
+                    return writer.getRowCount();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.info("Export {} ({}) xong: {} dòng", type, format, rows);
+        } catch (UncheckedIOException e) {
+            outcome = "error";
+            // Client ngắt kết nối hoặc lỗi ghi file - không còn gì để trả về
+            log.warn("Export {} ({}) bị gián đoạn: {}", type, format, e.getMessage());
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            sample.stop(meterRegistry.timer("hr.export.duration",
+                    "type", type, "format", format.name(), "outcome", outcome));
+            Counter.builder("hr.export.rows")
+                    .tag("type", type)
+                    .tag("format", format.name())
+                    .register(meterRegistry)
+                    .increment(rows);
+        }
     }
 }
@@ -0,0 +1,422 @@
+package DoAn.BE.hr.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import DoAn.BE.hr.entity.HopDong.LoaiHopDong;
+import DoAn.BE.hr.entity.HopDong.TrangThaiHopDong;
+import DoAn.BE.hr.entity.NhanVien.GioiTinh;
+import DoAn.BE.hr.entity.NhanVien.TrangThaiNhanVien;
+import DoAn.BE.hr.entity.ThongKeThang;
+import DoAn.BE.hr.repository.BangLuongRepository;
+import DoAn.BE.hr.repository.ChamCongRepository;
+import DoAn.BE.hr.repository.HopDongRepository;
+import DoAn.BE.hr.repository.NhanVienRepository;
+import DoAn.BE.hr.repository.ThongKeThangRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Duy trì bảng snapshot thống kê HR theo tháng (thong_ke_thang) cho dashboard.
+ * - Các service nghiệp vụ đánh dấu phần bị thay đổi (sau khi commit)
+ * - Job flush định kỳ gom các thay đổi: refresh đúng phần bị ảnh hưởng bằng query gom nhóm,
+ *   số bản ghi chấm công được cộng dồn bằng một câu UPDATE
+ * - Job đối soát hằng đêm tính lại toàn bộ các kỳ gần nhất (sửa sai lệch, cập nhật nhóm tuổi)
+ * Dashboard chỉ đọc một dòng snapshot cho mỗi kỳ.
+ */
+@Service
+@Slf4j
+public class HRStatsSnapshotService {
+
+    private static final int SAP_HET_HAN_NGAY = 30;
+
+    private final ThongKeThangRepository thongKeThangRepository;
+    private final NhanVienRepository nhanVienRepository;
+    private final HopDongRepository hopDongRepository;
+    private final BangLuongRepository bangLuongRepository;
+    private final ChamCongRepository chamCongRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    // Kỳ (yyyyMM) có bảng lương thay đổi, chờ refresh
+    private final Set<Integer> dirtyBangLuong = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean dirtyNhanVien = new AtomicBoolean();
+    private final AtomicBoolean dirtyHopDong = new AtomicBoolean();
+    // Chênh lệch số bản ghi chấm công theo kỳ, chờ cộng dồn
+    private final Map<Integer, Long> chamCongDelta = new ConcurrentHashMap<>();
+
+    @Value("${hr.stats-snapshot.reconcile-months:6}")
+    private int reconcileMonths;
+
+    public HRStatsSnapshotService(ThongKeThangRepository thongKeThangRepository,
+            NhanVienRepository nhanVienRepository,
+            HopDongRepository hopDongRepository,
+            BangLuongRepository bangLuongRepository,
+            ChamCongRepository chamCongRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.thongKeThangRepository = thongKeThangRepository;
+        this.nhanVienRepository = nhanVienRepository;
+        this.hopDongRepository = hopDongRepository;
+        this.bangLuongRepository = bangLuongRepository;
+        this.chamCongRepository = chamCongRepository;
+        // Snapshot được ghi trong transaction riêng (dashboard đọc trong transaction readOnly)
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+    }
+
+    // ==================== ĐÁNH DẤU THAY ĐỔI ====================
+
+    public void markBangLuongChanged(Integer thang, Integer nam) {
+        if (thang == null || nam == null) {
+            return;
+        }
+        int ky = toKy(thang, nam);
+        afterCommit(() -> dirtyBangLuong.add(ky));
+    }
+
+    public void markNhanVienChanged() {
+        afterCommit(() -> dirtyNhanVien.set(true));
+    }
+
+    public void markHopDongChanged() {
+        afterCommit(() -> dirtyHopDong.set(true));
+    }
+
+    public void recordChamCongCreated(LocalDate ngayCham) {
+        recordChamCongDelta(ngayCham, 1);
+    }
+
+    public void recordChamCongDeleted(LocalDate ngayCham) {
+        recordChamCongDelta(ngayCham, -1);
+    }
+
+    private void recordChamCongDelta(LocalDate ngayCham, long delta) {
+        if (ngayCham == null) {
+            return;
+        }
+        int ky = toKy(ngayCham.getMonthValue(), ngayCham.getYear());
+        afterCommit(() -> chamCongDelta.merge(ky, delta, Long::sum));
+    }
+
+    // Chỉ ghi nhận khi transaction nghiệp vụ commit thành công
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // ==================== ĐỌC SNAPSHOT ====================
+
+    /**
+     * Snapshot của một kỳ; tạo mới (tính đầy đủ) nếu chưa có
+     */
+    public ThongKeThang getSnapshot(YearMonth yearMonth) {
+        return thongKeThangRepository.findByKy(toKy(yearMonth))
+                .orElseGet(() -> build(yearMonth));
+    }
+
+    /**
+     * Snapshot các kỳ liên tiếp từ from đến to (một query, chỉ tính các kỳ còn thiếu)
+     */
+    public List<ThongKeThang> getSnapshots(YearMonth from, YearMonth to) {
+        Map<Integer, ThongKeThang> byKy = new HashMap<>();
+        thongKeThangRepository.findByKyBetweenOrderByKyAsc(toKy(from), toKy(to))
+                .forEach(row -> byKy.put(row.getKy(), row));
+
+        List<ThongKeThang> result = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            ThongKeThang row = byKy.get(toKy(month));
+            result.add(row != null ? row : build(month));
+        }
+        return result;
+    }
+
+    // ==================== FLUSH / ĐỐI SOÁT ====================
+
+    /**
+     * Áp dụng các thay đổi đang chờ vào snapshot
+     */
+    @Scheduled(fixedDelayString = "${hr.stats-snapshot.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        boolean nhanVien = dirtyNhanVien.getAndSet(false);
+        boolean hopDong = dirtyHopDong.getAndSet(false);
+        List<Integer> bangLuongKys = new ArrayList<>();
+        for (Integer ky : dirtyBangLuong) {
+            if (dirtyBangLuong.remove(ky)) {
+                bangLuongKys.add(ky);
+            }
+        }
+        Map<Integer, Long> deltas = new HashMap<>();
+        for (Integer ky : chamCongDelta.keySet()) {
+            Long delta = chamCongDelta.remove(ky);
+            if (delta != null && delta != 0) {
+                deltas.put(ky, delta);
+            }
+        }
+        if (!nhanVien && !hopDong && bangLuongKys.isEmpty() && deltas.isEmpty()) {
+            return;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                // Phần nhân viên/hợp đồng chỉ cập nhật vào kỳ hiện tại (kỳ cũ giữ trạng thái cuối kỳ)
+                if (nhanVien || hopDong) {
+                    thongKeThangRepository.findByKy(toKy(YearMonth.now())).ifPresent(row -> {
+                        if (nhanVien) {
+                            fillNhanVien(row);
+                        }
+                        if (hopDong) {
+                            fillHopDong(row);
+                        }
+                        row.setCapNhatLuc(now);
+                        thongKeThangRepository.save(row);
+                    });
+                }
+                for (Integer ky : bangLuongKys) {
+                    thongKeThangRepository.findByKy(ky).ifPresent(row -> {
+                        fillBangLuong(row);
+                        row.setCapNhatLuc(now);
+                        thongKeThangRepository.save(row);
+                    });
+                }
+                // Kỳ chưa có snapshot sẽ được tính đầy đủ khi đọc lần đầu
+                deltas.forEach(thongKeThangRepository::incrementTongChamCong);
+            });
+            sample.stop(timer("flush"));
+        } catch (RuntimeException e) {
+            // Đưa lại để lần flush sau thử lại
+            if (nhanVien) {
+                dirtyNhanVien.set(true);
+            }
+            if (hopDong) {
+                dirtyHopDong.set(true);
+            }
+            dirtyBangLuong.addAll(bangLuongKys);
+            deltas.forEach((ky, delta) -> chamCongDelta.merge(ky, delta, Long::sum));
+            log.error("Không thể cập nhật snapshot thống kê: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Đối soát hằng đêm: tính lại toàn bộ các kỳ gần nhất từ dữ liệu gốc
+     */
+    @Scheduled(cron = "${hr.stats-snapshot.reconcile-cron:0 15 0 * * *}")
+    public synchronized void reconcile() {
+        log.info("🔄 Đối soát snapshot thống kê HR {} kỳ gần nhất", reconcileMonths);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        YearMonth current = YearMonth.now();
+        for (int i = reconcileMonths - 1; i >= 0; i--) {
+            YearMonth month = current.minusMonths(i);
+            try {
+                reconcileMonth(month, month.equals(current));
+            } catch (RuntimeException e) {
+                log.error("Lỗi đối soát snapshot kỳ {}: {}", month, e.getMessage());
+            }
+        }
+        sample.stop(timer("reconcile"));
+    }
+
+    private void reconcileMonth(YearMonth month, boolean isCurrent) {
+        int ky = toKy(month);
+        ThongKeThang existing = thongKeThangRepository.findByKy(ky).orElse(null);
+        if (existing == null) {
+            build(month);
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            ThongKeThang row = thongKeThangRepository.findByKy(ky).orElseThrow();
+            if (isCurrent) {
+                fillNhanVien(row);
+                fillHopDong(row);
+            }
+            fillBangLuong(row);
+            LocalDateTime now = LocalDateTime.now();
+            row.setCapNhatLuc(now);
+            row.setDoiSoatLuc(now);
+            thongKeThangRepository.save(row);
+            thongKeThangRepository.updateTongChamCong(ky, countChamCong(month));
+        });
+    }
+
+    // Tính đầy đủ một kỳ chưa có snapshot
+    private ThongKeThang build(YearMonth month) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            ThongKeThang built = transactionTemplate.execute(status -> {
+                ThongKeThang row = new ThongKeThang();
+                row.setKy(toKy(month));
+                row.setThang(month.getMonthValue());
+                row.setNam(month.getYear());
+                fillNhanVien(row);
+                fillHopDong(row);
+                fillBangLuong(row);
+                row.setTongChamCong(countChamCong(month));
+                LocalDateTime now = LocalDateTime.now();
+                row.setCapNhatLuc(now);
+                row.setDoiSoatLuc(now);
+                return thongKeThangRepository.save(row);
+            });
+            sample.stop(timer("build"));
+            return built;
+        } catch (DataIntegrityViolationException e) {
+            // Request khác vừa tạo snapshot cho cùng kỳ
+            return thongKeThangRepository.findByKy(toKy(month)).orElseThrow(() -> e);
+        }
+    }
+
+    // ==================== TÍNH TỪNG PHẦN ====================
+
+    private void fillNhanVien(ThongKeThang row) {
+        long tong = 0;
+        long dangLam = 0;
+        long nghiViec = 0;
+        for (Object[] result : nhanVienRepository.getStatsByTrangThai()) {
+            long soLuong = (Long) result[1];
+            tong += soLuong;
+            if (result[0] == TrangThaiNhanVien.DANG_LAM_VIEC) {
+                dangLam = soLuong;
+            } else if (result[0] == TrangThaiNhanVien.NGHI_VIEC) {
+                nghiViec = soLuong;
+            }
+        }
+        row.setTongNhanVien(tong);
+        row.setNhanVienDangLam(dangLam);
+        row.setNhanVienNghiViec(nghiViec);
+
+        long nam = 0, nu = 0, khac = 0;
+        long[] tuoi = new long[6];
+        LocalDate today = LocalDate.now();
+        for (Object[] result : nhanVienRepository.findNgaySinhAndGioiTinhByTrangThai(TrangThaiNhanVien.DANG_LAM_VIEC)) {
+            LocalDate ngaySinh = (LocalDate) result[0];
+            if (ngaySinh != null) {
+                int age = Period.between(ngaySinh, today).getYears();
+                int group = age <= 25 ? 0 : age <= 30 ? 1 : age <= 35 ? 2 : age <= 40 ? 3 : age <= 50 ? 4 : 5;
+                tuoi[group]++;
+            }
+            GioiTinh gioiTinh = (GioiTinh) result[1];
+            if (gioiTinh != null) {
+                switch (gioiTinh) {
+                    case Nam -> nam++;
+                    case Nữ -> nu++;
+                    case Khác -> khac++;
+                }
+            }
+        }
+        row.setNhanVienNam(nam);
+        row.setNhanVienNu(nu);
+        row.setNhanVienGioiTinhKhac(khac);
+        row.setTuoi20Den25(tuoi[0]);
+        row.setTuoi26Den30(tuoi[1]);
+        row.setTuoi31Den35(tuoi[2]);
+        row.setTuoi36Den40(tuoi[3]);
+        row.setTuoi41Den50(tuoi[4]);
+        row.setTuoiTren50(tuoi[5]);
+    }
+
+    private void fillHopDong(ThongKeThang row) {
+        long tong = 0;
+        long hieuLuc = 0;
+        long hetHan = 0;
+        for (Object[] result : hopDongRepository.getStatsByTrangThai()) {
+            long soLuong = (Long) result[1];
+            tong += soLuong;
+            if (result[0] == TrangThaiHopDong.HIEU_LUC) {
+                hieuLuc = soLuong;
+            } else if (result[0] == TrangThaiHopDong.HET_HAN) {
+                hetHan = soLuong;
+            }
+        }
+        row.setTongHopDong(tong);
+        row.setHopDongHieuLuc(hieuLuc);
+        row.setHopDongHetHan(hetHan);
+
+        LocalDate today = LocalDate.now();
+        row.setHopDongSapHetHan(hopDongRepository.countExpiringContracts(today, today.plusDays(SAP_HET_HAN_NGAY)));
+
+        Map<LoaiHopDong, Long> theoLoai = new HashMap<>();
+        for (Object[] result : hopDongRepository.getStatsByLoaiHopDong()) {
+            theoLoai.put((LoaiHopDong) result[0], (Long) result[1]);
+        }
+        row.setHopDongThuViec(theoLoai.getOrDefault(LoaiHopDong.THU_VIEC, 0L));
+        row.setHopDongXacDinh(theoLoai.getOrDefault(LoaiHopDong.XAC_DINH, 0L));
+        row.setHopDongVoThoiHan(theoLoai.getOrDefault(LoaiHopDong.VO_THOI_HAN, 0L));
+    }
+
+    private void fillBangLuong(ThongKeThang row) {
+        long tong = 0;
+        long chuaThanhToan = 0;
+        long daThanhToan = 0;
+        long choDuyet = 0;
+        BigDecimal tongLuong = BigDecimal.ZERO;
+        for (Object[] result : bangLuongRepository.aggregateByTrangThai(row.getThang(), row.getNam())) {
+            String trangThai = (String) result[0];
+            long soLuong = (Long) result[1];
+            tong += soLuong;
+            tongLuong = tongLuong.add(result[2] instanceof BigDecimal amount ? amount
+                    : new BigDecimal(result[2].toString()));
+            if ("CHUA_THANH_TOAN".equals(trangThai)) {
+                chuaThanhToan = soLuong;
+            } else if ("DA_THANH_TOAN".equals(trangThai)) {
+                daThanhToan = soLuong;
+            } else if ("CHO_DUYET".equals(trangThai)) {
+                choDuyet = soLuong;
+            }
+        }
+        row.setSoBangLuong(tong);
+        row.setBangLuongChuaThanhToan(chuaThanhToan);
+        row.setBangLuongDaThanhToan(daThanhToan);
+        row.setBangLuongChoDuyet(choDuyet);
+        row.setTongLuongThucNhan(tongLuong);
+    }
+
+    private long countChamCong(YearMonth month) {
+        return chamCongRepository.countByNgayChamBetween(month.atDay(1), month.atEndOfMonth());
+    }
+
+    private Timer timer(String operation) {
+        return Timer.builder("hr.stats.snapshot")
+                .tag("operation", operation)
+                .description("Thời gian cập nhật snapshot thống kê HR")
+                .register(meterRegistry);
+    }
+
+    private static int toKy(YearMonth month) {
+        return toKy(month.getMonthValue(), month.getYear());
+    }
+
+    private static int toKy(int thang, int nam) {
+        return nam * 100 + thang;
+    }
+}
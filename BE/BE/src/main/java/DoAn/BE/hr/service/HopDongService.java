@@ -21,10 +21,13 @@ public class HopDongService {
 
     private final HopDongRepository hopDongRepository;
     private final NhanVienRepository nhanVienRepository;
+    private final HRStatsSnapshotService hrStatsSnapshotService;
 
-    public HopDongService(HopDongRepository hopDongRepository, NhanVienRepository nhanVienRepository) {
+    public HopDongService(HopDongRepository hopDongRepository, NhanVienRepository nhanVienRepository,
+            HRStatsSnapshotService hrStatsSnapshotService) {
         this.hopDongRepository = hopDongRepository;
         this.nhanVienRepository = nhanVienRepository;
+        this.hrStatsSnapshotService = hrStatsSnapshotService;
     }
 
     // Tạo hợp đồng mới
@@ -45,6 +48,7 @@ public class HopDongService {
         hopDong.setNoiDung(request.getNoiDung());
         hopDong.setTrangThai(TrangThaiHopDong.HIEU_LUC);
 
+        hrStatsSnapshotService.markHopDongChanged();
         return hopDongRepository.save(hopDong);
     }
 
@@ -96,6 +100,7 @@ public class HopDongService {
             throw new BadRequestException("Ngày kết thúc phải sau ngày bắt đầu");
         }
 
+        hrStatsSnapshotService.markHopDongChanged();
         return hopDongRepository.save(hopDong);
     }
 
@@ -105,6 +110,7 @@ public class HopDongService {
     public void deleteHopDong(Long id) {
         HopDong hopDong = getHopDongById(id);
         hopDongRepository.delete(hopDong);
+        hrStatsSnapshotService.markHopDongChanged();
     }
 
     /**
@@ -136,6 +142,7 @@ public class HopDongService {
     public HopDong cancelHopDong(Long id) {
         HopDong hopDong = getHopDongById(id);
         hopDong.setTrangThai(TrangThaiHopDong.BI_HUY);
+        hrStatsSnapshotService.markHopDongChanged();
         return hopDongRepository.save(hopDong);
     }
 
@@ -154,6 +161,7 @@ public class HopDongService {
         }
 
         hopDong.setNgayKetThuc(newEndDate);
+        hrStatsSnapshotService.markHopDongChanged();
         return hopDongRepository.save(hopDong);
     }
 
@@ -173,6 +181,9 @@ public class HopDongService {
         List<HopDong> expiredContracts = hopDongRepository.findExpiredContracts(LocalDate.now());
         expiredContracts.forEach(hd -> hd.setTrangThai(TrangThaiHopDong.HET_HAN));
         hopDongRepository.saveAll(expiredContracts);
+        if (!expiredContracts.isEmpty()) {
+            hrStatsSnapshotService.markHopDongChanged();
+        }
         return expiredContracts.size();
     }
 
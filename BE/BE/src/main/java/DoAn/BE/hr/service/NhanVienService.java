@@ -34,15 +34,18 @@ public class NhanVienService {
     private final UserRepository userRepository;
     private final PhongBanRepository phongBanRepository;
     private final ChucVuRepository chucVuRepository;
+    private final HRStatsSnapshotService hrStatsSnapshotService;
 
     public NhanVienService(NhanVienRepository nhanVienRepository, 
                           UserRepository userRepository,
                           PhongBanRepository phongBanRepository,
-                          ChucVuRepository chucVuRepository) {
+                          ChucVuRepository chucVuRepository,
+                          HRStatsSnapshotService hrStatsSnapshotService) {
         this.nhanVienRepository = nhanVienRepository;
         this.userRepository = userRepository;
         this.phongBanRepository = phongBanRepository;
         this.chucVuRepository = chucVuRepository;
+        this.hrStatsSnapshotService = hrStatsSnapshotService;
     }
 
     // Tạo nhân viên - Chỉ HR Manager
@@ -85,6 +88,7 @@ public class NhanVienService {
         nhanVien.setLuongCoBan(request.getLuongCoBan());
         nhanVien.setPhuCap(request.getPhuCap());
 
+        hrStatsSnapshotService.markNhanVienChanged();
         return nhanVienRepository.save(nhanVien);
     }
 
@@ -199,12 +203,14 @@ public class NhanVienService {
             nhanVien.setPhuCap(request.getPhuCap());
         }
 
+        hrStatsSnapshotService.markNhanVienChanged();
         return nhanVienRepository.save(nhanVien);
     }
 
     public void deleteNhanVien(Long id) {
         NhanVien nhanVien = getNhanVienById(id);
         nhanVienRepository.delete(nhanVien);
+        hrStatsSnapshotService.markNhanVienChanged();
     }
 
     public List<NhanVien> getNhanVienByTrangThai(TrangThaiNhanVien trangThai) {
@@ -226,6 +232,7 @@ public class NhanVienService {
     public NhanVien updateTrangThai(Long id, TrangThaiNhanVien trangThai) {
         NhanVien nhanVien = getNhanVienById(id);
         nhanVien.setTrangThai(trangThai);
+        hrStatsSnapshotService.markNhanVienChanged();
         return nhanVienRepository.save(nhanVien);
     }
 
@@ -0,0 +1,478 @@
+package DoAn.BE.hr.service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import DoAn.BE.common.exception.BadRequestException;
+import DoAn.BE.common.exception.DuplicateException;
+import DoAn.BE.common.exception.EntityNotFoundException;
+import DoAn.BE.common.util.PermissionUtil;
+import DoAn.BE.hr.dto.PayrollJobStatusDTO;
+import DoAn.BE.hr.entity.BangLuong;
+import DoAn.BE.hr.entity.HopDong.TrangThaiHopDong;
+import DoAn.BE.hr.entity.NhanVien;
+import DoAn.BE.hr.repository.BangLuongRepository;
+import DoAn.BE.hr.repository.ChamCongRepository;
+import DoAn.BE.hr.repository.HopDongRepository;
+import DoAn.BE.hr.repository.NhanVienRepository;
+import DoAn.BE.notification.service.FCMService;
+import DoAn.BE.notification.service.HRNotificationService;
+import DoAn.BE.user.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Engine tính lương hàng loạt cho một kỳ:
+ * 1. Prefetch nhân viên, hợp đồng hiệu lực và thống kê chấm công bằng các query gom nhóm
+ * 2. Chia nhân viên thành các lô, tính lương song song (không chạm DB)
+ * 3. Mỗi lô: JDBC batch insert trong một transaction riêng, sau đó gửi notification + FCM
+ * Job chạy nền, tiến độ được theo dõi qua jobId.
+ */
+@Service
+@Slf4j
+public class PayrollBatchService {
+
+    private static final String INSERT_SQL = "INSERT INTO bang_luong (nhanvien_id, thang, nam, luong_co_ban, "
+            + "ngay_cong, ngay_cong_chuan, luong_theo_ngay_cong, phu_cap, thuong, gio_lam_them, tien_lam_them, "
+            + "bhxh, bhyt, bhtn, thue_tncn, khau_tru_khac, tong_luong, tong_khau_tru, luong_thuc_nhan, "
+            + "trang_thai, ghi_chu, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int NGAY_CONG_CHUAN = 26;
+    private static final BigDecimal GIO_CHUAN = new BigDecimal("176"); // 22 ngày * 8 giờ
+    private static final int MAX_ERRORS = 100;
+    private static final int MAX_FINISHED_JOBS = 50;
+
+    private final NhanVienRepository nhanVienRepository;
+    private final HopDongRepository hopDongRepository;
+    private final ChamCongRepository chamCongRepository;
+    private final BangLuongRepository bangLuongRepository;
+    private final HRNotificationService hrNotificationService;
+    private final FCMService fcmService;
+    private final HRStatsSnapshotService hrStatsSnapshotService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, PayrollJob> jobs = new ConcurrentHashMap<>();
+    // Kỳ lương đang chạy ("thang/nam" -> jobId), mỗi kỳ chỉ một job tại một thời điểm
+    private final Map<String, String> runningPeriods = new ConcurrentHashMap<>();
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "payroll-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${payroll.batch.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${payroll.batch.parallelism:4}")
+    private int parallelism;
+
+    public PayrollBatchService(NhanVienRepository nhanVienRepository,
+            HopDongRepository hopDongRepository,
+            ChamCongRepository chamCongRepository,
+            BangLuongRepository bangLuongRepository,
+            HRNotificationService hrNotificationService,
+            FCMService fcmService,
+            HRStatsSnapshotService hrStatsSnapshotService,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.nhanVienRepository = nhanVienRepository;
+        this.hopDongRepository = hopDongRepository;
+        this.chamCongRepository = chamCongRepository;
+        this.bangLuongRepository = bangLuongRepository;
+        this.hrNotificationService = hrNotificationService;
+        this.fcmService = fcmService;
+        this.hrStatsSnapshotService = hrStatsSnapshotService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        jobExecutor.shutdown();
+        if (!jobExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Job tính lương chưa kết thúc kịp khi shutdown");
+            jobExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Đưa job tính lương cả kỳ vào hàng đợi chạy nền - CHỈ Accounting
+     */
+    public PayrollJobStatusDTO submit(Integer thang, Integer nam, User currentUser) {
+        PermissionUtil.checkAccountingViewPermission(currentUser);
+        PayrollJob job = register(thang, nam, currentUser);
+        log.info("Accounting {} tạo job tính lương {} - Tháng {}/{}", currentUser.getUsername(), job.jobId, thang, nam);
+        jobExecutor.execute(() -> execute(job));
+        return job.toDTO();
+    }
+
+    /**
+     * Chạy job tính lương trên thread hiện tại (cho endpoint đồng bộ cũ).
+     * Trả về ID nhân viên đã được tạo bảng lương trong lần chạy này.
+     */
+    public Set<Long> runSync(Integer thang, Integer nam, User currentUser) {
+        PermissionUtil.checkAccountingViewPermission(currentUser);
+        PayrollJob job = register(thang, nam, currentUser);
+        execute(job);
+        return job.createdNhanVienIds;
+    }
+
+    /**
+     * Lấy trạng thái job - CHỈ Accounting
+     */
+    public PayrollJobStatusDTO getStatus(String jobId, User currentUser) {
+        PermissionUtil.checkAccountingViewPermission(currentUser);
+        PayrollJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new EntityNotFoundException("Job tính lương không tồn tại");
+        }
+        return job.toDTO();
+    }
+
+    private PayrollJob register(Integer thang, Integer nam, User currentUser) {
+        if (thang == null || nam == null || thang < 1 || thang > 12) {
+            throw new BadRequestException("Kỳ lương không hợp lệ: " + thang + "/" + nam);
+        }
+        String period = thang + "/" + nam;
+        String jobId = UUID.randomUUID().toString();
+        String existing = runningPeriods.putIfAbsent(period, jobId);
+        if (existing != null) {
+            throw new DuplicateException("Đang có job tính lương cho kỳ " + period + " (jobId: " + existing + ")");
+        }
+        evictFinishedJobs();
+        PayrollJob job = new PayrollJob(jobId, thang, nam, currentUser.getUsername());
+        jobs.put(jobId, job);
+        return job;
+    }
+
+    private void execute(PayrollJob job) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        job.trangThai = "DANG_CHAY";
+        job.batDau = LocalDateTime.now();
+        try {
+            runPayroll(job);
+            job.trangThai = "HOAN_THANH";
+            log.info("✅ Job tính lương {} hoàn thành: {}/{} thành công, {} bỏ qua, {} lỗi",
+                    job.jobId, job.thanhCong.get(), job.tongNhanVien, job.boQua.get(), job.thatBai.get());
+        } catch (Exception e) {
+            job.trangThai = "THAT_BAI";
+            job.addError("Job thất bại: " + e.getMessage());
+            log.error("Job tính lương {} thất bại: {}", job.jobId, e.getMessage(), e);
+        } finally {
+            job.ketThuc = LocalDateTime.now();
+            runningPeriods.remove(job.thang + "/" + job.nam, job.jobId);
+            sample.stop(Timer.builder("hr.payroll.batch.duration")
+                    .tag("result", job.trangThai)
+                    .description("Thời gian chạy job tính lương hàng loạt")
+                    .register(meterRegistry));
+        }
+    }
+
+    private void runPayroll(PayrollJob job) {
+        YearMonth yearMonth = YearMonth.of(job.nam, job.thang);
+        LocalDate startDate = yearMonth.atDay(1);
+        LocalDate endDate = yearMonth.atEndOfMonth();
+
+        // 1. Prefetch dữ liệu cả kỳ (thay cho 4 query mỗi nhân viên)
+        List<NhanVien> nhanViens = nhanVienRepository
+                .findByTrangThaiFetchUser(NhanVien.TrangThaiNhanVien.DANG_LAM_VIEC);
+        Set<Long> existing = new HashSet<>(bangLuongRepository.findNhanVienIdsByThangAndNam(job.thang, job.nam));
+        Map<Long, BigDecimal> luongCoBanMap = loadLuongCoBan();
+        Map<Long, WorkingStats> statsMap = loadWorkingStats(startDate, endDate);
+        job.tongNhanVien = nhanViens.size();
+
+        List<NhanVien> pending = new ArrayList<>();
+        for (NhanVien nv : nhanViens) {
+            if (existing.contains(nv.getNhanvienId())) {
+                job.skip(null);
+            } else if (!luongCoBanMap.containsKey(nv.getNhanvienId())) {
+                job.skip(nv.getHoTen() + ": chưa có hợp đồng còn hiệu lực");
+            } else {
+                pending.add(nv);
+            }
+        }
+
+        // 2. Tính + lưu theo lô song song
+        List<List<NhanVien>> chunks = new ArrayList<>();
+        for (int from = 0; from < pending.size(); from += chunkSize) {
+            chunks.add(pending.subList(from, Math.min(from + chunkSize, pending.size())));
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()))) {
+            for (List<NhanVien> chunk : chunks) {
+                executor.submit(() -> processChunk(job, chunk, luongCoBanMap, statsMap));
+            }
+        }
+    }
+
+    private void processChunk(PayrollJob job, List<NhanVien> chunk, Map<Long, BigDecimal> luongCoBanMap,
+            Map<Long, WorkingStats> statsMap) {
+        List<BangLuong> rows = new ArrayList<>(chunk.size());
+        for (NhanVien nv : chunk) {
+            try {
+                rows.add(buildBangLuong(job, nv, luongCoBanMap.get(nv.getNhanvienId()),
+                        statsMap.getOrDefault(nv.getNhanvienId(), WorkingStats.EMPTY)));
+            } catch (RuntimeException e) {
+                job.fail(1, nv.getHoTen() + ": " + e.getMessage());
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertBatch(rows));
+        } catch (RuntimeException e) {
+            job.fail(rows.size(), "Lỗi lưu lô " + rows.size() + " bảng lương: " + e.getMessage());
+            log.error("Lỗi lưu lô bảng lương {}/{}: {}", job.thang, job.nam, e.getMessage());
+            return;
+        }
+        rows.forEach(row -> job.createdNhanVienIds.add(row.getNhanVien().getNhanvienId()));
+        job.succeed(rows.size());
+        hrStatsSnapshotService.markBangLuongChanged(job.thang, job.nam);
+
+        notifyChunk(job, rows);
+    }
+
+    private BangLuong buildBangLuong(PayrollJob job, NhanVien nv, BigDecimal luongCoBan, WorkingStats stats) {
+        BangLuong bangLuong = new BangLuong();
+        bangLuong.setNhanVien(nv);
+        bangLuong.setThang(job.thang);
+        bangLuong.setNam(job.nam);
+        bangLuong.setLuongCoBan(luongCoBan);
+        bangLuong.setNgayCong(stats.ngayCong());
+        bangLuong.setNgayCongChuan(NGAY_CONG_CHUAN);
+        bangLuong.setPhuCap(nv.getPhuCap() != null ? nv.getPhuCap() : BigDecimal.ZERO);
+
+        // Tính giờ làm thêm (nếu > 176 giờ/tháng)
+        if (stats.tongGioLam().compareTo(GIO_CHUAN) > 0) {
+            bangLuong.setGioLamThem(stats.tongGioLam().subtract(GIO_CHUAN).intValue());
+        }
+
+        bangLuong.setThuong(BigDecimal.ZERO);
+        bangLuong.setKhauTruKhac(BigDecimal.ZERO);
+        bangLuong.setCreatedAt(LocalDateTime.now());
+        // Cùng công thức với @PrePersist (JDBC insert không đi qua entity listener)
+        bangLuong.calculateTotalSalary();
+        return bangLuong;
+    }
+
+    private void insertBatch(List<BangLuong> rows) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, bl) -> {
+            ps.setLong(1, bl.getNhanVien().getNhanvienId());
+            ps.setInt(2, bl.getThang());
+            ps.setInt(3, bl.getNam());
+            ps.setBigDecimal(4, bl.getLuongCoBan());
+            ps.setInt(5, bl.getNgayCong());
+            ps.setInt(6, bl.getNgayCongChuan());
+            ps.setBigDecimal(7, bl.getLuongTheoNgayCong());
+            ps.setBigDecimal(8, bl.getPhuCap());
+            ps.setBigDecimal(9, bl.getThuong());
+            ps.setInt(10, bl.getGioLamThem());
+            ps.setBigDecimal(11, bl.getTienLamThem());
+            ps.setBigDecimal(12, bl.getBhxh());
+            ps.setBigDecimal(13, bl.getBhyt());
+            ps.setBigDecimal(14, bl.getBhtn());
+            ps.setBigDecimal(15, bl.getThueTNCN());
+            ps.setBigDecimal(16, bl.getKhauTruKhac());
+            ps.setBigDecimal(17, bl.getTongLuong());
+            ps.setBigDecimal(18, bl.getTongKhauTru());
+            ps.setBigDecimal(19, bl.getLuongThucNhan());
+            ps.setString(20, bl.getTrangThai());
+            ps.setString(21, bl.getGhiChu());
+            ps.setTimestamp(22, Timestamp.valueOf(bl.getCreatedAt()));
+        });
+    }
+
+    // 🔔 Notification (một transaction cho cả lô) + 📱 FCM từng nhân viên (nội dung có số tiền riêng)
+    private void notifyChunk(PayrollJob job, List<BangLuong> rows) {
+        try {
+            List<Long> userIds = rows.stream()
+                    .map(row -> row.getNhanVien().getUser())
+                    .filter(user -> user != null)
+                    .map(User::getUserId)
+                    .toList();
+            if (!userIds.isEmpty()) {
+                hrNotificationService.createSalaryNotifications(userIds,
+                        String.valueOf(job.thang), String.valueOf(job.nam));
+            }
+
+            Map<String, String> data = new HashMap<>();
+            data.put("type", "SALARY_CREATED");
+            data.put("link", "/payroll");
+            for (BangLuong row : rows) {
+                User employeeUser = row.getNhanVien().getUser();
+                if (employeeUser == null || employeeUser.getFcmToken() == null) {
+                    continue;
+                }
+                String amount = row.getLuongThucNhan() != null ? String.format("%,.0f", row.getLuongThucNhan()) : "0";
+                fcmService.sendToDevice(
+                        employeeUser.getFcmToken(),
+                        "💵 Bảng lương mới",
+                        "Bảng lương tháng " + job.thang + "/" + job.nam + " đã được tạo. Thực nhận: " + amount + " VNĐ",
+                        data);
+            }
+        } catch (Exception e) {
+            log.warn("Không thể gửi notification lương cho lô {} nhân viên: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    // Lương cơ bản theo hợp đồng hiệu lực mới nhất của mỗi nhân viên
+    private Map<Long, BigDecimal> loadLuongCoBan() {
+        Map<Long, BigDecimal> luongCoBan = new HashMap<>();
+        Map<Long, LocalDate> ngayBatDau = new HashMap<>();
+        for (Object[] row : hopDongRepository.findLuongCoBanByTrangThai(TrangThaiHopDong.HIEU_LUC)) {
+            Long nhanvienId = (Long) row[0];
+            LocalDate start = (LocalDate) row[2];
+            LocalDate current = ngayBatDau.get(nhanvienId);
+            if (!luongCoBan.containsKey(nhanvienId) || (start != null && (current == null || start.isAfter(current)))) {
+                luongCoBan.put(nhanvienId, (BigDecimal) row[1]);
+                ngayBatDau.put(nhanvienId, start);
+            }
+        }
+        return luongCoBan;
+    }
+
+    private Map<Long, WorkingStats> loadWorkingStats(LocalDate startDate, LocalDate endDate) {
+        Map<Long, WorkingStats> stats = new HashMap<>();
+        for (Object[] row : chamCongRepository.aggregateWorkingStatsByPeriod(startDate, endDate)) {
+            Long nhanvienId = ((Number) row[0]).longValue();
+            int ngayCong = row[1] != null ? ((Number) row[1]).intValue() : 0;
+            BigDecimal tongGioLam = row[2] != null ? new BigDecimal(row[2].toString()) : BigDecimal.ZERO;
+            stats.put(nhanvienId, new WorkingStats(ngayCong, tongGioLam));
+        }
+        return stats;
+    }
+
+    // Giữ lại tối đa MAX_FINISHED_JOBS job đã kết thúc để tra cứu trạng thái
+    private void evictFinishedJobs() {
+        List<PayrollJob> finished = jobs.values().stream()
+                .filter(job -> job.ketThuc != null)
+                .sorted((a, b) -> a.ketThuc.compareTo(b.ketThuc))
+                .toList();
+        for (int i = 0; i < finished.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i).jobId);
+        }
+    }
+
+    private void countRows(String result, int amount) {
+        Counter.builder("hr.payroll.batch.rows")
+                .tag("result", result)
+                .description("Số bảng lương xử lý bởi job tính lương hàng loạt")
+                .register(meterRegistry)
+                .increment(amount);
+    }
+
+    // Thống kê chấm công của một nhân viên trong kỳ
+    private record WorkingStats(int ngayCong, BigDecimal tongGioLam) {
+        private static final WorkingStats EMPTY = new WorkingStats(0, BigDecimal.ZERO);
+    }
+
+    // Trạng thái nội bộ của job (cập nhật từ nhiều thread)
+    private final class PayrollJob {
+        private final String jobId;
+        private final Integer thang;
+        private final Integer nam;
+        private final String nguoiThucHien;
+        private final AtomicInteger thanhCong = new AtomicInteger();
+        private final AtomicInteger boQua = new AtomicInteger();
+        private final AtomicInteger thatBai = new AtomicInteger();
+        private final List<String> loi = Collections.synchronizedList(new ArrayList<>());
+        private final Set<Long> createdNhanVienIds = ConcurrentHashMap.newKeySet();
+        private volatile String trangThai = "DANG_CHO";
+        private volatile int tongNhanVien;
+        private volatile LocalDateTime batDau;
+        private volatile LocalDateTime ketThuc;
+
+        private PayrollJob(String jobId, Integer thang, Integer nam, String nguoiThucHien) {
+            this.jobId = jobId;
+            this.thang = thang;
+            this.nam = nam;
+            this.nguoiThucHien = nguoiThucHien;
+        }
+
+        private void succeed(int amount) {
+            thanhCong.addAndGet(amount);
+            countRows("created", amount);
+        }
+
+        private void skip(String reason) {
+            boQua.incrementAndGet();
+            countRows("skipped", 1);
+            if (reason != null) {
+                addError(reason);
+            }
+        }
+
+        private void fail(int amount, String reason) {
+            thatBai.addAndGet(amount);
+            countRows("failed", amount);
+            addError(reason);
+        }
+
+        private void addError(String reason) {
+            synchronized (loi) {
+                if (loi.size() < MAX_ERRORS) {
+                    loi.add(reason);
+                }
+            }
+        }
+
+        private PayrollJobStatusDTO toDTO() {
+            int daXuLy = thanhCong.get() + boQua.get() + thatBai.get();
+            int tienDo = tongNhanVien > 0 ? Math.min(100, daXuLy * 100 / tongNhanVien)
+                    : (ketThuc != null ? 100 : 0);
+            List<String> loiSnapshot;
+            synchronized (loi) {
+                loiSnapshot = new ArrayList<>(loi);
+            }
+            return PayrollJobStatusDTO.builder()
+                    .jobId(jobId)
+                    .thang(thang)
+                    .nam(nam)
+                    .trangThai(trangThai)
+                    .nguoiThucHien(nguoiThucHien)
+                    .tongNhanVien(tongNhanVien)
+                    .daXuLy(daXuLy)
+                    .thanhCong(thanhCong.get())
+                    .boQua(boQua.get())
+                    .thatBai(thatBai.get())
+                    .tienDo(tienDo)
+                    .batDau(batDau)
+                    .ketThuc(ketThuc)
+                    .loi(loiSnapshot)
+                    .build();
+        }
+    }
+}
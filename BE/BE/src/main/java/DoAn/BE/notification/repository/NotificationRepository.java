@@ -7,6 +7,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -28,6 +29,11 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     // Đếm notification chưa đọc
     long countByUser_UserIdAndIsReadFalse(Long userId);
 
+    // Đánh dấu tất cả đã đọc bằng một câu UPDATE
+    @Modifying
+    @Query("UPDATE Notification n SET n.isRead = true WHERE n.user.userId = :userId AND n.isRead = false")
+    int markAllAsReadByUserId(@Param("userId") Long userId);
+
     // Xóa notifications cũ hơn một ngày nhất định (cho cleanup job)
     @Modifying
     @Query("DELETE FROM Notification n WHERE n.createdAt < :cutoffDate")
@@ -5,6 +5,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 /**
  * Service quản lý thông báo chấm công/attendance
  */
@@ -55,6 +57,16 @@ public class AttendanceNotificationService {
         return notificationService.createNotification(userId, "ATTENDANCE_MISSING", title, content, link);
     }
     
+    /**
+     * Notification quên chấm công cho nhiều nhân viên (một transaction cho cả lô)
+     */
+    public List<Notification> createMissingAttendanceNotifications(List<Long> userIds, String date) {
+        String title = "⚠️ Chưa chấm công";
+        String content = "Bạn chưa chấm công ngày " + date + ". Vui lòng cập nhật!";
+        String link = "/hr/attendance";
+        return notificationService.createNotificationsForUsers(userIds, "ATTENDANCE_MISSING", title, content, link);
+    }
+    
     /**
      * Notification tổng kết tháng
      */
@@ -87,4 +99,14 @@ public class AttendanceNotificationService {
         String link = "/hr/attendance";
         return notificationService.createNotification(userId, "ATTENDANCE_CHECKOUT_REMINDER", title, content, link);
     }
+    
+    /**
+     * Notification nhắc check-out cho nhiều nhân viên (một transaction cho cả lô)
+     */
+    public List<Notification> createCheckoutReminderNotifications(List<Long> userIds) {
+        String title = "🔔 Nhắc check-out";
+        String content = "Bạn chưa check-out hôm nay. Vui lòng check-out trước khi về!";
+        String link = "/hr/attendance";
+        return notificationService.createNotificationsForUsers(userIds, "ATTENDANCE_CHECKOUT_REMINDER", title, content, link);
+    }
 }
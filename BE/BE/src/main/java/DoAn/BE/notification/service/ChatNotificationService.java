@@ -5,6 +5,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 // Service quản lý thông báo chat
 @Service
 @Transactional
@@ -32,6 +34,20 @@ public class ChatNotificationService {
         return createChatNotification(userId, "NEW_MESSAGE", title, truncatedContent, link);
     }
 
+    /**
+     * Tạo notification tin nhắn mới cho nhiều người nhận cùng lúc
+     */
+    public List<Notification> createNewMessageNotifications(List<Long> userIds, String senderName, String content,
+            Long roomId) {
+        String title = "Tin nhắn mới từ " + senderName;
+        String truncatedContent = content != null && content.length() > 50 ? 
+            content.substring(0, 47) + "..." : content;
+        String link = "/chat/rooms/" + roomId;
+
+        return notificationService.createNotificationsForUsers(userIds, "CHAT_NEW_MESSAGE", title,
+                truncatedContent, link);
+    }
+
     /**
      * Tạo notification cho thành viên mới
      */
@@ -1,12 +1,15 @@
 package DoAn.BE.notification.service;
 
+import com.google.firebase.messaging.BatchResponse;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.MulticastMessage;
 import com.google.firebase.messaging.Notification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -41,6 +44,46 @@ public class FCMService {
         }
     }
 
+    // FCM giới hạn 500 token cho mỗi multicast request
+    private static final int MULTICAST_LIMIT = 500;
+
+    /**
+     * Gửi cùng một thông báo tới nhiều thiết bị (multicast, chia theo lô 500 token)
+     */
+    public void sendToDevices(List<String> fcmTokens, String title, String body, Map<String, String> data) {
+        List<String> tokens = fcmTokens.stream()
+                .filter(token -> token != null && !token.isEmpty())
+                .distinct()
+                .toList();
+        if (tokens.isEmpty()) {
+            return;
+        }
+
+        Notification notification = Notification.builder()
+                .setTitle(title)
+                .setBody(body)
+                .build();
+
+        for (int from = 0; from < tokens.size(); from += MULTICAST_LIMIT) {
+            List<String> chunk = tokens.subList(from, Math.min(from + MULTICAST_LIMIT, tokens.size()));
+            try {
+                MulticastMessage.Builder messageBuilder = MulticastMessage.builder()
+                        .addAllTokens(chunk)
+                        .setNotification(notification);
+
+                if (data != null) {
+                    messageBuilder.putAllData(data);
+                }
+
+                BatchResponse response = FirebaseMessaging.getInstance().sendEachForMulticast(messageBuilder.build());
+                logger.info("Multicast sent: {} success, {} failure", response.getSuccessCount(),
+                        response.getFailureCount());
+            } catch (Exception e) {
+                logger.error("Error sending FCM multicast message", e);
+            }
+        }
+    }
+
     public void sendToTopic(String topic, String title, String body, Map<String, String> data) {
         try {
             Notification notification = Notification.builder()
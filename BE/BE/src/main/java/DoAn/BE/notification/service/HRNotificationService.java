@@ -5,6 +5,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 // Service quản lý thông báo HR (lương, nghỉ phép, hợp đồng)
 @Service
 @Transactional
@@ -23,6 +25,16 @@ public class HRNotificationService {
         return notificationService.createNotification(userId, "HR_SALARY", title, content, link);
     }
 
+    /**
+     * Tạo notification bảng lương mới cho nhiều nhân viên (batch tính lương)
+     */
+    public List<Notification> createSalaryNotifications(List<Long> userIds, String month, String year) {
+        String title = "Bảng lương mới";
+        String content = "Bảng lương tháng " + month + "/" + year + " đã được tạo";
+        String link = "/hr/bang-luong";
+        return notificationService.createNotificationsForUsers(userIds, "HR_SALARY", title, content, link);
+    }
+
     /**
      * Tạo notification khi đơn nghỉ phép được phê duyệt
      */
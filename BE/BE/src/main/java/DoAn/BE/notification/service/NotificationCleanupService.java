@@ -22,6 +22,8 @@ public class NotificationCleanupService {
 
     private final NotificationRepository notificationRepository;
     private final ThongBaoRepository thongBaoRepository;
+    private final NotificationService notificationService;
+    private final ThongBaoService thongBaoService;
 
     @Value("${notification.retention.days:30}")
     private int retentionDays;
@@ -53,6 +55,7 @@ public class NotificationCleanupService {
                 // Xóa ThongBao entities
                 int deletedThongBao = thongBaoRepository.deleteOlderThan(cutoffDate);
                 log.info("✅ Đã xóa {} thông báo từ bảng ThongBao", deletedThongBao);
+                invalidateUnreadCounts();
 
                 log.info("🎉 Hoàn tất dọn dẹp: {} tổng records đã xóa",
                         deletedNotifications + deletedThongBao);
@@ -78,10 +81,17 @@ public class NotificationCleanupService {
 
         int deletedNotifications = notificationRepository.deleteOlderThan(cutoffDate);
         int deletedThongBao = thongBaoRepository.deleteOlderThan(cutoffDate);
+        invalidateUnreadCounts();
 
         int total = deletedNotifications + deletedThongBao;
         log.info("✅ Manual cleanup hoàn tất: {} records đã xóa", total);
 
         return total;
     }
+
+    // Badge counter trong memory không còn khớp sau khi xóa hàng loạt
+    private void invalidateUnreadCounts() {
+        notificationService.invalidateUnreadCounts();
+        thongBaoService.invalidateUnreadCounts();
+    }
 }
@@ -4,6 +4,7 @@ import DoAn.BE.notification.entity.Notification;
 import DoAn.BE.notification.repository.NotificationRepository;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.user.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -26,12 +27,15 @@ public class NotificationService {
     private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
     private final FCMService fcmService;
+    private final UnreadCounterCache unreadCounters;
 
     public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository,
-            FCMService fcmService) {
+            FCMService fcmService,
+            @Value("${notification.unread-cache.ttl-seconds:300}") long unreadCacheTtlSeconds) {
         this.notificationRepository = notificationRepository;
         this.userRepository = userRepository;
         this.fcmService = fcmService;
+        this.unreadCounters = new UnreadCounterCache(unreadCacheTtlSeconds * 1000);
     }
 
     public Notification createNotification(Long userId, String type, String title, String content, String link) {
@@ -45,38 +49,58 @@ public class NotificationService {
         notification.setContent(content);
         notification.setLink(link);
 
-        return notificationRepository.save(notification);
+        notification = notificationRepository.save(notification);
+        unreadCounters.incrementAfterCommit(userId, 1);
+        return notification;
+    }
+
+    /**
+     * Tạo cùng một thông báo cho nhiều user trong một transaction (dùng cho fan-out chat)
+     */
+    public List<Notification> createNotificationsForUsers(List<Long> userIds, String type, String title,
+            String content, String link) {
+        List<Notification> notifications = userIds.stream()
+                .map(userId -> {
+                    Notification notification = new Notification();
+                    notification.setUser(userRepository.getReferenceById(userId));
+                    notification.setType(type);
+                    notification.setTitle(title);
+                    notification.setContent(content);
+                    notification.setLink(link);
+                    return notification;
+                })
+                .toList();
+        List<Notification> saved = notificationRepository.saveAll(notifications);
+        userIds.forEach(userId -> unreadCounters.incrementAfterCommit(userId, 1));
+        return saved;
     }
 
     public Page<Notification> getUserNotifications(Long userId, Pageable pageable) {
         return notificationRepository.findByUser_UserIdOrderByCreatedAtDesc(userId, pageable);
     }
 
+    // Badge: đọc từ counter trong memory, chỉ COUNT khi chưa có/hết hạn
+    @Transactional(readOnly = true)
     public long getUnreadCount(Long userId) {
-        return notificationRepository.countByUser_UserIdAndIsReadFalse(userId);
+        return unreadCounters.get(userId, () -> notificationRepository.countByUser_UserIdAndIsReadFalse(userId));
     }
 
     public void markAsRead(Long notificationId, Long userId) {
         Optional<Notification> notificationOpt = notificationRepository.findById(notificationId);
         if (notificationOpt.isPresent()) {
             Notification notification = notificationOpt.get();
-            if (notification.getUser() != null && notification.getUser().getUserId().equals(userId)) {
+            if (notification.getUser() != null && notification.getUser().getUserId().equals(userId)
+                    && notification.isUnread()) {
                 notification.markAsRead();
                 notificationRepository.save(notification);
+                unreadCounters.incrementAfterCommit(userId, -1);
             }
         }
     }
 
     public void markAllAsRead(Long userId) {
-        List<Notification> unreadNotifications = notificationRepository.findByUser_UserIdOrderByCreatedAtDesc(userId)
-                .stream()
-                .filter(Notification::isUnread)
-                .toList();
-
-        for (Notification notification : unreadNotifications) {
-            notification.markAsRead();
-        }
-        notificationRepository.saveAll(unreadNotifications);
+        notificationRepository.markAllAsReadByUserId(userId);
+        unreadCounters.resetAfterCommit(userId);
     }
 
     public void deleteNotification(Long notificationId, Long userId) {
@@ -85,7 +109,17 @@ public class NotificationService {
             Notification notification = notificationOpt.get();
             if (notification.getUser() != null && notification.getUser().getUserId().equals(userId)) {
                 notificationRepository.delete(notification);
+                if (notification.isUnread()) {
+                    unreadCounters.incrementAfterCommit(userId, -1);
+                }
             }
         }
     }
+
+    /**
+     * Bỏ toàn bộ counter (sau khi xóa hàng loạt)
+     */
+    public void invalidateUnreadCounts() {
+        unreadCounters.invalidateAll();
+    }
 }
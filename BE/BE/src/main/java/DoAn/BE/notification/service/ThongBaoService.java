@@ -12,11 +12,14 @@ import DoAn.BE.user.entity.User;
 import DoAn.BE.user.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.annotation.PostConstruct;
+
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +36,16 @@ public class ThongBaoService {
     private final UserRepository userRepository;
     private final EmailNotificationService emailNotificationService;
 
+    @Value("${notification.unread-cache.ttl-seconds:300}")
+    private long unreadCacheTtlSeconds;
+
+    private UnreadCounterCache unreadCounters;
+
+    @PostConstruct
+    void initUnreadCounters() {
+        unreadCounters = new UnreadCounterCache(unreadCacheTtlSeconds * 1000);
+    }
+
     // Tạo thông báo mới
     public ThongBaoDTO createThongBao(CreateThongBaoRequest request, User nguoiGui) {
         log.info("Tạo thông báo mới: {} cho user {}", request.getLoai(), request.getNguoiNhanId());
@@ -52,6 +65,7 @@ public class ThongBaoService {
         thongBao.setGuiEmail(request.getGuiEmail());
 
         thongBao = thongBaoRepository.save(thongBao);
+        unreadCounters.incrementAfterCommit(nguoiNhan.getUserId(), 1);
 
         if (request.getGuiEmail()) {
             try {
@@ -105,7 +119,7 @@ public class ThongBaoService {
      */
     @Transactional(readOnly = true)
     public long getUnreadCount(Long userId) {
-        return thongBaoRepository.countUnreadByUserId(userId);
+        return unreadCounters.get(userId, () -> thongBaoRepository.countUnreadByUserId(userId));
     }
 
     /**
@@ -119,6 +133,9 @@ public class ThongBaoService {
             throw new ForbiddenException("Không có quyền truy cập thông báo này");
         }
 
+        if (thongBao.getTrangThai() == TrangThaiThongBao.CHUA_DOC) {
+            unreadCounters.incrementAfterCommit(userId, -1);
+        }
         thongBao.markAsRead();
         thongBaoRepository.save(thongBao);
     }
@@ -128,6 +145,7 @@ public class ThongBaoService {
      */
     public void markAllAsRead(Long userId) {
         thongBaoRepository.markAllAsReadByUserId(userId, LocalDateTime.now());
+        unreadCounters.resetAfterCommit(userId);
     }
 
     /**
@@ -141,6 +159,9 @@ public class ThongBaoService {
             throw new ForbiddenException("Không có quyền xóa thông báo này");
         }
 
+        if (thongBao.getTrangThai() == TrangThaiThongBao.CHUA_DOC) {
+            unreadCounters.incrementAfterCommit(userId, -1);
+        }
         thongBao.setTrangThai(TrangThaiThongBao.DA_XOA);
         thongBaoRepository.save(thongBao);
     }
@@ -180,9 +201,17 @@ public class ThongBaoService {
     public void cleanupOldNotifications(int daysToKeep) {
         LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysToKeep);
         int deletedCount = thongBaoRepository.softDeleteOldNotifications(cutoffDate);
+        unreadCounters.invalidateAll();
         log.info("Đã dọn dẹp {} thông báo cũ", deletedCount);
     }
 
+    /**
+     * Bỏ toàn bộ counter (sau khi xóa hàng loạt)
+     */
+    public void invalidateUnreadCounts() {
+        unreadCounters.invalidateAll();
+    }
+
     // ==================== HELPER METHODS ====================
 
     /**
@@ -0,0 +1,63 @@
+package DoAn.BE.notification.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import DoAn.BE.common.cache.InvalidatingCache;
+
+/**
+ * Bộ đếm thông báo chưa đọc theo user trong memory (badge).
+ * Lần đọc đầu tiên đếm từ DB, sau đó được cộng/trừ tại chỗ sau khi transaction ghi commit.
+ * Entry hết hạn sau ttl để tự sửa sai lệch (rollback giữa chừng, instance khác ghi, job dọn dẹp).
+ * Thay đổi cho user chưa có trong cache chỉ chặn lần đếm đang chạy của chính user đó (generation theo user).
+ */
+class UnreadCounterCache {
+
+    private static final int MAX_USERS = 100_000;
+
+    private final InvalidatingCache<Long, AtomicLong> counters;
+
+    UnreadCounterCache(long ttlMillis) {
+        this.counters = new InvalidatingCache<>(ttlMillis, MAX_USERS);
+    }
+
+    long get(Long userId, LongSupplier loader) {
+        AtomicLong count = counters.get(userId, id -> new AtomicLong(loader.getAsLong()));
+        return Math.max(0, count.get());
+    }
+
+    void incrementAfterCommit(Long userId, long delta) {
+        afterCommit(() -> {
+            AtomicLong count = counters.getIfPresent(userId);
+            if (count != null) {
+                count.addAndGet(delta);
+            } else {
+                counters.evict(userId);
+            }
+        });
+    }
+
+    void resetAfterCommit(Long userId) {
+        afterCommit(() -> counters.put(userId, new AtomicLong()));
+    }
+
+    void invalidateAll() {
+        afterCommit(counters::clear);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
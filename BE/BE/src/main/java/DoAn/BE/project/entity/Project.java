@@ -55,6 +55,12 @@ public class Project {
     @JoinColumn(name = "phongban_id")
     private PhongBan phongBan;
 
+    // Số thứ tự issue đã cấp (sinh issue key PROJ-n). Chỉ tăng bằng UPDATE nguyên tử trong ProjectRepository,
+    // không ghi qua entity để tránh ghi đè giá trị cũ
+    @Column(name = "issue_seq", updatable = false)
+    @JsonIgnore
+    private Long issueSeq = 0L;
+
     @Column(name = "is_active", nullable = false)
     private Boolean isActive = true;
 
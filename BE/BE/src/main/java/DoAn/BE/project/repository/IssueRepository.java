@@ -4,12 +4,18 @@ import DoAn.BE.project.entity.Issue;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface IssueRepository extends JpaRepository<Issue, Long> {
     Optional<Issue> findByIssueKey(String issueKey);
 
+    // Chỉ lấy issue key (khởi tạo sequence cho project cũ)
+    @Query("SELECT i.issueKey FROM Issue i WHERE i.project.projectId = :projectId")
+    List<String> findIssueKeysByProjectId(@Param("projectId") Long projectId);
+
     List<Issue> findByProject_ProjectId(Long projectId);
 
     List<Issue> findByReporter_UserId(Long userId);
@@ -4,6 +4,9 @@ import DoAn.BE.project.entity.Project;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -15,4 +18,17 @@ public interface ProjectRepository extends JpaRepository<Project, Long> {
     List<Project> findByIsActiveTrue();
 
     List<Project> findByStatus(Project.ProjectStatus status);
+
+    // Cấp một khối số thứ tự issue (atomic, khóa dòng project đến khi commit)
+    @Modifying
+    @Query("UPDATE Project p SET p.issueSeq = p.issueSeq + :blockSize WHERE p.projectId = :projectId AND p.issueSeq IS NOT NULL")
+    int incrementIssueSeq(@Param("projectId") Long projectId, @Param("blockSize") long blockSize);
+
+    // Khởi tạo sequence cho project cũ (cột vừa được thêm, đang NULL)
+    @Modifying
+    @Query("UPDATE Project p SET p.issueSeq = :seed WHERE p.projectId = :projectId AND p.issueSeq IS NULL")
+    int initIssueSeq(@Param("projectId") Long projectId, @Param("seed") long seed);
+
+    @Query("SELECT p.issueSeq FROM Project p WHERE p.projectId = :projectId")
+    Long findIssueSeq(@Param("projectId") Long projectId);
 }
@@ -0,0 +1,108 @@
+package DoAn.BE.project.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import DoAn.BE.common.exception.EntityNotFoundException;
+import DoAn.BE.project.entity.Project;
+import DoAn.BE.project.repository.IssueRepository;
+import DoAn.BE.project.repository.ProjectRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sinh issue key (PROJ-n) từ sequence lưu trên project.
+ * Mỗi lần chạm DB cấp cả một khối số (UPDATE nguyên tử trong transaction riêng),
+ * các số trong khối được phát từ memory nên tạo issue là O(1) và không trùng key khi tạo đồng thời.
+ * Số chưa dùng hết trong khối bị bỏ qua khi restart (key có thể nhảy cóc, không bao giờ trùng).
+ */
+@Component
+@Slf4j
+public class IssueKeyGenerator {
+
+    private final ProjectRepository projectRepository;
+    private final IssueRepository issueRepository;
+    private final TransactionTemplate requiresNew;
+    private final Map<Long, KeyBlock> blocks = new ConcurrentHashMap<>();
+
+    @Value("${project.issue-key.block-size:20}")
+    private int blockSize;
+
+    public IssueKeyGenerator(ProjectRepository projectRepository,
+            IssueRepository issueRepository,
+            PlatformTransactionManager transactionManager) {
+        this.projectRepository = projectRepository;
+        this.issueRepository = issueRepository;
+        // Cấp khối trong transaction riêng: commit ngay, không giữ khóa dòng project suốt transaction tạo issue
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Lấy issue key tiếp theo của project
+     */
+    public String nextKey(Project project) {
+        return project.getKeyProject() + "-" + nextNumber(project.getProjectId());
+    }
+
+    public long nextNumber(Long projectId) {
+        KeyBlock block = blocks.computeIfAbsent(projectId, id -> new KeyBlock());
+        synchronized (block) {
+            if (block.next > block.end) {
+                long end = reserveBlock(projectId, blockSize);
+                block.next = end - blockSize + 1;
+                block.end = end;
+            }
+            return block.next++;
+        }
+    }
+
+    /**
+     * Bỏ khối đang giữ của project (khi project bị xóa)
+     */
+    public void forget(Long projectId) {
+        blocks.remove(projectId);
+    }
+
+    private long reserveBlock(Long projectId, int size) {
+        Long end = requiresNew.execute(status -> {
+            if (projectRepository.incrementIssueSeq(projectId, size) == 0) {
+                // Project tạo trước khi có sequence: khởi tạo từ số lớn nhất đang dùng rồi cấp lại
+                projectRepository.initIssueSeq(projectId, findMaxIssueNumber(projectId));
+                if (projectRepository.incrementIssueSeq(projectId, size) == 0) {
+                    throw new EntityNotFoundException("Không tìm thấy dự án");
+                }
+            }
+            return projectRepository.findIssueSeq(projectId);
+        });
+        log.debug("Reserved issue numbers {}-{} for project {}", end - size + 1, end, projectId);
+        return end;
+    }
+
+    // Chỉ chạy một lần cho mỗi project cũ
+    private long findMaxIssueNumber(Long projectId) {
+        long max = 0;
+        for (String key : issueRepository.findIssueKeysByProjectId(projectId)) {
+            int dash = key != null ? key.lastIndexOf('-') : -1;
+            if (dash < 0) {
+                continue;
+            }
+            try {
+                max = Math.max(max, Long.parseLong(key.substring(dash + 1)));
+            } catch (NumberFormatException e) {
+                // Key không theo định dạng PROJ-n, bỏ qua
+            }
+        }
+        return max;
+    }
+
+    private static final class KeyBlock {
+        private long next = 1;
+        private long end = 0;
+    }
+}
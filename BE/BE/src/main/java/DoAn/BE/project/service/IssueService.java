@@ -19,6 +19,7 @@ import DoAn.BE.project.repository.ProjectRepository;
 import DoAn.BE.project.repository.SprintRepository;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.user.repository.UserRepository;
+import DoAn.BE.ai.service.ProjectContextService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -39,8 +40,10 @@ public class IssueService {
     private final UserRepository userRepository;
     private final SprintRepository sprintRepository;
     private final IssueActivityRepository issueActivityRepository;
+    private final IssueKeyGenerator issueKeyGenerator;
     private final DoAn.BE.notification.service.ProjectNotificationService projectNotificationService;
     private final DoAn.BE.notification.service.FCMService fcmService;
+    private final ProjectContextService projectContextService;
 
     @Transactional
     public IssueDTO createIssue(CreateIssueRequest request, Long userId) {
@@ -60,7 +63,7 @@ public class IssueService {
                     .orElseThrow(() -> new EntityNotFoundException("Không tìm thấy người được giao việc"));
             validateProjectAccess(request.getProjectId(), request.getAssigneeId());
         }
-        String issueKey = generateIssueKey(project);
+        String issueKey = issueKeyGenerator.nextKey(project);
 
         // Create issue
         Issue issue = new Issue();
@@ -76,6 +79,7 @@ public class IssueService {
         issue.setDueDate(request.getDueDate());
 
         issue = issueRepository.save(issue);
+        projectContextService.invalidate(project.getProjectId());
         return convertToDTO(issue);
     }
 
@@ -203,6 +207,7 @@ public class IssueService {
         }
 
         issue = issueRepository.save(issue);
+        projectContextService.invalidate(issue.getProject().getProjectId());
 
         // Notify assignee nếu có thay đổi quan trọng (priority, deadline)
         if (changes.length() > 0 && issue.getAssignee() != null && !issue.getAssignee().getUserId().equals(userId)) {
@@ -232,6 +237,7 @@ public class IssueService {
         }
 
         issueRepository.delete(issue);
+        projectContextService.invalidate(projectId);
     }
 
     @Transactional
@@ -252,6 +258,7 @@ public class IssueService {
 
         issue.assignTo(assignee);
         issue = issueRepository.save(issue);
+        projectContextService.invalidate(issue.getProject().getProjectId());
 
         // Send notification to assignee
         projectNotificationService.createIssueAssignedNotification(
@@ -305,6 +312,7 @@ public class IssueService {
         // Change status
         issue.changeStatus(status);
         issue = issueRepository.save(issue);
+        projectContextService.invalidate(issue.getProject().getProjectId());
 
         // Create activity log for status change
         if (!oldStatus.equals(newStatus)) {
@@ -363,15 +371,6 @@ public class IssueService {
         }
     }
 
-    private String generateIssueKey(Project project) {
-        // Get the count of existing issues in the project
-        List<Issue> existingIssues = issueRepository.findByProject_ProjectId(project.getProjectId());
-        int nextNumber = existingIssues.size() + 1;
-
-        // Generate key: PROJECT_KEY-NUMBER (e.g., PROJ-1, PROJ-2)
-        return String.format("%s-%d", project.getKeyProject(), nextNumber);
-    }
-
     private IssueDTO convertToDTO(Issue issue) {
         IssueDTO dto = new IssueDTO();
         dto.setIssueId(issue.getIssueId());
@@ -9,6 +9,8 @@ import DoAn.BE.chat.entity.ChatRoomMember;
 import DoAn.BE.chat.entity.ChatRoomMemberId;
 import DoAn.BE.chat.repository.ChatRoomRepository;
 import DoAn.BE.chat.repository.ChatRoomMemberRepository;
+import DoAn.BE.ai.service.ProjectContextService;
+import DoAn.BE.chat.service.RoomMembershipIndex;
 import lombok.extern.slf4j.Slf4j;
 import DoAn.BE.project.dto.*;
 import DoAn.BE.project.entity.Project;
@@ -40,10 +42,13 @@ public class ProjectService {
     private final PhongBanRepository phongBanRepository;
     private final ChatRoomRepository chatRoomRepository;
     private final ChatRoomMemberRepository chatRoomMemberRepository;
+    private final RoomMembershipIndex roomMembershipIndex;
     private final ProjectChatIntegrationService projectChatIntegrationService;
     private final DoAn.BE.notification.service.ProjectNotificationService projectNotificationService;
     private final DoAn.BE.notification.service.FCMService fcmService;
     private final DoAn.BE.storage.service.StorageProjectIntegrationService storageProjectIntegrationService;
+    private final IssueKeyGenerator issueKeyGenerator;
+    private final ProjectContextService projectContextService;
 
     @Transactional
     public ProjectDTO createProject(CreateProjectRequest request, User currentUser) {
@@ -107,6 +112,7 @@ public class ProjectService {
         chatMember.setRole(ChatRoomMember.MemberRole.ADMIN);
         chatMember.setJoinedAt(LocalDateTime.now());
         chatRoomMemberRepository.save(chatMember);
+        roomMembershipIndex.invalidate(projectChatRoom.getRoomId());
 
         log.info("Đã tạo project chat room {} cho project {}", projectChatRoom.getRoomId(), project.getProjectId());
 
@@ -241,6 +247,7 @@ public class ProjectService {
         }
 
         project = projectRepository.save(project);
+        projectContextService.invalidate(projectId);
         return convertToDTO(project);
     }
 
@@ -260,6 +267,8 @@ public class ProjectService {
         // Soft delete
         project.setIsActive(false);
         projectRepository.save(project);
+        issueKeyGenerator.forget(projectId);
+        projectContextService.invalidate(projectId);
 
         // Archive project chat - set inactive but keep history
         List<ChatRoom> projectChats = chatRoomRepository.findByProject(project);
@@ -302,6 +311,7 @@ public class ProjectService {
         // Add member
         ProjectMember projectMember = new ProjectMember(project, newMember, request.getRole());
         projectMember = projectMemberRepository.save(projectMember);
+        projectContextService.invalidate(projectId);
 
         // Sync to project chat room
         List<ChatRoom> projectChats = chatRoomRepository.findByProject(project);
@@ -327,6 +337,7 @@ public class ProjectService {
                         : ChatRoomMember.MemberRole.MEMBER);
                 chatMember.setJoinedAt(LocalDateTime.now());
                 chatRoomMemberRepository.save(chatMember);
+                roomMembershipIndex.invalidate(projectChatRoom.getRoomId());
 
                 log.info("Đã thêm user {} vào project chat room {}", request.getUserId(), projectChatRoom.getRoomId());
             }
@@ -389,6 +400,7 @@ public class ProjectService {
         }
 
         projectMemberRepository.delete(memberToRemove);
+        projectContextService.invalidate(projectId);
 
         // Sync to project chat room
         Project project = projectRepository.findById(projectId).orElse(null);
@@ -402,6 +414,7 @@ public class ProjectService {
 
                 if (chatMemberOpt.isPresent()) {
                     chatRoomMemberRepository.delete(chatMemberOpt.get());
+                    roomMembershipIndex.invalidate(projectChatRoom.getRoomId());
                     log.info("Đã xóa user {} khỏi project chat room {}", memberId, projectChatRoom.getRoomId());
                 }
             }
@@ -460,6 +473,7 @@ public class ProjectService {
 
         member.setRole(newRole);
         member = projectMemberRepository.save(member);
+        projectContextService.invalidate(projectId);
 
         // Send notification to member
         if (member.getUser() != null && member.getProject() != null) {
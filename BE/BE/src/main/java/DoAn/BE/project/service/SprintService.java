@@ -14,6 +14,7 @@ import DoAn.BE.project.repository.IssueRepository;
 import DoAn.BE.project.repository.ProjectMemberRepository;
 import DoAn.BE.user.entity.User;
 import DoAn.BE.user.repository.UserRepository;
+import DoAn.BE.ai.service.ProjectContextService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -36,6 +37,7 @@ public class SprintService {
     private final UserRepository userRepository;
     private final DoAn.BE.notification.service.ProjectNotificationService projectNotificationService;
     private final DoAn.BE.notification.service.FCMService fcmService;
+    private final ProjectContextService projectContextService;
 
     @Transactional
     public SprintDTO createSprint(CreateSprintRequest request, User currentUser) {
@@ -74,6 +76,7 @@ public class SprintService {
         sprint.setStatus(SprintStatus.PLANNING);
 
         sprint = sprintRepository.save(sprint);
+        projectContextService.invalidate(project.getProjectId());
 
         return convertToDTO(sprint);
     }
@@ -149,6 +152,7 @@ public class SprintService {
         }
 
         sprint = sprintRepository.save(sprint);
+        projectContextService.invalidate(sprint.getProject().getProjectId());
         return convertToDTO(sprint);
     }
 
@@ -176,6 +180,7 @@ public class SprintService {
         issueRepository.saveAll(sprintIssues);
 
         sprintRepository.delete(sprint);
+        projectContextService.invalidate(sprint.getProject().getProjectId());
     }
 
     @Transactional
@@ -202,6 +207,7 @@ public class SprintService {
 
         sprint.setStatus(SprintStatus.ACTIVE);
         sprint = sprintRepository.save(sprint);
+        projectContextService.invalidate(sprint.getProject().getProjectId());
 
         // Notify all project members
         List<ProjectMember> members = projectMemberRepository.findByProject_ProjectId(
@@ -256,6 +262,7 @@ public class SprintService {
 
         sprint.setStatus(SprintStatus.COMPLETED);
         sprint = sprintRepository.save(sprint);
+        projectContextService.invalidate(sprint.getProject().getProjectId());
 
         // Calculate completion stats
         List<Issue> sprintIssues = issueRepository.findBySprint_SprintId(sprintId);
@@ -333,6 +340,7 @@ public class SprintService {
 
         issue.setSprint(sprint);
         issueRepository.save(issue);
+        projectContextService.invalidate(sprint.getProject().getProjectId());
     }
 
     @Transactional
@@ -356,6 +364,7 @@ public class SprintService {
 
         issue.setSprint(null);
         issueRepository.save(issue);
+        projectContextService.invalidate(sprint.getProject().getProjectId());
     }
 
     // Helper methods
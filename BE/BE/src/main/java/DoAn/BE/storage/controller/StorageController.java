@@ -1,21 +1,23 @@
 package DoAn.BE.storage.controller;
 
 import DoAn.BE.storage.dto.*;
+import DoAn.BE.storage.service.FileDownloadService;
 import DoAn.BE.storage.service.FileStorageService;
 import DoAn.BE.storage.service.FolderService;
+import DoAn.BE.storage.service.StorageAdvancedService;
 import DoAn.BE.user.entity.User;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +29,8 @@ public class StorageController {
 
     private final FileStorageService fileStorageService;
     private final FolderService folderService;
+    private final FileDownloadService fileDownloadService;
+    private final StorageAdvancedService storageAdvancedService;
 
     // ==================== FILE ENDPOINTS ====================
 
@@ -55,22 +59,19 @@ public class StorageController {
         return ResponseEntity.ok(file);
     }
 
+    // Hỗ trợ Range (206), If-Range và conditional GET (ETag/Last-Modified -> 304)
     @GetMapping("/files/{fileId}/download")
-    public ResponseEntity<Resource> downloadFile(
+    public void downloadFile(
             @PathVariable Long fileId,
-            Authentication authentication) {
+            Authentication authentication,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
         User user = (User) authentication.getPrincipal();
         Long userId = user.getUserId();
-        Resource resource = fileStorageService.downloadFile(fileId, userId);
-
-        // Get file info for content disposition
-        FileDTO fileInfo = fileStorageService.getFileById(fileId, userId);
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(fileInfo.getMimeType()))
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + fileInfo.getOriginalFilename() + "\"")
-                .body(resource);
+        FileDownloadInfo info = fileStorageService.prepareDownload(fileId, userId);
+        if (fileDownloadService.write(info, request, response)) {
+            fileStorageService.recordDownload(info, user);
+        }
     }
 
     @GetMapping("/files/my-files")
@@ -83,6 +84,36 @@ public class StorageController {
         return ResponseEntity.ok(files);
     }
 
+    @GetMapping("/files/shared")
+    public ResponseEntity<Page<FileDTO>> getSharedFiles(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        return ResponseEntity.ok(storageAdvancedService.getSharedFiles(user.getUserId(), page, size));
+    }
+
+    @GetMapping("/files/recent")
+    public ResponseEntity<Page<FileDTO>> getRecentFiles(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        return ResponseEntity.ok(storageAdvancedService.getRecentFiles(user.getUserId(), page, size));
+    }
+
+    // prefix=true: tên bắt đầu bằng keyword, mặc định: tên chứa keyword
+    @GetMapping("/files/search")
+    public ResponseEntity<Page<FileDTO>> searchFiles(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "false") boolean prefix,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        return ResponseEntity.ok(storageAdvancedService.searchFiles(user.getUserId(), keyword, prefix, page, size));
+    }
+
     @GetMapping("/folders/{folderId}/files")
     public ResponseEntity<List<FileDTO>> getFolderFiles(
             @PathVariable Long folderId,
@@ -144,6 +175,16 @@ public class StorageController {
         return ResponseEntity.ok(stats);
     }
 
+    @GetMapping("/stats/project/{projectId}")
+    public ResponseEntity<StorageStatsDTO> getProjectStorageStats(
+            @PathVariable Long projectId,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        Long userId = user.getUserId();
+        StorageStatsDTO stats = fileStorageService.getProjectStorageStats(projectId, userId);
+        return ResponseEntity.ok(stats);
+    }
+
     // ==================== FOLDER ENDPOINTS ====================
 
     @PostMapping("/folders")
@@ -0,0 +1,19 @@
+package DoAn.BE.storage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Thông tin để phục vụ tải file (đã kiểm tra quyền): đường dẫn vật lý, validator cho conditional GET
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileDownloadInfo {
+    private Long fileId;
+    private String path;
+    private long contentLength;
+    private String mimeType;
+    private String originalFilename;
+    private String etag;
+    private long lastModified; // epoch millis
+}
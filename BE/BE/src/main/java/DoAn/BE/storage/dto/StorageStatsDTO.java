@@ -18,4 +18,6 @@ public class StorageStatsDTO {
     private String remainingQuotaFormatted;
     private Double usagePercentage;
     private Long fileTypes; // Number of distinct file types
+    private Long dedupSavedBytes; // Dung lượng tiết kiệm nhờ dedup nội dung (toàn hệ thống)
+    private String dedupSavedFormatted;
 }
@@ -2,6 +2,7 @@ package DoAn.BE.storage.entity;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -9,9 +10,11 @@ import DoAn.BE.user.entity.User;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
@@ -24,7 +27,11 @@ import lombok.NoArgsConstructor;
 
 // Entity quản lý file (upload, download, versioning, soft delete, quota)
 @Entity
-@Table(name = "files")
+@Table(name = "files", indexes = {
+    @Index(name = "idx_files_owner_deleted_created", columnList = "owner_id, is_deleted, created_at"),
+    @Index(name = "idx_files_owner_deleted_search", columnList = "owner_id, is_deleted, search_name"),
+    @Index(name = "idx_files_folder_deleted", columnList = "folder_id, is_deleted")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -41,6 +48,11 @@ public class File {
     @Column(name = "original_filename", nullable = false, length = 255, columnDefinition = "NVARCHAR(255)")
     private String originalFilename;
 
+    // Tên gốc chuẩn hóa chữ thường, dùng cho tìm kiếm theo tiền tố/từ khóa trên index
+    @Column(name = "search_name", length = 255, columnDefinition = "NVARCHAR(255)")
+    @JsonIgnore
+    private String searchName;
+
     @Column(name = "file_path", nullable = false, length = 500, columnDefinition = "NVARCHAR(500)")
     private String filePath;
 
@@ -50,6 +62,12 @@ public class File {
     @Column(name = "mime_type", length = 100, columnDefinition = "NVARCHAR(100)")
     private String mimeType;
 
+    // Nội dung thực (content-addressed, dùng chung giữa các File cùng nội dung); null với file cũ lưu riêng
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_id")
+    @JsonIgnore
+    private FileBlob blob;
+
     @ManyToOne
     @JoinColumn(name = "folder_id")
     private Folder folder;
@@ -88,11 +106,17 @@ public class File {
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
+        this.searchName = normalizeName(originalFilename);
     }
 
     @PreUpdate
     protected void onUpdate() {
         this.updatedAt = LocalDateTime.now();
+        this.searchName = normalizeName(originalFilename);
+    }
+
+    public static String normalizeName(String name) {
+        return name != null ? name.trim().toLowerCase(Locale.ROOT) : null;
     }
 
     // Lấy extension của file
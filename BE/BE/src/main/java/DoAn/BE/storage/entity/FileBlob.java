@@ -0,0 +1,53 @@
+package DoAn.BE.storage.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Nội dung file lưu theo SHA-256 (content-addressed): cùng nội dung chỉ lưu một lần, đếm số File tham chiếu
+@Entity
+@Table(name = "file_blobs", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_file_blobs_sha256", columnNames = "sha256")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "blob_id")
+    private Long blobId;
+
+    // Hex SHA-256 của nội dung
+    @Column(name = "sha256", nullable = false, length = 64, columnDefinition = "CHAR(64)")
+    private String sha256;
+
+    @Column(name = "content_size", nullable = false)
+    private Long contentSize;
+
+    @Column(name = "storage_path", nullable = false, length = 500, columnDefinition = "NVARCHAR(500)")
+    private String storagePath;
+
+    // Số File đang trỏ tới blob; chỉ thay đổi bằng UPDATE nguyên tử trong FileBlobRepository
+    @Column(name = "ref_count", nullable = false, updatable = false)
+    private long refCount;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
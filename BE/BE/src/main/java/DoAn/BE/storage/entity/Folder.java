@@ -12,7 +12,9 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 
 // Entity quản lý folder (PERSONAL, SHARED, PROJECT) với cấu trúc tree
 @Entity
-@Table(name = "folders")
+@Table(name = "folders", indexes = {
+    @Index(name = "idx_folders_type", columnList = "folder_type")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,93 @@
+package DoAn.BE.storage.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Sổ dung lượng (ledger) theo user hoặc theo project.
+ * Được cộng/trừ nguyên tử cùng transaction với thao tác file (upload, xóa mềm, khôi phục, xóa vĩnh viễn),
+ * nên kiểm tra quota và thống kê storage chỉ cần đọc một dòng.
+ * - used/fileCount và các count theo loại: file đang hoạt động
+ * - trash: file đã xóa mềm (thùng rác)
+ */
+@Entity
+@Table(name = "storage_usage", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_storage_usage_scope", columnNames = { "scope_type", "scope_id" })
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageUsage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "usage_id")
+    private Long usageId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "scope_type", nullable = false, length = 20)
+    private Scope scopeType;
+
+    // userId hoặc projectId tùy scopeType
+    @Column(name = "scope_id", nullable = false)
+    private Long scopeId;
+
+    @Column(name = "used_bytes", nullable = false)
+    private long usedBytes;
+
+    @Column(name = "file_count", nullable = false)
+    private long fileCount;
+
+    @Column(name = "image_count", nullable = false)
+    private long imageCount;
+
+    @Column(name = "document_count", nullable = false)
+    private long documentCount;
+
+    @Column(name = "video_count", nullable = false)
+    private long videoCount;
+
+    @Column(name = "trash_bytes", nullable = false)
+    private long trashBytes;
+
+    @Column(name = "trash_count", nullable = false)
+    private long trashCount;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Lần đối soát gần nhất với bảng files
+    @Column(name = "reconciled_at")
+    private LocalDateTime reconciledAt;
+
+    public long getOtherCount() {
+        return Math.max(0, fileCount - imageCount - documentCount - videoCount);
+    }
+
+    // Số nhóm loại file đang có (ảnh, tài liệu, video, khác)
+    public long getFileTypeCount() {
+        long types = 0;
+        if (imageCount > 0) types++;
+        if (documentCount > 0) types++;
+        if (videoCount > 0) types++;
+        if (getOtherCount() > 0) types++;
+        return types;
+    }
+
+    public enum Scope {
+        USER,
+        PROJECT
+    }
+}
@@ -0,0 +1,56 @@
+package DoAn.BE.storage.repository;
+
+import DoAn.BE.storage.entity.FileBlob;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, Long> {
+
+    Optional<FileBlob> findBySha256(String sha256);
+
+    boolean existsBySha256(String sha256);
+
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount + 1 WHERE b.sha256 = :sha256")
+    int incrementRefCount(@Param("sha256") String sha256);
+
+    // Tạo blob với ref_count = 1 trong transaction của upload. Dùng NOT EXISTS (UPDLOCK, HOLDLOCK) thay vì
+    // bắt lỗi trùng khóa: lỗi ném ra từ repository sẽ đánh dấu rollback-only cả transaction upload
+    @Modifying
+    @Query(value = "INSERT INTO file_blobs (sha256, content_size, storage_path, ref_count, created_at) " +
+                   "SELECT :sha256, :size, :path, 1, :now WHERE NOT EXISTS " +
+                   "(SELECT 1 FROM file_blobs WITH (UPDLOCK, HOLDLOCK) WHERE sha256 = :sha256)", nativeQuery = true)
+    int insertIfAbsent(@Param("sha256") String sha256, @Param("size") long size,
+                       @Param("path") String path, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount - 1 WHERE b.blobId = :blobId AND b.refCount > 0")
+    int decrementRefCount(@Param("blobId") Long blobId);
+
+    // Chỉ xóa khi không còn tham chiếu (điều kiện kiểm tra lại trong chính câu DELETE)
+    @Modifying
+    @Query("DELETE FROM FileBlob b WHERE b.blobId = :blobId AND b.refCount = 0")
+    int deleteIfUnreferenced(@Param("blobId") Long blobId);
+
+    // Blob không còn tham chiếu (release chưa kịp dọn hoặc ref_count được đối soát về 0)
+    @Query("SELECT b FROM FileBlob b WHERE b.refCount = 0 AND b.createdAt < :before")
+    List<FileBlob> findUnreferencedBefore(@Param("before") LocalDateTime before);
+
+    // [tổng dung lượng logic (mỗi tham chiếu tính một lần), dung lượng thực lưu trên đĩa]
+    @Query("SELECT COALESCE(SUM(b.contentSize * b.refCount), 0), COALESCE(SUM(b.contentSize), 0) FROM FileBlob b WHERE b.refCount > 0")
+    List<Object[]> sumLogicalAndPhysicalBytes();
+
+    // Đối soát ref_count với số dòng files đang trỏ tới
+    @Modifying
+    @Query(value = "UPDATE b SET b.ref_count = c.cnt FROM file_blobs b " +
+                   "CROSS APPLY (SELECT COUNT(*) AS cnt FROM files f WHERE f.blob_id = b.blob_id) c " +
+                   "WHERE b.ref_count <> c.cnt", nativeQuery = true)
+    int reconcileRefCounts();
+}
@@ -2,8 +2,15 @@ package DoAn.BE.storage.repository;
 
 import DoAn.BE.storage.entity.File;
 import DoAn.BE.storage.entity.Folder;
+import java.time.LocalDateTime;
 import java.util.List;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -17,4 +24,84 @@ public interface FileRepository extends JpaRepository<File, Long> {
     List<File> findByParentFile_FileId(Long parentFileId);
 
     List<File> findByFolder_FolderType(DoAn.BE.storage.entity.Folder.FolderType folderType);
+
+    // Tổng hợp dung lượng theo owner / project (seed và đối soát storage ledger)
+    // Mỗi dòng: [scopeId, usedBytes, fileCount, imageCount, documentCount, videoCount, trashBytes, trashCount]
+    @Query("SELECT f.owner.userId, " +
+           "SUM(CASE WHEN f.isDeleted = false THEN f.fileSize ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND f.mimeType LIKE 'image/%' THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND (f.mimeType LIKE 'application/pdf%' " +
+           "OR f.mimeType LIKE 'application/msword%' " +
+           "OR f.mimeType LIKE 'application/vnd.openxmlformats-officedocument%') THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND f.mimeType LIKE 'video/%' THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = true THEN f.fileSize ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = true THEN 1 ELSE 0 END) " +
+           "FROM File f GROUP BY f.owner.userId")
+    List<Object[]> aggregateUsageByOwner();
+
+    @Query("SELECT f.owner.userId, " +
+           "SUM(CASE WHEN f.isDeleted = false THEN f.fileSize ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND f.mimeType LIKE 'image/%' THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND (f.mimeType LIKE 'application/pdf%' " +
+           "OR f.mimeType LIKE 'application/msword%' " +
+           "OR f.mimeType LIKE 'application/vnd.openxmlformats-officedocument%') THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND f.mimeType LIKE 'video/%' THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = true THEN f.fileSize ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = true THEN 1 ELSE 0 END) " +
+           "FROM File f WHERE f.owner.userId = :userId GROUP BY f.owner.userId")
+    List<Object[]> aggregateUsageByOwnerId(@Param("userId") Long userId);
+
+    @Query("SELECT fo.project.projectId, " +
+           "SUM(CASE WHEN f.isDeleted = false THEN f.fileSize ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND f.mimeType LIKE 'image/%' THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND (f.mimeType LIKE 'application/pdf%' " +
+           "OR f.mimeType LIKE 'application/msword%' " +
+           "OR f.mimeType LIKE 'application/vnd.openxmlformats-officedocument%') THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND f.mimeType LIKE 'video/%' THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = true THEN f.fileSize ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = true THEN 1 ELSE 0 END) " +
+           "FROM File f JOIN f.folder fo WHERE fo.project IS NOT NULL GROUP BY fo.project.projectId")
+    List<Object[]> aggregateUsageByProject();
+
+    @Query("SELECT fo.project.projectId, " +
+           "SUM(CASE WHEN f.isDeleted = false THEN f.fileSize ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND f.mimeType LIKE 'image/%' THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND (f.mimeType LIKE 'application/pdf%' " +
+           "OR f.mimeType LIKE 'application/msword%' " +
+           "OR f.mimeType LIKE 'application/vnd.openxmlformats-officedocument%') THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = false AND f.mimeType LIKE 'video/%' THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = true THEN f.fileSize ELSE 0 END), " +
+           "SUM(CASE WHEN f.isDeleted = true THEN 1 ELSE 0 END) " +
+           "FROM File f JOIN f.folder fo WHERE fo.project.projectId = :projectId GROUP BY fo.project.projectId")
+    List<Object[]> aggregateUsageByProjectId(@Param("projectId") Long projectId);
+
+    // Files trong folder theo loại, do người khác sở hữu (idx_folders_type + idx_files_folder_deleted)
+    @EntityGraph(attributePaths = { "owner", "folder" })
+    @Query(value = "SELECT f FROM File f JOIN f.folder fo " +
+           "WHERE fo.folderType = :folderType AND f.isDeleted = false AND f.owner.userId <> :userId",
+           countQuery = "SELECT COUNT(f) FROM File f JOIN f.folder fo " +
+           "WHERE fo.folderType = :folderType AND f.isDeleted = false AND f.owner.userId <> :userId")
+    Page<File> findInFolderTypeNotOwnedBy(@Param("folderType") Folder.FolderType folderType,
+                                          @Param("userId") Long userId, Pageable pageable);
+
+    // idx_files_owner_deleted_created
+    @EntityGraph(attributePaths = { "owner", "folder" })
+    Page<File> findByOwner_UserIdAndIsDeletedFalseAndCreatedAtAfter(Long userId, LocalDateTime since, Pageable pageable);
+
+    // Tìm theo search_name (idx_files_owner_deleted_search); pattern đã chuẩn hóa chữ thường và escape
+    @EntityGraph(attributePaths = { "owner", "folder" })
+    @Query(value = "SELECT f FROM File f WHERE f.owner.userId = :userId AND f.isDeleted = false " +
+           "AND f.searchName LIKE :pattern ESCAPE '\\'",
+           countQuery = "SELECT COUNT(f) FROM File f WHERE f.owner.userId = :userId AND f.isDeleted = false " +
+           "AND f.searchName LIKE :pattern ESCAPE '\\'")
+    Page<File> searchByName(@Param("userId") Long userId, @Param("pattern") String pattern, Pageable pageable);
+
+    // Điền search_name cho file tạo trước khi có cột này
+    @Modifying
+    @Query("UPDATE File f SET f.searchName = LOWER(TRIM(f.originalFilename)) WHERE f.searchName IS NULL")
+    int backfillSearchNames();
 }
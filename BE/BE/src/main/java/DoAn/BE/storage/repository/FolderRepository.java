@@ -19,4 +19,8 @@ public interface FolderRepository extends JpaRepository<Folder, Long> {
     List<Folder> findByProjectAndOwner(Project project, DoAn.BE.user.entity.User owner);
 
     List<Folder> findByFolderType(DoAn.BE.storage.entity.Folder.FolderType folderType);
+
+    long countByOwner_UserId(Long userId);
+
+    long countByProject_ProjectId(Long projectId);
 }
@@ -0,0 +1,56 @@
+package DoAn.BE.storage.repository;
+
+import DoAn.BE.storage.entity.StorageUsage;
+import DoAn.BE.storage.entity.StorageUsage.Scope;
+import jakarta.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, Long> {
+
+    Optional<StorageUsage> findByScopeTypeAndScopeId(Scope scopeType, Long scopeId);
+
+    boolean existsByScopeTypeAndScopeId(Scope scopeType, Long scopeId);
+
+    List<StorageUsage> findByScopeType(Scope scopeType);
+
+    // Khóa dòng ledger khi đối soát (chặn cập nhật đồng thời trong lúc tính lại)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM StorageUsage u WHERE u.usageId = :usageId")
+    Optional<StorageUsage> findByIdForUpdate(@Param("usageId") Long usageId);
+
+    // Cộng/trừ nguyên tử
+    @Modifying
+    @Query("UPDATE StorageUsage u SET u.usedBytes = u.usedBytes + :bytes, u.fileCount = u.fileCount + :files, " +
+           "u.imageCount = u.imageCount + :images, u.documentCount = u.documentCount + :documents, " +
+           "u.videoCount = u.videoCount + :videos, u.trashBytes = u.trashBytes + :trashBytes, " +
+           "u.trashCount = u.trashCount + :trashFiles, u.updatedAt = :now " +
+           "WHERE u.scopeType = :scopeType AND u.scopeId = :scopeId")
+    int applyDelta(@Param("scopeType") Scope scopeType, @Param("scopeId") Long scopeId,
+                   @Param("bytes") long bytes, @Param("files") long files,
+                   @Param("images") long images, @Param("documents") long documents, @Param("videos") long videos,
+                   @Param("trashBytes") long trashBytes, @Param("trashFiles") long trashFiles,
+                   @Param("now") LocalDateTime now);
+
+    // Như applyDelta nhưng chỉ cộng khi không vượt giới hạn (kiểm tra quota và ghi nhận trong một câu lệnh)
+    @Modifying
+    @Query("UPDATE StorageUsage u SET u.usedBytes = u.usedBytes + :bytes, u.fileCount = u.fileCount + :files, " +
+           "u.imageCount = u.imageCount + :images, u.documentCount = u.documentCount + :documents, " +
+           "u.videoCount = u.videoCount + :videos, u.trashBytes = u.trashBytes + :trashBytes, " +
+           "u.trashCount = u.trashCount + :trashFiles, u.updatedAt = :now " +
+           "WHERE u.scopeType = :scopeType AND u.scopeId = :scopeId AND u.usedBytes + :bytes <= :limit")
+    int applyDeltaWithinLimit(@Param("scopeType") Scope scopeType, @Param("scopeId") Long scopeId,
+                              @Param("bytes") long bytes, @Param("files") long files,
+                              @Param("images") long images, @Param("documents") long documents,
+                              @Param("videos") long videos,
+                              @Param("trashBytes") long trashBytes, @Param("trashFiles") long trashFiles,
+                              @Param("limit") long limit, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,269 @@
+package DoAn.BE.storage.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import DoAn.BE.common.exception.FileStorageException;
+import DoAn.BE.storage.entity.FileBlob;
+import DoAn.BE.storage.repository.FileBlobRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lưu nội dung file theo địa chỉ nội dung (SHA-256):
+ * - Upload được băm trong lúc ghi ra file tạm, nội dung trùng chỉ tăng ref_count, không ghi thêm lên đĩa
+ * - Blob mới được chuyển (move) vào uploads/blobs/ab/cd/&lt;sha256&gt;, dòng blob được insert trong chính
+ *   transaction của upload (cùng connection); upload rollback thì file vật lý vừa ghi bị xóa theo
+ * - Khi ref_count về 0 (sau commit), dòng blob và file vật lý mới bị xóa
+ * Các thao tác vật lý trên cùng một digest được tuần tự hóa bằng lock theo digest.
+ */
+@Service
+@Slf4j
+public class BlobStoreService {
+
+    private static final int LOCK_STRIPES = 64;
+    private static final long DEDUP_STATS_TTL_MS = 60_000;
+
+    private final FileBlobRepository fileBlobRepository;
+    private final TransactionTemplate requiresNew;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @Value("${file.upload-dir:./uploads}")
+    private String uploadDir;
+
+    @Value("${storage.blob.orphan-grace-minutes:60}")
+    private long orphanGraceMinutes;
+
+    private volatile Path blobRoot;
+    private volatile Path tempRoot;
+    private volatile DedupStats dedupStats;
+
+    public BlobStoreService(FileBlobRepository fileBlobRepository, PlatformTransactionManager transactionManager) {
+        this.fileBlobRepository = fileBlobRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Lưu nội dung và tăng tham chiếu trong transaction hiện tại.
+     * Blob chưa có thì insert dòng mới (ref_count = 1) cũng trong transaction này, không mở transaction lồng.
+     */
+    public FileBlob store(InputStream content) {
+        Path temp = null;
+        try {
+            initialize();
+            temp = Files.createTempFile(tempRoot, "upload-", ".part");
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size;
+            try (InputStream in = new DigestInputStream(content, digest)) {
+                size = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+
+            synchronized (lockFor(sha256)) {
+                if (fileBlobRepository.incrementRefCount(sha256) > 0) {
+                    log.debug("Dedup hit for blob {} ({} bytes)", sha256, size);
+                } else {
+                    Path target = pathFor(sha256);
+                    moveIntoPlace(temp, target);
+                    if (fileBlobRepository.insertIfAbsent(sha256, size, target.toString(), LocalDateTime.now()) > 0) {
+                        discardOnRollback(sha256, target);
+                    } else {
+                        // Instance khác vừa tạo cùng blob
+                        log.debug("Blob {} created concurrently", sha256);
+                        fileBlobRepository.incrementRefCount(sha256);
+                    }
+                }
+            }
+            dedupStats = null;
+            return fileBlobRepository.findBySha256(sha256)
+                    .orElseThrow(() -> new FileStorageException("Không tìm thấy blob vừa lưu: " + sha256));
+        } catch (IOException ex) {
+            throw new FileStorageException("Không thể lưu nội dung file", ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 không khả dụng", ex);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ex) {
+                    log.warn("Không thể xóa file tạm {}: {}", temp, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Bỏ một tham chiếu tới blob. File vật lý chỉ bị xóa sau khi transaction commit và không còn tham chiếu.
+     */
+    public void release(FileBlob blob) {
+        if (blob == null) {
+            return;
+        }
+        fileBlobRepository.decrementRefCount(blob.getBlobId());
+        dedupStats = null;
+
+        Long blobId = blob.getBlobId();
+        String sha256 = blob.getSha256();
+        String storagePath = blob.getStoragePath();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    purgeIfUnreferenced(blobId, sha256, storagePath);
+                }
+            });
+        } else {
+            purgeIfUnreferenced(blobId, sha256, storagePath);
+        }
+    }
+
+    /**
+     * Dung lượng tiết kiệm nhờ dedup trên toàn hệ thống (cache ngắn hạn)
+     */
+    public DedupStats getDedupStats() {
+        DedupStats current = dedupStats;
+        if (current == null || System.currentTimeMillis() - current.computedAt() > DEDUP_STATS_TTL_MS) {
+            List<Object[]> rows = fileBlobRepository.sumLogicalAndPhysicalBytes();
+            Object[] row = rows.isEmpty() ? new Object[] { 0L, 0L } : rows.get(0);
+            long logical = row[0] != null ? ((Number) row[0]).longValue() : 0L;
+            long physical = row[1] != null ? ((Number) row[1]).longValue() : 0L;
+            current = new DedupStats(logical, physical, System.currentTimeMillis());
+            dedupStats = current;
+        }
+        return current;
+    }
+
+    /**
+     * Đối soát ref_count với bảng files và dọn blob mồ côi
+     */
+    @Scheduled(cron = "${storage.blob.gc-cron:0 45 2 * * *}")
+    public void collectGarbage() {
+        Integer fixed = requiresNew.execute(status -> fileBlobRepository.reconcileRefCounts());
+        if (fixed != null && fixed > 0) {
+            log.warn("Blob store: corrected ref_count of {} blob(s)", fixed);
+        }
+
+        LocalDateTime before = LocalDateTime.now().minusMinutes(orphanGraceMinutes);
+        int purged = 0;
+        for (FileBlob blob : fileBlobRepository.findUnreferencedBefore(before)) {
+            if (purgeIfUnreferenced(blob.getBlobId(), blob.getSha256(), blob.getStoragePath())) {
+                purged++;
+            }
+        }
+        if (purged > 0) {
+            log.info("Blob store: purged {} unreferenced blob(s)", purged);
+        }
+        dedupStats = null;
+    }
+
+    private boolean purgeIfUnreferenced(Long blobId, String sha256, String storagePath) {
+        synchronized (lockFor(sha256)) {
+            Integer deleted = requiresNew.execute(status -> fileBlobRepository.deleteIfUnreferenced(blobId));
+            if (deleted == null || deleted == 0) {
+                return false;
+            }
+            try {
+                Files.deleteIfExists(Paths.get(storagePath));
+            } catch (IOException ex) {
+                log.warn("Không thể xóa blob {} tại {}: {}", sha256, storagePath, ex.getMessage());
+            }
+            log.debug("Purged blob {}", sha256);
+            return true;
+        }
+    }
+
+    /**
+     * Dòng blob mới nằm trong transaction của upload: nếu rollback thì dòng biến mất,
+     * file vật lý vừa ghi được xóa (trừ khi instance khác đã tạo lại dòng cho cùng digest)
+     */
+    private void discardOnRollback(String sha256, Path target) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    deleteIfNoRow(sha256, target);
+                }
+            }
+        });
+    }
+
+    private void deleteIfNoRow(String sha256, Path target) {
+        synchronized (lockFor(sha256)) {
+            Boolean exists = requiresNew.execute(status -> fileBlobRepository.existsBySha256(sha256));
+            if (Boolean.TRUE.equals(exists)) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(target);
+                log.debug("Discarded blob {} after rollback", sha256);
+            } catch (IOException ex) {
+                log.warn("Không thể xóa blob {} tại {}: {}", sha256, target, ex.getMessage());
+            }
+        }
+    }
+
+    private void moveIntoPlace(Path temp, Path target) throws IOException {
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path pathFor(String sha256) {
+        return blobRoot.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    private Object lockFor(String sha256) {
+        return locks[Math.floorMod(sha256.hashCode(), LOCK_STRIPES)];
+    }
+
+    private void initialize() throws IOException {
+        if (blobRoot == null) {
+            Path root = Paths.get(uploadDir).toAbsolutePath().normalize();
+            Path tmp = root.resolve("tmp");
+            Files.createDirectories(tmp);
+            Path blobs = root.resolve("blobs");
+            Files.createDirectories(blobs);
+            tempRoot = tmp;
+            blobRoot = blobs;
+        }
+    }
+
+    public record DedupStats(long logicalBytes, long physicalBytes, long computedAt) {
+        public long savedBytes() {
+            return Math.max(0, logicalBytes - physicalBytes);
+        }
+    }
+}
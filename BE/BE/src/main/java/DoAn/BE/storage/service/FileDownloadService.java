@@ -0,0 +1,209 @@
+package DoAn.BE.storage.service;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import DoAn.BE.storage.dto.FileDownloadInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ghi nội dung file ra response:
+ * - Conditional GET (If-None-Match / If-Modified-Since) trả 304 không kèm body
+ * - Range một đoạn (bytes=a-b) trả 206, có hỗ trợ If-Range; nhiều đoạn thì trả cả file (200)
+ * - Body: nếu connector Tomcat hỗ trợ sendfile thì giao file cho Tomcat gửi thẳng từ kernel (zero-copy).
+ *   Ngược lại (HTTPS qua JSSE, file nhỏ, container khác) thì copy qua buffer vào output stream của response
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileDownloadService {
+
+    // Request attribute của Tomcat (xem DefaultServlet): có support thì set filename/start/end thay vì ghi body
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // Dưới ngưỡng này copy qua buffer nhanh hơn (cùng ngưỡng mặc định sendfileSize của DefaultServlet)
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @return true nếu đây là một lượt tải mới (GET trả 200, hoặc 206 bắt đầu từ byte 0);
+     *         304, 416, HEAD và các đoạn tiếp theo của cùng lượt tải trả false
+     */
+    public boolean write(FileDownloadInfo info, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long length = info.getContentLength();
+
+        // 304 nếu client đã có bản hiện tại (checkNotModified tự set status và ETag/Last-Modified)
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (webRequest.checkNotModified(info.getEtag(), info.getLastModified())) {
+            record("304", 0);
+            return false;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, info.getEtag());
+        if (info.getLastModified() > 0) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, info.getLastModified());
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        HttpRange range = resolveRange(request, info);
+        long start = 0;
+        long end = length - 1;
+        if (range != null) {
+            if (length == 0 || !isSatisfiable(range, length)) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                record("416", 0);
+                return false;
+            }
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        long count = length == 0 ? 0 : end - start + 1;
+        response.setContentType(resolveContentType(info.getMimeType()));
+        response.setContentLengthLong(count);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(info.getOriginalFilename(), StandardCharsets.UTF_8)
+                .build()
+                .toString());
+
+        String status = range != null ? "206" : "200";
+        if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+            record(status, 0);
+            return false;
+        }
+        if (count > 0 && useSendfile(request, count)) {
+            // Tomcat bỏ qua nén response khi dùng sendfile, Content-Length ở trên giữ nguyên
+            request.setAttribute(SENDFILE_FILENAME, Paths.get(info.getPath()).toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            record(status, count);
+        } else if (count > 0) {
+            // Không để server.compression gzip file tải về: sẽ làm sai Content-Length/Content-Range
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "identity");
+            record(status, copy(info, start, count, response));
+        } else {
+            record(status, 0);
+        }
+        return start == 0;
+    }
+
+    private boolean useSendfile(HttpServletRequest request, long count) {
+        return count >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT));
+    }
+
+    // Copy có buffer: Channels.newChannel bọc output stream nên transferTo vẫn đi qua một byte[] trung gian
+    private long copy(FileDownloadInfo info, long start, long count, HttpServletResponse response)
+            throws IOException {
+        // Không đóng channel ra: đóng sẽ đóng luôn output stream của response (container tự quản lý)
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        long position = start;
+        long remaining = count;
+        try (FileChannel in = FileChannel.open(Paths.get(info.getPath()), StandardOpenOption.READ)) {
+            while (remaining > 0) {
+                long written = in.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    // File bị cắt ngắn trong lúc tải
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+        } catch (IOException ex) {
+            // Client ngắt kết nối giữa chừng (thường gặp với trình phát video) - không phải lỗi server
+            log.debug("Download of file {} aborted after {} bytes: {}",
+                    info.getFileId(), count - remaining, ex.getMessage());
+            return count - remaining;
+        }
+        return count;
+    }
+
+    // Chỉ phục vụ một đoạn; If-Range không khớp validator hiện tại thì trả cả file
+    private HttpRange resolveRange(HttpServletRequest request, FileDownloadInfo info) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (!StringUtils.hasText(header)) {
+            return null;
+        }
+        if (!ifRangeMatches(request, info)) {
+            return null;
+        }
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException ex) {
+            // Range sai cú pháp bị bỏ qua (RFC 9110)
+            return null;
+        }
+        return ranges.size() == 1 ? ranges.get(0) : null;
+    }
+
+    private boolean ifRangeMatches(HttpServletRequest request, FileDownloadInfo info) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (!StringUtils.hasText(ifRange)) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range chỉ chấp nhận so sánh strong ETag
+            return !info.getEtag().startsWith("W/") && ifRange.equals(info.getEtag());
+        }
+        try {
+            long since = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return info.getLastModified() > 0 && info.getLastModified() / 1000 <= since / 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private boolean isSatisfiable(HttpRange range, long length) {
+        try {
+            return range.getRangeStart(length) < length;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private String resolveContentType(String mimeType) {
+        if (!StringUtils.hasText(mimeType)) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        try {
+            return MediaType.parseMediaType(mimeType).toString();
+        } catch (IllegalArgumentException ex) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+    }
+
+    private void record(String status, long bytes) {
+        meterRegistry.counter("storage.download", "status", status).increment();
+        if (bytes > 0) {
+            meterRegistry.counter("storage.download.bytes").increment(bytes);
+        }
+    }
+}
@@ -3,10 +3,13 @@ package DoAn.BE.storage.service;
 import DoAn.BE.common.exception.*;
 import DoAn.BE.project.repository.ProjectMemberRepository;
 import DoAn.BE.storage.dto.FileDTO;
+import DoAn.BE.storage.dto.FileDownloadInfo;
 import DoAn.BE.storage.dto.FileUploadResponse;
 import DoAn.BE.storage.dto.StorageStatsDTO;
 import DoAn.BE.storage.entity.File;
+import DoAn.BE.storage.entity.FileBlob;
 import DoAn.BE.storage.entity.Folder;
+import DoAn.BE.storage.entity.StorageUsage;
 import DoAn.BE.storage.repository.FileRepository;
 import DoAn.BE.storage.repository.FolderRepository;
 import DoAn.BE.user.entity.User;
@@ -19,19 +22,17 @@ import DoAn.BE.audit.entity.AuditLog;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -50,9 +51,8 @@ public class FileStorageService {
     private final StorageProjectFileUploadListener projectFileUploadListener;
     private final FileValidator fileValidator;
     private final AuditLogService auditLogService;
-
-    @Value("${file.upload-dir:./uploads}")
-    private String uploadDir;
+    private final StorageUsageService storageUsageService;
+    private final BlobStoreService blobStoreService;
 
     @Value("${app.storage.user-quota-gb:5}")
     private Long userQuotaGB;
@@ -60,8 +60,6 @@ public class FileStorageService {
     @Value("${app.storage.admin-quota-gb:10}")
     private Long adminQuotaGB;
 
-    private Path fileStorageLocation;
-
     @Transactional
     public FileUploadResponse uploadFile(MultipartFile file, Long folderId, Long userId, String ipAddress,
             String userAgent) {
@@ -74,9 +72,6 @@ public class FileStorageService {
 
         String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
 
-        // Check quota
-        checkStorageQuota(userId, file.getSize());
-
         // Validate folder if provided
         Folder folder = null;
         if (folderId != null) {
@@ -89,35 +84,15 @@ public class FileStorageService {
             }
         }
 
+        // Check quota và ghi nhận dung lượng vào ledger (nguyên tử, trước khi ghi bảng files)
+        Long projectId = folder != null && folder.getProject() != null ? folder.getProject().getProjectId() : null;
+        checkStorageQuota(user, file.getSize(), file.getContentType(), projectId);
+
         try {
-            // Initialize storage location
-            initializeStorage();
-
-            // Generate unique filename
-            String fileExtension = getFileExtension(originalFilename);
-            String storedFilename = UUID.randomUUID().toString() + (fileExtension.isEmpty() ? "" : "." + fileExtension);
-
-            // Determine storage path
-            Path targetLocation = fileStorageLocation.resolve(storedFilename);
-
-            // Copy file to target location
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-
-            // Save file metadata to database
-            File fileEntity = new File();
-            fileEntity.setFilename(storedFilename);
-            fileEntity.setOriginalFilename(originalFilename);
-            fileEntity.setFilePath(targetLocation.toString());
-            fileEntity.setFileSize(file.getSize());
-            fileEntity.setMimeType(file.getContentType());
-            fileEntity.setFolder(folder);
-            fileEntity.setOwner(user);
+            File fileEntity = saveFileContent(file, originalFilename, folder, user);
             fileEntity.setUploadIp(ipAddress);
             fileEntity.setUploadUserAgent(userAgent);
-            fileEntity.setVersion(1);
-            fileEntity.setIsDeleted(false);
-
-            fileEntity = fileRepository.save(fileEntity);
+            String storedFilename = fileEntity.getFilename();
 
             // Gửi notification cho user về file upload thành công
             log.info("File uploaded successfully: {} by user {}", originalFilename, userId);
@@ -147,8 +122,52 @@ public class FileStorageService {
         }
     }
 
+    /**
+     * Lưu file đính kèm (chat) vào storage của người gửi: tính quota, lưu nội dung qua blob store
+     */
+    @Transactional
+    public File storeAttachment(MultipartFile file, User owner) {
+        String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
+        checkStorageQuota(owner, file.getSize(), file.getContentType(), null);
+        try {
+            File fileEntity = saveFileContent(file, originalFilename, null, owner);
+            log.info("Attachment stored: {} by user {}", originalFilename, owner.getUserId());
+            return fileEntity;
+        } catch (IOException ex) {
+            throw new FileStorageException("Không thể lưu file: " + originalFilename, ex);
+        }
+    }
+
+    /**
+     * Lưu nội dung qua blob store (nội dung trùng chỉ lưu một lần) và tạo bản ghi File
+     */
+    private File saveFileContent(MultipartFile file, String originalFilename, Folder folder, User owner)
+            throws IOException {
+        FileBlob blob;
+        try (java.io.InputStream in = file.getInputStream()) {
+            blob = blobStoreService.store(in);
+        }
+
+        // Tên hiển thị/metadata riêng cho mỗi File, nội dung dùng chung theo blob
+        String fileExtension = getFileExtension(originalFilename);
+        String storedFilename = UUID.randomUUID().toString() + (fileExtension.isEmpty() ? "" : "." + fileExtension);
+
+        File fileEntity = new File();
+        fileEntity.setFilename(storedFilename);
+        fileEntity.setOriginalFilename(originalFilename);
+        fileEntity.setFilePath(blob.getStoragePath());
+        fileEntity.setBlob(blob);
+        fileEntity.setFileSize(file.getSize());
+        fileEntity.setMimeType(file.getContentType());
+        fileEntity.setFolder(folder);
+        fileEntity.setOwner(owner);
+        fileEntity.setVersion(1);
+        fileEntity.setIsDeleted(false);
+        return fileRepository.save(fileEntity);
+    }
+
     @Transactional(readOnly = true)
-    public Resource downloadFile(Long fileId, Long userId) {
+    public FileDownloadInfo prepareDownload(Long fileId, Long userId) {
         File file = fileRepository.findById(fileId)
                 .orElseThrow(() -> new StorageFileNotFoundException("Không tìm thấy file"));
 
@@ -174,34 +193,50 @@ public class FileStorageService {
             throw new StorageFileNotFoundException("File đã bị xóa");
         }
 
+        Path filePath = Paths.get(file.getFilePath()).normalize();
+        long contentLength;
         try {
-            Path filePath = Paths.get(file.getFilePath()).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (resource.exists() && resource.isReadable()) {
-                // Log successful file download
-                auditLogService.logAction(
-                        user,
-                        "DOWNLOAD_FILE",
-                        "FILE",
-                        fileId,
-                        null,
-                        file.getOriginalFilename(),
-                        AuditLog.Severity.INFO,
-                        null,
-                        null);
-
-                log.info("User {} downloaded file: {} ({} bytes)",
-                        user.getUsername(), file.getOriginalFilename(), file.getFileSize());
-
-                return resource;
-            } else {
+            if (!Files.isReadable(filePath)) {
                 throw new StorageFileNotFoundException(
                         "File không tồn tại hoặc không thể đọc: " + file.getOriginalFilename());
             }
-        } catch (MalformedURLException ex) {
+            contentLength = Files.size(filePath);
+        } catch (IOException ex) {
             throw new StorageFileNotFoundException("File không tồn tại: " + file.getOriginalFilename());
         }
+
+        // ETag: file lưu qua blob store dùng SHA-256 của nội dung (strong),
+        // file cũ dùng id + kích thước + thời điểm sửa (weak)
+        LocalDateTime modifiedAt = file.getUpdatedAt() != null ? file.getUpdatedAt() : file.getCreatedAt();
+        long lastModified = modifiedAt != null
+                ? modifiedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : 0L;
+        String etag = file.getBlob() != null
+                ? "\"" + file.getBlob().getSha256() + "\""
+                : "W/\"" + fileId + "-" + contentLength + "-" + lastModified + "\"";
+
+        return new FileDownloadInfo(fileId, filePath.toString(), contentLength,
+                file.getMimeType(), file.getOriginalFilename(), etag, lastModified);
+    }
+
+    /**
+     * Audit một lượt tải thành công. Controller chỉ gọi sau khi FileDownloadService xác định đây là lượt tải mới
+     * (không tính 304, HEAD hay từng đoạn Range tiếp theo)
+     */
+    public void recordDownload(FileDownloadInfo info, User user) {
+        auditLogService.logAction(
+                user,
+                "DOWNLOAD_FILE",
+                "FILE",
+                info.getFileId(),
+                null,
+                info.getOriginalFilename(),
+                AuditLog.Severity.INFO,
+                null,
+                null);
+
+        log.info("User {} downloaded file: {} ({} bytes)",
+                user.getUsername(), info.getOriginalFilename(), info.getContentLength());
     }
 
     @Transactional(readOnly = true)
@@ -367,6 +402,7 @@ public class FileStorageService {
             throw new ForbiddenException("Bạn không có quyền xóa file này");
         }
 
+        storageUsageService.recordSoftDelete(file);
         file.setIsDeleted(true);
         fileRepository.save(file);
     }
@@ -381,16 +417,22 @@ public class FileStorageService {
             throw new ForbiddenException("Bạn không có quyền xóa file này");
         }
 
-        try {
-            // Delete physical file
-            Path filePath = Paths.get(file.getFilePath());
-            Files.deleteIfExists(filePath);
-
-            // Delete from database
-            fileRepository.delete(file);
-        } catch (IOException ex) {
-            throw new FileStorageException("Không thể xóa file vật lý", ex);
+        storageUsageService.recordPermanentDelete(file);
+        if (file.getBlob() != null) {
+            // Nội dung dùng chung: chỉ xóa file vật lý khi tham chiếu cuối cùng bị xóa (sau commit)
+            blobStoreService.release(file.getBlob());
+        } else {
+            try {
+                // File cũ lưu riêng (trước khi có blob store)
+                Path filePath = Paths.get(file.getFilePath());
+                Files.deleteIfExists(filePath);
+            } catch (IOException ex) {
+                throw new FileStorageException("Không thể xóa file vật lý", ex);
+            }
         }
+
+        // Delete from database
+        fileRepository.delete(file);
     }
 
     @Transactional
@@ -420,6 +462,7 @@ public class FileStorageService {
             throw new ForbiddenException("Bạn không có quyền khôi phục file này");
         }
 
+        storageUsageService.recordRestore(file);
         file.setIsDeleted(false);
         fileRepository.save(file);
     }
@@ -429,57 +472,15 @@ public class FileStorageService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new EntityNotFoundException("Không tìm thấy người dùng"));
 
-        // Get ALL accessible folders (owned + project)
-        List<Folder> ownedFolders = folderRepository.findByOwner_UserId(userId);
-
-        // Get project folders where user is a member
-        List<Long> userProjectIds = projectMemberRepository.findByUser_UserId(userId)
-                .stream()
-                .map(pm -> pm.getProject().getProjectId())
-                .toList();
-
-        List<Folder> projectFolders = userProjectIds.isEmpty()
-                ? List.of()
-                : userProjectIds.stream()
-                        .flatMap(projectId -> folderRepository.findByProject_ProjectId(projectId).stream())
-                        .filter(f -> !ownedFolders.contains(f)) // Avoid duplicates
-                        .toList();
-
-        // Combine all accessible folders
-        List<Folder> allFolders = new java.util.ArrayList<>(ownedFolders);
-        allFolders.addAll(projectFolders);
-
-        // Get ALL accessible files (owned + in accessible folders)
-        List<File> ownedFiles = fileRepository.findByOwner_UserId(userId);
-
-        // Get files from accessible project folders
-        List<File> projectFiles = projectFolders.stream()
-                .flatMap(folder -> fileRepository.findByFolder_FolderId(folder.getFolderId()).stream())
-                .filter(f -> !ownedFiles.contains(f)) // Avoid duplicates
-                .filter(f -> !f.getIsDeleted())
-                .toList();
-
-        // Combine all accessible files
-        List<File> allFiles = new java.util.ArrayList<>(ownedFiles);
-        allFiles.addAll(projectFiles);
-
-        // Calculate stats
-        long totalFiles = allFiles.stream().filter(f -> !f.getIsDeleted()).count();
-        long totalFolders = allFolders.size();
-        long totalSize = allFiles.stream()
-                .filter(f -> !f.getIsDeleted())
-                .mapToLong(File::getFileSize)
-                .sum();
-
-        // Count file types
-        long fileTypes = allFiles.stream()
-                .filter(f -> !f.getIsDeleted())
-                .map(f -> f.getMimeType() != null ? f.getMimeType().split("/")[0] : "unknown")
-                .distinct()
-                .count();
+        // Đọc từ storage ledger (O(1)), cùng phạm vi với quota: file thuộc sở hữu của user
+        StorageUsage usage = storageUsageService.getUserUsage(userId);
+        long totalFiles = usage.getFileCount();
+        long totalFolders = folderRepository.countByOwner_UserId(userId);
+        long totalSize = usage.getUsedBytes();
+        long fileTypes = usage.getFileTypeCount();
 
         // Determine quota based on role
-        long quotaBytes = (user.getRole().name().equals("ADMIN") ? adminQuotaGB : userQuotaGB) * 1024 * 1024 * 1024;
+        long quotaBytes = getQuotaBytes(user);
         long remainingQuota = quotaBytes - totalSize;
         double usagePercentage = (double) totalSize / quotaBytes * 100;
 
@@ -495,32 +496,48 @@ public class FileStorageService {
         stats.setUsagePercentage(Math.round(usagePercentage * 100.0) / 100.0);
         stats.setFileTypes(fileTypes);
 
+        // Dung lượng tiết kiệm nhờ lưu trùng nội dung một lần (toàn hệ thống)
+        BlobStoreService.DedupStats dedup = blobStoreService.getDedupStats();
+        stats.setDedupSavedBytes(dedup.savedBytes());
+        stats.setDedupSavedFormatted(formatSize(dedup.savedBytes()));
+
         return stats;
     }
 
-    // Helper methods
-    private void initializeStorage() throws IOException {
-        if (fileStorageLocation == null) {
-            fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
-            Files.createDirectories(fileStorageLocation);
+    @Transactional(readOnly = true)
+    public StorageStatsDTO getProjectStorageStats(Long projectId, Long userId) {
+        if (projectMemberRepository.findByProject_ProjectIdAndUser_UserId(projectId, userId).isEmpty()) {
+            throw new ProjectAccessDeniedException("Bạn không có quyền truy cập dự án này");
         }
+
+        // Dung lượng của file trong thư mục dự án, đọc từ storage ledger (dự án không có quota riêng)
+        StorageUsage usage = storageUsageService.getProjectUsage(projectId);
+
+        StorageStatsDTO stats = new StorageStatsDTO();
+        stats.setTotalFiles(usage.getFileCount());
+        stats.setTotalFolders(folderRepository.countByProject_ProjectId(projectId));
+        stats.setTotalSize(usage.getUsedBytes());
+        stats.setTotalSizeFormatted(formatSize(usage.getUsedBytes()));
+        stats.setFileTypes(usage.getFileTypeCount());
+        return stats;
     }
 
-    private void checkStorageQuota(Long userId, long fileSize) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new EntityNotFoundException("Không tìm thấy người dùng"));
+    // Helper methods
+    private long getQuotaBytes(User user) {
+        return (user.getRole().name().equals("ADMIN") ? adminQuotaGB : userQuotaGB) * 1024 * 1024 * 1024;
+    }
 
-        List<File> userFiles = fileRepository.findByOwner_UserId(userId);
-        long currentUsage = userFiles.stream()
-                .filter(f -> !f.getIsDeleted())
-                .mapToLong(File::getFileSize)
-                .sum();
+    private void checkStorageQuota(User user, long fileSize, String mimeType, Long projectId) {
+        Long userId = user.getUserId();
+        long quotaBytes = getQuotaBytes(user);
 
-        long quotaBytes = (user.getRole().name().equals("ADMIN") ? adminQuotaGB : userQuotaGB) * 1024 * 1024 * 1024;
-        long newUsage = currentUsage + fileSize;
+        // Kiểm tra và cộng dung lượng trong một câu UPDATE có điều kiện (không race khi upload song song)
+        boolean recorded = storageUsageService.tryRecordUpload(userId, projectId, fileSize, mimeType, quotaBytes);
+        long currentUsage = storageUsageService.getUserUsage(userId).getUsedBytes();
+        long newUsage = recorded ? currentUsage : currentUsage + fileSize;
 
         // Kiểm tra vượt quota
-        if (newUsage > quotaBytes) {
+        if (!recorded) {
             // Gửi notification khi hết quota
             storageNotificationService.createQuotaExceededNotification(userId);
             log.warn("User {} exceeded storage quota: {} / {}", userId, formatSize(newUsage), formatSize(quotaBytes));
@@ -612,7 +629,7 @@ public class FileStorageService {
         return false;
     }
 
-    private FileDTO convertToDTO(File file) {
+    FileDTO convertToDTO(File file) {
         FileDTO dto = new FileDTO();
         dto.setFileId(file.getFileId());
         dto.setFilename(file.getFilename());
@@ -15,6 +15,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -28,6 +29,8 @@ public class FolderService {
     private final UserRepository userRepository;
     private final ProjectRepository projectRepository;
     private final ProjectMemberRepository projectMemberRepository;
+    private final StorageUsageService storageUsageService;
+    private final BlobStoreService blobStoreService;
 
     @Transactional
     public FolderDTO createFolder(CreateFolderRequest request, Long userId) {
@@ -244,9 +247,28 @@ public class FolderService {
             throw new ForbiddenException("Bạn không có quyền xóa thư mục này");
         }
 
+        // File trong cả cây thư mục bị xóa theo cascade: trừ dung lượng khỏi storage ledger và bỏ tham chiếu blob trước
+        List<DoAn.BE.storage.entity.File> files = new ArrayList<>();
+        collectFiles(folder, files);
+        if (!files.isEmpty()) {
+            storageUsageService.recordPermanentDelete(files);
+            files.forEach(file -> blobStoreService.release(file.getBlob()));
+        }
+
         folderRepository.delete(folder);
     }
 
+    private void collectFiles(Folder folder, List<DoAn.BE.storage.entity.File> files) {
+        if (folder.getFiles() != null) {
+            files.addAll(folder.getFiles());
+        }
+        if (folder.getSubFolders() != null) {
+            for (Folder subFolder : folder.getSubFolders()) {
+                collectFiles(subFolder, files);
+            }
+        }
+    }
+
     // Helper methods
     private FolderDTO convertToDTO(Folder folder) {
         FolderDTO dto = new FolderDTO();
@@ -1,19 +1,22 @@
 package DoAn.BE.storage.service;
 
+import DoAn.BE.storage.dto.FileDTO;
 import DoAn.BE.storage.entity.File;
 import DoAn.BE.storage.entity.Folder;
+import DoAn.BE.storage.entity.StorageUsage;
 import DoAn.BE.storage.repository.FileRepository;
-import DoAn.BE.storage.repository.FolderRepository;
-import DoAn.BE.user.entity.User;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Service cung cấp tính năng nâng cao cho Storage
@@ -27,84 +30,80 @@ import java.util.stream.Collectors;
 public class StorageAdvancedService {
     
     private final FileRepository fileRepository;
-    private final FolderRepository folderRepository;
+    private final StorageUsageService storageUsageService;
+    private final FileStorageService fileStorageService;
+    
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final long RECENT_DAYS = 30;
+    
+    /**
+     * Điền search_name cho dữ liệu cũ (một lần, các lần khởi động sau không còn dòng nào)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillSearchNames() {
+        int updated = fileRepository.backfillSearchNames();
+        if (updated > 0) {
+            log.info("Backfilled search_name for {} files", updated);
+        }
+    }
     
     /**
      * Lấy danh sách files được share với user
-     * (Đơn giản: files trong SHARED folders mà user có quyền truy cập)
+     * (Đơn giản: files trong SHARED folders do người khác sở hữu)
      */
     @Transactional(readOnly = true)
-    public List<File> getSharedFiles(Long userId) {
-        log.info("Getting shared files for user {}", userId);
+    public Page<FileDTO> getSharedFiles(Long userId, int page, int size) {
+        Page<File> files = fileRepository.findInFolderTypeNotOwnedBy(
+            Folder.FolderType.SHARED, userId, pageRequest(page, size));
         
-        // Get all SHARED folders
-        List<Folder> sharedFolders = folderRepository.findAll().stream()
-            .filter(f -> f.getFolderType() == Folder.FolderType.SHARED)
-            .collect(Collectors.toList());
-        
-        List<File> sharedFiles = new ArrayList<>();
-        for (Folder folder : sharedFolders) {
-            List<File> folderFiles = fileRepository.findByFolder(folder);
-            // Exclude files owned by current user
-            sharedFiles.addAll(folderFiles.stream()
-                .filter(f -> f.getOwner() != null && !f.getOwner().getUserId().equals(userId))
-                .filter(f -> !f.getIsDeleted())
-                .collect(Collectors.toList()));
-        }
-        
-        log.info("Found {} shared files for user {}", sharedFiles.size(), userId);
-        return sharedFiles;
+        log.debug("Found {} shared files for user {}", files.getTotalElements(), userId);
+        return files.map(fileStorageService::convertToDTO);
     }
     
     /**
-     * Lấy recent files của user (30 ngày gần nhất)
+     * Lấy recent files của user (30 ngày gần nhất, mới nhất trước)
      */
     @Transactional(readOnly = true)
-    public List<File> getRecentFiles(Long userId, int limit) {
-        log.info("Getting recent {} files for user {}", limit, userId);
-        
-        // Get all files of user
-        List<File> userFiles = fileRepository.findByOwner_UserId(userId);
+    public Page<FileDTO> getRecentFiles(Long userId, int page, int size) {
+        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(RECENT_DAYS);
+        Page<File> files = fileRepository.findByOwner_UserIdAndIsDeletedFalseAndCreatedAtAfter(
+            userId, thirtyDaysAgo, pageRequest(page, size));
         
-        // Filter last 30 days and sort by createdAt desc
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-        List<File> recentFiles = userFiles.stream()
-            .filter(f -> !f.getIsDeleted())
-            .filter(f -> f.getCreatedAt() != null && f.getCreatedAt().isAfter(thirtyDaysAgo))
-            .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-            .limit(limit)
-            .collect(Collectors.toList());
-        
-        log.info("Found {} recent files for user {}", recentFiles.size(), userId);
-        return recentFiles;
+        log.debug("Found {} recent files for user {}", files.getTotalElements(), userId);
+        return files.map(fileStorageService::convertToDTO);
     }
     
     /**
-     * Search files by filename
+     * Search files by filename (không phân biệt hoa thường)
+     * prefix = true: tên bắt đầu bằng keyword (seek trên index), ngược lại: tên chứa keyword
      */
     @Transactional(readOnly = true)
-    public List<File> searchFiles(Long userId, String keyword) {
-        log.info("Searching files for user {} with keyword: {}", userId, keyword);
-        
-        if (keyword == null || keyword.trim().isEmpty()) {
-            return new ArrayList<>();
+    public Page<FileDTO> searchFiles(Long userId, String keyword, boolean prefix, int page, int size) {
+        String normalized = File.normalizeName(keyword);
+        if (normalized == null || normalized.isEmpty()) {
+            return Page.empty(pageRequest(page, size));
         }
         
-        String searchKeyword = keyword.toLowerCase();
+        String escaped = escapeLike(normalized);
+        String pattern = prefix ? escaped + "%" : "%" + escaped + "%";
+        Page<File> files = fileRepository.searchByName(userId, pattern, pageRequest(page, size));
         
-        // Get all files of user
-        List<File> userFiles = fileRepository.findByOwner_UserId(userId);
-        
-        // Search by original filename
-        List<File> results = userFiles.stream()
-            .filter(f -> !f.getIsDeleted())
-            .filter(f -> f.getOriginalFilename() != null && 
-                        f.getOriginalFilename().toLowerCase().contains(searchKeyword))
-            .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-            .collect(Collectors.toList());
-        
-        log.info("Found {} files matching keyword: {}", results.size(), keyword);
-        return results;
+        log.debug("Found {} files matching keyword: {}", files.getTotalElements(), keyword);
+        return files.map(fileStorageService::convertToDTO);
+    }
+    
+    private Pageable pageRequest(int page, int size) {
+        int boundedSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        return PageRequest.of(Math.max(page, 0), boundedSize, Sort.by(Sort.Direction.DESC, "createdAt"));
+    }
+    
+    // Escape ký tự đại diện của LIKE để keyword được so khớp nguyên văn
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_")
+            .replace("[", "\\[");
     }
     
     /**
@@ -114,52 +113,17 @@ public class StorageAdvancedService {
     public FileStatistics getUserFileStatistics(Long userId) {
         log.info("Getting file statistics for user {}", userId);
         
-        List<File> userFiles = fileRepository.findByOwner_UserId(userId);
-        
-        long totalFiles = userFiles.stream()
-            .filter(f -> !f.getIsDeleted())
-            .count();
-        
-        long totalSize = userFiles.stream()
-            .filter(f -> !f.getIsDeleted())
-            .mapToLong(File::getFileSize)
-            .sum();
-        
-        // Count by type
-        long documentsCount = userFiles.stream()
-            .filter(f -> !f.getIsDeleted())
-            .filter(f -> isDocument(f.getMimeType()))
-            .count();
-        
-        long imagesCount = userFiles.stream()
-            .filter(f -> !f.getIsDeleted())
-            .filter(f -> isImage(f.getMimeType()))
-            .count();
-        
-        long videosCount = userFiles.stream()
-            .filter(f -> !f.getIsDeleted())
-            .filter(f -> isVideo(f.getMimeType()))
-            .count();
+        // Đọc từ storage ledger thay vì duyệt toàn bộ file của user
+        StorageUsage usage = storageUsageService.getUserUsage(userId);
+        long totalFiles = usage.getFileCount();
+        long totalSize = usage.getUsedBytes();
+        long documentsCount = usage.getDocumentCount();
+        long imagesCount = usage.getImageCount();
+        long videosCount = usage.getVideoCount();
         
         return new FileStatistics(totalFiles, totalSize, documentsCount, imagesCount, videosCount);
     }
     
-    private boolean isDocument(String mimeType) {
-        if (mimeType == null) return false;
-        return mimeType.contains("pdf") || mimeType.contains("word") || 
-               mimeType.contains("excel") || mimeType.contains("text");
-    }
-    
-    private boolean isImage(String mimeType) {
-        if (mimeType == null) return false;
-        return mimeType.startsWith("image/");
-    }
-    
-    private boolean isVideo(String mimeType) {
-        if (mimeType == null) return false;
-        return mimeType.startsWith("video/");
-    }
-    
     /**
      * Inner class for file statistics
      */
@@ -0,0 +1,325 @@
+package DoAn.BE.storage.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import DoAn.BE.storage.entity.File;
+import DoAn.BE.storage.entity.StorageUsage;
+import DoAn.BE.storage.entity.StorageUsage.Scope;
+import DoAn.BE.storage.repository.FileRepository;
+import DoAn.BE.storage.repository.StorageUsageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Quản lý storage ledger (dung lượng theo user và theo project).
+ * - Mọi thao tác file gọi record* TRƯỚC khi ghi bảng files, trong cùng transaction:
+ *   thứ tự khóa luôn là ledger -> files nên không deadlock với job đối soát
+ * - Dòng ledger chưa có được tạo (seed từ bảng files) trong transaction riêng ở lần dùng đầu tiên
+ * - Job đối soát định kỳ tính lại từ bảng files và sửa các dòng bị lệch
+ */
+@Service
+@Slf4j
+public class StorageUsageService {
+
+    private final StorageUsageRepository storageUsageRepository;
+    private final FileRepository fileRepository;
+    private final TransactionTemplate requiresNew;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Counter driftCounter;
+
+    public StorageUsageService(StorageUsageRepository storageUsageRepository,
+            FileRepository fileRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.storageUsageRepository = storageUsageRepository;
+        this.fileRepository = fileRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.driftCounter = Counter.builder("storage.usage.drift")
+                .description("Số dòng storage ledger bị lệch được sửa khi đối soát")
+                .register(meterRegistry);
+    }
+
+    // ==================== GHI NHẬN ====================
+
+    /**
+     * Ghi nhận file mới upload. Phần của user chỉ được cộng khi không vượt quotaBytes.
+     * @return false nếu vượt quota (không ghi nhận gì)
+     */
+    public boolean tryRecordUpload(Long ownerId, Long projectId, long fileSize, String mimeType, long quotaBytes) {
+        Delta delta = Delta.active(fileSize, mimeType, 1);
+        ensureExists(Scope.USER, ownerId);
+        LocalDateTime now = LocalDateTime.now();
+        int updated = storageUsageRepository.applyDeltaWithinLimit(Scope.USER, ownerId,
+                delta.bytes, delta.files, delta.images, delta.documents, delta.videos,
+                delta.trashBytes, delta.trashFiles, quotaBytes, now);
+        if (updated == 0) {
+            return false;
+        }
+        apply(Scope.PROJECT, projectId, delta);
+        return true;
+    }
+
+    /**
+     * File chuyển vào thùng rác (gọi trước khi set isDeleted = true)
+     */
+    public void recordSoftDelete(File file) {
+        if (Boolean.TRUE.equals(file.getIsDeleted())) {
+            return;
+        }
+        Delta delta = Delta.active(file.getFileSize(), file.getMimeType(), -1)
+                .plus(Delta.trash(file.getFileSize(), 1));
+        applyForFile(file, delta);
+    }
+
+    /**
+     * File được khôi phục khỏi thùng rác (gọi trước khi set isDeleted = false)
+     */
+    public void recordRestore(File file) {
+        if (!Boolean.TRUE.equals(file.getIsDeleted())) {
+            return;
+        }
+        Delta delta = Delta.trash(file.getFileSize(), -1)
+                .plus(Delta.active(file.getFileSize(), file.getMimeType(), 1));
+        applyForFile(file, delta);
+    }
+
+    /**
+     * File bị xóa vĩnh viễn (gọi trước khi xóa khỏi DB)
+     */
+    public void recordPermanentDelete(File file) {
+        applyForFile(file, removal(file));
+    }
+
+    /**
+     * Nhiều file bị xóa cùng lúc (xóa thư mục cascade): gộp theo user/project rồi ghi một lần mỗi dòng
+     */
+    public void recordPermanentDelete(Collection<File> files) {
+        Map<Long, Delta> byOwner = new HashMap<>();
+        Map<Long, Delta> byProject = new HashMap<>();
+        for (File file : files) {
+            Delta delta = removal(file);
+            byOwner.merge(file.getOwner().getUserId(), delta, Delta::plus);
+            Long projectId = projectIdOf(file);
+            if (projectId != null) {
+                byProject.merge(projectId, delta, Delta::plus);
+            }
+        }
+        byOwner.forEach((ownerId, delta) -> apply(Scope.USER, ownerId, delta));
+        byProject.forEach((projectId, delta) -> apply(Scope.PROJECT, projectId, delta));
+    }
+
+    // ==================== ĐỌC ====================
+
+    public StorageUsage getUserUsage(Long userId) {
+        return getUsage(Scope.USER, userId);
+    }
+
+    public StorageUsage getProjectUsage(Long projectId) {
+        return getUsage(Scope.PROJECT, projectId);
+    }
+
+    private StorageUsage getUsage(Scope scope, Long scopeId) {
+        return storageUsageRepository.findByScopeTypeAndScopeId(scope, scopeId)
+                .orElseGet(() -> {
+                    ensureExists(scope, scopeId);
+                    return storageUsageRepository.findByScopeTypeAndScopeId(scope, scopeId)
+                            .orElseThrow();
+                });
+    }
+
+    // ==================== ĐỐI SOÁT ====================
+
+    /**
+     * Tính lại ledger từ bảng files (một query gom nhóm cho mỗi scope), chỉ ghi các dòng bị lệch
+     */
+    @Scheduled(cron = "${storage.usage.reconcile-cron:0 30 2 * * *}")
+    public void reconcile() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        int fixed = reconcileScope(Scope.USER, fileRepository.aggregateUsageByOwner())
+                + reconcileScope(Scope.PROJECT, fileRepository.aggregateUsageByProject());
+        sample.stop(meterRegistry.timer("storage.usage.reconcile"));
+        if (fixed > 0) {
+            log.warn("Storage ledger reconcile fixed {} drifted row(s)", fixed);
+        } else {
+            log.debug("Storage ledger reconcile: no drift");
+        }
+    }
+
+    private int reconcileScope(Scope scope, List<Object[]> aggregates) {
+        Map<Long, Delta> expected = new HashMap<>();
+        for (Object[] row : aggregates) {
+            expected.put(((Number) row[0]).longValue(), Delta.fromAggregate(row));
+        }
+
+        int fixed = 0;
+        for (StorageUsage usage : storageUsageRepository.findByScopeType(scope)) {
+            Delta target = expected.getOrDefault(usage.getScopeId(), Delta.ZERO);
+            if (target.matches(usage)) {
+                continue;
+            }
+            // Có thể chỉ là thao tác đang chạy dở: khóa dòng rồi tính lại đúng scope đó trước khi sửa
+            Boolean corrected = transactionTemplate.execute(status -> {
+                StorageUsage locked = storageUsageRepository.findByIdForUpdate(usage.getUsageId()).orElse(null);
+                if (locked == null) {
+                    return false;
+                }
+                Delta actual = aggregateOne(scope, locked.getScopeId());
+                if (actual.matches(locked)) {
+                    return false;
+                }
+                log.warn("Storage ledger drift {}#{}: {} bytes / {} files -> {} bytes / {} files",
+                        scope, locked.getScopeId(), locked.getUsedBytes(), locked.getFileCount(),
+                        actual.bytes, actual.files);
+                actual.copyTo(locked);
+                locked.setUpdatedAt(LocalDateTime.now());
+                locked.setReconciledAt(LocalDateTime.now());
+                storageUsageRepository.save(locked);
+                return true;
+            });
+            if (Boolean.TRUE.equals(corrected)) {
+                driftCounter.increment();
+                fixed++;
+            }
+        }
+        return fixed;
+    }
+
+    // ==================== HELPER ====================
+
+    private void applyForFile(File file, Delta delta) {
+        apply(Scope.USER, file.getOwner().getUserId(), delta);
+        apply(Scope.PROJECT, projectIdOf(file), delta);
+    }
+
+    private void apply(Scope scope, Long scopeId, Delta delta) {
+        if (scopeId == null) {
+            return;
+        }
+        ensureExists(scope, scopeId);
+        storageUsageRepository.applyDelta(scope, scopeId,
+                delta.bytes, delta.files, delta.images, delta.documents, delta.videos,
+                delta.trashBytes, delta.trashFiles, LocalDateTime.now());
+    }
+
+    /**
+     * Tạo dòng ledger (seed từ bảng files) trong transaction riêng nếu chưa có.
+     * Phải gọi trước khi transaction hiện tại ghi vào bảng files của scope này.
+     */
+    private void ensureExists(Scope scope, Long scopeId) {
+        if (storageUsageRepository.existsByScopeTypeAndScopeId(scope, scopeId)) {
+            return;
+        }
+        try {
+            requiresNew.executeWithoutResult(status -> {
+                if (storageUsageRepository.existsByScopeTypeAndScopeId(scope, scopeId)) {
+                    return;
+                }
+                StorageUsage usage = new StorageUsage();
+                usage.setScopeType(scope);
+                usage.setScopeId(scopeId);
+                aggregateOne(scope, scopeId).copyTo(usage);
+                usage.setUpdatedAt(LocalDateTime.now());
+                storageUsageRepository.save(usage);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Request khác vừa tạo cùng dòng - dùng dòng đó
+            log.debug("Storage ledger {}#{} created concurrently", scope, scopeId);
+        }
+    }
+
+    private Delta aggregateOne(Scope scope, Long scopeId) {
+        List<Object[]> rows = scope == Scope.USER
+                ? fileRepository.aggregateUsageByOwnerId(scopeId)
+                : fileRepository.aggregateUsageByProjectId(scopeId);
+        return rows.isEmpty() ? Delta.ZERO : Delta.fromAggregate(rows.get(0));
+    }
+
+    private Delta removal(File file) {
+        return Boolean.TRUE.equals(file.getIsDeleted())
+                ? Delta.trash(file.getFileSize(), -1)
+                : Delta.active(file.getFileSize(), file.getMimeType(), -1);
+    }
+
+    private Long projectIdOf(File file) {
+        if (file.getFolder() != null && file.getFolder().getProject() != null) {
+            return file.getFolder().getProject().getProjectId();
+        }
+        return null;
+    }
+
+    /**
+     * Lượng thay đổi của một dòng ledger (cũng dùng làm giá trị tuyệt đối khi seed/đối soát)
+     */
+    private record Delta(long bytes, long files, long images, long documents, long videos,
+            long trashBytes, long trashFiles) {
+
+        static final Delta ZERO = new Delta(0, 0, 0, 0, 0, 0, 0);
+
+        // Phân loại giống File.isImage / isDocument / isVideo
+        static Delta active(Long size, String mimeType, int sign) {
+            long bytes = size != null ? size : 0;
+            String mime = mimeType != null ? mimeType : "";
+            boolean document = mime.startsWith("application/pdf")
+                    || mime.startsWith("application/msword")
+                    || mime.startsWith("application/vnd.openxmlformats-officedocument");
+            return new Delta(sign * bytes, sign,
+                    mime.startsWith("image/") ? sign : 0,
+                    document ? sign : 0,
+                    mime.startsWith("video/") ? sign : 0,
+                    0, 0);
+        }
+
+        static Delta trash(Long size, int sign) {
+            return new Delta(0, 0, 0, 0, 0, sign * (size != null ? size : 0), sign);
+        }
+
+        static Delta fromAggregate(Object[] row) {
+            return new Delta(toLong(row[1]), toLong(row[2]), toLong(row[3]), toLong(row[4]),
+                    toLong(row[5]), toLong(row[6]), toLong(row[7]));
+        }
+
+        private static long toLong(Object value) {
+            return value != null ? ((Number) value).longValue() : 0L;
+        }
+
+        Delta plus(Delta other) {
+            return new Delta(bytes + other.bytes, files + other.files, images + other.images,
+                    documents + other.documents, videos + other.videos,
+                    trashBytes + other.trashBytes, trashFiles + other.trashFiles);
+        }
+
+        boolean matches(StorageUsage usage) {
+            return usage.getUsedBytes() == bytes && usage.getFileCount() == files
+                    && usage.getImageCount() == images && usage.getDocumentCount() == documents
+                    && usage.getVideoCount() == videos
+                    && usage.getTrashBytes() == trashBytes && usage.getTrashCount() == trashFiles;
+        }
+
+        void copyTo(StorageUsage usage) {
+            usage.setUsedBytes(bytes);
+            usage.setFileCount(files);
+            usage.setImageCount(images);
+            usage.setDocumentCount(documents);
+            usage.setVideoCount(videos);
+            usage.setTrashBytes(trashBytes);
+            usage.setTrashCount(trashFiles);
+        }
+    }
+}
@@ -5,9 +5,11 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import DoAn.BE.user.entity.User;
 
@@ -49,4 +51,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     // Find inactive users
     List<User> findByIsOnlineTrueAndLastSeenBefore(LocalDateTime cutoffTime);
+
+    // Reset trạng thái online của tất cả user (khởi động lại server)
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.isOnline = false WHERE u.isOnline = true")
+    int resetAllOnlineStatus();
 }
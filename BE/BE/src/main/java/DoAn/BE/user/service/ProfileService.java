@@ -3,9 +3,11 @@ package DoAn.BE.user.service;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import DoAn.BE.auth.service.AuthPrincipalCache;
 import DoAn.BE.common.exception.BadRequestException;
 import DoAn.BE.common.exception.EntityNotFoundException;
 import DoAn.BE.hr.repository.NhanVienRepository;
+import DoAn.BE.hr.service.HRStatsSnapshotService;
 import DoAn.BE.notification.service.AuthNotificationService;
 import DoAn.BE.user.dto.ChangePasswordRequest;
 import DoAn.BE.user.dto.UpdateUserRequest;
@@ -24,13 +26,18 @@ public class ProfileService {
     private final PasswordEncoder passwordEncoder;
     private final AuthNotificationService authNotificationService;
     private final NhanVienRepository nhanVienRepository;
+    private final AuthPrincipalCache principalCache;
+    private final HRStatsSnapshotService hrStatsSnapshotService;
 
     public ProfileService(UserRepository userRepository, PasswordEncoder passwordEncoder,
-            AuthNotificationService authNotificationService, NhanVienRepository nhanVienRepository) {
+            AuthNotificationService authNotificationService, NhanVienRepository nhanVienRepository,
+            AuthPrincipalCache principalCache, HRStatsSnapshotService hrStatsSnapshotService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.authNotificationService = authNotificationService;
         this.nhanVienRepository = nhanVienRepository;
+        this.principalCache = principalCache;
+        this.hrStatsSnapshotService = hrStatsSnapshotService;
     }
 
     public User getCurrentUserProfile(Long userId) {
@@ -52,6 +59,7 @@ public class ProfileService {
         }
 
         User savedUser = userRepository.save(user);
+        principalCache.evictUser(userId);
 
         // Also update NhanVien if exists
         updateNhanVienInfo(userId, request);
@@ -78,6 +86,7 @@ public class ProfileService {
         }
 
         nhanVienRepository.save(nhanVien);
+        hrStatsSnapshotService.markNhanVienChanged();
     }
 
     public void changePassword(Long userId, ChangePasswordRequest request) {
@@ -112,5 +121,6 @@ public class ProfileService {
         User user = getCurrentUserProfile(userId);
         user.setFcmToken(fcmToken);
         userRepository.save(user);
+        principalCache.evictUser(userId);
     }
 }
@@ -8,6 +8,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import DoAn.BE.auth.service.AuthPrincipalCache;
 import DoAn.BE.common.exception.BadRequestException;
 import DoAn.BE.common.exception.DuplicateException;
 import DoAn.BE.common.exception.EntityNotFoundException;
@@ -21,6 +22,7 @@ import DoAn.BE.hr.entity.PhongBan;
 import DoAn.BE.hr.repository.ChucVuRepository;
 import DoAn.BE.hr.repository.NhanVienRepository;
 import DoAn.BE.hr.repository.PhongBanRepository;
+import DoAn.BE.hr.service.HRStatsSnapshotService;
 import DoAn.BE.user.dto.CreateAccountWithEmployeeRequest;
 import DoAn.BE.user.dto.CreateUserRequest;
 import DoAn.BE.user.dto.UpdatePasswordRequest;
@@ -44,11 +46,14 @@ public class UserService {
     private final ChucVuRepository chucVuRepository;
     private final AuthNotificationService authNotificationService;
     private final AuditLogService auditLogService;
+    private final AuthPrincipalCache principalCache;
+    private final HRStatsSnapshotService hrStatsSnapshotService;
 
     public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder,
             NhanVienRepository nhanVienRepository, PhongBanRepository phongBanRepository,
             ChucVuRepository chucVuRepository, AuthNotificationService authNotificationService,
-            AuditLogService auditLogService) {
+            AuditLogService auditLogService, AuthPrincipalCache principalCache,
+            HRStatsSnapshotService hrStatsSnapshotService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.nhanVienRepository = nhanVienRepository;
@@ -56,6 +61,8 @@ public class UserService {
         this.chucVuRepository = chucVuRepository;
         this.authNotificationService = authNotificationService;
         this.auditLogService = auditLogService;
+        this.principalCache = principalCache;
+        this.hrStatsSnapshotService = hrStatsSnapshotService;
     }
 
     public User createUser(CreateUserRequest request) {
@@ -84,6 +91,7 @@ public class UserService {
             employee.setTrangThai(NhanVien.TrangThaiNhanVien.DANG_LAM_VIEC);
             // PhongBan và ChucVu sẽ được update bởi DataSeed sau
             nhanVienRepository.save(employee);
+            hrStatsSnapshotService.markNhanVienChanged();
             log.info("✅ Auto-created employee for user: {}", user.getUsername());
         } catch (Exception e) {
             log.error("❌ Failed to auto-create employee for user {}: {}", user.getUsername(), e.getMessage(), e);
@@ -194,6 +202,7 @@ public class UserService {
         }
 
         User savedUser = userRepository.save(user);
+        principalCache.evictUser(id);
 
         // Audit log nếu có thay đổi quan trọng
         if (!oldRole.equals(savedUser.getRole()) || !oldIsActive.equals(savedUser.getIsActive())) {
@@ -236,6 +245,7 @@ public class UserService {
 
         user.setIsActive(false);
         user = userRepository.save(user);
+        principalCache.evictUser(id);
 
         // Gửi notification
         authNotificationService.createAccountDeactivatedNotification(id, null);
@@ -344,7 +354,9 @@ public class UserService {
             nhanVien.setChucVu(chucVu);
         }
 
-        return nhanVienRepository.save(nhanVien);
+        NhanVien saved = nhanVienRepository.save(nhanVien);
+        hrStatsSnapshotService.markNhanVienChanged();
+        return saved;
     }
 
     /**
@@ -396,7 +408,9 @@ public class UserService {
             }
         }
 
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        principalCache.evictUser(id);
+        return savedUser;
     }
 
     /**
@@ -429,7 +443,9 @@ public class UserService {
 
         User user = getUserById(userId);
         user.setIsActive(!user.getIsActive());
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        principalCache.evictUser(userId);
+        return savedUser;
     }
 
     /**
@@ -453,6 +469,7 @@ public class UserService {
                 null);
 
         userRepository.delete(user);
+        principalCache.evictUser(userId);
         log.warn("⚠️ User {} deleted by Admin {}", user.getUsername(), currentUser.getUsername());
     }
 
@@ -0,0 +1,179 @@
+package DoAn.BE.ai.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import DoAn.BE.ai.config.GeminiConfig;
+import DoAn.BE.ai.entity.AIConversation;
+import DoAn.BE.ai.entity.AIMessage;
+import DoAn.BE.ai.repository.AIConversationRepository;
+import DoAn.BE.ai.repository.AIMessageRepository;
+import DoAn.BE.ai.service.AIConversationHistoryService.HistoryWindow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AIConversationHistoryServiceTest {
+
+    private static final Long CONVERSATION_ID = 10L;
+
+    private AIConversationRepository conversationRepository;
+    private AIMessageRepository messageRepository;
+    private GeminiService geminiService;
+    private AIConversationHistoryService historyService;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(AIConversationRepository.class);
+        messageRepository = mock(AIMessageRepository.class);
+        geminiService = mock(GeminiService.class);
+        GeminiConfig config = new GeminiConfig();
+        ReflectionTestUtils.setField(config, "maxConversationHistory", 4);
+
+        historyService = new AIConversationHistoryService(conversationRepository, messageRepository,
+                geminiService, config, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(historyService, "maxPromptTokens", 100);
+        ReflectionTestUtils.setField(historyService, "conversationTokenBudget", 1000L);
+        ReflectionTestUtils.setField(historyService, "summaryBatch", 10);
+        ReflectionTestUtils.setField(historyService, "summaryMaxChars", 2000);
+    }
+
+    @Test
+    void loadWindow_returnsRecentMessagesOldestFirst() {
+        // Repository trả mới nhất trước
+        when(messageRepository.findWindow(eq(CONVERSATION_ID), eq(0L), any()))
+                .thenReturn(List.of(message(3L, "c"), message(2L, "b"), message(1L, "a")));
+
+        HistoryWindow window = historyService.loadWindow(conversation(), 10);
+
+        assertThat(window.messages().stream().map(AIMessage::getId).toList()).containsExactly(1L, 2L, 3L);
+        assertThat(window.summary()).isNull();
+    }
+
+    @Test
+    void loadWindow_dropsOldestMessagesWhenOverPromptBudget() {
+        // 90 ký tự = 30 token mỗi tin; ngân sách = 100 - 10 - 10 (summary 30 ký tự) = 80 token
+        when(messageRepository.findWindow(eq(CONVERSATION_ID), eq(0L), any()))
+                .thenReturn(List.of(message(3L, "z".repeat(90)), message(2L, "y".repeat(90)),
+                        message(1L, "x".repeat(90))));
+        AIConversation conversation = conversation();
+        conversation.setHistorySummary("s".repeat(30));
+
+        HistoryWindow window = historyService.loadWindow(conversation, 10);
+
+        assertThat(window.messages().stream().map(AIMessage::getId).toList()).containsExactly(2L, 3L);
+        assertThat(window.summary()).isEqualTo("s".repeat(30));
+    }
+
+    @Test
+    void loadWindow_startsAfterSummarizedMessages() {
+        AIConversation conversation = conversation();
+        conversation.setSummarizedUntilMessageId(42L);
+        when(messageRepository.findWindow(eq(CONVERSATION_ID), eq(42L), any())).thenReturn(List.of());
+
+        historyService.loadWindow(conversation, 0);
+
+        verify(messageRepository).findWindow(eq(CONVERSATION_ID), eq(42L), any());
+    }
+
+    @Test
+    void loadWindow_newConversationSkipsQuery() {
+        HistoryWindow window = historyService.loadWindow(new AIConversation(), 0);
+
+        assertThat(window.messages()).isEmpty();
+        verify(messageRepository, never()).findWindow(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void checkBudget_rejectsConversationAtBudget() {
+        AIConversation conversation = conversation();
+        conversation.setTotalTokensUsed(1000L);
+
+        assertThatThrownBy(() -> historyService.checkBudget(conversation))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("1000");
+    }
+
+    @Test
+    void checkBudget_allowsConversationUnderBudget() {
+        AIConversation conversation = conversation();
+        conversation.setTotalTokensUsed(999L);
+
+        historyService.checkBudget(conversation);
+    }
+
+    @Test
+    void checkBudget_zeroMeansUnlimited() {
+        ReflectionTestUtils.setField(historyService, "conversationTokenBudget", 0L);
+        AIConversation conversation = conversation();
+        conversation.setTotalTokensUsed(1_000_000L);
+
+        historyService.checkBudget(conversation);
+    }
+
+    @Test
+    void appendTurn_insertsBothMessagesAndUpdatesConversation() {
+        AIConversation reference = conversation();
+        when(conversationRepository.getReferenceById(CONVERSATION_ID)).thenReturn(reference);
+        AIMessage userMessage = AIMessage.builder().role("user").content("Tóm tắt dự án").build();
+        AIMessage assistantMessage = AIMessage.builder().role("assistant").content("OK").tokensUsed(15).build();
+
+        historyService.appendTurn(CONVERSATION_ID, userMessage, assistantMessage);
+
+        assertThat(userMessage.getConversation()).isSameAs(reference);
+        assertThat(assistantMessage.getConversation()).isSameAs(reference);
+        verify(messageRepository).save(userMessage);
+        verify(messageRepository).save(assistantMessage);
+        verify(conversationRepository).recordTurn(eq(CONVERSATION_ID), eq(15L), any());
+        verify(conversationRepository).setTitleIfMissing(CONVERSATION_ID, "Tóm tắt dự án");
+    }
+
+    @Test
+    void summarizeOlderTurns_summarizesOneBatchAndAdvancesToItsLastMessage() {
+        AIConversation conversation = conversation();
+        conversation.setSummarizedUntilMessageId(5L);
+        when(geminiService.isAvailable()).thenReturn(true);
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(conversation));
+        when(messageRepository.findWindow(eq(CONVERSATION_ID), eq(5L), any()))
+                .thenReturn(List.of(message(100L, "d"), message(99L, "c"), message(98L, "b"), message(97L, "a")));
+        List<AIMessage> batch = new ArrayList<>();
+        for (long id = 6; id < 16; id++) {
+            batch.add(message(id, "cũ " + id));
+        }
+        when(messageRepository.findBetween(eq(CONVERSATION_ID), eq(5L), eq(97L), any())).thenReturn(batch);
+        when(geminiService.simpleChat(any(), any())).thenReturn(" - Đã chốt tiến độ ");
+
+        historyService.summarizeOlderTurns(CONVERSATION_ID);
+
+        ArgumentCaptor<Pageable> page = ArgumentCaptor.forClass(Pageable.class);
+        verify(messageRepository).findBetween(eq(CONVERSATION_ID), eq(5L), eq(97L), page.capture());
+        assertThat(page.getValue().getPageSize()).isEqualTo(10);
+        verify(conversationRepository).updateHistorySummary(CONVERSATION_ID, "- Đã chốt tiến độ", 15L);
+    }
+
+    private static AIConversation conversation() {
+        AIConversation conversation = new AIConversation();
+        conversation.setId(CONVERSATION_ID);
+        conversation.setMessages(new ArrayList<>());
+        return conversation;
+    }
+
+    private static AIMessage message(Long id, String content) {
+        return AIMessage.builder().id(id).role("user").content(content).build();
+    }
+}
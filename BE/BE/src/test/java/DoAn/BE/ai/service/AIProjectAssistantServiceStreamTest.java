@@ -0,0 +1,186 @@
+package DoAn.BE.ai.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import DoAn.BE.ai.config.GeminiConfig;
+import DoAn.BE.ai.dto.AIChatRequest;
+import DoAn.BE.ai.entity.AIConversation;
+import DoAn.BE.ai.entity.AIMessage;
+import DoAn.BE.ai.repository.AIConversationRepository;
+import DoAn.BE.ai.repository.AIMessageRepository;
+import DoAn.BE.common.NoOpTransactionManager;
+import DoAn.BE.project.repository.ProjectRepository;
+import DoAn.BE.user.entity.User;
+import DoAn.BE.user.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AIProjectAssistantServiceStreamTest {
+
+    private static final Long USER_ID = 7L;
+    private static final Long CONVERSATION_ID = 10L;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private volatile boolean holdOpen;
+    private AIMessageRepository messageRepository;
+    private CountDownLatch saves;
+    private AIProjectAssistantService assistantService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::streamFromStub);
+        server.start();
+
+        GeminiConfig config = new GeminiConfig();
+        ReflectionTestUtils.setField(config, "apiKey", "test-key");
+        ReflectionTestUtils.setField(config, "model", "gemini-test");
+        ReflectionTestUtils.setField(config, "maxTokens", 2000);
+        ReflectionTestUtils.setField(config, "temperature", 0.7);
+        ReflectionTestUtils.setField(config, "timeout", 10);
+        ReflectionTestUtils.setField(config, "maxConversationHistory", 10);
+        GeminiService geminiService = new GeminiService(
+                WebClient.builder().baseUrl("http://localhost:" + server.getAddress().getPort()).build(), config);
+
+        AIConversationRepository conversationRepository = mock(AIConversationRepository.class);
+        messageRepository = mock(AIMessageRepository.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        User user = new User();
+        user.setUserId(USER_ID);
+        when(userRepository.findById(USER_ID)).thenReturn(Optional.of(user));
+        when(conversationRepository.save(any())).thenAnswer(invocation -> {
+            AIConversation saved = invocation.getArgument(0);
+            saved.setId(CONVERSATION_ID);
+            return saved;
+        });
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.empty());
+        when(messageRepository.findWindow(anyLong(), anyLong(), any())).thenReturn(List.of());
+        saves = new CountDownLatch(2);
+        when(messageRepository.save(any())).thenAnswer(invocation -> {
+            saves.countDown();
+            return invocation.getArgument(0);
+        });
+
+        AIConversationHistoryService historyService = new AIConversationHistoryService(conversationRepository,
+                messageRepository, geminiService, config, meterRegistry);
+        ReflectionTestUtils.setField(historyService, "maxPromptTokens", 6000);
+        ReflectionTestUtils.setField(historyService, "conversationTokenBudget", 200_000L);
+        ReflectionTestUtils.setField(historyService, "summaryBatch", 10);
+        ReflectionTestUtils.setField(historyService, "summaryMaxChars", 2000);
+
+        assistantService = new AIProjectAssistantService(geminiService, mock(ProjectContextService.class),
+                conversationRepository, messageRepository, historyService, mock(ProjectRepository.class),
+                userRepository, new AIActionParser(), mock(AIActionExecutor.class),
+                new TransactionTemplate(new NoOpTransactionManager()), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void completedStream_emitsStartTokensDone_andPersistsTurn() throws InterruptedException {
+        List<ServerSentEvent<Object>> events = assistantService.chatStream(USER_ID, request())
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(events.stream().map(ServerSentEvent::event).toList())
+                .containsExactly("start", "token", "token", "token", "done");
+        assertThat(events.get(1).data()).isEqualTo(Map.of("text", "Xin "));
+
+        assertThat(saves.await(5, TimeUnit.SECONDS)).isTrue();
+        List<AIMessage> saved = savedMessages();
+        assertThat(saved.get(0).getRole()).isEqualTo("user");
+        assertThat(saved.get(0).getContent()).isEqualTo("Chào AI");
+        assertThat(saved.get(1).getRole()).isEqualTo("assistant");
+        assertThat(saved.get(1).getContent()).isEqualTo("Xin chào bạn");
+        assertThat(saved.get(1).getTokensUsed()).isEqualTo(12);
+    }
+
+    @Test
+    void clientDisconnect_persistsPartialResponseOnce() throws InterruptedException {
+        holdOpen = true;
+
+        List<ServerSentEvent<Object>> events = assistantService.chatStream(USER_ID, request())
+                .take(2)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(events.stream().map(ServerSentEvent::event).toList()).containsExactly("start", "token");
+        assertThat(saves.await(5, TimeUnit.SECONDS)).isTrue();
+        List<AIMessage> saved = savedMessages();
+        assertThat(saved.get(1).getRole()).isEqualTo("assistant");
+        assertThat(saved.get(1).getContent()).isEqualTo("Xin ");
+    }
+
+    private List<AIMessage> savedMessages() {
+        ArgumentCaptor<AIMessage> captor = ArgumentCaptor.forClass(AIMessage.class);
+        verify(messageRepository, times(2)).save(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static AIChatRequest request() {
+        AIChatRequest request = new AIChatRequest();
+        request.setMessage("Chào AI");
+        return request;
+    }
+
+    // Giả lập streamGenerateContent?alt=sse; holdOpen = gửi một chunk rồi treo như model đang sinh tiếp
+    private void streamFromStub(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream body = exchange.getResponseBody()) {
+            writeChunk(body, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"Xin \"}]}}]}");
+            if (holdOpen) {
+                release.await(10, TimeUnit.SECONDS);
+                return;
+            }
+            writeChunk(body, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"chào \"}]}}]}");
+            writeChunk(body, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"bạn\"}]}}],"
+                    + "\"usageMetadata\":{\"totalTokenCount\":12,\"candidatesTokenCount\":3}}");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Client đã ngắt kết nối
+        }
+    }
+
+    private static void writeChunk(OutputStream body, String json) throws IOException {
+        body.write(("data: " + json + "\n\n").getBytes(StandardCharsets.UTF_8));
+        body.flush();
+    }
+}
@@ -0,0 +1,84 @@
+package DoAn.BE.auth.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import DoAn.BE.auth.service.AuthPrincipalCache;
+import DoAn.BE.auth.service.JwtService;
+import DoAn.BE.auth.service.SessionService;
+import DoAn.BE.user.entity.User;
+import DoAn.BE.user.service.UserService;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String TOKEN = "admin-token";
+
+    private JwtAuthenticationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        AuthPrincipalCache principalCache = new AuthPrincipalCache(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(principalCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(principalCache, "maxSize", 100);
+        principalCache.put(TOKEN, mock(Claims.class), admin(), principalCache.currentGeneration());
+
+        filter = new JwtAuthenticationFilter(mock(JwtService.class), mock(UserService.class),
+                mock(SessionService.class), principalCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void adminTokenOnActuatorMetrics_isAuthenticatedAsAdmin() throws Exception {
+        Authentication authentication = filterAs("/actuator/metrics");
+
+        assertThat(authentication).isNotNull();
+        assertThat(authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList())
+                .containsExactly("ROLE_ADMIN");
+    }
+
+    @Test
+    void actuatorHealth_isNotFiltered() throws Exception {
+        assertThat(filterAs("/actuator/health")).isNull();
+        assertThat(filterAs("/actuator/health/liveness")).isNull();
+    }
+
+    // Chạy filter rồi trả về authentication mà phần sau của chain (AuthorizationFilter) nhìn thấy
+    private Authentication filterAs(String path) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.addHeader("Authorization", "Bearer " + TOKEN);
+        AtomicReference<Authentication> seen = new AtomicReference<>();
+
+        filter.doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> seen.set(SecurityContextHolder.getContext().getAuthentication()));
+
+        return seen.get();
+    }
+
+    private static User admin() {
+        User user = new User();
+        user.setUserId(1L);
+        user.setUsername("admin");
+        user.setRole(User.Role.ADMIN);
+        user.setIsActive(true);
+        return user;
+    }
+}
@@ -0,0 +1,109 @@
+package DoAn.BE.auth.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import DoAn.BE.user.entity.User;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AuthPrincipalCacheTest {
+
+    private AuthPrincipalCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new AuthPrincipalCache(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void evictUserRemovesAllTokensOfThatUserOnly() {
+        cache.put("token-a1", claims(), user(1L), cache.currentGeneration());
+        cache.put("token-a2", claims(), user(1L), cache.currentGeneration());
+        cache.put("token-b", claims(), user(2L), cache.currentGeneration());
+
+        cache.evictUser(1L);
+
+        assertThat(cache.get("token-a1")).isNull();
+        assertThat(cache.get("token-a2")).isNull();
+        assertThat(cache.get("token-b")).isNotNull();
+    }
+
+    @Test
+    void putIsIgnoredWhenUserWasEvictedDuringLoad() {
+        long generation = cache.currentGeneration();
+        cache.evictUser(1L);
+
+        cache.put("token", claims(), user(1L), generation);
+
+        assertThat(cache.get("token")).isNull();
+    }
+
+    @Test
+    void evictUserInsideTransactionEvictsAgainAfterCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.evictUser(1L);
+
+        // Request đến trước commit đọc lại row cũ và cache nó
+        cache.put("token", claims(), user(1L), cache.currentGeneration());
+        assertThat(cache.get("token")).isNotNull();
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        assertThat(cache.get("token")).isNull();
+    }
+
+    @Test
+    void entryDoesNotOutliveToken() {
+        Claims expired = mock(Claims.class);
+        when(expired.getExpiration()).thenReturn(new Date(System.currentTimeMillis() - 1000));
+
+        cache.put("token", expired, user(1L), cache.currentGeneration());
+
+        assertThat(cache.get("token")).isNull();
+    }
+
+    @Test
+    void cachedUserIsACopy() {
+        cache.put("token", claims(), user(1L), cache.currentGeneration());
+
+        cache.get("token").getUser().setUsername("changed");
+
+        assertThat(cache.get("token").getUser().getUsername()).isEqualTo("user1");
+    }
+
+    private static Claims claims() {
+        Claims claims = mock(Claims.class);
+        when(claims.getExpiration()).thenReturn(new Date(System.currentTimeMillis() + 3_600_000));
+        return claims;
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setUserId(id);
+        user.setUsername("user" + id);
+        user.setIsActive(true);
+        return user;
+    }
+}
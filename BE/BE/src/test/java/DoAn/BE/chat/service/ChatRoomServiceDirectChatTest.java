@@ -0,0 +1,142 @@
+package DoAn.BE.chat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionDefinition;
+
+import DoAn.BE.chat.dto.ChatRoomDTO;
+import DoAn.BE.chat.entity.ChatRoom;
+import DoAn.BE.chat.repository.ChatDirectPairRepository;
+import DoAn.BE.chat.repository.ChatRoomMemberRepository;
+import DoAn.BE.chat.repository.ChatRoomRepository;
+import DoAn.BE.chat.repository.MessageRepository;
+import DoAn.BE.chat.websocket.service.WebSocketNotificationService;
+import DoAn.BE.common.NoOpTransactionManager;
+import DoAn.BE.notification.service.ChatNotificationService;
+import DoAn.BE.project.repository.ProjectRepository;
+import DoAn.BE.user.entity.User;
+import DoAn.BE.user.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ChatRoomServiceDirectChatTest {
+
+    private static final Long LOW_ID = 3L;
+    private static final Long HIGH_ID = 9L;
+
+    private ChatRoomRepository chatRoomRepository;
+    private ChatRoomMemberRepository chatRoomMemberRepository;
+    private ChatDirectPairRepository chatDirectPairRepository;
+    private NoOpTransactionManager transactionManager;
+    private ChatRoomService chatRoomService;
+
+    @BeforeEach
+    void setUp() {
+        chatRoomRepository = mock(ChatRoomRepository.class);
+        chatRoomMemberRepository = mock(ChatRoomMemberRepository.class);
+        chatDirectPairRepository = mock(ChatDirectPairRepository.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        transactionManager = new NoOpTransactionManager();
+
+        when(userRepository.findById(LOW_ID)).thenReturn(Optional.of(user(LOW_ID, "an")));
+        when(userRepository.findById(HIGH_ID)).thenReturn(Optional.of(user(HIGH_ID, "binh")));
+        when(chatRoomMemberRepository.findByChatRoom_RoomId(any())).thenReturn(List.of());
+
+        RoomMembershipIndex membershipIndex = new RoomMembershipIndex(chatRoomMemberRepository,
+                new SimpleMeterRegistry(), 300, 100);
+
+        chatRoomService = new ChatRoomService(chatRoomRepository, chatRoomMemberRepository, userRepository,
+                mock(WebSocketNotificationService.class), mock(ChatNotificationService.class),
+                mock(ProjectRepository.class), mock(MessageRepository.class), membershipIndex,
+                chatDirectPairRepository, transactionManager);
+    }
+
+    @Test
+    void existingPair_returnsRoomWithoutCreating() {
+        when(chatDirectPairRepository.findRoomIdByUsers(LOW_ID, HIGH_ID)).thenReturn(Optional.of(42L));
+        when(chatRoomRepository.findById(42L)).thenReturn(Optional.of(room(42L)));
+
+        ChatRoomDTO dto = chatRoomService.findOrCreateDirectChat(HIGH_ID, LOW_ID);
+
+        assertThat(dto.getRoomId()).isEqualTo(42L);
+        verify(chatRoomRepository, never()).save(any());
+        assertThat(transactionManager.getStarted()).isEqualTo(0);
+    }
+
+    @Test
+    void missingPair_createsRoomPairAndMembersInOwnTransaction() {
+        when(chatDirectPairRepository.findRoomIdByUsers(LOW_ID, HIGH_ID)).thenReturn(Optional.empty());
+        when(chatRoomRepository.save(any())).thenAnswer(invocation -> {
+            ChatRoom saved = invocation.getArgument(0);
+            saved.setRoomId(50L);
+            return saved;
+        });
+        when(chatRoomRepository.findById(50L)).thenReturn(Optional.of(room(50L)));
+
+        ChatRoomDTO dto = chatRoomService.findOrCreateDirectChat(LOW_ID, HIGH_ID);
+
+        assertThat(dto.getRoomId()).isEqualTo(50L);
+        verify(chatDirectPairRepository).saveAndFlush(any());
+        verify(chatRoomMemberRepository, times(2)).save(any());
+        assertThat(transactionManager.getStarted()).isEqualTo(1);
+        assertThat(transactionManager.getLastPropagation())
+                .isEqualTo(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Test
+    void duplicatePairOnInsert_rollsBackAndRetriesLookup() {
+        when(chatDirectPairRepository.findRoomIdByUsers(LOW_ID, HIGH_ID))
+                .thenReturn(Optional.empty(), Optional.of(42L));
+        when(chatRoomRepository.save(any())).thenAnswer(invocation -> {
+            ChatRoom saved = invocation.getArgument(0);
+            saved.setRoomId(51L);
+            return saved;
+        });
+        when(chatDirectPairRepository.saveAndFlush(any()))
+                .thenThrow(new DataIntegrityViolationException("uk_chat_direct_pairs_users"));
+        when(chatRoomRepository.findById(42L)).thenReturn(Optional.of(room(42L)));
+
+        ChatRoomDTO dto = chatRoomService.findOrCreateDirectChat(HIGH_ID, LOW_ID);
+
+        assertThat(dto.getRoomId()).isEqualTo(42L);
+        verify(chatRoomMemberRepository, never()).save(any());
+        assertThat(transactionManager.getRolledBack()).isEqualTo(1);
+    }
+
+    @Test
+    void constraintViolationWithoutWinner_isRethrown() {
+        when(chatDirectPairRepository.findRoomIdByUsers(LOW_ID, HIGH_ID)).thenReturn(Optional.empty());
+        when(chatRoomRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(chatDirectPairRepository.saveAndFlush(any()))
+                .thenThrow(new DataIntegrityViolationException("fk_chat_direct_pairs_room"));
+
+        assertThatThrownBy(() -> chatRoomService.findOrCreateDirectChat(LOW_ID, HIGH_ID))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    private static User user(Long userId, String username) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setUsername(username);
+        return user;
+    }
+
+    private static ChatRoom room(Long roomId) {
+        ChatRoom room = new ChatRoom();
+        room.setRoomId(roomId);
+        room.setType(ChatRoom.RoomType.DIRECT);
+        return room;
+    }
+}
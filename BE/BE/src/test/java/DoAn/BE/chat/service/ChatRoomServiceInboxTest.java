@@ -0,0 +1,126 @@
+package DoAn.BE.chat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import DoAn.BE.chat.dto.ChatRoomDTO;
+import DoAn.BE.chat.dto.InboxRoomDTO;
+import DoAn.BE.chat.entity.ChatRoom;
+import DoAn.BE.chat.entity.Message;
+import DoAn.BE.chat.repository.ChatDirectPairRepository;
+import DoAn.BE.chat.repository.ChatRoomMemberRepository;
+import DoAn.BE.chat.repository.ChatRoomRepository;
+import DoAn.BE.chat.repository.MessageRepository;
+import DoAn.BE.chat.websocket.service.WebSocketNotificationService;
+import DoAn.BE.notification.service.ChatNotificationService;
+import DoAn.BE.project.repository.ProjectRepository;
+import DoAn.BE.user.entity.User;
+import DoAn.BE.user.repository.UserRepository;
+
+class ChatRoomServiceInboxTest {
+
+    private static final Long USER_ID = 3L;
+    private static final LocalDateTime SENT_AT = LocalDateTime.of(2026, 10, 1, 9, 30);
+
+    private ChatRoomRepository chatRoomRepository;
+    private ChatRoomMemberRepository chatRoomMemberRepository;
+    private MessageRepository messageRepository;
+    private ChatRoomService chatRoomService;
+
+    @BeforeEach
+    void setUp() {
+        chatRoomRepository = mock(ChatRoomRepository.class);
+        chatRoomMemberRepository = mock(ChatRoomMemberRepository.class);
+        messageRepository = mock(MessageRepository.class);
+
+        chatRoomService = new ChatRoomService(chatRoomRepository, chatRoomMemberRepository,
+                mock(UserRepository.class), mock(WebSocketNotificationService.class),
+                mock(ChatNotificationService.class), mock(ProjectRepository.class), messageRepository,
+                mock(RoomMembershipIndex.class), mock(ChatDirectPairRepository.class),
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void roomList_isReadFromInboxWithoutPerRoomQueries() {
+        when(chatRoomRepository.findInbox(eq(USER_ID), eq(ChatRoom.RoomType.DIRECT), any()))
+                .thenReturn(new PageImpl<>(List.of(directRow(), groupRow())));
+
+        List<ChatRoomDTO> rooms = chatRoomService.getChatRoomsByUserId(currentUser());
+
+        assertThat(rooms.stream().map(ChatRoomDTO::getRoomId).toList()).containsExactly(42L, 7L);
+        verify(chatRoomMemberRepository, never()).findByChatRoom_RoomId(any());
+        verify(messageRepository, never()).findTopByChatRoom_RoomIdOrderBySentAtDesc(any());
+    }
+
+    @Test
+    void directRoom_carriesBothMembersAndLastMessageSummary() {
+        when(chatRoomRepository.findInbox(eq(USER_ID), eq(ChatRoom.RoomType.DIRECT), any()))
+                .thenReturn(new PageImpl<>(List.of(directRow())));
+
+        ChatRoomDTO room = chatRoomService.getChatRoomsByUserId(currentUser()).get(0);
+
+        assertThat(room.getMembers().stream().map(User::getUsername).toList()).containsExactly("an", "binh");
+        assertThat(room.getMemberCount()).isEqualTo(2);
+        assertThat(room.getUnreadCount()).isEqualTo(4);
+        assertThat(room.getLastMessageAt()).isEqualTo(SENT_AT);
+        assertThat(room.getLastMessage().getContent()).isEqualTo("Hẹn 10h nhé");
+        assertThat(room.getLastMessage().getSender().getUsername()).isEqualTo("binh");
+    }
+
+    @Test
+    void groupRoomWithoutMessages_hasNoLastMessage() {
+        when(chatRoomRepository.findInbox(eq(USER_ID), eq(ChatRoom.RoomType.DIRECT), any()))
+                .thenReturn(new PageImpl<>(List.of(groupRow())));
+
+        ChatRoomDTO room = chatRoomService.getChatRoomsByUserId(currentUser()).get(0);
+
+        assertThat(room.getName()).isEqualTo("Nhóm dự án");
+        assertThat(room.getMembers()).isEmpty();
+        assertThat(room.getMemberCount()).isEqualTo(5);
+        assertThat(room.getLastMessage()).isNull();
+    }
+
+    @Test
+    void memberNotYetBackfilled_getsZeroUnreadInsteadOfNull() {
+        InboxRoomDTO row = groupRow();
+        row.setUnreadCount(null);
+        when(chatRoomRepository.findInbox(eq(USER_ID), eq(ChatRoom.RoomType.DIRECT), any()))
+                .thenReturn(new PageImpl<>(List.of(row)));
+
+        ChatRoomDTO room = chatRoomService.getChatRoomsByUserId(currentUser()).get(0);
+
+        assertThat(room.getUnreadCount()).isEqualTo(0);
+    }
+
+    private static User currentUser() {
+        User user = new User();
+        user.setUserId(USER_ID);
+        user.setUsername("an");
+        user.setRole(User.Role.EMPLOYEE);
+        return user;
+    }
+
+    private static InboxRoomDTO directRow() {
+        return new InboxRoomDTO(42L, null, ChatRoom.RoomType.DIRECT, null, null, null, 2L,
+                9L, "binh", null, 100L, "Hẹn 10h nhé", Message.MessageType.TEXT, SENT_AT, 9L, "binh",
+                4, SENT_AT);
+    }
+
+    private static InboxRoomDTO groupRow() {
+        return new InboxRoomDTO(7L, "Nhóm dự án", ChatRoom.RoomType.GROUP, null, null, null, 5L,
+                null, null, null, null, null, null, null, null, null, 0, SENT_AT.minusDays(1));
+    }
+}
@@ -0,0 +1,196 @@
+package DoAn.BE.chat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import DoAn.BE.chat.dto.MessDTO;
+import DoAn.BE.chat.dto.MessageCursorPageDTO;
+import DoAn.BE.chat.dto.MessageCursorPageDTO.Direction;
+import DoAn.BE.chat.entity.ChatRoom;
+import DoAn.BE.chat.entity.Message;
+import DoAn.BE.chat.repository.ChatRoomMemberRepository;
+import DoAn.BE.chat.repository.ChatRoomRepository;
+import DoAn.BE.chat.repository.MessageRepository;
+import DoAn.BE.chat.repository.MessageStatusRepository;
+import DoAn.BE.chat.websocket.service.WebSocketNotificationService;
+import DoAn.BE.notification.service.ChatNotificationService;
+import DoAn.BE.user.entity.User;
+import DoAn.BE.user.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MessageServiceCursorTest {
+
+    private static final Long ROOM_ID = 1L;
+    private static final Long USER_ID = 7L;
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 1, 9, 0);
+
+    private MessageRepository messageRepository;
+    private MessageService messageService;
+    private ChatRoom room;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository = mock(MessageRepository.class);
+        ChatRoomRepository chatRoomRepository = mock(ChatRoomRepository.class);
+        ChatRoomMemberRepository chatRoomMemberRepository = mock(ChatRoomMemberRepository.class);
+        MessageStatusRepository messageStatusRepository = mock(MessageStatusRepository.class);
+
+        room = new ChatRoom();
+        room.setRoomId(ROOM_ID);
+        when(chatRoomRepository.findById(ROOM_ID)).thenReturn(Optional.of(room));
+        when(chatRoomMemberRepository.findUserIdsByRoomId(ROOM_ID)).thenReturn(List.of(USER_ID));
+        when(messageStatusRepository.findByMessageIdsAndStatus(any(), any())).thenReturn(List.of());
+
+        RoomMembershipIndex membershipIndex = new RoomMembershipIndex(chatRoomMemberRepository,
+                new SimpleMeterRegistry(), 300, 100);
+
+        messageService = new MessageService(messageRepository, chatRoomRepository, chatRoomMemberRepository,
+                messageStatusRepository, mock(UserRepository.class), mock(WebSocketNotificationService.class),
+                mock(ChatNotificationService.class), mock(TypingIndicatorService.class),
+                mock(MessageFanoutService.class), mock(MessageSearchIndex.class), membershipIndex,
+                mock(InboxService.class));
+    }
+
+    @Test
+    void latestPageIsAscendingAndReportsOlderFromExtraRow() {
+        // Repository trả mới -> cũ, lấy dư 1 dòng
+        when(messageRepository.findLatestInRoom(eq(ROOM_ID), any())).thenReturn(messages(10, 9, 8));
+
+        MessageCursorPageDTO page = messageService.getMessagesByCursor(ROOM_ID, USER_ID, null, null,
+                Direction.BEFORE, 2);
+
+        assertThat(page.getMessages()).extracting(MessDTO::getMessageId).containsExactly(9L, 10L);
+        assertThat(page.getHasOlder()).isTrue();
+        assertThat(page.getHasNewer()).isFalse();
+        assertThat(page.getOlderCursorMessageId()).isEqualTo(9L);
+        assertThat(page.getOlderCursorSentAt()).isEqualTo(sentAt(9));
+        assertThat(page.getNewerCursorMessageId()).isEqualTo(10L);
+    }
+
+    @Test
+    void beforeCursorProbesForNewerMessages() {
+        when(messageRepository.findBeforeCursor(eq(ROOM_ID), eq(sentAt(8)), eq(8L), any()))
+                .thenReturn(messages(7, 6));
+        when(messageRepository.findIdsAfterCursor(eq(ROOM_ID), eq(sentAt(8)), eq(8L), any()))
+                .thenReturn(List.of());
+
+        MessageCursorPageDTO page = messageService.getMessagesByCursor(ROOM_ID, USER_ID, sentAt(8), 8L,
+                Direction.BEFORE, 5);
+
+        assertThat(page.getMessages()).extracting(MessDTO::getMessageId).containsExactly(6L, 7L);
+        assertThat(page.getHasOlder()).isFalse();
+        assertThat(page.getHasNewer()).isFalse();
+    }
+
+    @Test
+    void beforeCursorReportsNewerWhenProbeFindsARow() {
+        when(messageRepository.findBeforeCursor(eq(ROOM_ID), eq(sentAt(8)), eq(8L), any()))
+                .thenReturn(messages(7, 6, 5));
+        when(messageRepository.findIdsAfterCursor(eq(ROOM_ID), eq(sentAt(8)), eq(8L), any()))
+                .thenReturn(List.of(9L));
+
+        MessageCursorPageDTO page = messageService.getMessagesByCursor(ROOM_ID, USER_ID, sentAt(8), 8L,
+                Direction.BEFORE, 2);
+
+        assertThat(page.getMessages()).extracting(MessDTO::getMessageId).containsExactly(6L, 7L);
+        assertThat(page.getHasOlder()).isTrue();
+        assertThat(page.getHasNewer()).isTrue();
+        assertThat(page.getOlderCursorMessageId()).isEqualTo(6L);
+    }
+
+    @Test
+    void afterCursorProbesForOlderMessages() {
+        // findAfterCursor trả cũ -> mới
+        when(messageRepository.findAfterCursor(eq(ROOM_ID), eq(sentAt(1)), eq(1L), any()))
+                .thenReturn(messages(2, 3));
+        when(messageRepository.findIdsBeforeCursor(eq(ROOM_ID), eq(sentAt(1)), eq(1L), any()))
+                .thenReturn(List.of());
+
+        MessageCursorPageDTO page = messageService.getMessagesByCursor(ROOM_ID, USER_ID, sentAt(1), 1L,
+                Direction.AFTER, 5);
+
+        assertThat(page.getMessages()).extracting(MessDTO::getMessageId).containsExactly(2L, 3L);
+        assertThat(page.getHasNewer()).isFalse();
+        assertThat(page.getHasOlder()).isFalse();
+        assertThat(page.getNewerCursorMessageId()).isEqualTo(3L);
+    }
+
+    @Test
+    void emptySliceKeepsCursorForPolling() {
+        when(messageRepository.findAfterCursor(eq(ROOM_ID), eq(sentAt(5)), eq(5L), any()))
+                .thenReturn(List.of());
+        when(messageRepository.findIdsBeforeCursor(eq(ROOM_ID), eq(sentAt(5)), eq(5L), any()))
+                .thenReturn(List.of(4L));
+
+        MessageCursorPageDTO page = messageService.getMessagesByCursor(ROOM_ID, USER_ID, sentAt(5), 5L,
+                Direction.AFTER, 5);
+
+        assertThat(page.getMessages()).isEmpty();
+        assertThat(page.getHasNewer()).isFalse();
+        assertThat(page.getHasOlder()).isTrue();
+        assertThat(page.getNewerCursorMessageId()).isEqualTo(5L);
+        assertThat(page.getNewerCursorSentAt()).isEqualTo(sentAt(5));
+    }
+
+    @Test
+    void firstOffsetPageUsesKeysetQuery() {
+        when(messageRepository.findLatestInRoom(eq(ROOM_ID), any())).thenReturn(messages(3, 2, 1));
+
+        Page<MessDTO> page = messageService.getMessagesByRoomId(ROOM_ID, USER_ID, 0, 50);
+
+        assertThat(page.getContent()).extracting(MessDTO::getMessageId).containsExactly(1L, 2L, 3L);
+        assertThat(page.getTotalElements()).isEqualTo(3L);
+        verify(messageRepository, never()).findPageInRoom(any(), any());
+        verify(messageRepository, never()).countByChatRoom_RoomId(any());
+    }
+
+    @Test
+    void laterOffsetPagesUseOffsetQuery() {
+        when(messageRepository.findPageInRoom(eq(ROOM_ID), any()))
+                .thenReturn(new PageImpl<>(messages(2, 1), PageRequest.of(1, 2), 4));
+
+        Page<MessDTO> page = messageService.getMessagesByRoomId(ROOM_ID, USER_ID, 1, 2);
+
+        assertThat(page.getContent()).extracting(MessDTO::getMessageId).containsExactly(1L, 2L);
+        assertThat(page.getTotalElements()).isEqualTo(4L);
+        verify(messageRepository, never()).findLatestInRoom(any(), any());
+    }
+
+    private List<Message> messages(long... ids) {
+        User sender = new User();
+        sender.setUserId(USER_ID);
+        sender.setUsername("sender");
+        List<Message> result = new ArrayList<>();
+        for (long id : ids) {
+            Message message = new Message();
+            message.setMessageId(id);
+            message.setChatRoom(room);
+            message.setSender(sender);
+            message.setContent("m" + id);
+            message.setSentAt(sentAt(id));
+            message.setIsDeleted(false);
+            result.add(message);
+        }
+        return result;
+    }
+
+    private static LocalDateTime sentAt(long id) {
+        return BASE.plusMinutes(id);
+    }
+}
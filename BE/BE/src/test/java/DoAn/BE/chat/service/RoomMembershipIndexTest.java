@@ -0,0 +1,66 @@
+package DoAn.BE.chat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import DoAn.BE.chat.repository.ChatRoomMemberRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RoomMembershipIndexTest {
+
+    private static final Long ROOM_A = 1L;
+    private static final Long ROOM_B = 2L;
+
+    private ChatRoomMemberRepository chatRoomMemberRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private RoomMembershipIndex index;
+
+    @BeforeEach
+    void setUp() {
+        chatRoomMemberRepository = mock(ChatRoomMemberRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        index = new RoomMembershipIndex(chatRoomMemberRepository, meterRegistry, 300, 100);
+    }
+
+    @Test
+    void membersAreLoadedOnceThenServedFromMemory() {
+        when(chatRoomMemberRepository.findUserIdsByRoomId(ROOM_A)).thenReturn(List.of(7L, 8L));
+
+        assertThat(index.isMember(ROOM_A, 7L)).isTrue();
+        assertThat(index.isMember(ROOM_A, 9L)).isFalse();
+
+        verify(chatRoomMemberRepository, times(1)).findUserIdsByRoomId(ROOM_A);
+        assertThat(meterRegistry.counter("chat.membership.lookup", "result", "hit").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void invalidate_reloadsThatRoom() {
+        when(chatRoomMemberRepository.findUserIdsByRoomId(ROOM_A)).thenReturn(List.of(7L), List.of(7L, 9L));
+        index.members(ROOM_A);
+
+        index.invalidate(ROOM_A);
+
+        assertThat(index.isMember(ROOM_A, 9L)).isTrue();
+    }
+
+    @Test
+    void otherRoomChangingDuringLoad_doesNotStopCaching() {
+        when(chatRoomMemberRepository.findUserIdsByRoomId(ROOM_A)).thenAnswer(invocation -> {
+            index.invalidate(ROOM_B);
+            return List.of(7L);
+        });
+
+        index.members(ROOM_A);
+        index.members(ROOM_A);
+
+        verify(chatRoomMemberRepository, times(1)).findUserIdsByRoomId(ROOM_A);
+    }
+}
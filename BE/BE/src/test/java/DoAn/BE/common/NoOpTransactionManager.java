@@ -0,0 +1,45 @@
+package DoAn.BE.common;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+/**
+ * PlatformTransactionManager cho unit test: TransactionTemplate chỉ cần getTransaction/commit/rollback,
+ * không cần DB thật. Đếm số transaction đã mở/rollback để test kiểm tra ranh giới transaction.
+ */
+public class NoOpTransactionManager implements PlatformTransactionManager {
+
+    private int started;
+    private int rolledBack;
+    private int lastPropagation = -1;
+
+    @Override
+    public TransactionStatus getTransaction(TransactionDefinition definition) {
+        started++;
+        lastPropagation = definition.getPropagationBehavior();
+        return new SimpleTransactionStatus();
+    }
+
+    @Override
+    public void commit(TransactionStatus status) {
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) {
+        rolledBack++;
+    }
+
+    public int getStarted() {
+        return started;
+    }
+
+    public int getRolledBack() {
+        return rolledBack;
+    }
+
+    public int getLastPropagation() {
+        return lastPropagation;
+    }
+}
@@ -0,0 +1,119 @@
+package DoAn.BE.common.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class InvalidatingCacheTest {
+
+    private final InvalidatingCache<Long, String> cache = new InvalidatingCache<>(60_000, 100);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void secondGet_isServedFromCache() {
+        assertThat(cache.get(1L, id -> load("a"))).isEqualTo("a");
+        assertThat(cache.get(1L, id -> load("b"))).isEqualTo("a");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidateDuringLoad_discardsThatKeysResult() {
+        String value = cache.get(1L, id -> {
+            cache.invalidate(1L);
+            return load("stale");
+        });
+
+        assertThat(value).isEqualTo("stale");
+        assertThat(cache.getIfPresent(1L)).isNull();
+    }
+
+    @Test
+    void invalidatingOtherKeyDuringLoad_stillCachesResult() {
+        cache.get(1L, id -> {
+            cache.invalidate(2L);
+            return load("a");
+        });
+
+        assertThat(cache.getIfPresent(1L)).isEqualTo("a");
+    }
+
+    @Test
+    void invalidateInsideTransaction_evictsAgainAfterCompletion() {
+        cache.get(1L, id -> load("old"));
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.invalidate(1L);
+        // Request khác nạp lại trước khi commit
+        cache.get(1L, id -> load("uncommitted"));
+        assertThat(cache.getIfPresent(1L)).isEqualTo("uncommitted");
+
+        completeTransaction();
+        assertThat(cache.getIfPresent(1L)).isNull();
+    }
+
+    @Test
+    void putDuringLoad_isNotOverwrittenByLoad() {
+        cache.get(1L, id -> {
+            cache.put(1L, "fresh");
+            return load("stale");
+        });
+
+        assertThat(cache.getIfPresent(1L)).isEqualTo("fresh");
+    }
+
+    @Test
+    void clearDuringLoad_discardsResult() {
+        cache.get(1L, id -> {
+            cache.clear();
+            return load("stale");
+        });
+
+        assertThat(cache.getIfPresent(1L)).isNull();
+    }
+
+    @Test
+    void expiredEntry_isReloaded() {
+        InvalidatingCache<Long, String> expiring = new InvalidatingCache<>(0, 100);
+        expiring.get(1L, id -> load("a"));
+
+        assertThat(expiring.get(1L, id -> load("b"))).isEqualTo("b");
+    }
+
+    @Test
+    void fullCache_isClearedBeforeAddingMore() {
+        InvalidatingCache<Long, String> small = new InvalidatingCache<>(60_000, 2);
+        small.get(1L, id -> "a");
+        small.get(2L, id -> "b");
+
+        small.get(3L, id -> "c");
+
+        assertThat(small.size()).isEqualTo(1);
+        assertThat(small.getIfPresent(3L)).isEqualTo("c");
+    }
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+
+    private static void completeTransaction() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+    }
+}
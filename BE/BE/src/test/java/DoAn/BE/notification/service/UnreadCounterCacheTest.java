@@ -0,0 +1,146 @@
+package DoAn.BE.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class UnreadCounterCacheTest {
+
+    private static final Long USER_ID = 7L;
+
+    private final UnreadCounterCache cache = new UnreadCounterCache(60_000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void firstReadLoadsFromDatabase_thenServesFromMemory() {
+        assertThat(cache.get(USER_ID, () -> load(3))).isEqualTo(3L);
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(3L);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void incrementAndDecrement_adjustCachedCount() {
+        cache.get(USER_ID, () -> load(3));
+
+        cache.incrementAfterCommit(USER_ID, 2);
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(5L);
+
+        cache.incrementAfterCommit(USER_ID, -1);
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(4L);
+    }
+
+    @Test
+    void decrementBelowZero_isClampedToZero() {
+        cache.get(USER_ID, () -> load(0));
+
+        cache.incrementAfterCommit(USER_ID, -1);
+
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(0L);
+    }
+
+    @Test
+    void reset_setsZeroWithoutLoading() {
+        cache.get(USER_ID, () -> load(3));
+
+        cache.resetAfterCommit(USER_ID);
+
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(0L);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void change_isAppliedOnlyAfterCommit() {
+        cache.get(USER_ID, () -> load(3));
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.incrementAfterCommit(USER_ID, 1);
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(3L);
+
+        complete(true);
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(4L);
+    }
+
+    @Test
+    void rolledBackChange_isDiscarded() {
+        cache.get(USER_ID, () -> load(3));
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.incrementAfterCommit(USER_ID, 1);
+        complete(false);
+
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(3L);
+    }
+
+    @Test
+    void changeDuringLoad_preventsCachingStaleCount() {
+        long count = cache.get(USER_ID, () -> {
+            // Thông báo mới commit trong lúc đang đếm
+            cache.incrementAfterCommit(USER_ID, 1);
+            return load(3);
+        });
+
+        assertThat(count).isEqualTo(3L);
+        assertThat(cache.get(USER_ID, () -> load(4))).isEqualTo(4L);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void changeForOtherUserDuringLoad_stillCachesCount() {
+        cache.get(USER_ID, () -> {
+            // Thông báo của user khác (chưa có trong cache) commit trong lúc đang đếm
+            cache.incrementAfterCommit(8L, 1);
+            return load(3);
+        });
+
+        assertThat(cache.get(USER_ID, () -> load(99))).isEqualTo(3L);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidateAll_forcesReload() {
+        cache.get(USER_ID, () -> load(3));
+
+        cache.invalidateAll();
+
+        assertThat(cache.get(USER_ID, () -> load(1))).isEqualTo(1L);
+    }
+
+    @Test
+    void expiredEntry_isReloaded() {
+        UnreadCounterCache expiring = new UnreadCounterCache(0);
+        expiring.get(USER_ID, () -> load(3));
+
+        assertThat(expiring.get(USER_ID, () -> load(5))).isEqualTo(5L);
+    }
+
+    private long load(long count) {
+        loads.incrementAndGet();
+        return count;
+    }
+
+    private void complete(boolean commit) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (commit) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(commit
+                    ? TransactionSynchronization.STATUS_COMMITTED
+                    : TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+    }
+}
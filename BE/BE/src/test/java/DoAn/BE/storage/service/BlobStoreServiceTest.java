@@ -0,0 +1,196 @@
+package DoAn.BE.storage.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import DoAn.BE.common.NoOpTransactionManager;
+import DoAn.BE.storage.entity.FileBlob;
+import DoAn.BE.storage.repository.FileBlobRepository;
+
+class BlobStoreServiceTest {
+
+    private static final String CONTENT = "hello blob";
+
+    private FileBlobRepository fileBlobRepository;
+    private BlobStoreService blobStoreService;
+    private Path uploadDir;
+    private String sha256;
+
+    @BeforeEach
+    void setUp() throws IOException, NoSuchAlgorithmException {
+        fileBlobRepository = mock(FileBlobRepository.class);
+        blobStoreService = new BlobStoreService(fileBlobRepository, new NoOpTransactionManager());
+        uploadDir = Files.createTempDirectory("blob-store-test");
+        ReflectionTestUtils.setField(blobStoreService, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(blobStoreService, "orphanGraceMinutes", 60L);
+
+        sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(CONTENT.getBytes(StandardCharsets.UTF_8)));
+        when(fileBlobRepository.findBySha256(anyString())).thenReturn(Optional.of(blob(1L, blobPath().toString())));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        try (Stream<Path> paths = Files.walk(uploadDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void store_newContent_insertsRowInCallerTransaction() throws IOException {
+        when(fileBlobRepository.incrementRefCount(sha256)).thenReturn(0);
+        when(fileBlobRepository.insertIfAbsent(eq(sha256), eq((long) CONTENT.length()), anyString(), any()))
+                .thenReturn(1);
+
+        blobStoreService.store(content());
+
+        assertThat(Files.exists(blobPath())).isTrue();
+        verify(fileBlobRepository, times(1)).incrementRefCount(sha256);
+        verify(fileBlobRepository, never()).save(any());
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void store_duplicateContent_onlyIncrementsRefCount() throws IOException {
+        when(fileBlobRepository.incrementRefCount(sha256)).thenReturn(1);
+
+        blobStoreService.store(content());
+
+        assertThat(Files.exists(blobPath())).isFalse();
+        verify(fileBlobRepository, never()).insertIfAbsent(anyString(), anyLong(), anyString(), any());
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void store_rowCreatedConcurrently_incrementsExistingRow() {
+        when(fileBlobRepository.incrementRefCount(sha256)).thenReturn(0);
+        when(fileBlobRepository.insertIfAbsent(anyString(), anyLong(), anyString(), any())).thenReturn(0);
+
+        blobStoreService.store(content());
+
+        verify(fileBlobRepository, times(2)).incrementRefCount(sha256);
+    }
+
+    @Test
+    void store_rollback_deletesNewPhysicalFile() {
+        when(fileBlobRepository.incrementRefCount(sha256)).thenReturn(0);
+        when(fileBlobRepository.insertIfAbsent(anyString(), anyLong(), anyString(), any())).thenReturn(1);
+        when(fileBlobRepository.existsBySha256(sha256)).thenReturn(false);
+        TransactionSynchronizationManager.initSynchronization();
+
+        blobStoreService.store(content());
+        assertThat(Files.exists(blobPath())).isTrue();
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(Files.exists(blobPath())).isFalse();
+    }
+
+    @Test
+    void store_commit_keepsPhysicalFile() {
+        when(fileBlobRepository.incrementRefCount(sha256)).thenReturn(0);
+        when(fileBlobRepository.insertIfAbsent(anyString(), anyLong(), anyString(), any())).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+
+        blobStoreService.store(content());
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(Files.exists(blobPath())).isTrue();
+    }
+
+    @Test
+    void release_lastReference_purgesBlob() throws IOException {
+        Files.createDirectories(blobPath().getParent());
+        Files.writeString(blobPath(), CONTENT);
+        when(fileBlobRepository.deleteIfUnreferenced(1L)).thenReturn(1);
+
+        blobStoreService.release(blob(1L, blobPath().toString()));
+
+        verify(fileBlobRepository).decrementRefCount(1L);
+        assertThat(Files.exists(blobPath())).isFalse();
+    }
+
+    @Test
+    void release_stillReferenced_keepsFile() throws IOException {
+        Files.createDirectories(blobPath().getParent());
+        Files.writeString(blobPath(), CONTENT);
+        when(fileBlobRepository.deleteIfUnreferenced(1L)).thenReturn(0);
+
+        blobStoreService.release(blob(1L, blobPath().toString()));
+
+        assertThat(Files.exists(blobPath())).isTrue();
+    }
+
+    @Test
+    void collectGarbage_reconcilesThenPurgesUnreferenced() throws IOException {
+        Files.createDirectories(blobPath().getParent());
+        Files.writeString(blobPath(), CONTENT);
+        when(fileBlobRepository.reconcileRefCounts()).thenReturn(2);
+        when(fileBlobRepository.findUnreferencedBefore(any())).thenReturn(List.of(blob(1L, blobPath().toString())));
+        when(fileBlobRepository.deleteIfUnreferenced(1L)).thenReturn(1);
+
+        blobStoreService.collectGarbage();
+
+        verify(fileBlobRepository).reconcileRefCounts();
+        assertThat(Files.exists(blobPath())).isFalse();
+    }
+
+    private void completeTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private ByteArrayInputStream content() {
+        return new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path blobPath() {
+        return uploadDir.toAbsolutePath().normalize().resolve("blobs")
+                .resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    private List<Path> tempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(uploadDir.resolve("tmp"))) {
+            return files.toList();
+        }
+    }
+
+    private FileBlob blob(Long blobId, String storagePath) {
+        FileBlob blob = new FileBlob();
+        blob.setBlobId(blobId);
+        blob.setSha256(sha256);
+        blob.setContentSize((long) CONTENT.length());
+        blob.setStoragePath(storagePath);
+        return blob;
+    }
+}
@@ -0,0 +1,224 @@
+package DoAn.BE.storage.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import DoAn.BE.storage.dto.FileDownloadInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FileDownloadServiceTest {
+
+    private static final String CONTENT = "0123456789";
+    private static final String ETAG = "\"abc123\"";
+    private static final long LARGE_SIZE = 64 * 1024;
+
+    private SimpleMeterRegistry meterRegistry;
+    private FileDownloadService fileDownloadService;
+    private Path file;
+    private Path large;
+    private FileDownloadInfo info;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        meterRegistry = new SimpleMeterRegistry();
+        fileDownloadService = new FileDownloadService(meterRegistry);
+        file = Files.createTempFile("download-test", ".txt");
+        Files.writeString(file, CONTENT);
+        info = new FileDownloadInfo(1L, file.toString(), CONTENT.length(), "text/plain", "a.txt", ETAG,
+                1_700_000_000_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        if (large != null) {
+            Files.deleteIfExists(large);
+        }
+    }
+
+    @Test
+    void fullGet_returns200AndCountsAsDownload() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean download = fileDownloadService.write(info, get(), response);
+
+        assertThat(download).isTrue();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("identity");
+    }
+
+    @Test
+    void largeFileWithSendfileSupport_handsFileToContainer() throws IOException {
+        FileDownloadInfo large = largeFile();
+        MockHttpServletRequest request = get();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean download = fileDownloadService.write(large, request, response);
+
+        assertThat(download).isTrue();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename")).isEqualTo(large.getPath());
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(0L);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(LARGE_SIZE);
+        assertThat(response.getContentAsByteArray().length).isEqualTo(0);
+    }
+
+    @Test
+    void rangeWithSendfileSupport_setsEndExclusive() throws IOException {
+        FileDownloadInfo large = largeFile();
+        MockHttpServletRequest request = get();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=1024-51199");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileDownloadService.write(large, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(1024L);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(51200L);
+    }
+
+    @Test
+    void smallFileWithSendfileSupport_isCopied() throws IOException {
+        MockHttpServletRequest request = get();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileDownloadService.write(info, request, response);
+
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename")).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void rangeFromStart_returns206AndCountsAsDownload() throws IOException {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-3");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean download = fileDownloadService.write(info, request, response);
+
+        assertThat(download).isTrue();
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-3/10");
+        assertThat(response.getContentAsString()).isEqualTo("0123");
+    }
+
+    @Test
+    void laterRange_returns206WithoutCountingAsDownload() throws IOException {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean download = fileDownloadService.write(info, request, response);
+
+        assertThat(download).isFalse();
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 4-9/10");
+        assertThat(response.getContentAsString()).isEqualTo("456789");
+    }
+
+    @Test
+    void ifRangeMatchingEtag_servesRange() throws IOException {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-5");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileDownloadService.write(info, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsString()).isEqualTo("45");
+    }
+
+    @Test
+    void ifRangeStaleEtag_servesFullFile() throws IOException {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-5");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"old\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean download = fileDownloadService.write(info, request, response);
+
+        assertThat(download).isTrue();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void multipleRanges_servesFullFile() throws IOException {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,4-5");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileDownloadService.write(info, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void unsatisfiableRange_returns416() throws IOException {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean download = fileDownloadService.write(info, request, response);
+
+        assertThat(download).isFalse();
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+        assertThat(response.getContentAsByteArray().length).isEqualTo(0);
+    }
+
+    @Test
+    void matchingIfNoneMatch_returns304() throws IOException {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean download = fileDownloadService.write(info, request, response);
+
+        assertThat(download).isFalse();
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray().length).isEqualTo(0);
+        assertThat(meterRegistry.counter("storage.download", "status", "304").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void head_setsHeadersWithoutBody() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean download = fileDownloadService.write(info, new MockHttpServletRequest("HEAD", "/download"),
+                response);
+
+        assertThat(download).isFalse();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getContentAsByteArray().length).isEqualTo(0);
+    }
+
+    private FileDownloadInfo largeFile() throws IOException {
+        large = Files.createTempFile("download-test", ".bin");
+        Files.write(large, new byte[(int) LARGE_SIZE]);
+        return new FileDownloadInfo(2L, large.toAbsolutePath().toString(), LARGE_SIZE, "application/pdf", "b.pdf",
+                ETAG, 1_700_000_000_000L);
+    }
+
+    private static MockHttpServletRequest get() {
+        return new MockHttpServletRequest("GET", "/download");
+    }
+}
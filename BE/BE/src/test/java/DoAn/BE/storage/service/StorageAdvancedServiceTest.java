@@ -0,0 +1,68 @@
+package DoAn.BE.storage.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Page;
+
+import DoAn.BE.storage.repository.FileRepository;
+
+class StorageAdvancedServiceTest {
+
+    private static final Long USER_ID = 7L;
+
+    private FileRepository fileRepository;
+    private StorageAdvancedService storageAdvancedService;
+
+    @BeforeEach
+    void setUp() {
+        fileRepository = mock(FileRepository.class);
+        storageAdvancedService = new StorageAdvancedService(fileRepository,
+                mock(StorageUsageService.class), mock(FileStorageService.class));
+        when(fileRepository.searchByName(eq(USER_ID), anyString(), any())).thenReturn(Page.empty());
+    }
+
+    @Test
+    void search_escapesLikeWildcards() {
+        assertThat(searchPattern("50%_off", false)).isEqualTo("%50\\%\\_off%");
+    }
+
+    @Test
+    void search_escapesBackslashBeforeOtherWildcards() {
+        assertThat(searchPattern("a\\%b", false)).isEqualTo("%a\\\\\\%b%");
+    }
+
+    @Test
+    void search_escapesSqlServerCharacterClass() {
+        assertThat(searchPattern("[draft] plan", false)).isEqualTo("%\\[draft] plan%");
+    }
+
+    @Test
+    void prefixSearch_normalizesAndAnchorsAtStart() {
+        assertThat(searchPattern("  Report_Q1 ", true)).isEqualTo("report\\_q1%");
+    }
+
+    @Test
+    void blankKeyword_skipsQuery() {
+        Page<?> result = storageAdvancedService.searchFiles(USER_ID, "   ", false, 0, 20);
+
+        assertThat(result.getTotalElements()).isEqualTo(0L);
+        verify(fileRepository, never()).searchByName(any(), any(), any());
+    }
+
+    private String searchPattern(String keyword, boolean prefix) {
+        storageAdvancedService.searchFiles(USER_ID, keyword, prefix, 0, 20);
+        ArgumentCaptor<String> pattern = ArgumentCaptor.forClass(String.class);
+        verify(fileRepository).searchByName(eq(USER_ID), pattern.capture(), any());
+        return pattern.getValue();
+    }
+}
@@ -0,0 +1,190 @@
+package DoAn.BE.storage.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import DoAn.BE.common.NoOpTransactionManager;
+import DoAn.BE.project.entity.Project;
+import DoAn.BE.storage.entity.File;
+import DoAn.BE.storage.entity.Folder;
+import DoAn.BE.storage.entity.StorageUsage;
+import DoAn.BE.storage.entity.StorageUsage.Scope;
+import DoAn.BE.storage.repository.FileRepository;
+import DoAn.BE.storage.repository.StorageUsageRepository;
+import DoAn.BE.user.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StorageUsageServiceTest {
+
+    private static final Long OWNER_ID = 7L;
+    private static final Long PROJECT_ID = 3L;
+    private static final long QUOTA = 1_000L;
+
+    private StorageUsageRepository storageUsageRepository;
+    private FileRepository fileRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private StorageUsageService storageUsageService;
+
+    @BeforeEach
+    void setUp() {
+        storageUsageRepository = mock(StorageUsageRepository.class);
+        fileRepository = mock(FileRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        storageUsageService = new StorageUsageService(storageUsageRepository, fileRepository,
+                new NoOpTransactionManager(), meterRegistry);
+        when(storageUsageRepository.existsByScopeTypeAndScopeId(any(), any())).thenReturn(true);
+    }
+
+    @Test
+    void tryRecordUpload_withinQuota_appliesUserAndProjectDelta() {
+        when(storageUsageRepository.applyDeltaWithinLimit(eq(Scope.USER), eq(OWNER_ID), eq(100L), eq(1L),
+                eq(1L), eq(0L), eq(0L), eq(0L), eq(0L), eq(QUOTA), any())).thenReturn(1);
+
+        boolean recorded = storageUsageService.tryRecordUpload(OWNER_ID, PROJECT_ID, 100L, "image/png", QUOTA);
+
+        assertThat(recorded).isTrue();
+        verify(storageUsageRepository).applyDelta(eq(Scope.PROJECT), eq(PROJECT_ID), eq(100L), eq(1L),
+                eq(1L), eq(0L), eq(0L), eq(0L), eq(0L), any());
+    }
+
+    @Test
+    void tryRecordUpload_overQuota_recordsNothing() {
+        when(storageUsageRepository.applyDeltaWithinLimit(any(), any(), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong(), anyLong(), anyLong(), anyLong(), any())).thenReturn(0);
+
+        boolean recorded = storageUsageService.tryRecordUpload(OWNER_ID, PROJECT_ID, 5_000L, "application/pdf", QUOTA);
+
+        assertThat(recorded).isFalse();
+        verify(storageUsageRepository, never()).applyDelta(any(), any(), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void recordSoftDelete_movesBytesToTrash() {
+        File file = file(200L, "application/pdf", false, PROJECT_ID);
+
+        storageUsageService.recordSoftDelete(file);
+
+        verify(storageUsageRepository).applyDelta(eq(Scope.USER), eq(OWNER_ID), eq(-200L), eq(-1L),
+                eq(0L), eq(-1L), eq(0L), eq(200L), eq(1L), any());
+        verify(storageUsageRepository).applyDelta(eq(Scope.PROJECT), eq(PROJECT_ID), eq(-200L), eq(-1L),
+                eq(0L), eq(-1L), eq(0L), eq(200L), eq(1L), any());
+    }
+
+    @Test
+    void recordSoftDelete_alreadyInTrash_isNoOp() {
+        storageUsageService.recordSoftDelete(file(200L, "application/pdf", true, null));
+
+        verify(storageUsageRepository, never()).applyDelta(any(), any(), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void recordPermanentDelete_collection_groupsByOwner() {
+        File active = file(100L, "video/mp4", false, null);
+        File trashed = file(50L, "image/jpeg", true, null);
+
+        storageUsageService.recordPermanentDelete(List.of(active, trashed));
+
+        verify(storageUsageRepository, times(1)).applyDelta(eq(Scope.USER), eq(OWNER_ID), eq(-100L), eq(-1L),
+                eq(0L), eq(0L), eq(-1L), eq(-50L), eq(-1L), any());
+    }
+
+    @Test
+    void missingRow_isSeededFromFilesTable() {
+        when(storageUsageRepository.existsByScopeTypeAndScopeId(Scope.USER, OWNER_ID)).thenReturn(false);
+        when(fileRepository.aggregateUsageByOwnerId(OWNER_ID)).thenReturn(
+                List.<Object[]>of(new Object[] { OWNER_ID, 300L, 2L, 1L, 1L, 0L, 40L, 1L }));
+
+        storageUsageService.recordPermanentDelete(List.of(file(10L, "text/plain", false, null)));
+
+        ArgumentCaptor<StorageUsage> captor = ArgumentCaptor.forClass(StorageUsage.class);
+        verify(storageUsageRepository).save(captor.capture());
+        StorageUsage seeded = captor.getValue();
+        assertThat(seeded.getScopeType()).isEqualTo(Scope.USER);
+        assertThat(seeded.getUsedBytes()).isEqualTo(300L);
+        assertThat(seeded.getFileCount()).isEqualTo(2L);
+        assertThat(seeded.getTrashBytes()).isEqualTo(40L);
+    }
+
+    @Test
+    void concurrentSeed_isTolerated() {
+        when(storageUsageRepository.existsByScopeTypeAndScopeId(Scope.USER, OWNER_ID)).thenReturn(false);
+        when(fileRepository.aggregateUsageByOwnerId(OWNER_ID)).thenReturn(List.of());
+        doThrow(new DataIntegrityViolationException("uk_storage_usage_scope"))
+                .when(storageUsageRepository).save(any());
+
+        storageUsageService.recordPermanentDelete(List.of(file(10L, "text/plain", false, null)));
+
+        verify(storageUsageRepository).applyDelta(eq(Scope.USER), eq(OWNER_ID), eq(-10L), eq(-1L),
+                eq(0L), eq(0L), eq(0L), eq(0L), eq(0L), any());
+    }
+
+    @Test
+    void reconcile_fixesOnlyDriftedRows() {
+        StorageUsage inSync = usage(1L, OWNER_ID, 300L, 2L);
+        StorageUsage drifted = usage(2L, 8L, 999L, 5L);
+        when(fileRepository.aggregateUsageByOwner()).thenReturn(List.of(
+                new Object[] { OWNER_ID, 300L, 2L, 0L, 0L, 0L, 0L, 0L },
+                new Object[] { 8L, 100L, 1L, 0L, 0L, 0L, 0L, 0L }));
+        when(fileRepository.aggregateUsageByProject()).thenReturn(List.of());
+        when(storageUsageRepository.findByScopeType(Scope.USER)).thenReturn(List.of(inSync, drifted));
+        when(storageUsageRepository.findByScopeType(Scope.PROJECT)).thenReturn(List.of());
+        when(storageUsageRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(drifted));
+        when(fileRepository.aggregateUsageByOwnerId(8L)).thenReturn(
+                List.<Object[]>of(new Object[] { 8L, 100L, 1L, 0L, 0L, 0L, 0L, 0L }));
+
+        storageUsageService.reconcile();
+
+        verify(storageUsageRepository, never()).findByIdForUpdate(1L);
+        verify(storageUsageRepository).save(drifted);
+        assertThat(drifted.getUsedBytes()).isEqualTo(100L);
+        assertThat(drifted.getFileCount()).isEqualTo(1L);
+        assertThat(drifted.getReconciledAt()).isNotNull();
+        assertThat(meterRegistry.counter("storage.usage.drift").count()).isEqualTo(1.0);
+    }
+
+    private static File file(long size, String mimeType, boolean deleted, Long projectId) {
+        User owner = new User();
+        owner.setUserId(OWNER_ID);
+        File file = new File();
+        file.setFileSize(size);
+        file.setMimeType(mimeType);
+        file.setIsDeleted(deleted);
+        file.setOwner(owner);
+        if (projectId != null) {
+            Project project = new Project();
+            project.setProjectId(projectId);
+            Folder folder = new Folder();
+            folder.setProject(project);
+            file.setFolder(folder);
+        }
+        return file;
+    }
+
+    private static StorageUsage usage(Long usageId, Long scopeId, long bytes, long files) {
+        StorageUsage usage = new StorageUsage();
+        usage.setUsageId(usageId);
+        usage.setScopeType(Scope.USER);
+        usage.setScopeId(scopeId);
+        usage.setUsedBytes(bytes);
+        usage.setFileCount(files);
+        return usage;
+    }
+}
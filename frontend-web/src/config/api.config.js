@@ -110,6 +110,8 @@ export const API_ENDPOINTS = {
     PAYROLL_TOTAL_EMPLOYEE_YEAR: (empId, year) => `/api/bang-luong/total/nhan-vien/${empId}/year/${year}`,
     PAYROLL_AUTO_CALCULATE: (empId) => `/api/bang-luong/tinh-tu-dong/${empId}`,
     PAYROLL_AUTO_CALCULATE_ALL: '/api/bang-luong/tinh-tu-dong-tat-ca',
+    PAYROLL_AUTO_CALCULATE_ALL_ASYNC: '/api/bang-luong/tinh-tu-dong-tat-ca/async',
+    PAYROLL_JOB_STATUS: (jobId) => `/api/bang-luong/tinh-tu-dong-tat-ca/jobs/${jobId}`,
   },
 
   // Projects
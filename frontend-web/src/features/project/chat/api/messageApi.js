@@ -56,6 +56,22 @@ export const messageApi = {
     }
   },
 
+  // Lấy tin nhắn theo cursor (keyset pagination)
+  // Không truyền cursor => trang mới nhất; direction = 'BEFORE' (cũ hơn) | 'AFTER' (mới hơn)
+  getMessagesByCursor: async (roomId, { sentAt, messageId, direction = 'BEFORE', size = 50 } = {}) => {
+    try {
+      const params = new URLSearchParams({ direction, size: String(size) })
+      if (sentAt && messageId) {
+        params.append('sentAt', sentAt)
+        params.append('messageId', String(messageId))
+      }
+      // Backend returns MessageCursorPageDTO { messages, hasOlder, hasNewer, olderCursor*, newerCursor* }
+      return await apiService.get(`/api/chat/rooms/${roomId}/messages/cursor?${params.toString()}`)
+    } catch (error) {
+      throw error
+    }
+  },
+
   // Đánh dấu tin nhắn đã xem
   markSeen: async (roomId, messageId, userId) => {
     try {
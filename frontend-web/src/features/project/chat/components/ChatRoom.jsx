@@ -1,4 +1,4 @@
-import { useState, useEffect, useRef } from 'react'
+import { useState, useEffect, useLayoutEffect, useRef } from 'react'
 import { useAuth } from '@/features/auth/hooks/useAuth'
 import { chatRoomApi } from '../api/chatRoomApi'
 import { messageApi } from '../api/messageApi'
@@ -16,6 +16,10 @@ export default function ChatRoom({ roomId, wsConnected, onNewMessage }) {
   const { user } = useAuth()
   const [roomInfo, setRoomInfo] = useState(null)
   const [messages, setMessages] = useState([])
+  // Cursor (keyset) để tải tin nhắn cũ hơn tin đầu tiên đang hiển thị
+  const [olderCursor, setOlderCursor] = useState(null)
+  const [hasOlder, setHasOlder] = useState(false)
+  const [loadingOlder, setLoadingOlder] = useState(false)
   const [newMessage, setNewMessage] = useState('')
   const [loading, setLoading] = useState(true)
   const [sending, setSending] = useState(false)
@@ -28,6 +32,9 @@ export default function ChatRoom({ roomId, wsConnected, onNewMessage }) {
   const [inputFocused, setInputFocused] = useState(false)
   const [showEmojiPicker, setShowEmojiPicker] = useState(false)
   const messagesEndRef = useRef(null)
+  const messagesContainerRef = useRef(null)
+  // scrollHeight trước khi chèn tin cũ lên đầu, để giữ nguyên vị trí đang xem
+  const prependScrollHeightRef = useRef(null)
   const inputRef = useRef(null)
   const toast = useToast()
 
@@ -41,24 +48,39 @@ export default function ChatRoom({ roomId, wsConnected, onNewMessage }) {
     }
   }, [roomId])
 
-  useEffect(() => {
+  useLayoutEffect(() => {
+    const container = messagesContainerRef.current
+    if (prependScrollHeightRef.current !== null && container) {
+      container.scrollTop += container.scrollHeight - prependScrollHeightRef.current
+      prependScrollHeightRef.current = null
+      return
+    }
     scrollToBottom()
   }, [messages])
 
+  const toViewMessage = (msg) => ({
+    ...msg,
+    senderName: msg.sender?.username,
+    senderId: msg.sender?.userId
+  })
+
+  const applyOlderCursor = (page) => {
+    setHasOlder(!!page.hasOlder)
+    setOlderCursor(page.olderCursorMessageId
+      ? { sentAt: page.olderCursorSentAt, messageId: page.olderCursorMessageId }
+      : null)
+  }
+
   const loadRoomData = async () => {
     try {
       setLoading(true)
-      const [roomData, messagesData] = await Promise.all([
+      const [roomData, page] = await Promise.all([
         chatRoomApi.getById(roomId),
-        messageApi.getMessages(roomId)
+        messageApi.getMessagesByCursor(roomId)
       ])
-      const transformedMessages = messagesData.map(msg => ({
-        ...msg,
-        senderName: msg.sender?.username,
-        senderId: msg.sender?.userId
-      }))
       setRoomInfo(roomData)
-      setMessages(transformedMessages)
+      setMessages((page.messages || []).map(toViewMessage))
+      applyOlderCursor(page)
       setLoading(false)
       loadActiveMeetings()
     } catch (error) {
@@ -66,6 +88,31 @@ export default function ChatRoom({ roomId, wsConnected, onNewMessage }) {
     }
   }
 
+  const loadOlderMessages = async () => {
+    if (!hasOlder || !olderCursor || loadingOlder) return
+    try {
+      setLoadingOlder(true)
+      const page = await messageApi.getMessagesByCursor(roomId, { ...olderCursor, direction: 'BEFORE' })
+      const older = (page.messages || []).map(toViewMessage)
+      prependScrollHeightRef.current = messagesContainerRef.current?.scrollHeight ?? null
+      setMessages(prev => {
+        const known = new Set(prev.map(m => m.messageId))
+        return [...older.filter(m => !known.has(m.messageId)), ...prev]
+      })
+      applyOlderCursor(page)
+    } catch (error) {
+      toast.error('Không thể tải tin nhắn cũ hơn')
+    } finally {
+      setLoadingOlder(false)
+    }
+  }
+
+  const handleMessagesScroll = (e) => {
+    if (e.currentTarget.scrollTop < 40) {
+      loadOlderMessages()
+    }
+  }
+
   const loadActiveMeetings = async () => {
     try {
       const meetings = await meetingApi.getMeetingsByRoom(roomId)
@@ -198,9 +245,16 @@ export default function ChatRoom({ roomId, wsConnected, onNewMessage }) {
       )}
 
       {/* Messages Area */}
-      <div style={styles.messagesContainer}>
+      <div ref={messagesContainerRef} style={styles.messagesContainer} onScroll={handleMessagesScroll}>
         {messages.length > 0 ? (
           <>
+            {hasOlder && (
+              <div style={styles.loadOlderWrapper}>
+                <button style={styles.loadOlderButton} onClick={loadOlderMessages} disabled={loadingOlder}>
+                  {loadingOlder ? 'Đang tải...' : 'Tải tin nhắn cũ hơn'}
+                </button>
+              </div>
+            )}
             {messages.map((message, index) => (
               <MessageBubble
                 key={message.messageId || index}
@@ -482,6 +536,20 @@ const styles = {
     padding: '20px 0',
     backgroundColor: '#f8fafc',
   },
+  loadOlderWrapper: {
+    display: 'flex',
+    justifyContent: 'center',
+    padding: '0 0 12px 0',
+  },
+  loadOlderButton: {
+    padding: '6px 16px',
+    border: '1px solid #e5e7eb',
+    borderRadius: '16px',
+    backgroundColor: '#FFFFFF',
+    color: '#374151',
+    fontSize: '13px',
+    cursor: 'pointer',
+  },
   emptyState: {
     display: 'flex',
     flexDirection: 'column',
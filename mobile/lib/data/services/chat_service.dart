@@ -68,6 +68,37 @@ class ChatService {
     }
   }
 
+  // Get messages by cursor (keyset pagination)
+  // Backend: GET /api/chat/rooms/{roomId}/messages/cursor?sentAt=...&messageId=...&direction=BEFORE&size=50
+  // Returns the raw slice: { messages, hasOlder, hasNewer, olderCursorSentAt, olderCursorMessageId, ... }
+  Future<Map<String, dynamic>> getMessagesByCursor(int roomId, {
+      String? sentAt,
+      int? messageId,
+      String direction = 'BEFORE',
+      int size = 50}) async {
+    final headers = await _getHeaders();
+    final query = <String, String>{
+      'direction': direction,
+      'size': '$size',
+      if (sentAt != null && messageId != null) 'sentAt': sentAt,
+      if (sentAt != null && messageId != null) 'messageId': '$messageId',
+    };
+    final response = await http.get(
+      Uri.parse('${AppConstants.baseUrl}/chat/rooms/$roomId/messages/cursor')
+          .replace(queryParameters: query),
+      headers: headers,
+    );
+
+    if (response.statusCode == 200) {
+      final Map<String, dynamic> data = json.decode(response.body);
+      final List<dynamic> content = data['messages'] ?? [];
+      data['messages'] = content.map((json) => Message.fromJson(json)).toList();
+      return data;
+    } else {
+      throw Exception('Failed to load messages: ${response.body}');
+    }
+  }
+
   // Send a text message
   // Backend: POST /api/chat/rooms/{roomId}/messages
   Future<Message> sendMessage(int roomId, String content, {
@@ -36,6 +36,11 @@ class _ChatScreenState extends State<ChatScreen> {
   
   List<Message> _messages = [];
   bool _isLoading = true;
+  // Cursor (keyset) để tải tin nhắn cũ hơn tin cũ nhất đang hiển thị
+  String? _olderCursorSentAt;
+  int? _olderCursorMessageId;
+  bool _hasOlder = false;
+  bool _isLoadingOlder = false;
   int? _currentUserId;
   final Set<int> _markedAsSeenIds = {};
   
@@ -43,6 +48,10 @@ class _ChatScreenState extends State<ChatScreen> {
   Timer? _debounce;
   bool _isTyping = false;
   final List<String> _typingUsers = [];
+  // Snapshot đang gõ theo instance backend (source) và thời điểm nhận, quá hạn thì bỏ
+  final Map<String, List<String>> _typingByInstance = {};
+  final Map<String, DateTime> _typingReceivedAt = {};
+  static const Duration _typingSnapshotTtl = Duration(seconds: 5);
   final StreamController<Map<String, dynamic>> _callSignalController = StreamController.broadcast();
 
   @override
@@ -50,6 +59,7 @@ class _ChatScreenState extends State<ChatScreen> {
     super.initState();
     _loadCurrentUser();
     _loadMessages();
+    _scrollController.addListener(_onScroll);
     _connectWebSocket();
   }
 
@@ -78,9 +88,11 @@ class _ChatScreenState extends State<ChatScreen> {
 
   Future<void> _loadMessages() async {
     try {
-      final messages = await _chatService.getMessages(widget.roomId);
+      final page = await _chatService.getMessagesByCursor(widget.roomId);
+      final messages = page['messages'] as List<Message>;
       setState(() {
         _messages = messages.reversed.toList();
+        _applyOlderCursor(page);
         _isLoading = false;
       });
       _scrollToBottom();
@@ -89,6 +101,46 @@ class _ChatScreenState extends State<ChatScreen> {
     }
   }
 
+  // Tải trang cũ hơn theo cursor BEFORE, nối vào cuối list (list đang là mới -> cũ)
+  Future<void> _loadOlderMessages() async {
+    if (!_hasOlder || _isLoadingOlder || _olderCursorMessageId == null) return;
+    setState(() => _isLoadingOlder = true);
+    try {
+      final page = await _chatService.getMessagesByCursor(widget.roomId,
+          sentAt: _olderCursorSentAt, messageId: _olderCursorMessageId, direction: 'BEFORE');
+      final older = (page['messages'] as List<Message>).reversed
+          .where((m) => !_messages.any((existing) => existing.messageId == m.messageId))
+          .toList();
+      if (!mounted) return;
+      setState(() {
+        _messages.addAll(older);
+        _applyOlderCursor(page);
+        _isLoadingOlder = false;
+      });
+    } catch (e) {
+      if (!mounted) return;
+      setState(() => _isLoadingOlder = false);
+      ScaffoldMessenger.of(context).showSnackBar(
+        const SnackBar(content: Text('Không thể tải tin nhắn cũ hơn')),
+      );
+    }
+  }
+
+  void _applyOlderCursor(Map<String, dynamic> page) {
+    _hasOlder = page['hasOlder'] == true;
+    _olderCursorSentAt = page['olderCursorSentAt'] as String?;
+    _olderCursorMessageId = page['olderCursorMessageId'] as int?;
+  }
+
+  // List đảo ngược: cuộn gần maxScrollExtent là đang ở đầu lịch sử
+  void _onScroll() {
+    if (!_scrollController.hasClients) return;
+    final position = _scrollController.position;
+    if (position.pixels >= position.maxScrollExtent - 200) {
+      _loadOlderMessages();
+    }
+  }
+
   Future<void> _connectWebSocket() async {
     final token = await _authService.getAccessToken();
     if (token != null) {
@@ -111,7 +163,12 @@ class _ChatScreenState extends State<ChatScreen> {
           }
           // Remove from typing list if sender was typing
           if (_typingUsers.contains(newMessage.sender.username)) {
-             setState(() => _typingUsers.remove(newMessage.sender.username));
+             setState(() {
+               for (final users in _typingByInstance.values) {
+                 users.remove(newMessage.sender.username);
+               }
+               _typingUsers.remove(newMessage.sender.username);
+             });
           }
 
           // Check if message already exists (prevent duplicates)
@@ -186,15 +243,17 @@ class _ChatScreenState extends State<ChatScreen> {
                  data['type'] == 'ICE_CANDIDATE' || 
                  data['type'] == 'CALL_END') {
           _callSignalController.add(data);
-      } else if (data['type'] == 'TYPING_START') {
-        final userId = data['userId'];
-        final username = data['username'];
-        if (userId != _currentUserId && !_typingUsers.contains(username)) {
-           setState(() => _typingUsers.add(username));
-        }
-      } else if (data['type'] == 'TYPING_STOP') {
-        final username = data['username'];
-         setState(() => _typingUsers.remove(username));
+      } else if (data['type'] == 'TYPING_SNAPSHOT') {
+        // Mỗi instance backend gửi danh sách đang gõ qua chính nó: giữ snapshot mới nhất của từng instance rồi gộp
+        final source = data['source'] as String? ?? '';
+        final typing = (data['data'] as List? ?? [])
+            .where((u) => u['userId'] != _currentUserId)
+            .map((u) => u['username'] as String)
+            .toList();
+        _typingByInstance[source] = typing;
+        _typingReceivedAt[source] = DateTime.now();
+        _typingTimer ??= Timer.periodic(const Duration(seconds: 1), (_) => _pruneTypingSnapshots());
+        setState(_mergeTypingUsers);
       } else if (data['type'] == 'USER_STATUS_CHANGE') {
         // Optional: Update title online status if needed
         // For now, simpler to not complicate AppBar
@@ -202,6 +261,29 @@ class _ChatScreenState extends State<ChatScreen> {
     });
   }
 
+  // Instance còn người gõ gửi lại snapshot định kỳ; không nhận được nữa (instance dừng) thì bỏ snapshot đó
+  void _pruneTypingSnapshots() {
+    final now = DateTime.now();
+    final expired = _typingReceivedAt.entries
+        .where((e) => now.difference(e.value) > _typingSnapshotTtl)
+        .map((e) => e.key)
+        .toList();
+    if (expired.isEmpty || !mounted) return;
+    setState(() {
+      for (final source in expired) {
+        _typingByInstance.remove(source);
+        _typingReceivedAt.remove(source);
+      }
+      _mergeTypingUsers();
+    });
+  }
+
+  void _mergeTypingUsers() {
+    _typingUsers
+      ..clear()
+      ..addAll(_typingByInstance.values.expand((users) => users).toSet());
+  }
+
   void _onTextChanged(String text) {
     if (!_isTyping && text.isNotEmpty) {
       _isTyping = true;
@@ -372,6 +454,24 @@ class _ChatScreenState extends State<ChatScreen> {
     );
   }
 
+  Widget _buildLoadOlder() {
+    return Padding(
+      padding: const EdgeInsets.symmetric(vertical: 8),
+      child: Center(
+        child: _isLoadingOlder
+            ? SizedBox(
+                width: 20,
+                height: 20,
+                child: CircularProgressIndicator(strokeWidth: 2, color: AppColors.primary),
+              )
+            : TextButton(
+                onPressed: _loadOlderMessages,
+                child: const Text('Tải tin nhắn cũ hơn'),
+              ),
+      ),
+    );
+  }
+
   void _scrollToBottom() {
     if (_scrollController.hasClients) {
       _scrollController.animateTo(
@@ -496,8 +596,11 @@ class _ChatScreenState extends State<ChatScreen> {
                         controller: _scrollController,
                         reverse: true,
                         padding: const EdgeInsets.symmetric(horizontal: 12, vertical: 16),
-                        itemCount: _messages.length,
+                        itemCount: _messages.length + (_hasOlder ? 1 : 0),
                         itemBuilder: (context, index) {
+                          if (index == _messages.length) {
+                            return _buildLoadOlder();
+                          }
                           final message = _messages[index];
                           final isMe = message.sender.userId == _currentUserId;
                           